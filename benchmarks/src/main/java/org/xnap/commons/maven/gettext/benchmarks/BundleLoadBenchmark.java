@@ -0,0 +1,111 @@
+package org.xnap.commons.maven.gettext.benchmarks;
+
+/*
+ * Copyright 2001-2005 The Apache Software Foundation.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.List;
+import java.util.Locale;
+import java.util.ResourceBundle;
+import java.util.concurrent.TimeUnit;
+
+import org.codehaus.plexus.util.FileUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.xnap.commons.maven.gettext.PoEntry;
+
+/**
+ * Cold start: the time to load the bundles of all locales and look up one
+ * message in each. Every measurement uses a new class loader, so classes
+ * and the ResourceBundle cache start empty.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 30)
+@Fork(3)
+public class BundleLoadBenchmark {
+
+    @Param({"properties", "bytecode", "table"})
+    public String format;
+
+    @Param({"20000"})
+    public int entries;
+
+    @Param({"1", "40"})
+    public int locales;
+
+    private File directory;
+    private File classes;
+    private Locale[] localeList;
+    private String key;
+    private ClassLoader loader;
+
+    @Setup
+    public void setUp() throws IOException {
+        directory = Catalogs.createTempDirectory("load");
+        File po = new File(directory, "messages.po");
+        List<PoEntry> messages = Catalogs.createPo(po, entries);
+        for (int i = messages.size() / 2; key == null; i++) {
+            if (Catalogs.isPlain(messages.get(i))) {
+                key = messages.get(i).getMsgid();
+            }
+        }
+        classes = new File(directory, "classes");
+        localeList = new Locale[locales];
+        for (int i = 0; i < locales; i++) {
+            // the same catalog for made up languages
+            localeList[i] = new Locale("x" + (char) ('a' + i / 26) + (char) ('a' + i % 26));
+            Catalogs.compile(format, po, classes, localeList[i].toString());
+        }
+    }
+
+    @Setup(Level.Iteration)
+    public void createLoader() throws IOException {
+        loader = new URLClassLoader(new URL[] {classes.toURI().toURL()},
+                BundleLoadBenchmark.class.getClassLoader());
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        FileUtils.deleteDirectory(directory);
+    }
+
+    @Benchmark
+    public void load(Blackhole blackhole) {
+        for (Locale locale : localeList) {
+            ResourceBundle bundle = ResourceBundle.getBundle(Catalogs.BUNDLE, locale, loader);
+            blackhole.consume(bundle.getString(key));
+        }
+    }
+
+}
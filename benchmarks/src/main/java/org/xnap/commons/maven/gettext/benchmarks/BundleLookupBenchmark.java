@@ -0,0 +1,114 @@
+package org.xnap.commons.maven.gettext.benchmarks;
+
+/*
+ * Copyright 2001-2005 The Apache Software Foundation.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.ResourceBundle;
+import java.util.concurrent.TimeUnit;
+
+import org.codehaus.plexus.util.FileUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.xnap.commons.maven.gettext.PoEntry;
+
+/**
+ * Throughput of <code>ResourceBundle.getString</code> on the bundles the
+ * dist goal generates. Keys are picked at random from the messages without
+ * plural forms or context, which all formats support. Run with
+ * the gc profiler, the default of {@link BenchmarkMain}, to see the
+ * allocation per lookup.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class BundleLookupBenchmark {
+
+    private static final int KEY_COUNT = 4096;
+
+    @Param({"properties", "bytecode", "table"})
+    public String format;
+
+    @Param({"1000", "20000"})
+    public int entries;
+
+    private File directory;
+    private ResourceBundle bundle;
+    private final String[] keys = new String[KEY_COUNT];
+    private int next;
+
+    @Setup
+    public void setUp() throws IOException {
+        directory = Catalogs.createTempDirectory("lookup");
+        File po = new File(directory, "de.po");
+        List<PoEntry> messages = Catalogs.createPo(po, entries);
+        File classes = new File(directory, "classes");
+        Catalogs.compile(format, po, classes, "de");
+
+        ClassLoader loader = new URLClassLoader(new URL[] {classes.toURI().toURL()},
+                BundleLookupBenchmark.class.getClassLoader());
+        bundle = ResourceBundle.getBundle(Catalogs.BUNDLE, Locale.GERMAN, loader);
+
+        Random random = new Random(42);
+        for (int i = 0; i < keys.length;) {
+            PoEntry entry = messages.get(random.nextInt(messages.size()));
+            if (Catalogs.isPlain(entry)) {
+                keys[i++] = entry.getMsgid();
+            }
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        FileUtils.deleteDirectory(directory);
+    }
+
+    @Benchmark
+    public String getString() {
+        String key = keys[next];
+        next = (next + 1) & (KEY_COUNT - 1);
+        return bundle.getString(key);
+    }
+
+    /**
+     * Looks up a message that is not translated, which also searches the
+     * parent bundles.
+     */
+    @Benchmark
+    public boolean containsMissing() {
+        return bundle.containsKey("no such message");
+    }
+
+}
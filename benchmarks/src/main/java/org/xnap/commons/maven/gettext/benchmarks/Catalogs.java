@@ -0,0 +1,226 @@
+package org.xnap.commons.maven.gettext.benchmarks;
+
+/*
+ * Copyright 2001-2005 The Apache Software Foundation.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.xnap.commons.maven.gettext.BundleClassGenerator;
+import org.xnap.commons.maven.gettext.BundleTableGenerator;
+import org.xnap.commons.maven.gettext.PoEntry;
+import org.xnap.commons.maven.gettext.PoParser;
+import org.xnap.commons.maven.gettext.PoWriter;
+import org.xnap.commons.maven.gettext.PropertiesWriter;
+
+/**
+ * Synthetic source trees, po files and bundles for the benchmarks. The
+ * content is deterministic, so results of different runs are comparable.
+ */
+public class Catalogs {
+
+    public static final String BUNDLE = "bench.Messages";
+
+    private static final String[] WORDS = {
+        "file", "could", "not", "be", "opened", "the", "connection", "was",
+        "closed", "by", "remote", "host", "please", "try", "again", "later",
+        "settings", "saved", "user", "name", "password", "invalid", "download",
+        "finished", "in", "seconds",
+    };
+
+    /**
+     * Writes <code>files</code> java files with five messages each into
+     * packages of 100 files. A fifth of the messages are shared between
+     * files, every tenth call is a plural.
+     *
+     * @return the paths of the files relative to <code>directory</code>
+     */
+    public static List<String> createSourceTree(File directory, int files) throws IOException {
+        List<String> paths = new ArrayList<String>(files);
+        for (int i = 0; i < files; i++) {
+            String path = "p" + (i / 100) + "/C" + i + ".java";
+            StringBuilder source = new StringBuilder();
+            source.append("package p").append(i / 100).append(";\n\n");
+            source.append("import static org.example.I18n.*;\n\n");
+            source.append("public class C").append(i).append(" {\n\n");
+            source.append("    // a comment with \"quotes\" that is not a message\n");
+            source.append("    void run(int n) {\n");
+            for (int j = 0; j < 5; j++) {
+                int id = (j == 0) ? i % 100 : i * 5 + j;
+                if (j == 4) {
+                    source.append("        System.out.println(trn(\"").append(message(id))
+                            .append("\", \"").append(message(id)).append("s\", n));\n");
+                } else {
+                    source.append("        System.out.println(tr(\"").append(message(id)).append("\"));\n");
+                }
+                source.append("        int x").append(j).append(" = n * ").append(j).append(";\n");
+            }
+            source.append("    }\n\n}\n");
+            write(new File(directory, path), source.toString());
+            paths.add(path);
+        }
+        return paths;
+    }
+
+    /**
+     * Writes a translated po file with <code>entries</code> messages, every
+     * tenth with plural forms and every fiftieth with a context.
+     *
+     * @return the messages of the file, the header first
+     */
+    public static List<PoEntry> createPo(File file, int entries) throws IOException {
+        List<PoEntry> list = new ArrayList<PoEntry>(entries + 1);
+        PoEntry header = new PoEntry();
+        header.setMsgid("");
+        header.setMsgstr(0, "Project-Id-Version: benchmark\n"
+                + "MIME-Version: 1.0\n"
+                + "Content-Type: text/plain; charset=UTF-8\n"
+                + "Content-Transfer-Encoding: 8bit\n"
+                + "Plural-Forms: nplurals=2; plural=(n != 1);\n");
+        list.add(header);
+        for (int i = 0; i < entries; i++) {
+            PoEntry entry = new PoEntry();
+            entry.getReferences().add("src/main/java/p" + (i / 100) + "/C" + i + ".java:" + (i % 400 + 1));
+            if (i % 50 == 0) {
+                entry.setMsgctxt("menu");
+            }
+            entry.setMsgid(message(i));
+            if (i % 10 == 0) {
+                entry.setMsgidPlural(message(i) + "s");
+                entry.setMsgstr(0, translation(i));
+                entry.setMsgstr(1, translation(i) + "en");
+            } else {
+                entry.setMsgstr(0, translation(i));
+            }
+            list.add(entry);
+        }
+
+        file.getParentFile().mkdirs();
+        Writer out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), "UTF-8"));
+        try {
+            PoWriter writer = new PoWriter(out);
+            for (PoEntry entry : list) {
+                writer.write(entry);
+            }
+            writer.flush();
+        } finally {
+            out.close();
+        }
+        return list;
+    }
+
+    /**
+     * Compiles <code>po</code> into the bundle of <code>locale</code> in
+     * <code>directory</code>. "bytecode" stands in for msgfmt's "class"
+     * format, the classes have the same methods and the same static
+     * HashMap.
+     *
+     * @param format "properties", "bytecode" or "table"
+     */
+    public static void compile(String format, File po, File directory, String locale) throws IOException {
+        String className = BUNDLE + "_" + locale;
+        File base = new File(directory, className.replace('.', '/'));
+        base.getParentFile().mkdirs();
+        if ("properties".equals(format)) {
+            PropertiesWriter.convert(po, new File(base.getPath() + ".properties"));
+        } else if ("bytecode".equals(format)) {
+            BundleClassGenerator generator = new BundleClassGenerator(className);
+            for (PoEntry entry : read(po)) {
+                generator.add(entry);
+            }
+            write(new File(base.getPath() + ".class"), generator.generate());
+        } else if ("table".equals(format)) {
+            BundleTableGenerator generator = new BundleTableGenerator(className);
+            for (PoEntry entry : read(po)) {
+                generator.add(entry);
+            }
+            write(new File(base.getPath() + ".table"), generator.generateTable());
+            write(new File(base.getPath() + ".class"), generator.generateClass());
+        } else {
+            throw new IllegalArgumentException("Unknown format: " + format);
+        }
+    }
+
+    /**
+     * @return true, if <code>entry</code> is a message that all bundle
+     *      formats contain; properties files have no plural forms and no
+     *      contexts
+     */
+    public static boolean isPlain(PoEntry entry) {
+        return !entry.isHeader() && !entry.isPlural() && entry.getMsgctxt() == null;
+    }
+
+    public static List<PoEntry> read(File po) throws IOException {
+        List<PoEntry> entries = new ArrayList<PoEntry>();
+        PoParser parser = new PoParser(po);
+        try {
+            PoEntry entry;
+            while ((entry = parser.next()) != null) {
+                entries.add(entry);
+            }
+        } finally {
+            parser.close();
+        }
+        return entries;
+    }
+
+    public static File createTempDirectory(String prefix) throws IOException {
+        File directory = File.createTempFile(prefix, "");
+        if (!directory.delete() || !directory.mkdirs()) {
+            throw new IOException("Could not create " + directory);
+        }
+        return directory;
+    }
+
+    static String message(int id) {
+        StringBuilder sb = new StringBuilder();
+        int words = 3 + id % 7;
+        int seed = id;
+        for (int i = 0; i < words; i++) {
+            if (i > 0) {
+                sb.append(' ');
+            }
+            sb.append(WORDS[seed % WORDS.length]);
+            seed = seed / 3 + 7 * i;
+        }
+        return sb.append(' ').append(id).toString();
+    }
+
+    static String translation(int id) {
+        return "\u00dcbersetzung von " + message(id);
+    }
+
+    private static void write(File file, String content) throws IOException {
+        write(file, content.getBytes("UTF-8"));
+    }
+
+    private static void write(File file, byte[] content) throws IOException {
+        file.getParentFile().mkdirs();
+        FileOutputStream out = new FileOutputStream(file);
+        try {
+            out.write(content);
+        } finally {
+            out.close();
+        }
+    }
+
+}
@@ -0,0 +1,92 @@
+package org.xnap.commons.maven.gettext.benchmarks;
+
+/*
+ * Copyright 2001-2005 The Apache Software Foundation.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.codehaus.plexus.util.DirectoryScanner;
+import org.codehaus.plexus.util.FileUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.xnap.commons.maven.gettext.JavaExtractor;
+import org.xnap.commons.maven.gettext.PoEntry;
+
+/**
+ * Scanning a source tree for java files and extracting its messages with the
+ * in-process extractor, as the gettext goal does with
+ * <code>extractor=java</code>.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class ExtractionBenchmark {
+
+    @Param({"1000", "10000", "50000"})
+    public int files;
+
+    private File sourceDirectory;
+    private List<String> paths;
+    private JavaExtractor extractor;
+
+    @Setup
+    public void setUp() throws IOException {
+        sourceDirectory = Catalogs.createTempDirectory("extraction");
+        paths = Catalogs.createSourceTree(sourceDirectory, files);
+        extractor = new JavaExtractor(JavaExtractor.parseKeywords("-ktr -ktrn:1,2"));
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        FileUtils.deleteDirectory(sourceDirectory);
+    }
+
+    @Benchmark
+    public String[] scan() {
+        DirectoryScanner ds = new DirectoryScanner();
+        ds.setBasedir(sourceDirectory);
+        ds.setIncludes(new String[] {"**/*.java"});
+        ds.scan();
+        return ds.getIncludedFiles();
+    }
+
+    @Benchmark
+    public List<List<PoEntry>> extract() throws IOException {
+        return extractor.extract(sourceDirectory, paths, "UTF-8", 0);
+    }
+
+    @Benchmark
+    public List<List<PoEntry>> extractSingleThreaded() throws IOException {
+        return extractor.extract(sourceDirectory, paths, "UTF-8", 1);
+    }
+
+}
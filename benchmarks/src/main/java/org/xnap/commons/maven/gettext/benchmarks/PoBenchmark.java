@@ -0,0 +1,129 @@
+package org.xnap.commons.maven.gettext.benchmarks;
+
+/*
+ * Copyright 2001-2005 The Apache Software Foundation.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.codehaus.plexus.util.FileUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.xnap.commons.maven.gettext.PoEntry;
+import org.xnap.commons.maven.gettext.PoParser;
+import org.xnap.commons.maven.gettext.PoWriter;
+import org.xnap.commons.maven.gettext.PotCatalog;
+
+/**
+ * Parsing and writing po files, and sorting and writing a template the way
+ * the gettext goal does.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class PoBenchmark {
+
+    @Param({"1000", "20000", "200000"})
+    public int entries;
+
+    private File directory;
+    private File po;
+    private File output;
+    private List<PoEntry> messages;
+
+    @Setup
+    public void setUp() throws IOException {
+        directory = Catalogs.createTempDirectory("catalog");
+        po = new File(directory, "de.po");
+        output = new File(directory, "out.po");
+        messages = Catalogs.createPo(po, entries);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        FileUtils.deleteDirectory(directory);
+    }
+
+    /**
+     * Streams the file into a single reused entry.
+     */
+    @Benchmark
+    public int parse(Blackhole blackhole) throws IOException {
+        PoParser parser = new PoParser(po);
+        int count = 0;
+        try {
+            PoEntry entry = new PoEntry();
+            while (parser.next(entry)) {
+                blackhole.consume(entry.getMsgid());
+                blackhole.consume(entry.getMsgstr());
+                count++;
+            }
+        } finally {
+            parser.close();
+        }
+        return count;
+    }
+
+    @Benchmark
+    public long write() throws IOException {
+        Writer out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(output), "UTF-8"));
+        try {
+            PoWriter writer = new PoWriter(out);
+            for (PoEntry entry : messages) {
+                writer.write(entry);
+            }
+            writer.flush();
+        } finally {
+            out.close();
+        }
+        return output.length();
+    }
+
+    @Benchmark
+    public long writeTemplate() throws IOException {
+        PotCatalog catalog = new PotCatalog(Collections.<String>emptyList());
+        catalog.setHeader(PotCatalog.createDefaultHeader());
+        for (PoEntry entry : messages) {
+            if (!entry.isHeader()) {
+                catalog.add(entry);
+            }
+        }
+        catalog.write(output);
+        return output.length();
+    }
+
+}
@@ -17,13 +17,29 @@ package org.xnap.commons.maven.gettext;
  */
 
 import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
 
+import org.apache.maven.model.Plugin;
+import org.apache.maven.model.PluginExecution;
 import org.apache.maven.plugin.AbstractMojo;
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.descriptor.PluginDescriptor;
 import org.apache.maven.plugins.annotations.Mojo;
 import org.apache.maven.plugins.annotations.Parameter;
+import org.apache.maven.project.MavenProject;
+import org.codehaus.plexus.util.xml.Xpp3Dom;
 
 public abstract class AbstractGettextMojo extends AbstractMojo {
 
+    /**
+     * Plugin context key of the flag that tells whether the gettext goal
+     * changed the keys file in the current build.
+     */
+    protected static final String KEYS_CHANGED = "gettext.keysChanged";
 
     /**
      * The output directory for generated class or properties files.
@@ -48,5 +64,210 @@ public abstract class AbstractGettextMojo extends AbstractMojo {
      */
     @Parameter(defaultValue = "keys.pot", required = true)
     protected String keysFile;
-    
+
+    /**
+     * Directory for files the plugin keeps between builds, such as caches.
+     */
+    @Parameter(defaultValue = "${project.build.directory}/gettext", required = true)
+    protected File workDirectory;
+
+    /**
+     * The number of po files that are processed in parallel. <code>0</code>
+     * uses one thread per available processor.
+     */
+    @Parameter(property = "gettext.threads", defaultValue = "0")
+    protected int threads;
+
+    /**
+     * Directory the goals write their metrics to, one JSON file per goal
+     * named <code>&lt;goal&gt;-metrics.json</code>.
+     */
+    @Parameter(property = "gettext.metricsDirectory", defaultValue = "${project.build.directory}/gettext")
+    protected File metricsDirectory;
+
+    /**
+     * If true, each goal logs a one-line summary of its metrics.
+     */
+    @Parameter(property = "gettext.metricsSummary", defaultValue = "false")
+    protected boolean metricsSummary;
+
+    /**
+     * Identifies the module in the metrics.
+     */
+    @Parameter(defaultValue = "${project.groupId}:${project.artifactId}", readonly = true)
+    protected String projectId;
+
+    /**
+     * Extract and merge messages once for all modules of the build that use
+     * the same po directory, instead of once per module. The first module
+     * that runs the gettext goal extracts the messages from the source
+     * directories of all these modules, the others reuse its keys file.
+     */
+    @Parameter(property = "gettext.aggregate", defaultValue = "false")
+    protected boolean aggregate;
+
+    @Parameter(defaultValue = "${reactorProjects}", readonly = true)
+    protected List<MavenProject> reactorProjects;
+
+    /**
+     * Identifies the build for the {@link CatalogRegistry}.
+     */
+    @Parameter(defaultValue = "${session.startTime}", readonly = true)
+    protected Date buildStartTime;
+
+    @Parameter(defaultValue = "${plugin}", readonly = true)
+    protected PluginDescriptor pluginDescriptor;
+
+    /**
+     * @return the source directories of all modules in the build that use
+     *      this plugin with the same po directory, starting with this module
+     */
+    protected List<File> getAggregatedSourceDirectories() {
+        List<File> directories = new ArrayList<File>();
+        directories.add(CatalogRegistry.canonical(sourceDirectory));
+        if (reactorProjects == null || pluginDescriptor == null) {
+            return directories;
+        }
+        File target = CatalogRegistry.canonical(poDirectory);
+        for (MavenProject project : reactorProjects) {
+            Plugin plugin = getPlugin(project);
+            if (plugin == null) {
+                continue;
+            }
+            String value = getConfiguration(plugin, "poDirectory");
+            File directory = (value != null) ? resolve(project, value) : new File(project.getBasedir(), "src/main/po");
+            if (!CatalogRegistry.canonical(directory).equals(target)) {
+                continue;
+            }
+            value = getConfiguration(plugin, "sourceDirectory");
+            directory = CatalogRegistry.canonical((value != null) ? resolve(project, value)
+                    : new File(project.getBuild().getSourceDirectory()));
+            if (directory.isDirectory() && !directories.contains(directory)) {
+                directories.add(directory);
+            }
+        }
+        return directories;
+    }
+
+    private Plugin getPlugin(MavenProject project) {
+        for (Object plugin : project.getBuildPlugins()) {
+            if (pluginDescriptor.getPluginLookupKey().equals(((Plugin) plugin).getKey())) {
+                return (Plugin) plugin;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return the value of the parameter <code>name</code> in the plugin
+     *      configuration or in the configuration of one of its executions
+     */
+    private static String getConfiguration(Plugin plugin, String name) {
+        String value = getChild(plugin.getConfiguration(), name);
+        for (PluginExecution execution : plugin.getExecutions()) {
+            if (value == null) {
+                value = getChild(execution.getConfiguration(), name);
+            }
+        }
+        return value;
+    }
+
+    private static String getChild(Object configuration, String name) {
+        if (configuration instanceof Xpp3Dom) {
+            Xpp3Dom child = ((Xpp3Dom) configuration).getChild(name);
+            if (child != null && child.getValue() != null && child.getValue().trim().length() > 0) {
+                return child.getValue().trim();
+            }
+        }
+        return null;
+    }
+
+    private static File resolve(MavenProject project, String path) {
+        File file = new File(path);
+        return file.isAbsolute() ? file : new File(project.getBasedir(), path);
+    }
+
+    /**
+     * Passes the configuration of this goal on to <code>mojo</code>, so a
+     * goal can run another one.
+     */
+    protected void configure(AbstractGettextMojo mojo) {
+        mojo.setLog(getLog());
+        mojo.setPluginContext(getPluginContext());
+        mojo.outputDirectory = outputDirectory;
+        mojo.sourceDirectory = sourceDirectory;
+        mojo.poDirectory = poDirectory;
+        mojo.keysFile = keysFile;
+        mojo.workDirectory = workDirectory;
+        mojo.threads = threads;
+        mojo.metricsDirectory = metricsDirectory;
+        mojo.metricsSummary = metricsSummary;
+        mojo.projectId = projectId;
+        mojo.aggregate = aggregate;
+        mojo.reactorProjects = reactorProjects;
+        mojo.buildStartTime = buildStartTime;
+        mojo.pluginDescriptor = pluginDescriptor;
+    }
+
+    protected BuildMetrics createMetrics(String goal) {
+        return new BuildMetrics(goal, projectId);
+    }
+
+    /**
+     * Writes <code>metrics</code> to the metrics directory and logs the
+     * summary if enabled.
+     */
+    protected void writeMetrics(String goal, BuildMetrics metrics) {
+        metrics.finish(new File(metricsDirectory, goal + "-metrics.json"), metricsSummary, getLog());
+    }
+
+    /**
+     * @return the fingerprints the goal <code>goal</code> recorded in the
+     *      previous build, empty if there are none or they cannot be read
+     */
+    protected BuildState loadBuildState(String goal) {
+        BuildState state = new BuildState(new File(workDirectory, goal + "-state.properties"));
+        try {
+            state.load();
+        } catch (IOException e) {
+            getLog().warn("Could not read build state, processing all files: " + e.getMessage());
+        }
+        return state;
+    }
+
+    protected void saveBuildState(BuildState state) throws MojoExecutionException {
+        try {
+            state.save();
+        } catch (IOException e) {
+            throw new MojoExecutionException("Could not write build state", e);
+        }
+    }
+
+    protected void setKeysChanged(boolean changed) {
+        Map<String, Object> context = getContext();
+        if (context != null) {
+            context.put(KEYS_CHANGED, changed);
+        }
+    }
+
+    /**
+     * @return whether the gettext goal changed the keys file, or null if it
+     *      did not run in this build
+     */
+    protected Boolean getKeysChanged() {
+        Map<String, Object> context = getContext();
+        return (context != null) ? (Boolean) context.get(KEYS_CHANGED) : null;
+    }
+
+    /**
+     * @return the context shared by the goals of this plugin in the
+     *      project, or null
+     */
+    private Map<String, Object> getContext() {
+        // Maven declares the context as a raw map of strings to objects
+        @SuppressWarnings("unchecked")
+        Map<String, Object> context = getPluginContext();
+        return context;
+    }
+
 }
@@ -0,0 +1,167 @@
+package org.xnap.commons.maven.gettext;
+
+/*
+ * Copyright 2001-2005 The Apache Software Foundation.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.maven.plugin.logging.Log;
+
+/**
+ * A log that keeps all messages in memory until they are written to the
+ * target log with {@link #flush()}. Used to keep the output of tasks that run
+ * concurrently from interleaving.
+ */
+public class BufferedLog implements Log {
+
+    private final Log target;
+    private final List<Message> messages = new ArrayList<Message>();
+
+    public BufferedLog(Log target) {
+        this.target = target;
+    }
+
+    /**
+     * Writes all buffered messages to the target log and clears the buffer.
+     */
+    public synchronized void flush() {
+        for (Message message : messages) {
+            message.writeTo(target);
+        }
+        messages.clear();
+    }
+
+    private synchronized void add(int level, CharSequence content, Throwable error) {
+        messages.add(new Message(level, content, error));
+    }
+
+    public boolean isDebugEnabled() {
+        return target.isDebugEnabled();
+    }
+
+    public void debug(CharSequence content) {
+        add(LoggerStreamConsumer.DEBUG, content, null);
+    }
+
+    public void debug(CharSequence content, Throwable error) {
+        add(LoggerStreamConsumer.DEBUG, content, error);
+    }
+
+    public void debug(Throwable error) {
+        add(LoggerStreamConsumer.DEBUG, null, error);
+    }
+
+    public boolean isInfoEnabled() {
+        return target.isInfoEnabled();
+    }
+
+    public void info(CharSequence content) {
+        add(LoggerStreamConsumer.INFO, content, null);
+    }
+
+    public void info(CharSequence content, Throwable error) {
+        add(LoggerStreamConsumer.INFO, content, error);
+    }
+
+    public void info(Throwable error) {
+        add(LoggerStreamConsumer.INFO, null, error);
+    }
+
+    public boolean isWarnEnabled() {
+        return target.isWarnEnabled();
+    }
+
+    public void warn(CharSequence content) {
+        add(LoggerStreamConsumer.WARN, content, null);
+    }
+
+    public void warn(CharSequence content, Throwable error) {
+        add(LoggerStreamConsumer.WARN, content, error);
+    }
+
+    public void warn(Throwable error) {
+        add(LoggerStreamConsumer.WARN, null, error);
+    }
+
+    public boolean isErrorEnabled() {
+        return target.isErrorEnabled();
+    }
+
+    public void error(CharSequence content) {
+        add(LoggerStreamConsumer.ERROR, content, null);
+    }
+
+    public void error(CharSequence content, Throwable error) {
+        add(LoggerStreamConsumer.ERROR, content, error);
+    }
+
+    public void error(Throwable error) {
+        add(LoggerStreamConsumer.ERROR, null, error);
+    }
+
+    private static class Message {
+
+        private final int level;
+        private final CharSequence content;
+        private final Throwable error;
+
+        Message(int level, CharSequence content, Throwable error) {
+            this.level = level;
+            this.content = content;
+            this.error = error;
+        }
+
+        void writeTo(Log log) {
+            // not every log accepts a null content or error
+            if (level == LoggerStreamConsumer.DEBUG) {
+                if (error == null) {
+                    log.debug(content);
+                } else if (content == null) {
+                    log.debug(error);
+                } else {
+                    log.debug(content, error);
+                }
+            } else if (level == LoggerStreamConsumer.INFO) {
+                if (error == null) {
+                    log.info(content);
+                } else if (content == null) {
+                    log.info(error);
+                } else {
+                    log.info(content, error);
+                }
+            } else if (level == LoggerStreamConsumer.WARN) {
+                if (error == null) {
+                    log.warn(content);
+                } else if (content == null) {
+                    log.warn(error);
+                } else {
+                    log.warn(content, error);
+                }
+            } else {
+                if (error == null) {
+                    log.error(content);
+                } else if (content == null) {
+                    log.error(error);
+                } else {
+                    log.error(content, error);
+                }
+            }
+        }
+
+    }
+
+}
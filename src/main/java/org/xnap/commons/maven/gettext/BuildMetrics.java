@@ -0,0 +1,303 @@
+package org.xnap.commons.maven.gettext;
+
+/*
+ * Copyright 2001-2005 The Apache Software Foundation.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TimeZone;
+import java.util.TreeMap;
+
+import org.apache.maven.plugin.logging.Log;
+
+/**
+ * Collects timings and counters of one goal execution and writes them to a
+ * JSON file, so they can be aggregated across modules and builds. All
+ * methods may be called from several threads.
+ * <p>
+ * Counters used by the goals:
+ * <ul>
+ * <li><code>files</code>: files found by the scan</li>
+ * <li><code>scan.directories</code>, <code>scan.reused</code>: directories
+ *      that were listed or taken from the scan snapshot</li>
+ * <li><code>cache.hits</code>, <code>cache.misses</code>: files that were
+ *      up-to-date or had to be processed</li>
+ * <li><code>bytes.read</code>, <code>bytes.written</code>: size of the
+ *      files read and written</li>
+ * <li><code>entries</code>: messages processed</li>
+ * <li><code>fuzzy.matches</code>: messages translated by a fuzzy match</li>
+ * <li><code>memory.matches</code>: messages translated from the translation
+ *      memory</li>
+ * <li><code>formats</code>: translations whose pattern was parsed by the
+ *      dist goal</li>
+ * </ul>
+ * Each external process is recorded with the time until it was started and
+ * the time until it exited.
+ */
+public class BuildMetrics {
+
+    private final String goal;
+    private final String project;
+    private final long startTime = System.currentTimeMillis();
+    private final long startNanos = System.nanoTime();
+    private final Map<String, Long> counters = new TreeMap<String, Long>();
+    private final Map<String, long[]> timers = new TreeMap<String, long[]>();
+    private final List<ProcessCall> processes = new ArrayList<ProcessCall>();
+    private boolean failed;
+
+    /**
+     * @param goal the name of the goal
+     * @param project identifies the module, e.g. groupId:artifactId
+     */
+    public BuildMetrics(String goal, String project) {
+        this.goal = goal;
+        this.project = project;
+    }
+
+    /**
+     * @return the start time for {@link #stop(String, long)}
+     */
+    public long start() {
+        return System.nanoTime();
+    }
+
+    /**
+     * Adds the time since <code>start</code> to the timer <code>name</code>.
+     *
+     * @return the elapsed time in nanoseconds
+     */
+    public long stop(String name, long start) {
+        long elapsed = System.nanoTime() - start;
+        synchronized (timers) {
+            long[] timer = timers.get(name);
+            if (timer == null) {
+                // count, total, max
+                timer = new long[3];
+                timers.put(name, timer);
+            }
+            timer[0]++;
+            timer[1] += elapsed;
+            timer[2] = Math.max(timer[2], elapsed);
+        }
+        return elapsed;
+    }
+
+    public void add(String counter, long delta) {
+        synchronized (counters) {
+            Long value = counters.get(counter);
+            counters.put(counter, (value != null ? value : 0) + delta);
+        }
+    }
+
+    public long get(String counter) {
+        synchronized (counters) {
+            Long value = counters.get(counter);
+            return (value != null) ? value : 0;
+        }
+    }
+
+    /**
+     * Adds the length of <code>file</code> to the counter, if it exists.
+     */
+    public void addLength(String counter, File file) {
+        if (file.isFile()) {
+            add(counter, file.length());
+        }
+    }
+
+    /**
+     * Records an external process.
+     *
+     * @param launchNanos the time it took to start the process
+     * @param totalNanos the time from the start until the process exited
+     * @param exitCode the exit code, -1 if it could not be started
+     */
+    public void addProcess(String tool, long launchNanos, long totalNanos, int exitCode) {
+        synchronized (processes) {
+            processes.add(new ProcessCall(tool, launchNanos, totalNanos, exitCode));
+        }
+        add("processes", 1);
+    }
+
+    public void setFailed(boolean failed) {
+        this.failed = failed;
+    }
+
+    /**
+     * @return e.g. "gettext:merge 1.204s, 12 files, 3 up-to-date, 9 processes"
+     */
+    public String getSummary() {
+        StringBuilder sb = new StringBuilder();
+        sb.append("gettext:").append(goal).append(' ')
+                .append(formatSeconds(System.nanoTime() - startNanos)).append('s');
+        appendCounter(sb, "files", "files");
+        appendCounter(sb, "cache.hits", "up-to-date");
+        appendCounter(sb, "entries", "messages");
+        appendCounter(sb, "processes", "processes");
+        appendCounter(sb, "bytes.read", "bytes read");
+        appendCounter(sb, "bytes.written", "bytes written");
+        if (failed) {
+            sb.append(", failed");
+        }
+        return sb.toString();
+    }
+
+    private void appendCounter(StringBuilder sb, String counter, String label) {
+        long value = get(counter);
+        if (value > 0) {
+            sb.append(", ").append(value).append(' ').append(label);
+        }
+    }
+
+    public String toJson() {
+        long duration = System.nanoTime() - startNanos;
+        SimpleDateFormat format = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSS'Z'", Locale.ROOT);
+        format.setTimeZone(TimeZone.getTimeZone("UTC"));
+
+        StringBuilder sb = new StringBuilder();
+        sb.append("{\n");
+        sb.append("  \"goal\": ").append(quote(goal)).append(",\n");
+        sb.append("  \"project\": ").append(quote(project)).append(",\n");
+        sb.append("  \"start\": ").append(quote(format.format(new Date(startTime)))).append(",\n");
+        sb.append("  \"durationMillis\": ").append(formatMillis(duration)).append(",\n");
+        sb.append("  \"failed\": ").append(failed).append(",\n");
+
+        sb.append("  \"counters\": {");
+        synchronized (counters) {
+            String separator = "\n";
+            for (Map.Entry<String, Long> counter : counters.entrySet()) {
+                sb.append(separator).append("    ").append(quote(counter.getKey())).append(": ")
+                        .append(counter.getValue());
+                separator = ",\n";
+            }
+            sb.append(counters.isEmpty() ? "" : "\n  ");
+        }
+        sb.append("},\n");
+
+        sb.append("  \"timers\": {");
+        synchronized (timers) {
+            String separator = "\n";
+            for (Map.Entry<String, long[]> timer : timers.entrySet()) {
+                long[] value = timer.getValue();
+                sb.append(separator).append("    ").append(quote(timer.getKey()))
+                        .append(": {\"count\": ").append(value[0])
+                        .append(", \"totalMillis\": ").append(formatMillis(value[1]))
+                        .append(", \"maxMillis\": ").append(formatMillis(value[2])).append('}');
+                separator = ",\n";
+            }
+            sb.append(timers.isEmpty() ? "" : "\n  ");
+        }
+        sb.append("},\n");
+
+        sb.append("  \"processes\": [");
+        synchronized (processes) {
+            String separator = "\n";
+            for (ProcessCall process : processes) {
+                sb.append(separator).append("    {\"tool\": ").append(quote(process.tool))
+                        .append(", \"launchMillis\": ").append(formatMillis(process.launchNanos))
+                        .append(", \"totalMillis\": ").append(formatMillis(process.totalNanos))
+                        .append(", \"exitCode\": ").append(process.exitCode).append('}');
+                separator = ",\n";
+            }
+            sb.append(processes.isEmpty() ? "" : "\n  ");
+        }
+        sb.append("]\n");
+        sb.append("}\n");
+        return sb.toString();
+    }
+
+    public void write(File file) throws IOException {
+        file.getParentFile().mkdirs();
+        Writer out = new OutputStreamWriter(new FileOutputStream(file), "UTF-8");
+        try {
+            out.write(toJson());
+        } finally {
+            out.close();
+        }
+    }
+
+    /**
+     * Writes the metrics to <code>file</code> and logs the summary if
+     * <code>summary</code> is true. A file that cannot be written only
+     * causes a warning, metrics never fail the build.
+     */
+    public void finish(File file, boolean summary, Log log) {
+        try {
+            write(file);
+        } catch (IOException e) {
+            log.warn("Could not write metrics to " + file + ": " + e.getMessage());
+        }
+        if (summary) {
+            log.info(getSummary());
+        }
+    }
+
+    private static String formatMillis(long nanos) {
+        return String.format(Locale.ROOT, "%.3f", nanos / 1e6);
+    }
+
+    private static String formatSeconds(long nanos) {
+        return String.format(Locale.ROOT, "%.3f", nanos / 1e9);
+    }
+
+    /**
+     * @return <code>s</code> as a JSON string
+     */
+    static String quote(String s) {
+        if (s == null) {
+            return "null";
+        }
+        StringBuilder sb = new StringBuilder(s.length() + 2);
+        sb.append('"');
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c == '"' || c == '\\') {
+                sb.append('\\').append(c);
+            } else if (c < 0x20) {
+                sb.append(String.format("\\u%04x", (int) c));
+            } else {
+                sb.append(c);
+            }
+        }
+        return sb.append('"').toString();
+    }
+
+    private static class ProcessCall {
+
+        private final String tool;
+        private final long launchNanos;
+        private final long totalNanos;
+        private final int exitCode;
+
+        public ProcessCall(String tool, long launchNanos, long totalNanos, int exitCode) {
+            this.tool = tool;
+            this.launchNanos = launchNanos;
+            this.totalNanos = totalNanos;
+            this.exitCode = exitCode;
+        }
+
+    }
+
+}
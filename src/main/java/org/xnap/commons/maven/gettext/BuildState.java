@@ -0,0 +1,211 @@
+package org.xnap.commons.maven.gettext;
+
+/*
+ * Copyright 2001-2005 The Apache Software Foundation.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Properties;
+import java.util.Set;
+
+/**
+ * Fingerprints of the inputs and outputs of previous builds, kept in a
+ * properties file in the work directory. Unlike timestamps they survive a
+ * checkout or a restored build cache and they cover the goal parameters.
+ * <p>
+ * File digests are cached by size and modification time, so unchanged files
+ * are not read again. All methods may be called from several threads.
+ */
+public class BuildState {
+
+    private static final String DIGEST_PREFIX = "digest.";
+
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+    private final File file;
+    private final Properties properties = new Properties();
+    private final Set<String> usedDigests = Collections.synchronizedSet(new HashSet<String>());
+    private volatile boolean modified;
+
+    public BuildState(File file) {
+        this.file = file;
+    }
+
+    /**
+     * Loads the state of the previous build, if there is one.
+     */
+    public void load() throws IOException {
+        properties.clear();
+        if (file.exists()) {
+            InputStream in = new BufferedInputStream(new FileInputStream(file));
+            try {
+                properties.load(in);
+            } finally {
+                in.close();
+            }
+        }
+        modified = false;
+    }
+
+    /**
+     * Writes the state if it was modified. Cached digests of files that were
+     * not hashed in this build are dropped.
+     */
+    public void save() throws IOException {
+        for (String key : properties.stringPropertyNames()) {
+            if (key.startsWith(DIGEST_PREFIX) && !usedDigests.contains(key)) {
+                remove(key);
+            }
+        }
+        if (!modified) {
+            return;
+        }
+        file.getParentFile().mkdirs();
+        OutputStream out = new BufferedOutputStream(new FileOutputStream(file));
+        try {
+            properties.store(out, "gettext-maven-plugin build state");
+        } finally {
+            out.close();
+        }
+        modified = false;
+    }
+
+    public String get(String key) {
+        return properties.getProperty(key);
+    }
+
+    public void put(String key, String value) {
+        Object old = properties.setProperty(key, value);
+        if (!value.equals(old)) {
+            modified = true;
+        }
+    }
+
+    public void remove(String key) {
+        if (properties.remove(key) != null) {
+            modified = true;
+        }
+    }
+
+    /**
+     * @return all keys that start with <code>prefix</code>, without the
+     *      prefix
+     */
+    public List<String> getKeys(String prefix) {
+        List<String> keys = new ArrayList<String>();
+        for (String key : properties.stringPropertyNames()) {
+            if (key.startsWith(prefix)) {
+                keys.add(key.substring(prefix.length()));
+            }
+        }
+        return keys;
+    }
+
+    /**
+     * @return the digest of the content of <code>file</code>, or "-" if it
+     *      does not exist; the file is only read if its size or modification
+     *      time changed since it was last hashed
+     */
+    public String digest(File file) throws IOException {
+        if (!file.isFile()) {
+            return "-";
+        }
+        String key = DIGEST_PREFIX + file.getAbsolutePath();
+        usedDigests.add(key);
+        String stamp = file.length() + " " + file.lastModified() + " ";
+        String cached = get(key);
+        if (cached != null && cached.startsWith(stamp)) {
+            return cached.substring(stamp.length());
+        }
+        String digest = digestContent(file);
+        put(key, stamp + digest);
+        return digest;
+    }
+
+    /**
+     * Like {@link #digest(File)}, but always reads the file. Use this for
+     * files that were just written, their timestamp may not have changed.
+     */
+    public String refreshDigest(File file) throws IOException {
+        remove(DIGEST_PREFIX + file.getAbsolutePath());
+        return digest(file);
+    }
+
+    /**
+     * @return the hex encoded SHA-1 hash of the content of <code>file</code>
+     */
+    public static String digestContent(File file) throws IOException {
+        MessageDigest digest = createDigest();
+        InputStream in = new FileInputStream(file);
+        try {
+            byte[] buffer = new byte[8192];
+            int n;
+            while ((n = in.read(buffer)) != -1) {
+                digest.update(buffer, 0, n);
+            }
+        } finally {
+            in.close();
+        }
+        return toHex(digest.digest());
+    }
+
+    /**
+     * @return the hex encoded SHA-1 hash of <code>parts</code>, for
+     *      fingerprinting goal parameters
+     */
+    public static String digest(String... parts) {
+        MessageDigest digest = createDigest();
+        for (String part : parts) {
+            try {
+                digest.update(String.valueOf(part).getBytes("UTF-8"));
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+            digest.update((byte) 0);
+        }
+        return toHex(digest.digest());
+    }
+
+    private static MessageDigest createDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-1");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static String toHex(byte[] hash) {
+        char[] hex = new char[hash.length * 2];
+        for (int i = 0; i < hash.length; i++) {
+            hex[i * 2] = HEX_DIGITS[(hash[i] >> 4) & 0xf];
+            hex[i * 2 + 1] = HEX_DIGITS[hash[i] & 0xf];
+        }
+        return new String(hex);
+    }
+
+}
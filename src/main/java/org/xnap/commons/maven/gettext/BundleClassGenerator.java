@@ -0,0 +1,588 @@
+package org.xnap.commons.maven.gettext;
+
+/*
+ * Copyright 2001-2005 The Apache Software Foundation.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.xnap.commons.maven.gettext.ClassFileWriter.Code;
+import org.xnap.commons.maven.gettext.ClassFileWriter.Label;
+import org.xnap.commons.maven.gettext.runtime.PluralExpression;
+import org.xnap.commons.maven.gettext.runtime.PluralExpression.Node;
+
+/**
+ * Generates the byte code of a resource bundle class with the same public
+ * interface as the classes that <code>msgfmt --java2</code> generates:
+ * <code>handleGetObject</code>, <code>getKeys</code>, <code>lookup</code>,
+ * <code>getParent</code> and the static <code>pluralEval</code> method that
+ * GNU gettext's <code>GettextResource</code> looks up by reflection. The
+ * plural expression of the catalog is compiled into <code>pluralEval</code>,
+ * and the additional method <code>ngettext</code> selects a plural form
+ * without reflection.
+ * <p>
+ * The messages are stored in a static <code>HashMap</code> that is filled by
+ * several initializer methods, so large catalogs do not exceed the size limits
+ * of a single method or the constant pool.
+ */
+public class BundleClassGenerator {
+
+    /**
+     * Initializer methods are split once their code exceeds this size, a
+     * little below the limit of 64 KB per method.
+     */
+    private static final int MAX_INIT_CODE_LENGTH = 60000;
+
+    /**
+     * The maximum length of a string constant in bytes.
+     */
+    private static final int MAX_STRING_LENGTH = 0xffff;
+
+    /**
+     * Upper bounds for the code that adds a message and a plural form.
+     */
+    private static final int ENTRY_CODE_LENGTH = 36;
+    private static final int FORM_CODE_LENGTH = 18;
+
+    private static final String OBJECT = "java/lang/Object";
+    private static final String STRING = "java/lang/String";
+    private static final String STRING_ARRAY = "[Ljava/lang/String;";
+    private static final String HASH_MAP = "java/util/HashMap";
+    private static final String RESOURCE_BUNDLE = "java/util/ResourceBundle";
+
+    private final String className;
+    private final List<String> keys = new ArrayList<String>();
+    private final List<Object> values = new ArrayList<Object>();
+    private PluralExpression pluralExpression = PluralExpression.parse(PluralExpression.DEFAULT);
+
+    /**
+     * @param className the fully qualified name of the generated class
+     */
+    public BundleClassGenerator(String className) {
+        this.className = className.replace('.', '/');
+    }
+
+    /**
+     * Adds a message if msgfmt compiles it, see {@link PoEntry#isCompiled()}.
+     * The Plural-Forms field of the header determines the plural rule.
+     *
+     * @return true, if the message was added
+     */
+    public boolean add(PoEntry entry) {
+        if (entry.isHeader()) {
+            String pluralForms = entry.getHeaderField("Plural-Forms");
+            if (pluralForms != null) {
+                setPluralExpression(PluralExpression.fromHeader(pluralForms));
+            }
+        }
+        if (!entry.isCompiled()) {
+            return false;
+        }
+        keys.add(entry.getKey());
+        if (entry.isPlural()) {
+            values.add(entry.getMsgstr().toArray(new String[entry.getMsgstr().size()]));
+        } else {
+            values.add(entry.getMsgstr().get(0));
+        }
+        return true;
+    }
+
+    public void setPluralExpression(PluralExpression pluralExpression) {
+        this.pluralExpression = pluralExpression;
+    }
+
+    public int size() {
+        return keys.size();
+    }
+
+    /**
+     * @return the class file
+     * @throws IllegalStateException if the messages do not fit into a single
+     *      class, e.g. because a message is longer than 64 KB
+     */
+    public byte[] generate() {
+        ClassFileWriter cw = new ClassFileWriter(className, RESOURCE_BUNDLE);
+        cw.addField(ClassFileWriter.ACC_PRIVATE | ClassFileWriter.ACC_STATIC | ClassFileWriter.ACC_FINAL,
+                "table", "Ljava/util/HashMap;");
+        int table = cw.fieldRef(className, "table", "Ljava/util/HashMap;");
+
+        generateConstructor(cw);
+        int initMethods = generateInitMethods(cw, table);
+        generateStaticInitializer(cw, table, initMethods);
+        generateLookup(cw, table);
+        generateHandleGetObject(cw);
+        generateGetKeys(cw, table);
+        generatePluralEval(cw, pluralExpression);
+        generateNgettext(cw);
+        generateGetParent(cw);
+        return cw.toByteArray();
+    }
+
+    /**
+     * Generates a class that only holds the messages of one shard of a
+     * {@link ShardedBundleGenerator sharded bundle}. The messages are loaded
+     * when the class is initialized, on the first call of one of its static
+     * methods <code>lookup(String)</code> and <code>keys()</code>.
+     *
+     * @return the class file
+     * @throws IllegalStateException if the messages do not fit into a single
+     *      class
+     */
+    public byte[] generateShard() {
+        ClassFileWriter cw = new ClassFileWriter(className, OBJECT);
+        cw.addField(ClassFileWriter.ACC_PRIVATE | ClassFileWriter.ACC_STATIC | ClassFileWriter.ACC_FINAL,
+                "table", "Ljava/util/HashMap;");
+        int table = cw.fieldRef(className, "table", "Ljava/util/HashMap;");
+
+        int initMethods = generateInitMethods(cw, table);
+        generateStaticInitializer(cw, table, initMethods);
+
+        Code code = cw.addMethod(ClassFileWriter.ACC_PUBLIC | ClassFileWriter.ACC_STATIC, "lookup",
+                "(L" + STRING + ";)L" + OBJECT + ";");
+        code.setMaxLocals(1);
+        code.op2(ClassFileWriter.GETSTATIC, table, 1);
+        code.load(ClassFileWriter.ALOAD, 0);
+        code.op2(ClassFileWriter.INVOKEVIRTUAL, cw.methodRef(HASH_MAP, "get", "(L" + OBJECT + ";)L" + OBJECT + ";"), -1);
+        code.op(ClassFileWriter.ARETURN, -1);
+
+        code = cw.addMethod(ClassFileWriter.ACC_PUBLIC | ClassFileWriter.ACC_STATIC, "keys", "()Ljava/util/Set;");
+        code.setMaxLocals(0);
+        code.op2(ClassFileWriter.GETSTATIC, table, 1);
+        code.op2(ClassFileWriter.INVOKEVIRTUAL, cw.methodRef(HASH_MAP, "keySet", "()Ljava/util/Set;"), 0);
+        code.op(ClassFileWriter.ARETURN, -1);
+        return cw.toByteArray();
+    }
+
+    static void generateConstructor(ClassFileWriter cw) {
+        Code code = cw.addMethod(ClassFileWriter.ACC_PUBLIC, "<init>", "()V");
+        code.setMaxLocals(1);
+        code.load(ClassFileWriter.ALOAD, 0);
+        code.op2(ClassFileWriter.INVOKESPECIAL, cw.methodRef(RESOURCE_BUNDLE, "<init>", "()V"), -1);
+        code.op(ClassFileWriter.RETURN, 0);
+    }
+
+    /**
+     * Emits the methods that fill the table. Each method loads all of its
+     * strings from a single string constant and splits it with
+     * <code>substring</code>, which keeps the constant pool small enough for
+     * catalogs with tens of thousands of messages.
+     *
+     * @return the number of methods
+     */
+    private int generateInitMethods(ClassFileWriter cw, int table) {
+        int put = cw.methodRef(HASH_MAP, "put", "(L" + OBJECT + ";L" + OBJECT + ";)L" + OBJECT + ";");
+        int substring = cw.methodRef(STRING, "substring", "(II)L" + STRING + ";");
+        int methods = 0;
+        int first = 0;
+        while (first < keys.size()) {
+            // collect the messages that fit into one string constant and method
+            StringBuilder data = new StringBuilder();
+            int dataLength = 0;
+            int codeLength = 0;
+            int last = first;
+            while (last < keys.size()) {
+                int length = encodedLength(keys.get(last));
+                int code = ENTRY_CODE_LENGTH;
+                Object value = values.get(last);
+                if (value instanceof String[]) {
+                    for (String form : (String[]) value) {
+                        length += encodedLength(form);
+                        code += FORM_CODE_LENGTH;
+                    }
+                } else {
+                    length += encodedLength((String) value);
+                }
+                if (last > first && (dataLength + length > MAX_STRING_LENGTH
+                        || codeLength + code > MAX_INIT_CODE_LENGTH)) {
+                    break;
+                }
+                if (length > MAX_STRING_LENGTH) {
+                    throw new IllegalStateException("Message is too long: " + keys.get(last));
+                }
+                dataLength += length;
+                codeLength += code;
+                last++;
+            }
+
+            Code code = cw.addMethod(ClassFileWriter.ACC_PRIVATE | ClassFileWriter.ACC_STATIC,
+                    "init" + methods++, "()V");
+            code.setMaxLocals(1);
+            for (int i = first; i < last; i++) {
+                data.append(keys.get(i));
+                Object value = values.get(i);
+                if (value instanceof String[]) {
+                    for (String form : (String[]) value) {
+                        data.append(form);
+                    }
+                } else {
+                    data.append((String) value);
+                }
+            }
+            code.pushString(data.toString());
+            code.store(ClassFileWriter.ASTORE, 0);
+
+            int offset = 0;
+            for (int i = first; i < last; i++) {
+                code.op2(ClassFileWriter.GETSTATIC, table, 1);
+                offset = emitSubstring(code, substring, offset, keys.get(i));
+                Object value = values.get(i);
+                if (value instanceof String[]) {
+                    String[] forms = (String[]) value;
+                    code.pushInt(forms.length);
+                    code.op2(ClassFileWriter.ANEWARRAY, cw.classRef(STRING), 0);
+                    for (int j = 0; j < forms.length; j++) {
+                        code.op(ClassFileWriter.DUP, 1);
+                        code.pushInt(j);
+                        offset = emitSubstring(code, substring, offset, forms[j]);
+                        code.op(ClassFileWriter.AASTORE, -3);
+                    }
+                } else {
+                    offset = emitSubstring(code, substring, offset, (String) value);
+                }
+                code.op2(ClassFileWriter.INVOKEVIRTUAL, put, -2);
+                code.op(ClassFileWriter.POP, -1);
+            }
+            code.op(ClassFileWriter.RETURN, 0);
+            first = last;
+        }
+        return methods;
+    }
+
+    /**
+     * Emits <code>data.substring(offset, offset + value.length())</code>
+     * with <code>data</code> in local variable 0.
+     *
+     * @return the offset of the next string
+     */
+    private static int emitSubstring(Code code, int substring, int offset, String value) {
+        code.load(ClassFileWriter.ALOAD, 0);
+        code.pushInt(offset);
+        code.pushInt(offset + value.length());
+        code.op2(ClassFileWriter.INVOKEVIRTUAL, substring, -2);
+        return offset + value.length();
+    }
+
+    /**
+     * @return the length of <code>s</code> in the modified UTF-8 encoding of
+     *      class files
+     */
+    private static int encodedLength(String s) {
+        int length = 0;
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c >= 0x0001 && c <= 0x007f) {
+                length++;
+            } else if (c <= 0x07ff) {
+                length += 2;
+            } else {
+                length += 3;
+            }
+        }
+        return length;
+    }
+
+    private void generateStaticInitializer(ClassFileWriter cw, int table, int initMethods) {
+        Code code = cw.addMethod(ClassFileWriter.ACC_STATIC, "<clinit>", "()V");
+        code.op2(ClassFileWriter.NEW, cw.classRef(HASH_MAP), 1);
+        code.op(ClassFileWriter.DUP, 1);
+        code.pushInt(keys.size() * 4 / 3 + 1);
+        code.op2(ClassFileWriter.INVOKESPECIAL, cw.methodRef(HASH_MAP, "<init>", "(I)V"), -2);
+        code.op2(ClassFileWriter.PUTSTATIC, table, -1);
+        for (int i = 0; i < initMethods; i++) {
+            code.op2(ClassFileWriter.INVOKESTATIC, cw.methodRef(className, "init" + i, "()V"), 0);
+        }
+        code.op(ClassFileWriter.RETURN, 0);
+    }
+
+    /**
+     * <code>public Object lookup(String msgid)</code>, returns a String or a
+     * String[] for plural messages.
+     */
+    private void generateLookup(ClassFileWriter cw, int table) {
+        Code code = cw.addMethod(ClassFileWriter.ACC_PUBLIC, "lookup", "(L" + STRING + ";)L" + OBJECT + ";");
+        code.setMaxLocals(2);
+        code.op2(ClassFileWriter.GETSTATIC, table, 1);
+        code.load(ClassFileWriter.ALOAD, 1);
+        code.op2(ClassFileWriter.INVOKEVIRTUAL, cw.methodRef(HASH_MAP, "get", "(L" + OBJECT + ";)L" + OBJECT + ";"), -1);
+        code.op(ClassFileWriter.ARETURN, -1);
+    }
+
+    /**
+     * <code>public Object handleGetObject(String msgid)</code>, returns the
+     * first form of plural messages.
+     */
+    static void generateHandleGetObject(ClassFileWriter cw) {
+        String className = cw.getName();
+        Code code = cw.addMethod(ClassFileWriter.ACC_PUBLIC, "handleGetObject",
+                "(L" + STRING + ";)L" + OBJECT + ";", "java/util/MissingResourceException");
+        code.setMaxLocals(3);
+        code.load(ClassFileWriter.ALOAD, 0);
+        code.load(ClassFileWriter.ALOAD, 1);
+        code.op2(ClassFileWriter.INVOKEVIRTUAL, cw.methodRef(className, "lookup", "(L" + STRING + ";)L" + OBJECT + ";"), -1);
+        code.store(ClassFileWriter.ASTORE, 2);
+        code.load(ClassFileWriter.ALOAD, 2);
+        code.op2(ClassFileWriter.INSTANCEOF, cw.classRef(STRING_ARRAY), 0);
+        Label single = code.newLabel();
+        code.jump(ClassFileWriter.IFEQ, single, -1);
+        code.load(ClassFileWriter.ALOAD, 2);
+        code.op2(ClassFileWriter.CHECKCAST, cw.classRef(STRING_ARRAY), 0);
+        code.pushInt(0);
+        code.op(ClassFileWriter.AALOAD, -1);
+        code.op(ClassFileWriter.ARETURN, -1);
+        code.mark(single, 0);
+        code.load(ClassFileWriter.ALOAD, 2);
+        code.op(ClassFileWriter.ARETURN, -1);
+    }
+
+    private void generateGetKeys(ClassFileWriter cw, int table) {
+        Code code = cw.addMethod(ClassFileWriter.ACC_PUBLIC, "getKeys", "()Ljava/util/Enumeration;");
+        code.setMaxLocals(1);
+        code.op2(ClassFileWriter.GETSTATIC, table, 1);
+        code.op2(ClassFileWriter.INVOKEVIRTUAL, cw.methodRef(HASH_MAP, "keySet", "()Ljava/util/Set;"), 0);
+        code.op2(ClassFileWriter.INVOKESTATIC, cw.methodRef("java/util/Collections", "enumeration",
+                "(Ljava/util/Collection;)Ljava/util/Enumeration;"), 0);
+        code.op(ClassFileWriter.ARETURN, -1);
+    }
+
+    /**
+     * <code>public static long pluralEval(long n)</code>, the plural
+     * expression compiled to byte code.
+     */
+    static void generatePluralEval(ClassFileWriter cw, PluralExpression expression) {
+        Code code = cw.addMethod(ClassFileWriter.ACC_PUBLIC | ClassFileWriter.ACC_STATIC, "pluralEval", "(J)J");
+        code.setMaxLocals(2);
+        emit(code, expression.getRoot());
+        code.op(ClassFileWriter.LRETURN, -2);
+    }
+
+    /**
+     * <code>public String ngettext(String msgid, String msgidPlural, long n)</code>,
+     * the translation of a message for <code>n</code> selected with
+     * <code>pluralEval</code>, like <code>GettextResource.ngettext</code>
+     * but without reflection. The first form is used if the plural index is
+     * out of range, <code>msgid</code> or <code>msgidPlural</code> if the
+     * message is not translated. Nothing is allocated.
+     */
+    static void generateNgettext(ClassFileWriter cw) {
+        String className = cw.getName();
+        Code code = cw.addMethod(ClassFileWriter.ACC_PUBLIC, "ngettext",
+                "(L" + STRING + ";L" + STRING + ";J)L" + STRING + ";");
+        // this, msgid, msgidPlural, n (2), value, index (2)
+        code.setMaxLocals(8);
+        code.load(ClassFileWriter.ALOAD, 0);
+        code.load(ClassFileWriter.ALOAD, 1);
+        code.op2(ClassFileWriter.INVOKEVIRTUAL, cw.methodRef(className, "lookup", "(L" + STRING + ";)L" + OBJECT + ";"), -1);
+        code.store(ClassFileWriter.ASTORE, 5);
+
+        Label single = code.newLabel();
+        code.load(ClassFileWriter.ALOAD, 5);
+        code.op2(ClassFileWriter.INSTANCEOF, cw.classRef(STRING_ARRAY), 0);
+        code.jump(ClassFileWriter.IFEQ, single, -1);
+        code.load(ClassFileWriter.ALOAD, 5);
+        code.op2(ClassFileWriter.CHECKCAST, cw.classRef(STRING_ARRAY), 0);
+        code.store(ClassFileWriter.ASTORE, 5);
+        code.load(ClassFileWriter.LLOAD, 3);
+        code.op2(ClassFileWriter.INVOKESTATIC, cw.methodRef(className, "pluralEval", "(J)J"), 0);
+        code.store(ClassFileWriter.LSTORE, 6);
+
+        Label first = code.newLabel();
+        code.load(ClassFileWriter.LLOAD, 6);
+        code.pushLong(0);
+        code.op(ClassFileWriter.LCMP, -3);
+        code.jump(ClassFileWriter.IFLT, first, -1);
+        code.load(ClassFileWriter.LLOAD, 6);
+        code.load(ClassFileWriter.ALOAD, 5);
+        code.op(ClassFileWriter.ARRAYLENGTH, 0);
+        code.op(ClassFileWriter.I2L, 1);
+        code.op(ClassFileWriter.LCMP, -3);
+        code.jump(ClassFileWriter.IFGE, first, -1);
+        code.load(ClassFileWriter.ALOAD, 5);
+        code.load(ClassFileWriter.LLOAD, 6);
+        code.op(ClassFileWriter.L2I, -1);
+        code.op(ClassFileWriter.AALOAD, -1);
+        code.op(ClassFileWriter.ARETURN, -1);
+        code.mark(first, 0);
+        code.load(ClassFileWriter.ALOAD, 5);
+        code.pushInt(0);
+        code.op(ClassFileWriter.AALOAD, -1);
+        code.op(ClassFileWriter.ARETURN, -1);
+
+        // a message without plural forms
+        Label missing = code.newLabel();
+        code.mark(single, 0);
+        code.load(ClassFileWriter.ALOAD, 5);
+        code.jump(ClassFileWriter.IFNULL, missing, -1);
+        code.load(ClassFileWriter.ALOAD, 5);
+        code.op2(ClassFileWriter.CHECKCAST, cw.classRef(STRING), 0);
+        code.op(ClassFileWriter.ARETURN, -1);
+
+        Label plural = code.newLabel();
+        code.mark(missing, 0);
+        code.load(ClassFileWriter.LLOAD, 3);
+        code.pushLong(1);
+        code.op(ClassFileWriter.LCMP, -3);
+        code.jump(ClassFileWriter.IFNE, plural, -1);
+        code.load(ClassFileWriter.ALOAD, 1);
+        code.op(ClassFileWriter.ARETURN, -1);
+        code.mark(plural, 0);
+        code.load(ClassFileWriter.ALOAD, 2);
+        code.op(ClassFileWriter.ARETURN, -1);
+    }
+
+    static void generateGetParent(ClassFileWriter cw) {
+        Code code = cw.addMethod(ClassFileWriter.ACC_PUBLIC, "getParent", "()Ljava/util/ResourceBundle;");
+        code.setMaxLocals(1);
+        code.load(ClassFileWriter.ALOAD, 0);
+        code.op2(ClassFileWriter.GETFIELD, cw.fieldRef(RESOURCE_BUNDLE, "parent", "Ljava/util/ResourceBundle;"), 0);
+        code.op(ClassFileWriter.ARETURN, -1);
+    }
+
+    /**
+     * Emits the code for <code>node</code> that leaves its value as a long on
+     * the stack. <code>n</code> is expected in local variable 0.
+     */
+    private static void emit(Code code, Node node) {
+        int base = code.getStack();
+        switch (node.getType()) {
+        case PluralExpression.NUMBER:
+            code.pushLong(node.getValue());
+            break;
+        case PluralExpression.VARIABLE:
+            code.load(ClassFileWriter.LLOAD, 0);
+            break;
+        case PluralExpression.MUL:
+            emitArithmetic(code, node, ClassFileWriter.LMUL);
+            break;
+        case PluralExpression.DIV:
+            emitArithmetic(code, node, ClassFileWriter.LDIV);
+            break;
+        case PluralExpression.MOD:
+            emitArithmetic(code, node, ClassFileWriter.LREM);
+            break;
+        case PluralExpression.ADD:
+            emitArithmetic(code, node, ClassFileWriter.LADD);
+            break;
+        case PluralExpression.SUB:
+            emitArithmetic(code, node, ClassFileWriter.LSUB);
+            break;
+        case PluralExpression.LT:
+            emitComparison(code, node, ClassFileWriter.IFLT);
+            break;
+        case PluralExpression.LE:
+            emitComparison(code, node, ClassFileWriter.IFLE);
+            break;
+        case PluralExpression.GT:
+            emitComparison(code, node, ClassFileWriter.IFGT);
+            break;
+        case PluralExpression.GE:
+            emitComparison(code, node, ClassFileWriter.IFGE);
+            break;
+        case PluralExpression.EQ:
+            emitComparison(code, node, ClassFileWriter.IFEQ);
+            break;
+        case PluralExpression.NE:
+            emitComparison(code, node, ClassFileWriter.IFNE);
+            break;
+        case PluralExpression.NOT: {
+            Label zero = code.newLabel();
+            Label end = code.newLabel();
+            emitTest(code, node.getOperand(0));
+            code.jump(ClassFileWriter.IFNE, zero, -1);
+            code.pushLong(1);
+            code.jump(ClassFileWriter.GOTO, end, 0);
+            code.mark(zero, base);
+            code.pushLong(0);
+            code.mark(end, base + 2);
+            break;
+        }
+        case PluralExpression.AND: {
+            Label no = code.newLabel();
+            Label end = code.newLabel();
+            emitTest(code, node.getOperand(0));
+            code.jump(ClassFileWriter.IFEQ, no, -1);
+            emitTest(code, node.getOperand(1));
+            code.jump(ClassFileWriter.IFEQ, no, -1);
+            code.pushLong(1);
+            code.jump(ClassFileWriter.GOTO, end, 0);
+            code.mark(no, base);
+            code.pushLong(0);
+            code.mark(end, base + 2);
+            break;
+        }
+        case PluralExpression.OR: {
+            Label yes = code.newLabel();
+            Label end = code.newLabel();
+            emitTest(code, node.getOperand(0));
+            code.jump(ClassFileWriter.IFNE, yes, -1);
+            emitTest(code, node.getOperand(1));
+            code.jump(ClassFileWriter.IFNE, yes, -1);
+            code.pushLong(0);
+            code.jump(ClassFileWriter.GOTO, end, 0);
+            code.mark(yes, base);
+            code.pushLong(1);
+            code.mark(end, base + 2);
+            break;
+        }
+        default: {
+            Label otherwise = code.newLabel();
+            Label end = code.newLabel();
+            emitTest(code, node.getOperand(0));
+            code.jump(ClassFileWriter.IFEQ, otherwise, -1);
+            emit(code, node.getOperand(1));
+            code.jump(ClassFileWriter.GOTO, end, 0);
+            code.mark(otherwise, base);
+            emit(code, node.getOperand(2));
+            code.mark(end, base + 2);
+        }
+        }
+    }
+
+    private static void emitArithmetic(Code code, Node node, int opcode) {
+        emit(code, node.getOperand(0));
+        emit(code, node.getOperand(1));
+        code.op(opcode, -2);
+    }
+
+    /**
+     * Leaves 1 if the comparison of both operands holds and 0 otherwise as a
+     * long on the stack.
+     */
+    private static void emitComparison(Code code, Node node, int opcode) {
+        int base = code.getStack();
+        Label yes = code.newLabel();
+        Label end = code.newLabel();
+        emit(code, node.getOperand(0));
+        emit(code, node.getOperand(1));
+        code.op(ClassFileWriter.LCMP, -3);
+        code.jump(opcode, yes, -1);
+        code.pushLong(0);
+        code.jump(ClassFileWriter.GOTO, end, 0);
+        code.mark(yes, base);
+        code.pushLong(1);
+        code.mark(end, base + 2);
+    }
+
+    /**
+     * Leaves the comparison of <code>node</code> with zero as an int on the
+     * stack, for use with IFEQ and IFNE.
+     */
+    private static void emitTest(Code code, Node node) {
+        emit(code, node);
+        code.pushLong(0);
+        code.op(ClassFileWriter.LCMP, -3);
+    }
+
+}
@@ -0,0 +1,225 @@
+package org.xnap.commons.maven.gettext;
+
+/*
+ * Copyright 2001-2005 The Apache Software Foundation.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.xnap.commons.maven.gettext.ClassFileWriter.Code;
+import org.xnap.commons.maven.gettext.runtime.MessageTemplate;
+import org.xnap.commons.maven.gettext.runtime.PluralExpression;
+import org.xnap.commons.maven.gettext.runtime.TableBundle;
+
+/**
+ * Generates the message table of a {@link TableBundle} and the class of the
+ * bundle, which only adds the constructor, the <code>pluralEval</code> and
+ * the <code>ngettext</code> method to its super class.
+ * <p>
+ * Messages are found with a {@link PerfectHash perfect hash} over their keys.
+ */
+public class BundleTableGenerator {
+
+    private static final String TABLE_BUNDLE = TableBundle.class.getName().replace('.', '/');
+
+    private final String className;
+    private final List<String> keys = new ArrayList<String>();
+    private final List<Object> values = new ArrayList<Object>();
+    private final List<MessageTemplate> templates = new ArrayList<MessageTemplate>();
+    private final Set<String> seen = new HashSet<String>();
+    private PluralExpression pluralExpression = PluralExpression.parse(PluralExpression.DEFAULT);
+    private boolean parseFormats;
+    private int formatCount;
+
+    /**
+     * @param className the fully qualified name of the generated class
+     */
+    public BundleTableGenerator(String className) {
+        this.className = className.replace('.', '/');
+    }
+
+    /**
+     * @param parseFormats if true, the patterns of messages that are
+     *      formatted with <code>MessageFormat</code> are parsed and stored
+     *      with the translation, see {@link #parseFormat(PoEntry)}
+     */
+    public void setParseFormats(boolean parseFormats) {
+        this.parseFormats = parseFormats;
+    }
+
+    /**
+     * Adds a message like {@link BundleClassGenerator#add(PoEntry)}.
+     *
+     * @return true, if the message was added
+     */
+    public boolean add(PoEntry entry) {
+        if (entry.isHeader()) {
+            String pluralForms = entry.getHeaderField("Plural-Forms");
+            if (pluralForms != null) {
+                pluralExpression = PluralExpression.fromHeader(pluralForms);
+            }
+        }
+        if (!entry.isCompiled()) {
+            return false;
+        }
+        if (!seen.add(entry.getKey())) {
+            throw new IllegalStateException("Duplicate message: " + entry.getKey());
+        }
+        keys.add(entry.getKey());
+        if (entry.isPlural()) {
+            values.add(entry.getMsgstr().toArray(new String[entry.getMsgstr().size()]));
+        } else {
+            values.add(entry.getMsgstr().get(0));
+        }
+        MessageTemplate template = parseFormats ? parseFormat(entry) : null;
+        if (template != null) {
+            formatCount++;
+        }
+        templates.add(template);
+        return true;
+    }
+
+    public int size() {
+        return keys.size();
+    }
+
+    /**
+     * @return the number of messages whose pattern was parsed
+     */
+    public int getFormatCount() {
+        return formatCount;
+    }
+
+    /**
+     * @return the pattern of the (first) translation of <code>entry</code>
+     *      if it is flagged as java-format or has arguments like "{0}", or
+     *      null if it is not a pattern that {@link MessageTemplate} supports
+     */
+    static MessageTemplate parseFormat(PoEntry entry) {
+        if (entry.getFlags().contains("no-java-format")) {
+            return null;
+        }
+        MessageTemplate template = MessageTemplate.parse(entry.getMsgstr().get(0));
+        if (template == null || template.getArgumentCount() == 0 && !entry.getFlags().contains("java-format")) {
+            return null;
+        }
+        return template;
+    }
+
+    /**
+     * @return the class file of the bundle
+     */
+    public byte[] generateClass() {
+        ClassFileWriter cw = new ClassFileWriter(className, TABLE_BUNDLE);
+        Code code = cw.addMethod(ClassFileWriter.ACC_PUBLIC, "<init>", "()V");
+        code.setMaxLocals(1);
+        code.load(ClassFileWriter.ALOAD, 0);
+        code.op2(ClassFileWriter.INVOKESPECIAL, cw.methodRef(TABLE_BUNDLE, "<init>", "()V"), -1);
+        code.op(ClassFileWriter.RETURN, 0);
+        BundleClassGenerator.generatePluralEval(cw, pluralExpression);
+        BundleClassGenerator.generateNgettext(cw);
+        return cw.toByteArray();
+    }
+
+    /**
+     * @return the message table
+     * @throws IllegalStateException if no perfect hash was found
+     */
+    public byte[] generateTable() {
+        PerfectHash hash = PerfectHash.build(keys);
+        try {
+            return write(hash.getSalt(), hash.getDisplacements(), hash.getSlots());
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private byte[] write(int salt, int[] displacements, int[] slots) throws IOException {
+        ByteArrayOutputStream records = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(records);
+        int recordsOffset = TableBundle.HEADER_SIZE + 4 * (displacements.length + slots.length);
+        int[] offsets = new int[slots.length];
+        for (int slot = 0; slot < slots.length; slot++) {
+            if (slots[slot] == -1) {
+                offsets[slot] = -1;
+                continue;
+            }
+            offsets[slot] = recordsOffset + out.size();
+            writeString(out, keys.get(slots[slot]));
+            Object value = values.get(slots[slot]);
+            if (value instanceof String[]) {
+                String[] forms = (String[]) value;
+                out.writeInt(forms.length);
+                for (String form : forms) {
+                    writeString(out, form);
+                }
+            } else {
+                out.writeInt(0);
+                writeString(out, (String) value);
+            }
+            writeTemplate(out, templates.get(slots[slot]));
+        }
+        out.flush();
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(recordsOffset + records.size());
+        DataOutputStream table = new DataOutputStream(bytes);
+        table.writeInt(TableBundle.MAGIC);
+        table.writeInt(TableBundle.VERSION);
+        table.writeInt(salt);
+        table.writeInt(keys.size());
+        table.writeInt(displacements.length);
+        table.writeInt(slots.length);
+        for (int displacement : displacements) {
+            table.writeInt(displacement);
+        }
+        for (int offset : offsets) {
+            table.writeInt(offset);
+        }
+        records.writeTo(table);
+        table.flush();
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Writes <code>template</code> as {@link MessageTemplate} reads it, or -1
+     * if it is null.
+     */
+    static void writeTemplate(DataOutputStream out, MessageTemplate template) throws IOException {
+        if (template == null) {
+            out.writeInt(-1);
+            return;
+        }
+        out.writeInt(template.getSegmentCount());
+        for (int i = 0; i < template.getSegmentCount(); i++) {
+            out.writeInt(template.getArgument(i));
+            if (template.getArgument(i) < 0) {
+                writeString(out, template.getLiteral(i));
+            }
+        }
+    }
+
+    private static void writeString(DataOutputStream out, String s) throws IOException {
+        byte[] bytes = s.getBytes("UTF-8");
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+}
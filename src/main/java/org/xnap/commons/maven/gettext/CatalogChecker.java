@@ -0,0 +1,486 @@
+package org.xnap.commons.maven.gettext;
+
+/*
+ * Copyright 2001-2005 The Apache Software Foundation.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.text.MessageFormat;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.xnap.commons.maven.gettext.runtime.PluralExpression;
+
+/**
+ * Checks the messages of a po file for the problems that make compiling it
+ * fail or break its messages at runtime, like <code>msgfmt -c</code> does
+ * for the formats used by Java:
+ * <ul>
+ * <li>translations of <code>MessageFormat</code> patterns that are not valid
+ *      or use other arguments than the msgid</li>
+ * <li>plural messages without as many forms as the Plural-Forms header
+ *      declares</li>
+ * <li>text that is not written in the charset of the header</li>
+ * </ul>
+ * Obsolete, fuzzy and untranslated messages are not checked, they are not
+ * compiled. The messages are checked while the file is read.
+ */
+public class CatalogChecker {
+
+    private static final Pattern CHARSET_PATTERN = Pattern.compile("charset=([\\w.:-]+)");
+
+    /**
+     * The location the parser prefixes its errors with.
+     */
+    private static final Pattern LOCATION_PATTERN = Pattern.compile("[^:]*:(\\d+): (.*)", Pattern.DOTALL);
+
+    private final String name;
+    private final List<Problem> problems = new ArrayList<Problem>();
+    private int errorCount;
+    private int messageCount;
+    private boolean headerSeen;
+    private int pluralCount = -1;
+    private Charset charset;
+    private boolean pluralFormsReported;
+    private boolean charsetReported;
+
+    /**
+     * @param name the name of the file in problems
+     */
+    public CatalogChecker(String name) {
+        this.name = name;
+    }
+
+    /**
+     * Reads and checks <code>file</code>. A file that cannot be parsed is
+     * reported as an error.
+     */
+    public static CatalogChecker check(File file, String name) throws IOException {
+        CatalogChecker checker = new CatalogChecker(name);
+        PoParser parser = new PoParser(file);
+        try {
+            PoEntry entry = new PoEntry();
+            while (true) {
+                try {
+                    if (!parser.next(entry)) {
+                        break;
+                    }
+                } catch (IOException e) {
+                    // the problem has the location already
+                    Matcher m = LOCATION_PATTERN.matcher(String.valueOf(e.getMessage()));
+                    if (m.matches()) {
+                        checker.error(Integer.parseInt(m.group(1)), null, m.group(2));
+                    } else {
+                        checker.error(parser.getLineNumber(), null, e.getMessage());
+                    }
+                    break;
+                }
+                checker.check(entry, parser.getLineNumber());
+            }
+        } finally {
+            parser.close();
+        }
+        return checker;
+    }
+
+    public void check(PoEntry entry, int line) {
+        if (!headerSeen) {
+            headerSeen = true;
+            if (entry.isHeader()) {
+                checkHeader(entry, line);
+                return;
+            }
+        }
+        if (!entry.isCompiled()) {
+            return;
+        }
+        messageCount++;
+        checkCharset(entry, line);
+        if (entry.isPlural()) {
+            checkPluralCount(entry, line);
+        }
+        checkFormat(entry, line);
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public List<Problem> getProblems() {
+        return Collections.unmodifiableList(problems);
+    }
+
+    public int getErrorCount() {
+        return errorCount;
+    }
+
+    public int getWarningCount() {
+        return problems.size() - errorCount;
+    }
+
+    /**
+     * @return the number of messages that were checked
+     */
+    public int getMessageCount() {
+        return messageCount;
+    }
+
+    private void checkHeader(PoEntry header, int line) {
+        String pluralForms = header.getHeaderField("Plural-Forms");
+        if (pluralForms != null) {
+            pluralCount = PluralExpression.getPluralCount(pluralForms);
+            if (pluralCount < 1) {
+                error(line, null, "Plural-Forms declares no valid nplurals: " + pluralForms);
+                pluralFormsReported = true;
+            }
+            try {
+                PluralExpression.fromHeader(pluralForms);
+            } catch (IllegalArgumentException e) {
+                error(line, null, "Plural-Forms has an invalid plural expression: " + e.getMessage());
+            }
+        }
+
+        String contentType = header.getHeaderField("Content-Type");
+        Matcher m = CHARSET_PATTERN.matcher((contentType != null) ? contentType : "");
+        if (m.find()) {
+            try {
+                charset = Charset.forName(m.group(1));
+            } catch (IllegalArgumentException e) {
+                // the "CHARSET" placeholder of a pot file, reported if there is text that needs it
+                if (!"CHARSET".equals(m.group(1))) {
+                    error(line, null, "Unsupported charset " + m.group(1) + ", the file is read as UTF-8");
+                    charsetReported = true;
+                }
+            }
+        }
+    }
+
+    /**
+     * Reports the first message that was not decoded cleanly with the charset
+     * of the header, or that has non-ASCII text without a charset.
+     */
+    private void checkCharset(PoEntry entry, int line) {
+        if (charsetReported) {
+            return;
+        }
+        boolean utf8 = charset == null || "UTF-8".equals(charset.name());
+        for (Iterator<String> it = new StringIterator(entry); it.hasNext();) {
+            String s = it.next();
+            for (int i = 0; i < s.length(); i++) {
+                char c = s.charAt(i);
+                if (c < 0x80) {
+                    continue;
+                }
+                if (charset == null) {
+                    error(line, entry.getMsgid(), "Non-ASCII text, but the header declares no charset");
+                    charsetReported = true;
+                    return;
+                } else if (c == '\ufffd') {
+                    error(line, entry.getMsgid(), "Text is not valid " + charset.name()
+                            + " as declared by the header");
+                    charsetReported = true;
+                    return;
+                } else if (!utf8 && c >= 0xc2 && c <= 0xf4 && i + 1 < s.length()
+                        && s.charAt(i + 1) >= 0x80 && s.charAt(i + 1) <= 0xbf) {
+                    // the bytes of a UTF-8 sequence read as single byte characters
+                    warning(line, entry.getMsgid(), "Text looks like UTF-8, but the header declares "
+                            + charset.name());
+                    charsetReported = true;
+                    return;
+                }
+            }
+        }
+    }
+
+    private void checkPluralCount(PoEntry entry, int line) {
+        if (pluralCount == -1) {
+            if (!pluralFormsReported) {
+                error(line, entry.getMsgid(), "Plural message, but the header declares no Plural-Forms");
+                pluralFormsReported = true;
+            }
+        } else if (pluralCount > 0 && entry.getMsgstr().size() != pluralCount) {
+            error(line, entry.getMsgid(), "Plural message with " + entry.getMsgstr().size()
+                    + " forms, but Plural-Forms declares " + pluralCount);
+        }
+    }
+
+    /**
+     * Compares the arguments of the translations of a
+     * <code>MessageFormat</code> pattern with the ones of the msgid. A message
+     * is a pattern if it is flagged as java-format or its msgid has arguments,
+     * like the dist goal decides which patterns to parse. A form of a plural
+     * message may leave out arguments, e.g. the number in "one file", but each
+     * argument of msgid_plural must be used by one of the forms.
+     */
+    private void checkFormat(PoEntry entry, int line) {
+        if (entry.getFlags().contains("no-java-format")) {
+            return;
+        }
+        Set<Integer> expected = getArguments(entry.getMsgid());
+        Set<Integer> plural = entry.isPlural() ? getArguments(entry.getMsgidPlural()) : Collections.<Integer>emptySet();
+        if (expected == null || plural == null) {
+            // not a pattern, there is nothing to compare with
+            return;
+        }
+        if (!entry.getFlags().contains("java-format") && expected.isEmpty() && plural.isEmpty()) {
+            return;
+        }
+
+        if (!entry.isPlural()) {
+            Set<Integer> actual = getArguments(entry.getMsgstr().get(0));
+            if (actual == null) {
+                error(line, entry.getMsgid(), "msgstr is not a valid MessageFormat pattern");
+            } else {
+                compare(line, entry.getMsgid(), "msgstr", expected, actual);
+            }
+            return;
+        }
+
+        Set<Integer> allowed = expected;
+        if (!expected.containsAll(plural)) {
+            allowed = new TreeSet<Integer>(expected);
+            allowed.addAll(plural);
+        }
+        Set<Integer> used = new TreeSet<Integer>();
+        for (int i = 0; i < entry.getMsgstr().size(); i++) {
+            String form = entry.getMsgstr().get(i);
+            Set<Integer> actual = getArguments(form);
+            if (actual == null) {
+                error(line, entry.getMsgid(), "msgstr[" + i + "] is not a valid MessageFormat pattern");
+                return;
+            }
+            if (!allowed.containsAll(actual)) {
+                Set<Integer> extra = new TreeSet<Integer>(actual);
+                extra.removeAll(allowed);
+                error(line, entry.getMsgid(), "msgstr[" + i + "] has arguments " + toString(extra)
+                        + " that the msgid does not have");
+            }
+            used.addAll(actual);
+        }
+        if (!used.containsAll(plural)) {
+            Set<Integer> missing = new TreeSet<Integer>(plural);
+            missing.removeAll(used);
+            error(line, entry.getMsgid(), "Arguments " + toString(missing)
+                    + " of msgid_plural are missing in all forms");
+        }
+    }
+
+    private void compare(int line, String msgid, String name, Set<Integer> expected, Set<Integer> actual) {
+        if (expected.equals(actual)) {
+            return;
+        }
+        Set<Integer> missing = new TreeSet<Integer>(expected);
+        missing.removeAll(actual);
+        Set<Integer> extra = new TreeSet<Integer>(actual);
+        extra.removeAll(expected);
+        if (!missing.isEmpty()) {
+            error(line, msgid, "Arguments " + toString(missing) + " of the msgid are missing in " + name);
+        }
+        if (!extra.isEmpty()) {
+            error(line, msgid, name + " has arguments " + toString(extra) + " that the msgid does not have");
+        }
+    }
+
+    /**
+     * @return the indexes of the arguments of a <code>MessageFormat</code>
+     *      pattern, not including arguments of nested patterns in choice
+     *      formats, or null if it is not a valid pattern. Unlike
+     *      <code>MessageFormat</code>, which drops an argument that is not
+     *      closed at the end of a pattern, such patterns are not valid.
+     *      Only patterns with format types are parsed by
+     *      <code>MessageFormat</code>.
+     */
+    static Set<Integer> getArguments(String pattern) {
+        if (pattern.indexOf('{') == -1) {
+            // braces only open arguments
+            return Collections.emptySet();
+        }
+        Set<Integer> arguments = new TreeSet<Integer>();
+        boolean quoted = false;
+        boolean typed = false;
+        int depth = 0;
+        int index = 0;
+        int digits = -1;
+        for (int i = 0; i < pattern.length(); i++) {
+            char c = pattern.charAt(i);
+            if (digits >= 0 && (c == '\'' || c == '{')) {
+                // not allowed in an argument index
+                return null;
+            } else if (c == '\'') {
+                quoted = !quoted;
+            } else if (quoted) {
+                continue;
+            } else if (c == '{') {
+                if (depth == 0) {
+                    index = 0;
+                    digits = 0;
+                }
+                depth++;
+            } else if (c == '}') {
+                if (depth == 0) {
+                    // a literal brace
+                    continue;
+                }
+                depth--;
+                if (depth == 0 && digits >= 0) {
+                    if (digits == 0) {
+                        return null;
+                    }
+                    arguments.add(index);
+                    digits = -1;
+                }
+            } else if (depth == 1 && digits >= 0) {
+                if (c == ',' && digits > 0) {
+                    // the format type and style are validated by MessageFormat
+                    arguments.add(index);
+                    digits = -1;
+                    typed = true;
+                } else if (c >= '0' && c <= '9' && digits < 9) {
+                    index = index * 10 + c - '0';
+                    digits++;
+                } else {
+                    return null;
+                }
+            }
+        }
+        if (depth > 0) {
+            return null;
+        }
+        if (typed) {
+            try {
+                new MessageFormat(pattern, Locale.ROOT);
+            } catch (IllegalArgumentException e) {
+                return null;
+            }
+        }
+        return arguments;
+    }
+
+    private static String toString(Set<Integer> arguments) {
+        StringBuilder sb = new StringBuilder();
+        for (Integer argument : arguments) {
+            if (sb.length() > 0) {
+                sb.append(", ");
+            }
+            sb.append('{').append(argument).append('}');
+        }
+        return sb.toString();
+    }
+
+    private void error(int line, String msgid, String message) {
+        problems.add(new Problem(name, line, true, msgid, message));
+        errorCount++;
+    }
+
+    private void warning(int line, String msgid, String message) {
+        problems.add(new Problem(name, line, false, msgid, message));
+    }
+
+    /**
+     * Iterates over the msgid, msgid_plural and the translations of a
+     * message.
+     */
+    private static class StringIterator implements Iterator<String> {
+
+        private final PoEntry entry;
+        private int index = -2;
+
+        StringIterator(PoEntry entry) {
+            this.entry = entry;
+            if (entry.getMsgidPlural() == null) {
+                index++;
+            }
+        }
+
+        public boolean hasNext() {
+            return index < entry.getMsgstr().size();
+        }
+
+        public String next() {
+            int i = index++;
+            if (i == -2) {
+                return entry.getMsgidPlural();
+            }
+            return (i == -1) ? entry.getMsgid() : entry.getMsgstr().get(i);
+        }
+
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+
+    }
+
+    /**
+     * A problem found in a po file.
+     */
+    public static class Problem {
+
+        private final String file;
+        private final int line;
+        private final boolean error;
+        private final String msgid;
+        private final String message;
+
+        public Problem(String file, int line, boolean error, String msgid, String message) {
+            this.file = file;
+            this.line = line;
+            this.error = error;
+            this.msgid = msgid;
+            this.message = message;
+        }
+
+        public String getFile() {
+            return file;
+        }
+
+        public int getLine() {
+            return line;
+        }
+
+        /**
+         * @return true for an error, false for a warning
+         */
+        public boolean isError() {
+            return error;
+        }
+
+        /**
+         * @return the msgid of the message, or null for problems of the file
+         */
+        public String getMsgid() {
+            return msgid;
+        }
+
+        public String getMessage() {
+            return message;
+        }
+
+        @Override
+        public String toString() {
+            return file + ":" + line + ": " + (error ? "error: " : "warning: ") + message;
+        }
+
+    }
+
+}
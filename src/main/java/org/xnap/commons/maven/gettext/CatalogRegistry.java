@@ -0,0 +1,94 @@
+package org.xnap.commons.maven.gettext;
+
+/*
+ * Copyright 2001-2005 The Apache Software Foundation.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.io.File;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Coordinates the goals of modules that are built at the same time, e.g. with
+ * <code>mvn -T</code>, and share a po directory. Goals that write the keys
+ * file or the po files hold the write lock of the directory, goals that only
+ * read them hold the read lock.
+ * <p>
+ * The registry also remembers which work was already done for a po directory
+ * in the current build, so aggregated goals run only once. It is kept in the
+ * plugin class loader, which Maven shares between all modules that use the
+ * same plugin version and dependencies.
+ */
+final class CatalogRegistry {
+
+    private static final Map<File, ReadWriteLock> locks = new HashMap<File, ReadWriteLock>();
+
+    private static final Map<String, Object> results = new HashMap<String, Object>();
+
+    private static Object currentBuild;
+
+    private CatalogRegistry() {
+    }
+
+    /**
+     * @return the lock of <code>poDirectory</code>, the same for all paths
+     *      of the directory
+     */
+    static synchronized ReadWriteLock getLock(File poDirectory) {
+        File key = canonical(poDirectory);
+        ReadWriteLock lock = locks.get(key);
+        if (lock == null) {
+            lock = new ReentrantReadWriteLock();
+            locks.put(key, lock);
+        }
+        return lock;
+    }
+
+    /**
+     * @param build identifies the build, results of other builds are
+     *      forgotten
+     * @return the result <code>goal</code> recorded for
+     *      <code>poDirectory</code> in this build, or null
+     */
+    static synchronized Object getResult(Object build, String goal, File poDirectory) {
+        startBuild(build);
+        return results.get(goal + "\n" + canonical(poDirectory));
+    }
+
+    static synchronized void putResult(Object build, String goal, File poDirectory, Object result) {
+        startBuild(build);
+        results.put(goal + "\n" + canonical(poDirectory), result);
+    }
+
+    private static void startBuild(Object build) {
+        // a Maven daemon runs one build after the other in the same JVM
+        if (build == null ? currentBuild != null : !build.equals(currentBuild)) {
+            results.clear();
+            currentBuild = build;
+        }
+    }
+
+    static File canonical(File file) {
+        try {
+            return file.getCanonicalFile();
+        } catch (IOException e) {
+            return file.getAbsoluteFile();
+        }
+    }
+
+}
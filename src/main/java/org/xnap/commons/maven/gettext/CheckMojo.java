@@ -0,0 +1,201 @@
+package org.xnap.commons.maven.gettext;
+
+/*
+ * Copyright 2005 by Steffen Pingel
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.Arrays;
+import java.util.concurrent.locks.Lock;
+
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.logging.Log;
+import org.apache.maven.plugins.annotations.LifecyclePhase;
+import org.apache.maven.plugins.annotations.Mojo;
+import org.apache.maven.plugins.annotations.Parameter;
+import org.codehaus.plexus.util.DirectoryScanner;
+
+/**
+ * Checks the po files for translations of <code>MessageFormat</code>
+ * patterns with other arguments than their msgid, plural messages without
+ * the forms declared by the Plural-Forms header and text that does not
+ * match the charset of the header. The files are checked in parallel and
+ * the problems are written to a JSON report.
+ *
+ * @see CatalogChecker
+ */
+@Mojo(name = "check", defaultPhase = LifecyclePhase.VALIDATE, threadSafe = true)
+public class CheckMojo extends AbstractGettextMojo {
+
+    /**
+     * If true, the files that have not been checked yet are skipped as soon
+     * as one of them has errors. Otherwise all files are checked and all
+     * problems are reported. The dist goal has its own property,
+     * gettext.failFast, which is true by default.
+     */
+    @Parameter(property = "gettext.check.failFast", defaultValue = "false")
+    protected boolean failFast;
+
+    /**
+     * If true, warnings fail the build as well as errors.
+     */
+    @Parameter(property = "gettext.failOnWarnings", defaultValue = "false")
+    protected boolean failOnWarnings;
+
+    /**
+     * The file the problems are written to, as JSON.
+     */
+    @Parameter(property = "gettext.checkReport", defaultValue = "${project.build.directory}/gettext/check.json")
+    protected File checkReport;
+
+    public void execute() throws MojoExecutionException {
+        BuildMetrics metrics = createMetrics("check");
+        Lock lock = CatalogRegistry.getLock(poDirectory).readLock();
+        long wait = metrics.start();
+        lock.lock();
+        try {
+            metrics.stop("lock", wait);
+            check(metrics);
+        } catch (MojoExecutionException e) {
+            metrics.setFailed(true);
+            throw e;
+        } finally {
+            lock.unlock();
+            writeMetrics("check", metrics);
+        }
+    }
+
+    private void check(final BuildMetrics metrics) throws MojoExecutionException {
+        long scan = metrics.start();
+        DirectoryScanner ds = new DirectoryScanner();
+        ds.setBasedir(poDirectory);
+        ds.setIncludes(new String[]{"**/*.po"});
+        ds.scan();
+        String[] files = ds.getIncludedFiles();
+        Arrays.sort(files);
+        metrics.stop("scan", scan);
+        metrics.add("files", files.length);
+
+        final CatalogChecker[] results = new CatalogChecker[files.length];
+        TaskRunner runner = new TaskRunner(getLog(), threads);
+        runner.setFailFast(failFast);
+        for (int i = 0; i < files.length; i++) {
+            final int index = i;
+            final String file = files[i];
+            runner.submit(file, new TaskRunner.Task() {
+                public void execute(Log log) throws Exception {
+                    File inputFile = new File(poDirectory, file);
+                    metrics.addLength("bytes.read", inputFile);
+                    long start = metrics.start();
+                    CatalogChecker checker;
+                    try {
+                        checker = CatalogChecker.check(inputFile, file);
+                    } finally {
+                        metrics.stop("check", start);
+                    }
+                    metrics.add("entries", checker.getMessageCount());
+                    results[index] = checker;
+                    for (CatalogChecker.Problem problem : checker.getProblems()) {
+                        String message = problem.getFile() + ":" + problem.getLine() + ": " + problem.getMessage();
+                        if (problem.isError()) {
+                            log.error(message);
+                        } else {
+                            log.warn(message);
+                        }
+                    }
+                    if (failFast && checker.getErrorCount() > 0) {
+                        throw new IOException(checker.getErrorCount() + " errors");
+                    }
+                }
+            });
+        }
+
+        MojoExecutionException failure = null;
+        try {
+            runner.run("check po files");
+        } catch (MojoExecutionException e) {
+            failure = e;
+        }
+
+        int checked = 0;
+        int errors = 0;
+        int warnings = 0;
+        for (CatalogChecker checker : results) {
+            if (checker != null) {
+                checked++;
+                errors += checker.getErrorCount();
+                warnings += checker.getWarningCount();
+            }
+        }
+        try {
+            writeReport(files.length, checked, errors, warnings, results);
+        } catch (IOException e) {
+            throw new MojoExecutionException("Could not write " + checkReport, e);
+        }
+
+        if (failure != null) {
+            throw failure;
+        }
+        if (errors > 0 || (failOnWarnings && warnings > 0)) {
+            throw new MojoExecutionException("Found " + errors + " errors and " + warnings
+                    + " warnings in " + checked + " po files, see " + checkReport);
+        }
+        getLog().info("Checked " + checked + " po files, found " + warnings + " warnings");
+    }
+
+    /**
+     * Writes the problems of the files that were checked to the report.
+     */
+    private void writeReport(int files, int checked, int errors, int warnings, CatalogChecker[] results)
+            throws IOException {
+        StringBuilder sb = new StringBuilder();
+        StringBuilder problems = new StringBuilder();
+        String separator = "\n";
+        for (CatalogChecker checker : results) {
+            if (checker == null) {
+                continue;
+            }
+            for (CatalogChecker.Problem problem : checker.getProblems()) {
+                problems.append(separator).append("    {\"file\": ").append(BuildMetrics.quote(problem.getFile()))
+                        .append(", \"line\": ").append(problem.getLine())
+                        .append(", \"severity\": ").append(problem.isError() ? "\"error\"" : "\"warning\"")
+                        .append(", \"msgid\": ").append((problem.getMsgid() != null)
+                                ? BuildMetrics.quote(problem.getMsgid()) : "null")
+                        .append(", \"message\": ").append(BuildMetrics.quote(problem.getMessage())).append('}');
+                separator = ",\n";
+            }
+        }
+        sb.append("{\n");
+        sb.append("  \"files\": ").append(files).append(",\n");
+        sb.append("  \"checked\": ").append(checked).append(",\n");
+        sb.append("  \"errors\": ").append(errors).append(",\n");
+        sb.append("  \"warnings\": ").append(warnings).append(",\n");
+        sb.append("  \"problems\": [").append(problems).append((problems.length() > 0) ? "\n  " : "").append("]\n");
+        sb.append("}\n");
+
+        checkReport.getParentFile().mkdirs();
+        Writer out = new OutputStreamWriter(new FileOutputStream(checkReport), "UTF-8");
+        try {
+            out.write(sb.toString());
+        } finally {
+            out.close();
+        }
+    }
+
+}
@@ -0,0 +1,523 @@
+package org.xnap.commons.maven.gettext;
+
+/*
+ * Copyright 2001-2005 The Apache Software Foundation.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UTFDataFormatException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Writes the few class file constructs needed for generated resource bundles.
+ * Classes are written in the Java 5 format which does not need stack map
+ * frames, so branches can be emitted without computing frames.
+ */
+public class ClassFileWriter {
+
+    public static final int ACC_PUBLIC = 0x0001;
+    public static final int ACC_PRIVATE = 0x0002;
+    public static final int ACC_STATIC = 0x0008;
+    public static final int ACC_FINAL = 0x0010;
+    public static final int ACC_SUPER = 0x0020;
+
+    public static final int ACONST_NULL = 0x01;
+    public static final int ICONST_0 = 0x03;
+    public static final int LCONST_0 = 0x09;
+    public static final int LCONST_1 = 0x0a;
+    public static final int BIPUSH = 0x10;
+    public static final int SIPUSH = 0x11;
+    public static final int LDC = 0x12;
+    public static final int LDC_W = 0x13;
+    public static final int LDC2_W = 0x14;
+    public static final int ILOAD = 0x15;
+    public static final int LLOAD = 0x16;
+    public static final int ALOAD = 0x19;
+    public static final int AALOAD = 0x32;
+    public static final int ISTORE = 0x36;
+    public static final int LSTORE = 0x37;
+    public static final int ASTORE = 0x3a;
+    public static final int AASTORE = 0x53;
+    public static final int POP = 0x57;
+    public static final int DUP = 0x59;
+    public static final int LADD = 0x61;
+    public static final int LSUB = 0x65;
+    public static final int LMUL = 0x69;
+    public static final int LDIV = 0x6d;
+    public static final int IREM = 0x70;
+    public static final int LREM = 0x71;
+    public static final int IAND = 0x7e;
+    public static final int I2L = 0x85;
+    public static final int L2I = 0x88;
+    public static final int LCMP = 0x94;
+    public static final int IFEQ = 0x99;
+    public static final int IFNE = 0x9a;
+    public static final int IFLT = 0x9b;
+    public static final int IFGE = 0x9c;
+    public static final int IFGT = 0x9d;
+    public static final int IFLE = 0x9e;
+    public static final int IF_ICMPNE = 0xa0;
+    public static final int GOTO = 0xa7;
+    public static final int TABLESWITCH = 0xaa;
+    public static final int IRETURN = 0xac;
+    public static final int LRETURN = 0xad;
+    public static final int ARETURN = 0xb0;
+    public static final int RETURN = 0xb1;
+    public static final int GETSTATIC = 0xb2;
+    public static final int PUTSTATIC = 0xb3;
+    public static final int GETFIELD = 0xb4;
+    public static final int INVOKEVIRTUAL = 0xb6;
+    public static final int INVOKESPECIAL = 0xb7;
+    public static final int INVOKESTATIC = 0xb8;
+    public static final int NEW = 0xbb;
+    public static final int ANEWARRAY = 0xbd;
+    public static final int ARRAYLENGTH = 0xbe;
+    public static final int CHECKCAST = 0xc0;
+    public static final int INSTANCEOF = 0xc1;
+    public static final int IFNULL = 0xc6;
+    public static final int IFNONNULL = 0xc7;
+
+    private static final int MAX_CONSTANTS = 0xffff;
+    private static final int MAX_CODE_LENGTH = 0xffff;
+
+    private final ByteArrayOutputStream poolBytes = new ByteArrayOutputStream();
+    private final DataOutputStream pool = new DataOutputStream(poolBytes);
+    private final Map<String, Integer> constants = new HashMap<String, Integer>();
+    private int constantCount = 1;
+
+    private final String name;
+    private final int thisClass;
+    private final int superClass;
+    private final List<byte[]> fields = new ArrayList<byte[]>();
+    private final List<Code> methods = new ArrayList<Code>();
+
+    /**
+     * @param name the internal name of the class, e.g. "org/example/Messages_de"
+     * @param superName the internal name of the super class
+     */
+    public ClassFileWriter(String name, String superName) {
+        this.name = name;
+        thisClass = classRef(name);
+        superClass = classRef(superName);
+    }
+
+    /**
+     * @return the internal name of the class
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * @return the number of constant pool entries used so far
+     */
+    public int getConstantCount() {
+        return constantCount;
+    }
+
+    public int utf8(String value) {
+        String key = "U" + value;
+        Integer index = constants.get(key);
+        if (index == null) {
+            try {
+                pool.writeByte(1);
+                pool.writeUTF(value);
+            } catch (UTFDataFormatException e) {
+                throw new IllegalStateException("String constant is too long: "
+                        + value.substring(0, Math.min(value.length(), 40)) + "...");
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+            index = add(key, 1);
+        }
+        return index;
+    }
+
+    public int classRef(String internalName) {
+        return ref("C", 7, utf8(internalName));
+    }
+
+    public int string(String value) {
+        return ref("S", 8, utf8(value));
+    }
+
+    public int integer(int value) {
+        String key = "I" + value;
+        Integer index = constants.get(key);
+        if (index == null) {
+            write(3, value);
+            index = add(key, 1);
+        }
+        return index;
+    }
+
+    public int longConstant(long value) {
+        String key = "J" + value;
+        Integer index = constants.get(key);
+        if (index == null) {
+            try {
+                pool.writeByte(5);
+                pool.writeLong(value);
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+            // longs take two slots
+            index = add(key, 2);
+        }
+        return index;
+    }
+
+    public int fieldRef(String owner, String name, String descriptor) {
+        return memberRef("F", 9, owner, name, descriptor);
+    }
+
+    public int methodRef(String owner, String name, String descriptor) {
+        return memberRef("M", 10, owner, name, descriptor);
+    }
+
+    private int memberRef(String prefix, int tag, String owner, String name, String descriptor) {
+        String key = prefix + owner + "." + name + descriptor;
+        Integer index = constants.get(key);
+        if (index == null) {
+            int ownerIndex = classRef(owner);
+            int nameAndType = ref("N", 12, utf8(name), utf8(descriptor));
+            try {
+                pool.writeByte(tag);
+                pool.writeShort(ownerIndex);
+                pool.writeShort(nameAndType);
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+            index = add(key, 1);
+        }
+        return index;
+    }
+
+    private int ref(String prefix, int tag, int... indexes) {
+        StringBuilder key = new StringBuilder(prefix);
+        for (int i : indexes) {
+            key.append(i).append(',');
+        }
+        Integer index = constants.get(key.toString());
+        if (index == null) {
+            try {
+                pool.writeByte(tag);
+                for (int i : indexes) {
+                    pool.writeShort(i);
+                }
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+            index = add(key.toString(), 1);
+        }
+        return index;
+    }
+
+    private void write(int tag, int value) {
+        try {
+            pool.writeByte(tag);
+            pool.writeInt(value);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private int add(String key, int slots) {
+        int index = constantCount;
+        constantCount += slots;
+        if (constantCount > MAX_CONSTANTS) {
+            throw new IllegalStateException("Too many constants for a single class");
+        }
+        constants.put(key, index);
+        return index;
+    }
+
+    public void addField(int access, String name, String descriptor) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        try {
+            out.writeShort(access);
+            out.writeShort(utf8(name));
+            out.writeShort(utf8(descriptor));
+            out.writeShort(0);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        fields.add(bytes.toByteArray());
+    }
+
+    /**
+     * @param exceptions internal names of the declared exceptions
+     * @return the builder for the code of the new method
+     */
+    public Code addMethod(int access, String name, String descriptor, String... exceptions) {
+        Code code = new Code(access, utf8(name), utf8(descriptor), exceptions);
+        methods.add(code);
+        return code;
+    }
+
+    public byte[] toByteArray() {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        try {
+            int codeAttribute = utf8("Code");
+            int exceptionsAttribute = utf8("Exceptions");
+            for (Code method : methods) {
+                for (String exception : method.exceptions) {
+                    classRef(exception);
+                }
+            }
+
+            out.writeInt(0xcafebabe);
+            out.writeShort(0);
+            out.writeShort(49);
+            out.writeShort(constantCount);
+            pool.flush();
+            poolBytes.writeTo(out);
+            out.writeShort(ACC_PUBLIC | ACC_SUPER);
+            out.writeShort(thisClass);
+            out.writeShort(superClass);
+            out.writeShort(0);
+            out.writeShort(fields.size());
+            for (byte[] field : fields) {
+                out.write(field);
+            }
+            out.writeShort(methods.size());
+            for (Code method : methods) {
+                method.writeTo(out, codeAttribute, exceptionsAttribute);
+            }
+            out.writeShort(0);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * A jump target.
+     */
+    public static class Label {
+
+        private int position = -1;
+        private final List<int[]> fixups = new ArrayList<int[]>();
+
+    }
+
+    /**
+     * The byte code of a method. The maximum stack size is tracked from the
+     * stack effect that is passed for each instruction.
+     */
+    public class Code {
+
+        private final int access;
+        private final int name;
+        private final int descriptor;
+        private final String[] exceptions;
+        private final ByteArrayOutputStream code = new ByteArrayOutputStream();
+        private int stack;
+        private int maxStack;
+        private int maxLocals;
+
+        Code(int access, int name, int descriptor, String[] exceptions) {
+            this.access = access;
+            this.name = name;
+            this.descriptor = descriptor;
+            this.exceptions = exceptions;
+        }
+
+        public ClassFileWriter getClassFile() {
+            return ClassFileWriter.this;
+        }
+
+        /**
+         * @return the current length of the code in bytes
+         */
+        public int length() {
+            return code.size();
+        }
+
+        public void setMaxLocals(int maxLocals) {
+            this.maxLocals = maxLocals;
+        }
+
+        private void stack(int delta) {
+            stack += delta;
+            maxStack = Math.max(maxStack, stack);
+        }
+
+        /**
+         * Emits an instruction without operands.
+         *
+         * @param stackDelta the change of the stack size in words
+         */
+        public void op(int opcode, int stackDelta) {
+            code.write(opcode);
+            stack(stackDelta);
+        }
+
+        /**
+         * Emits an instruction with a two byte operand, usually a constant
+         * pool index.
+         */
+        public void op2(int opcode, int operand, int stackDelta) {
+            code.write(opcode);
+            u2(operand);
+            stack(stackDelta);
+        }
+
+        public void load(int opcode, int local) {
+            code.write(opcode);
+            code.write(local);
+            stack(opcode == LLOAD ? 2 : 1);
+        }
+
+        public void store(int opcode, int local) {
+            code.write(opcode);
+            code.write(local);
+            stack(opcode == LSTORE ? -2 : -1);
+        }
+
+        public void pushInt(int value) {
+            if (value >= -1 && value <= 5) {
+                code.write(ICONST_0 + value);
+            } else if (value >= Byte.MIN_VALUE && value <= Byte.MAX_VALUE) {
+                code.write(BIPUSH);
+                code.write(value);
+            } else if (value >= Short.MIN_VALUE && value <= Short.MAX_VALUE) {
+                code.write(SIPUSH);
+                u2(value);
+            } else {
+                ldc(integer(value));
+                return;
+            }
+            stack(1);
+        }
+
+        public void pushLong(long value) {
+            if (value == 0 || value == 1) {
+                code.write(LCONST_0 + (int) value);
+                stack(2);
+            } else {
+                op2(LDC2_W, longConstant(value), 2);
+            }
+        }
+
+        public void pushString(String value) {
+            ldc(string(value));
+        }
+
+        private void ldc(int index) {
+            if (index < 256) {
+                code.write(LDC);
+                code.write(index);
+            } else {
+                code.write(LDC_W);
+                u2(index);
+            }
+            stack(1);
+        }
+
+        public Label newLabel() {
+            return new Label();
+        }
+
+        /**
+         * Emits a conditional or unconditional jump.
+         *
+         * @param stackDelta the change of the stack size in words
+         */
+        public void jump(int opcode, Label target, int stackDelta) {
+            int position = code.size();
+            code.write(opcode);
+            if (target.position >= 0) {
+                u2(target.position - position);
+            } else {
+                target.fixups.add(new int[]{position, code.size()});
+                u2(0);
+            }
+            stack(stackDelta);
+        }
+
+        /**
+         * Binds <code>label</code> to the current position.
+         *
+         * @param stack the stack size at the label
+         */
+        public void mark(Label label, int stack) {
+            label.position = code.size();
+            this.stack = stack;
+            for (int[] fixup : label.fixups) {
+                // patched in writeTo
+                fixups.add(new int[]{fixup[1], label.position - fixup[0]});
+            }
+            label.fixups.clear();
+        }
+
+        /**
+         * @return the current stack size in words
+         */
+        public int getStack() {
+            return stack;
+        }
+
+        private final List<int[]> fixups = new ArrayList<int[]>();
+
+        private void u2(int value) {
+            code.write((value >> 8) & 0xff);
+            code.write(value & 0xff);
+        }
+
+        void writeTo(DataOutputStream out, int codeAttribute, int exceptionsAttribute) throws IOException {
+            byte[] bytes = code.toByteArray();
+            if (bytes.length > MAX_CODE_LENGTH) {
+                throw new IllegalStateException("Method is too large");
+            }
+            for (int[] fixup : fixups) {
+                bytes[fixup[0]] = (byte) (fixup[1] >> 8);
+                bytes[fixup[0] + 1] = (byte) fixup[1];
+            }
+
+            out.writeShort(access);
+            out.writeShort(name);
+            out.writeShort(descriptor);
+            out.writeShort(exceptions.length > 0 ? 2 : 1);
+
+            out.writeShort(codeAttribute);
+            out.writeInt(12 + bytes.length);
+            out.writeShort(maxStack);
+            out.writeShort(maxLocals);
+            out.writeInt(bytes.length);
+            out.write(bytes);
+            out.writeShort(0);
+            out.writeShort(0);
+
+            if (exceptions.length > 0) {
+                out.writeShort(exceptionsAttribute);
+                out.writeInt(2 + 2 * exceptions.length);
+                out.writeShort(exceptions.length);
+                for (String exception : exceptions) {
+                    out.writeShort(classRef(exception));
+                }
+            }
+        }
+
+    }
+
+}
@@ -17,33 +17,47 @@ package org.xnap.commons.maven.gettext;
  */
 
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.locks.Lock;
 
 import org.apache.commons.lang.LocaleUtils;
+import org.apache.maven.model.Resource;
 import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.logging.Log;
 import org.apache.maven.plugins.annotations.LifecyclePhase;
 import org.apache.maven.plugins.annotations.Mojo;
 import org.apache.maven.plugins.annotations.Parameter;
 import org.apache.maven.project.MavenProject;
 import org.codehaus.plexus.util.DirectoryScanner;
-import org.codehaus.plexus.util.cli.CommandLineException;
-import org.codehaus.plexus.util.cli.CommandLineUtils;
+import org.codehaus.plexus.util.IOUtil;
 import org.codehaus.plexus.util.cli.Commandline;
-import org.codehaus.plexus.util.cli.StreamConsumer;
+import org.xnap.commons.maven.gettext.runtime.MessageTemplate;
+import org.xnap.commons.maven.gettext.runtime.MoCatalog;
+import org.xnap.commons.maven.gettext.runtime.PluralExpression;
+import org.xnap.commons.maven.gettext.runtime.PooledBundle;
+import org.xnap.commons.maven.gettext.runtime.TableBundle;
 
 /**
  * Generates ressource bundles.
  *
  * @author Tammo van Lessen
  */
-@Mojo(name = "dist", defaultPhase = LifecyclePhase.GENERATE_SOURCES)
+@Mojo(name = "dist", defaultPhase = LifecyclePhase.GENERATE_SOURCES, threadSafe = true)
 public class DistMojo extends AbstractGettextMojo {
 
     /**
-     * The msgcat command.
+     * The build state key of the shared pool, outside of the keys of the po
+     * files.
      */
-    @Parameter(defaultValue = "msgcat", required = true)
-    protected String msgcatCmd;
+    private static final String POOL_KEY = "pool.bundle";
 
     /**
      * The msgfmt command.
@@ -58,7 +72,19 @@ public class DistMojo extends AbstractGettextMojo {
     protected String targetBundle;
 
     /**
-     * Output format, can be "class" or "properties".
+     * Output format, can be "class", "properties", "bytecode", "table" or
+     * "mo".
+     * "class" invokes msgfmt to generate java source files, the other formats
+     * do not need the gettext tools. "bytecode" writes the class files
+     * directly, they provide the same methods as the ones msgfmt generates
+     * for java version "2". "table" writes a binary message table and a small
+     * class per locale that looks messages up in the table without loading
+     * them all; the classes extend
+     * <code>org.xnap.commons.maven.gettext.runtime.TableBundle</code>, which
+     * is copied to the output directory with its helper class. "mo" writes
+     * GNU mo files like msgfmt, they can be read with
+     * <code>org.xnap.commons.maven.gettext.runtime.MoCatalog</code>, which is
+     * copied to the output directory with its helper classes.
      */
     @Parameter(defaultValue = "class", required = true)
     protected String outputFormat;
@@ -75,62 +101,466 @@ public class DistMojo extends AbstractGettextMojo {
     @Parameter(defaultValue = "en", required = true)
     protected String sourceLocale;
 
+    /**
+     * If true, po files that have not been compiled yet are skipped as soon
+     * as one of them fails to compile.
+     */
+    @Parameter(property = "gettext.failFast", defaultValue = "true")
+    protected boolean failFast;
+
+    /**
+     * The number of classes the messages of each locale are split into, by
+     * the hash of their key. The bundle class named by
+     * <code>targetBundle</code> holds no messages, it loads a shard on the
+     * first lookup of one of its messages. This keeps the initialization of
+     * the bundle fast and rarely used messages out of memory. Only
+     * supported by the output format "bytecode".
+     */
+    @Parameter(property = "gettext.bundleShards", defaultValue = "1")
+    protected int bundleShards;
+
+    /**
+     * If true, the output format "table" writes the msgids and translations
+     * of all locales into one pool named like <code>targetBundle</code>,
+     * and each locale only gets an index into the pool. Translations that
+     * are the same in several locales or the same as their msgid are stored
+     * once, and the pool is loaded once for all locales. The classes extend
+     * <code>org.xnap.commons.maven.gettext.runtime.PooledBundle</code>. Every
+     * po file is compiled again when one of them changes.
+     */
+    @Parameter(property = "gettext.sharedPool", defaultValue = "false")
+    protected boolean sharedPool;
+
+    /**
+     * If true, the output format "table" parses the translations of messages
+     * flagged as java-format or with arguments like "{0}" as
+     * <code>MessageFormat</code> patterns and stores them split into literals
+     * and argument indexes. The <code>format(String, Object...)</code>
+     * method of the bundles then formats them like
+     * <code>MessageFormat.format(getString(msgid), args)</code> without
+     * parsing the pattern. Patterns with format types like "{0,number}" are
+     * not parsed.
+     */
+    @Parameter(property = "gettext.parseFormats", defaultValue = "false")
+    protected boolean parseFormats;
+
     @Parameter(defaultValue = "${project}", required = true, readonly = true)
     protected MavenProject project;
 
     public void execute() throws MojoExecutionException {
+        BuildMetrics metrics = createMetrics("dist");
+        // po files that another module is merging are not read
+        Lock lock = CatalogRegistry.getLock(poDirectory).readLock();
+        long wait = metrics.start();
+        lock.lock();
+        try {
+            metrics.stop("lock", wait);
+            dist(metrics);
+        } catch (MojoExecutionException e) {
+            metrics.setFailed(true);
+            throw e;
+        } finally {
+            lock.unlock();
+            writeMetrics("dist", metrics);
+        }
+    }
+
+    private void dist(BuildMetrics metrics) throws MojoExecutionException {
+        BundleCompiler cf = createCompiler();
 
+        long scan = metrics.start();
+        String[] files = scanPoFiles();
+        metrics.stop("scan", scan);
+        metrics.add("files", files.length);
+        cf.compile(files, true, metrics);
+
+        String basepath = targetBundle.replace('.', File.separatorChar);
+        getLog().info("Creating resource bundle for source locale");
+        touch(new File(outputDirectory, basepath + "_" + sourceLocale + ".properties"));
+        getLog().info("Creating default resource bundle");
+        touch(new File(outputDirectory, basepath + ".properties"));
+        project.addCompileSourceRoot(outputDirectory.getAbsolutePath());
+    }
+
+    /**
+     * Creates the output directory and the compiler of the output format.
+     */
+    BundleCompiler createCompiler() throws MojoExecutionException {
         // create output directory if it doesn't exists
         outputDirectory.mkdirs();
 
-        CommandlineFactory cf;
+        final BundleCompiler cf;
         if ("class".equals(outputFormat)) {
             cf = new MsgFmtCommandlineFactory();
         } else if ("properties".equals(outputFormat)) {
-            cf = new MsgCatCommandlineFactory();
+            cf = new PropertiesCompiler();
+        } else if ("bytecode".equals(outputFormat)) {
+            if (bundleShards < 1) {
+                throw new MojoExecutionException("Invalid number of bundle shards: " + bundleShards);
+            }
+            cf = new BytecodeCompiler();
+            addResourceDirectory("**/*.class");
+        } else if ("table".equals(outputFormat) && sharedPool) {
+            cf = new PoolCompiler();
+            addResourceDirectory("**/*.class", "**/*" + PooledBundle.EXTENSION, "**/*" + PooledBundle.POOL_EXTENSION);
+            copyRuntimeClass(PooledBundle.class.getName());
+            copyRuntimeClass(PooledBundle.class.getName() + "$Pool");
+            copyRuntimeClass(TableBundle.class.getName());
+            copyRuntimeClass(TableBundle.class.getPackage().getName() + ".BufferUtils");
+            copyRuntimeClass(MessageTemplate.class.getName());
+        } else if ("table".equals(outputFormat)) {
+            cf = new TableCompiler();
+            addResourceDirectory("**/*.class", "**/*" + TableBundle.EXTENSION);
+            copyRuntimeClass(TableBundle.class.getName());
+            copyRuntimeClass(TableBundle.class.getPackage().getName() + ".BufferUtils");
+            copyRuntimeClass(MessageTemplate.class.getName());
+        } else if ("mo".equals(outputFormat)) {
+            cf = new MoCompiler();
+            addResourceDirectory("**/*.class", "**/*.mo");
+            copyRuntimeClass(MoCatalog.class.getName());
+            copyRuntimeClass(PluralExpression.class.getName());
+            copyRuntimeClass(PluralExpression.Node.class.getName());
+            copyRuntimeClass(MoCatalog.class.getPackage().getName() + ".BufferUtils");
         } else {
-            throw new MojoExecutionException("Unknown output format: "
-                    + outputFormat + ". Should be 'class' or 'properties'.");
+            throw new MojoExecutionException("Unknown output format: " + outputFormat
+                    + ". Should be 'class', 'properties', 'bytecode', 'table' or 'mo'.");
+        }
+        if (bundleShards != 1 && !"bytecode".equals(outputFormat)) {
+            throw new MojoExecutionException("Bundle shards are only supported by the output format 'bytecode'.");
+        }
+        if (sharedPool && !"table".equals(outputFormat)) {
+            throw new MojoExecutionException("A shared pool is only supported by the output format 'table'.");
         }
+        if (parseFormats && !"table".equals(outputFormat)) {
+            throw new MojoExecutionException("Parsing formats is only supported by the output format 'table'.");
+        }
+        return cf;
+    }
 
+    /**
+     * @return all po files, relative to the po directory
+     */
+    String[] scanPoFiles() {
         DirectoryScanner ds = new DirectoryScanner();
         ds.setBasedir(poDirectory);
         ds.setIncludes(new String[]{"**/*.po"});
         ds.scan();
+        return ds.getIncludedFiles();
+    }
 
-        String[] files = ds.getIncludedFiles();
-        for (String file : files) {
-            getLog().info("Processing " + file);
+    /**
+     * Compiles each po file whose output is not up-to-date, see
+     * {@link BundleCompiler#compile(String[], boolean, BuildMetrics)}.
+     */
+    private void compileCatalogs(final CatalogCompiler cf, String[] files, boolean complete,
+                                 final BuildMetrics metrics) throws MojoExecutionException {
+        final BuildState state = loadBuildState("dist");
+        final String parameters = BuildState.digest(outputFormat, targetBundle, javaVersion,
+                msgfmtCmd, outputDirectory.getAbsolutePath(), String.valueOf(bundleShards),
+                String.valueOf(parseFormats));
+        if (state.get(POOL_KEY) != null) {
+            deleteOutput(state.get(POOL_KEY), null);
+            state.remove(POOL_KEY);
+        }
+        TaskRunner runner = new TaskRunner(getLog(), threads);
+        runner.setFailFast(failFast);
+        for (final String file : files) {
+            final File inputFile = new File(poDirectory, file);
+            final File outputFile = cf.getOutputFile(inputFile);
+            final String key = "dist." + file;
+            final String fingerprint;
+            String recorded = state.get(key);
+            if (!inputFile.isFile()) {
+                getLog().info("Removing bundle of deleted po file " + file);
+                deleteOutput(recorded, null);
+                state.remove(key);
+                continue;
+            }
+            try {
+                fingerprint = state.digest(inputFile) + " " + parameters;
+                if (recorded != null && recorded.equals(fingerprint + " " + state.digest(outputFile)
+                        + " " + outputFile.getAbsolutePath())) {
+                    getLog().info("Not compiling, target is up-to-date: " + outputFile);
+                    metrics.add("cache.hits", 1);
+                    continue;
+                }
+            } catch (IOException e) {
+                throw new MojoExecutionException("Could not read " + inputFile, e);
+            }
+            // the output name changes with the format or the bundle name
+            deleteOutput(recorded, outputFile);
+
+            metrics.add("cache.misses", 1);
+            runner.submit(file, new TaskRunner.Task() {
+                public void execute(Log log) throws Exception {
+                    log.info("Processing " + file);
+                    metrics.addLength("bytes.read", inputFile);
+                    long start = metrics.start();
+                    try {
+                        int count = cf.compile(inputFile, log, metrics);
+                        if (count > 0) {
+                            metrics.add("entries", count);
+                        }
+                    } catch (Exception e) {
+                        // never leave a stale or partial bundle behind
+                        outputFile.delete();
+                        state.remove(key);
+                        throw e;
+                    } finally {
+                        metrics.stop("compile", start);
+                    }
+                    metrics.addLength("bytes.written", outputFile);
+                    state.put(key, fingerprint + " " + state.refreshDigest(outputFile)
+                            + " " + outputFile.getAbsolutePath());
+                }
+            });
+        }
 
-            File inputFile = new File(poDirectory, file);
-            File outputFile = cf.getOutputFile(inputFile);
+        // delete the bundles of locales that were removed
+        Set<String> existing = new HashSet<String>(Arrays.asList(files));
+        for (String file : complete ? state.getKeys("dist.") : Collections.<String>emptySet()) {
+            if (!existing.contains(file)) {
+                getLog().info("Removing bundle of deleted po file " + file);
+                deleteOutput(state.get("dist." + file), null);
+                state.remove("dist." + file);
+            }
+        }
 
-            if (!isNewer(inputFile, outputFile)) {
-                getLog().info("Not compiling, target is up-to-date: " + outputFile);
-                continue;
+        try {
+            runner.run("compile po files");
+        } finally {
+            saveBuildState(state);
+        }
+    }
+
+    /**
+     * Compiles all po files into the shared pool and the index of each
+     * locale, unless none of them changed, and deletes the output of po
+     * files that no longer exist.
+     */
+    private void compilePool(PoolCompiler cf, String[] files, final BuildMetrics metrics)
+            throws MojoExecutionException {
+        BuildState state = loadBuildState("dist");
+        // the order of the catalogs determines the content of the pool
+        files = files.clone();
+        Arrays.sort(files);
+        File poolFile = cf.getPoolFile();
+        String fingerprint;
+        boolean upToDate;
+        try {
+            // the digest of all inputs and the parameters, like the fingerprint of a single po file
+            String[] inputs = new String[2 * files.length];
+            for (int i = 0; i < files.length; i++) {
+                inputs[2 * i] = files[i];
+                inputs[2 * i + 1] = state.digest(new File(poDirectory, files[i]));
+            }
+            fingerprint = BuildState.digest(inputs) + " " + BuildState.digest(outputFormat, targetBundle,
+                    outputDirectory.getAbsolutePath(), PooledBundle.POOL_EXTENSION, String.valueOf(parseFormats));
+            upToDate = isUpToDate(state, POOL_KEY, fingerprint, poolFile);
+            for (String file : files) {
+                upToDate &= isUpToDate(state, "dist." + file, fingerprint,
+                        cf.getOutputFile(new File(poDirectory, file)));
+            }
+        } catch (IOException e) {
+            throw new MojoExecutionException("Could not read po files", e);
+        }
+
+        // delete the bundles of locales that were removed
+        Set<String> existing = new HashSet<String>(Arrays.asList(files));
+        for (String file : state.getKeys("dist.")) {
+            if (!existing.contains(file)) {
+                getLog().info("Removing bundle of deleted po file " + file);
+                deleteOutput(state.get("dist." + file), null);
+                state.remove("dist." + file);
+            }
+        }
+        if (upToDate) {
+            getLog().info("Not compiling, target is up-to-date: " + poolFile);
+            metrics.add("cache.hits", files.length);
+            saveBuildState(state);
+            return;
+        }
+
+        metrics.add("cache.misses", files.length);
+        PooledTableGenerator generator = new PooledTableGenerator(targetBundle);
+        generator.setParseFormats(parseFormats);
+        final PooledTableGenerator.Catalog[] catalogs = new PooledTableGenerator.Catalog[files.length];
+        TaskRunner runner = new TaskRunner(getLog(), threads);
+        runner.setFailFast(failFast);
+        for (int i = 0; i < files.length; i++) {
+            final String file = files[i];
+            final File inputFile = new File(poDirectory, file);
+            // the output name changes with the format or the bundle name
+            deleteOutput(state.get("dist." + file), cf.getOutputFile(inputFile));
+            state.remove("dist." + file);
+            final PooledTableGenerator.Catalog catalog = generator.addCatalog(targetBundle + "_" + getLocale(inputFile));
+            catalogs[i] = catalog;
+            runner.submit(file, new TaskRunner.Task() {
+                public void execute(Log log) throws Exception {
+                    log.info("Processing " + file);
+                    metrics.addLength("bytes.read", inputFile);
+                    long start = metrics.start();
+                    try {
+                        PoParser parser = new PoParser(inputFile);
+                        try {
+                            PoEntry entry = new PoEntry();
+                            while (parser.next(entry)) {
+                                catalog.add(entry);
+                            }
+                        } finally {
+                            parser.close();
+                        }
+                    } catch (IllegalStateException e) {
+                        throw new IOException("Could not read " + file + ": " + e.getMessage());
+                    } finally {
+                        metrics.stop("compile", start);
+                    }
+                    metrics.add("entries", catalog.size());
+                    metrics.add("formats", catalog.getFormatCount());
+                }
+            });
+        }
+
+        state.remove(POOL_KEY);
+        try {
+            runner.run("compile po files");
+            long start = metrics.start();
+            poolFile.getParentFile().mkdirs();
+            write(poolFile, generator.generatePool());
+            for (int i = 0; i < files.length; i++) {
+                File outputFile = cf.getOutputFile(new File(poDirectory, files[i]));
+                write(new File(outputFile.getPath().substring(0, outputFile.getPath().length()
+                        - PooledBundle.EXTENSION.length()) + ".class"), catalogs[i].generateClass());
+                write(outputFile, catalogs[i].generateIndex());
+                metrics.addLength("bytes.written", outputFile);
+                state.put("dist." + files[i], fingerprint + " " + state.refreshDigest(outputFile)
+                        + " " + outputFile.getAbsolutePath());
             }
+            metrics.stop("compile", start);
+            metrics.addLength("bytes.written", poolFile);
+            state.put(POOL_KEY, fingerprint + " " + state.refreshDigest(poolFile) + " " + poolFile.getAbsolutePath());
+            getLog().info("Wrote " + generator.size() + " messages with " + generator.getValueCount()
+                    + " distinct translations to " + poolFile);
+        } catch (IllegalStateException e) {
+            poolFile.delete();
+            throw new MojoExecutionException("Could not generate " + poolFile + ": " + e.getMessage());
+        } catch (IOException e) {
+            poolFile.delete();
+            throw new MojoExecutionException("Could not write " + poolFile, e);
+        } finally {
+            saveBuildState(state);
+        }
+    }
+
+    private static boolean isUpToDate(BuildState state, String key, String fingerprint, File output)
+            throws IOException {
+        String recorded = state.get(key);
+        return recorded != null && recorded.equals(fingerprint + " " + state.digest(output)
+                + " " + output.getAbsolutePath());
+    }
+
+    /**
+     * Adds the output directory as a resource directory, so files that are
+     * not compiled by javac are copied to the classes directory.
+     */
+    private void addResourceDirectory(String... includes) {
+        Resource resource = new Resource();
+        resource.setDirectory(outputDirectory.getAbsolutePath());
+        for (String include : includes) {
+            resource.addInclude(include);
+        }
+        project.addResource(resource);
+    }
 
-            Commandline cl = cf.createCommandline(inputFile);
-            getLog().debug("Executing: " + cl.toString());
-            StreamConsumer out = new LoggerStreamConsumer(getLog(), LoggerStreamConsumer.INFO);
-            StreamConsumer err = new LoggerStreamConsumer(getLog(), LoggerStreamConsumer.WARN);
+    /**
+     * Copies the class file of <code>className</code> from the plugin to the
+     * output directory, so the generated bundles do not need a dependency on
+     * the plugin. The file is only written if it changed.
+     */
+    private void copyRuntimeClass(String className) throws MojoExecutionException {
+        String name = className.replace('.', '/') + ".class";
+        File target = new File(outputDirectory, name);
+        try {
+            InputStream in = DistMojo.class.getClassLoader().getResourceAsStream(name);
+            if (in == null) {
+                throw new MojoExecutionException("Could not find " + name);
+            }
+            byte[] bytes = readFully(in);
+            if (target.isFile() && Arrays.equals(bytes, readFully(new FileInputStream(target)))) {
+                return;
+            }
+            target.getParentFile().mkdirs();
+            OutputStream out = new FileOutputStream(target);
             try {
-                CommandLineUtils.executeCommandLine(cl, out, err);
-            } catch (CommandLineException e) {
-                getLog().error("Could not execute " + cl.getExecutable() + ".", e);
+                out.write(bytes);
+            } finally {
+                out.close();
             }
+        } catch (IOException e) {
+            throw new MojoExecutionException("Could not copy " + name, e);
         }
+    }
 
-        String basepath = targetBundle.replace('.', File.separatorChar);
-        getLog().info("Creating resource bundle for source locale");
-        touch(new File(outputDirectory, basepath + "_" + sourceLocale + ".properties"));
-        getLog().info("Creating default resource bundle");
-        touch(new File(outputDirectory, basepath + ".properties"));
-        project.addCompileSourceRoot(outputDirectory.getAbsolutePath());
+    /**
+     * Deletes the output file of a recorded build state, unless it is
+     * <code>keep</code>.
+     *
+     * @param recorded input fingerprint, output digest and output path
+     */
+    private void deleteOutput(String recorded, File keep) {
+        if (recorded == null) {
+            return;
+        }
+        String[] parts = recorded.split(" ", 4);
+        if (parts.length == 4) {
+            File output = new File(parts[3]);
+            if (!output.equals(keep) && output.delete()) {
+                getLog().debug("Deleted " + output);
+                if (parts[3].endsWith(TableBundle.EXTENSION)) {
+                    // the class that goes with the table
+                    new File(parts[3].substring(0, parts[3].length() - TableBundle.EXTENSION.length())
+                            + ".class").delete();
+                } else if (parts[3].endsWith(PooledBundle.EXTENSION)) {
+                    new File(parts[3].substring(0, parts[3].length() - PooledBundle.EXTENSION.length())
+                            + ".class").delete();
+                } else if (parts[3].endsWith(".class")) {
+                    deleteShards(output);
+                }
+            }
+        }
     }
 
-    private boolean isNewer(File inputFile, File outputFile) {
-        return inputFile.lastModified() > outputFile.lastModified();
+    /**
+     * Deletes the shard classes of the bundle class <code>file</code>.
+     */
+    private static void deleteShards(File file) {
+        String prefix = file.getName().substring(0, file.getName().length() - ".class".length())
+                + ShardedBundleGenerator.SHARD_SUFFIX;
+        File[] files = file.getParentFile().listFiles();
+        if (files != null) {
+            for (File shard : files) {
+                if (shard.getName().startsWith(prefix) && shard.getName().endsWith(".class")) {
+                    shard.delete();
+                }
+            }
+        }
+    }
+
+    private static void write(File file, byte[] bytes) throws IOException {
+        OutputStream out = new FileOutputStream(file);
+        try {
+            out.write(bytes);
+        } finally {
+            out.close();
+        }
+    }
+
+    private static byte[] readFully(InputStream in) throws IOException {
+        try {
+            return IOUtil.toByteArray(in);
+        } finally {
+            in.close();
+        }
     }
 
     private void touch(File file) {
@@ -147,24 +577,64 @@ public class DistMojo extends AbstractGettextMojo {
         }
     }
 
-    private interface CommandlineFactory {
-        Commandline createCommandline(File file);
+    private String getLocale(File file) {
+        String locale = file.getName().substring(0, file.getName().lastIndexOf('.'));
+        return LocaleUtils.toLocale(locale).toString();
+    }
+
+    private File getOutputFile(File input, String extension) {
+        String basepath = targetBundle.replace('.', File.separatorChar);
+        return new File(outputDirectory, basepath + "_" + getLocale(input) + extension);
+    }
+
+    interface BundleCompiler {
+        /**
+         * Compiles the po files whose output is not up-to-date and deletes
+         * the output of po files that no longer exist.
+         *
+         * @param files po files, relative to the po directory
+         * @param complete if true, <code>files</code> are all po files and
+         *      the output of other po files compiled by earlier builds is
+         *      deleted
+         */
+        void compile(String[] files, boolean complete, BuildMetrics metrics) throws MojoExecutionException;
 
         /**
-         * @return the output file of this command
+         * @return the output file of this compiler
          */
         File getOutputFile(File input);
     }
 
-    private class MsgFmtCommandlineFactory implements CommandlineFactory {
-        public File getOutputFile(File input) {
-            String locale = getLocale(input);
-            return new File(outputDirectory, targetBundle.replace('.', File.separatorChar) + "_" + locale + ".class");
+    /**
+     * Compiles each po file into its own output file.
+     */
+    private abstract class CatalogCompiler implements BundleCompiler {
+        public void compile(String[] files, boolean complete, BuildMetrics metrics) throws MojoExecutionException {
+            compileCatalogs(this, files, complete, metrics);
+        }
+
+        /**
+         * Compiles a po file into its output file.
+         *
+         * @param metrics records the external processes
+         * @return the number of messages written, or -1 if unknown
+         */
+        abstract int compile(File input, Log log, BuildMetrics metrics) throws Exception;
+    }
+
+    private abstract class CommandlineFactory extends CatalogCompiler {
+        abstract Commandline createCommandline(File file);
+
+        public int compile(File input, Log log, BuildMetrics metrics) throws Exception {
+            TaskRunner.execute(createCommandline(input), log, metrics);
+            return -1;
         }
+    }
 
-        private String getLocale(File file) {
-            String locale = file.getName().substring(0, file.getName().lastIndexOf('.'));
-            return LocaleUtils.toLocale(locale).toString();
+    private class MsgFmtCommandlineFactory extends CommandlineFactory {
+        public File getOutputFile(File input) {
+            // msgfmt writes java source since it is invoked with --source
+            return DistMojo.this.getOutputFile(input, ".java");
         }
 
         public Commandline createCommandline(File file) {
@@ -185,38 +655,192 @@ public class DistMojo extends AbstractGettextMojo {
             cl.createArg().setValue(getLocale(file));
             cl.createArg().setValue("--source");
             cl.createArg().setFile(file);
-            getLog().warn(cl.toString());
             return cl;
         }
     }
 
-    private class MsgCatCommandlineFactory implements CommandlineFactory {
+    /**
+     * Writes a properties file without invoking msgcat.
+     */
+    private class PropertiesCompiler extends CatalogCompiler {
         public File getOutputFile(File input) {
-            String basepath = targetBundle.replace('.', File.separatorChar);
-            String locale = input.getName().substring(0, input.getName().lastIndexOf('.'));
-            locale = LocaleUtils.toLocale(locale).toString();
-            File target = new File(outputDirectory, basepath + "_" + locale + ".properties");
-            return target;
+            return DistMojo.this.getOutputFile(input, ".properties");
         }
 
-        public Commandline createCommandline(File file) {
-            Commandline cl = new Commandline();
+        public int compile(File input, Log log, BuildMetrics metrics) throws Exception {
+            File outputFile = getOutputFile(input);
+            outputFile.getParentFile().mkdirs();
+            int count = PropertiesWriter.convert(input, outputFile);
+            log.debug("Wrote " + count + " messages to " + outputFile);
+            return count;
+        }
+    }
 
-            File outputFile = getOutputFile(file);
-            File parent = outputFile.getParentFile();
-            if (!parent.exists()) {
-                parent.mkdirs();
+    /**
+     * Writes the class file of the resource bundle without invoking msgfmt
+     * and javac, or the bundle and its shards if the messages are split.
+     */
+    private class BytecodeCompiler extends CatalogCompiler {
+        public File getOutputFile(File input) {
+            return DistMojo.this.getOutputFile(input, ".class");
+        }
+
+        public int compile(File input, Log log, BuildMetrics metrics) throws Exception {
+            File outputFile = getOutputFile(input);
+            // shards of a previous build with more shards would be left behind
+            deleteShards(outputFile);
+            if (bundleShards > 1) {
+                return compileShards(input, outputFile, log);
             }
 
-            cl.setExecutable(msgcatCmd);
+            BundleClassGenerator generator = new BundleClassGenerator(targetBundle + "_" + getLocale(input));
+            PoParser parser = new PoParser(input);
+            try {
+                PoEntry entry = new PoEntry();
+                while (parser.next(entry)) {
+                    generator.add(entry);
+                }
+            } finally {
+                parser.close();
+            }
 
-            cl.createArg().setValue("--no-location");
-            cl.createArg().setValue("-p");
-            cl.createArg().setFile(file);
-            cl.createArg().setValue("-o");
-            cl.createArg().setFile(outputFile);
+            byte[] bytes;
+            try {
+                bytes = generator.generate();
+            } catch (IllegalStateException e) {
+                throw new IOException("Could not generate class for " + input.getName() + ": " + e.getMessage());
+            }
 
-            return cl;
+            outputFile.getParentFile().mkdirs();
+            write(outputFile, bytes);
+            log.debug("Wrote " + generator.size() + " messages to " + outputFile);
+            return generator.size();
+        }
+
+        private int compileShards(File input, File outputFile, Log log) throws IOException {
+            ShardedBundleGenerator generator = new ShardedBundleGenerator(targetBundle + "_" + getLocale(input),
+                    bundleShards);
+            PoParser parser = new PoParser(input);
+            try {
+                PoEntry entry = new PoEntry();
+                while (parser.next(entry)) {
+                    generator.add(entry);
+                }
+            } finally {
+                parser.close();
+            }
+
+            outputFile.getParentFile().mkdirs();
+            for (int i = 0; i < generator.getShardCount(); i++) {
+                byte[] bytes;
+                try {
+                    bytes = generator.generateShard(i);
+                } catch (IllegalStateException e) {
+                    throw new IOException("Could not generate shard " + i + " for " + input.getName() + ": "
+                            + e.getMessage());
+                }
+                String name = generator.getShardClassName(i);
+                write(new File(outputFile.getParentFile(), name.substring(name.lastIndexOf('/') + 1) + ".class"),
+                        bytes);
+            }
+            // written last, so it is only up-to-date if all shards were written
+            write(outputFile, generator.generate());
+            log.debug("Wrote " + generator.size() + " messages in " + generator.getShardCount()
+                    + " shards to " + outputFile);
+            return generator.size();
+        }
+    }
+
+    /**
+     * Writes the message table and the class of a {@link TableBundle}.
+     */
+    private class TableCompiler extends CatalogCompiler {
+        public File getOutputFile(File input) {
+            return DistMojo.this.getOutputFile(input, TableBundle.EXTENSION);
+        }
+
+        public int compile(File input, Log log, BuildMetrics metrics) throws Exception {
+            BundleTableGenerator generator = new BundleTableGenerator(targetBundle + "_" + getLocale(input));
+            generator.setParseFormats(parseFormats);
+            PoParser parser = new PoParser(input);
+            try {
+                PoEntry entry = new PoEntry();
+                while (parser.next(entry)) {
+                    generator.add(entry);
+                }
+            } finally {
+                parser.close();
+            }
+
+            byte[] table;
+            byte[] bytes;
+            try {
+                table = generator.generateTable();
+                bytes = generator.generateClass();
+            } catch (IllegalStateException e) {
+                throw new IOException("Could not generate table for " + input.getName() + ": " + e.getMessage());
+            }
+
+            File outputFile = getOutputFile(input);
+            outputFile.getParentFile().mkdirs();
+            write(DistMojo.this.getOutputFile(input, ".class"), bytes);
+            write(outputFile, table);
+            metrics.add("formats", generator.getFormatCount());
+            log.debug("Wrote " + generator.size() + " messages to " + outputFile);
+            return generator.size();
+        }
+    }
+
+    /**
+     * Writes the pool that all locales share and the index and the class of
+     * a {@link PooledBundle} for each locale.
+     */
+    private class PoolCompiler implements BundleCompiler {
+        public void compile(String[] files, boolean complete, BuildMetrics metrics) throws MojoExecutionException {
+            // the pool depends on every po file
+            compilePool(this, scanPoFiles(), metrics);
+        }
+
+        public File getOutputFile(File input) {
+            return DistMojo.this.getOutputFile(input, PooledBundle.EXTENSION);
+        }
+
+        File getPoolFile() {
+            return new File(outputDirectory, targetBundle.replace('.', File.separatorChar)
+                    + PooledBundle.POOL_EXTENSION);
+        }
+    }
+
+    /**
+     * Writes a GNU mo file without invoking msgfmt.
+     */
+    private class MoCompiler extends CatalogCompiler {
+        public File getOutputFile(File input) {
+            return DistMojo.this.getOutputFile(input, ".mo");
+        }
+
+        public int compile(File input, Log log, BuildMetrics metrics) throws Exception {
+            MoGenerator generator = new MoGenerator();
+            PoParser parser = new PoParser(input);
+            try {
+                PoEntry entry = new PoEntry();
+                while (parser.next(entry)) {
+                    generator.add(entry);
+                }
+            } finally {
+                parser.close();
+            }
+
+            File outputFile = getOutputFile(input);
+            outputFile.getParentFile().mkdirs();
+            OutputStream out = new FileOutputStream(outputFile);
+            try {
+                out.write(generator.generate());
+            } finally {
+                out.close();
+            }
+            log.debug("Wrote " + generator.size() + " messages to " + outputFile);
+            return generator.size();
         }
     }
 
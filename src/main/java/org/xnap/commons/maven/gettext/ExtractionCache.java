@@ -0,0 +1,247 @@
+package org.xnap.commons.maven.gettext;
+
+/*
+ * Copyright 2001-2005 The Apache Software Foundation.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Remembers the content hash and the extracted messages of each source file
+ * between builds, so only new and changed files need to be passed to
+ * xgettext.
+ */
+public class ExtractionCache {
+
+    private static final int MAGIC = 0x67747863;
+
+    private static final int VERSION = 1;
+
+    private final String settings;
+    private final Map<String, Record> records = new HashMap<String, Record>();
+    private PoEntry header;
+
+    private static class Record {
+
+        final String hash;
+        final List<PoEntry> entries;
+
+        Record(String hash, List<PoEntry> entries) {
+            this.hash = hash;
+            this.entries = entries;
+        }
+
+    }
+
+    /**
+     * @param settings describes everything besides the content of a file
+     *      that affects extraction, a cache with different settings is
+     *      discarded on load
+     */
+    public ExtractionCache(String settings) {
+        this.settings = settings;
+    }
+
+    /**
+     * Loads the cache from <code>file</code>.
+     *
+     * @return false, if the file did not exist or was written with different
+     *      settings, the cache is empty in that case
+     */
+    public boolean load(File file) throws IOException {
+        records.clear();
+        header = null;
+        if (!file.exists()) {
+            return false;
+        }
+
+        DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+        try {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION || !settings.equals(readString(in))) {
+                return false;
+            }
+            header = in.readBoolean() ? readEntry(in) : null;
+            int fileCount = in.readInt();
+            for (int i = 0; i < fileCount; i++) {
+                String path = readString(in);
+                String hash = readString(in);
+                int entryCount = in.readInt();
+                List<PoEntry> entries = new ArrayList<PoEntry>(entryCount);
+                for (int j = 0; j < entryCount; j++) {
+                    entries.add(readEntry(in));
+                }
+                records.put(path, new Record(hash, entries));
+            }
+            return true;
+        } finally {
+            in.close();
+        }
+    }
+
+    public void save(File file) throws IOException {
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+        try {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            writeString(out, settings);
+            out.writeBoolean(header != null);
+            if (header != null) {
+                writeEntry(out, header);
+            }
+            out.writeInt(records.size());
+            for (Map.Entry<String, Record> record : records.entrySet()) {
+                writeString(out, record.getKey());
+                writeString(out, record.getValue().hash);
+                out.writeInt(record.getValue().entries.size());
+                for (PoEntry entry : record.getValue().entries) {
+                    writeEntry(out, entry);
+                }
+            }
+        } finally {
+            out.close();
+        }
+    }
+
+    /**
+     * @return the header of the last xgettext run, or null
+     */
+    public PoEntry getHeader() {
+        return header;
+    }
+
+    public void setHeader(PoEntry header) {
+        this.header = header;
+    }
+
+    /**
+     * @return the hash <code>path</code> had when it was extracted, or null
+     *      if it is not in the cache
+     */
+    public String getHash(String path) {
+        Record record = records.get(path);
+        return (record != null) ? record.hash : null;
+    }
+
+    public List<PoEntry> getEntries(String path) {
+        Record record = records.get(path);
+        return (record != null) ? record.entries : Collections.<PoEntry>emptyList();
+    }
+
+    public void put(String path, String hash, List<PoEntry> entries) {
+        records.put(path, new Record(hash, entries));
+    }
+
+    /**
+     * Drops all files that are not in <code>paths</code>.
+     *
+     * @return the number of dropped files
+     */
+    public int retainAll(Collection<String> paths) {
+        Set<String> keep = new HashSet<String>(paths);
+        int removed = 0;
+        for (Iterator<String> it = records.keySet().iterator(); it.hasNext();) {
+            if (!keep.contains(it.next())) {
+                it.remove();
+                removed++;
+            }
+        }
+        return removed;
+    }
+
+    private static PoEntry readEntry(DataInputStream in) throws IOException {
+        PoEntry entry = new PoEntry();
+        entry.setMsgctxt(readNullableString(in));
+        entry.setMsgid(readString(in));
+        entry.setMsgidPlural(readNullableString(in));
+        List<String> msgstr = new ArrayList<String>();
+        readList(in, msgstr);
+        for (int i = 0; i < msgstr.size(); i++) {
+            entry.setMsgstr(i, msgstr.get(i));
+        }
+        readList(in, entry.getTranslatorComments());
+        readList(in, entry.getExtractedComments());
+        readList(in, entry.getReferences());
+        readList(in, entry.getFlags());
+        return entry;
+    }
+
+    private static void writeEntry(DataOutputStream out, PoEntry entry) throws IOException {
+        writeNullableString(out, entry.getMsgctxt());
+        writeString(out, entry.getMsgid());
+        writeNullableString(out, entry.getMsgidPlural());
+        writeList(out, entry.getMsgstr());
+        writeList(out, entry.getTranslatorComments());
+        writeList(out, entry.getExtractedComments());
+        writeList(out, entry.getReferences());
+        writeList(out, entry.getFlags());
+    }
+
+    private static void readList(DataInputStream in, List<String> list) throws IOException {
+        int size = in.readInt();
+        for (int i = 0; i < size; i++) {
+            list.add(readString(in));
+        }
+    }
+
+    private static void writeList(DataOutputStream out, List<String> list) throws IOException {
+        out.writeInt(list.size());
+        for (String s : list) {
+            writeString(out, s);
+        }
+    }
+
+    private static String readNullableString(DataInputStream in) throws IOException {
+        return in.readBoolean() ? readString(in) : null;
+    }
+
+    private static void writeNullableString(DataOutputStream out, String s) throws IOException {
+        out.writeBoolean(s != null);
+        if (s != null) {
+            writeString(out, s);
+        }
+    }
+
+    /**
+     * Unlike {@link DataInputStream#readUTF()} not limited to 64 KB.
+     */
+    private static String readString(DataInputStream in) throws IOException {
+        byte[] bytes = new byte[in.readInt()];
+        in.readFully(bytes);
+        return new String(bytes, "UTF-8");
+    }
+
+    private static void writeString(DataOutputStream out, String s) throws IOException {
+        byte[] bytes = s.getBytes("UTF-8");
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+}
@@ -0,0 +1,297 @@
+package org.xnap.commons.maven.gettext;
+
+/*
+ * Copyright 2001-2005 The Apache Software Foundation.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Finds the most similar message for fuzzy matching, like msgmerge does but
+ * without comparing a msgid with every candidate. An index of the character
+ * trigrams of all candidates is built once. A lookup counts the trigrams each
+ * candidate shares with the msgid and computes the exact similarity for the
+ * candidates that share the most only.
+ * <p>
+ * The similarity is the one of GNU gettext's <code>fstrcmp</code>: twice
+ * the length of the longest common subsequence divided by the sum of both
+ * lengths.
+ */
+public class FuzzyMatcher {
+
+    /**
+     * The similarity msgmerge requires for a fuzzy match.
+     */
+    public static final double DEFAULT_THRESHOLD = 0.6;
+
+    /**
+     * The number of candidates with the most shared trigrams whose
+     * similarity is computed.
+     */
+    private static final int MAX_CANDIDATES = 16;
+
+    /**
+     * Trigrams found in more than this fraction of the candidates are only
+     * used if the msgid has no rarer ones, they would make lookups scan most
+     * of the index.
+     */
+    private static final int COMMON_GRAM_DIVISOR = 8;
+
+    private static final char PADDING = '\u0000';
+
+    private final List<PoEntry> candidates;
+    private final Map<Long, Postings> index = new HashMap<Long, Postings>();
+    private final int[] counts;
+    private final int[] touched;
+
+    /**
+     * @param candidates the translated messages of the old catalog
+     */
+    public FuzzyMatcher(List<PoEntry> candidates) {
+        this.candidates = new ArrayList<PoEntry>(candidates);
+        for (int i = 0; i < this.candidates.size(); i++) {
+            for (long gram : grams(this.candidates.get(i).getMsgid())) {
+                Postings postings = index.get(gram);
+                if (postings == null) {
+                    postings = new Postings();
+                    index.put(gram, postings);
+                }
+                postings.add(i);
+            }
+        }
+        counts = new int[this.candidates.size()];
+        touched = new int[this.candidates.size()];
+    }
+
+    /**
+     * @return the candidate whose msgid is most similar to
+     *      <code>msgid</code>, or null if none reaches <code>threshold</code>
+     */
+    public PoEntry findBest(String msgid, double threshold) {
+        if (candidates.isEmpty()) {
+            return null;
+        }
+        long[] grams = grams(msgid);
+        Postings[] lists = new Postings[grams.length];
+        int listCount = 0;
+        for (long gram : grams) {
+            Postings postings = index.get(gram);
+            if (postings != null) {
+                lists[listCount++] = postings;
+            }
+        }
+        Arrays.sort(lists, 0, listCount);
+
+        // count shared trigrams, rare ones first
+        int touchedCount = 0;
+        int common = Math.max(candidates.size() / COMMON_GRAM_DIVISOR, MAX_CANDIDATES);
+        for (int i = 0; i < listCount; i++) {
+            Postings postings = lists[i];
+            if (postings.size > common && touchedCount > 0) {
+                break;
+            }
+            for (int j = 0; j < postings.size; j++) {
+                int candidate = postings.ids[j];
+                if (counts[candidate]++ == 0) {
+                    touched[touchedCount++] = candidate;
+                }
+            }
+        }
+
+        int[] best = selectTop(touchedCount);
+        for (int i = 0; i < touchedCount; i++) {
+            counts[touched[i]] = 0;
+        }
+
+        PoEntry result = null;
+        double resultSimilarity = threshold;
+        Matcher matcher = new Matcher(msgid);
+        for (int candidate : best) {
+            if (candidate < 0) {
+                continue;
+            }
+            String other = candidates.get(candidate).getMsgid();
+            // the similarity cannot exceed this bound
+            int shorter = Math.min(msgid.length(), other.length());
+            if (2.0 * shorter / (msgid.length() + other.length()) < resultSimilarity) {
+                continue;
+            }
+            double similarity = matcher.similarity(other);
+            if (similarity > resultSimilarity || (similarity == resultSimilarity && result == null)) {
+                result = candidates.get(candidate);
+                resultSimilarity = similarity;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @return the touched candidates with the highest counts, -1 for unused
+     *      places
+     */
+    private int[] selectTop(int touchedCount) {
+        int[] top = new int[MAX_CANDIDATES];
+        Arrays.fill(top, -1);
+        for (int i = 0; i < touchedCount; i++) {
+            int candidate = touched[i];
+            int count = counts[candidate];
+            int position = MAX_CANDIDATES;
+            while (position > 0 && (top[position - 1] < 0 || counts[top[position - 1]] < count)) {
+                position--;
+            }
+            if (position < MAX_CANDIDATES) {
+                System.arraycopy(top, position, top, position + 1, MAX_CANDIDATES - position - 1);
+                top[position] = candidate;
+            }
+        }
+        return top;
+    }
+
+    /**
+     * @return the distinct trigrams of <code>s</code>, padded at both ends
+     */
+    static long[] grams(String s) {
+        int length = s.length() + 2;
+        long[] grams = new long[Math.max(length - 2, 1)];
+        for (int i = 0; i < grams.length; i++) {
+            grams[i] = ((long) charAt(s, i - 1) << 32) | ((long) charAt(s, i) << 16) | charAt(s, i + 1);
+        }
+        Arrays.sort(grams);
+        int count = 0;
+        for (int i = 0; i < grams.length; i++) {
+            if (i == 0 || grams[i] != grams[i - 1]) {
+                grams[count++] = grams[i];
+            }
+        }
+        return Arrays.copyOf(grams, count);
+    }
+
+    private static char charAt(String s, int index) {
+        return (index >= 0 && index < s.length()) ? s.charAt(index) : PADDING;
+    }
+
+    /**
+     * @return the similarity of <code>a</code> and <code>b</code> between 0
+     *      and 1
+     */
+    public static double similarity(String a, String b) {
+        return new Matcher(a).similarity(b);
+    }
+
+    /**
+     * Computes the longest common subsequence with one string fixed, using
+     * the bit-parallel algorithm of Hyyro: one pass over the other string,
+     * each step updates a bit vector with word operations.
+     */
+    private static class Matcher {
+
+        private final String s;
+        private final int words;
+        private final long[][] ascii = new long[128][];
+        private final Map<Character, long[]> other = new HashMap<Character, long[]>();
+        private final long[] v;
+
+        Matcher(String s) {
+            this.s = s;
+            words = (s.length() + 63) / 64;
+            for (int i = 0; i < s.length(); i++) {
+                char c = s.charAt(i);
+                long[] mask = mask(c);
+                if (mask == null) {
+                    mask = new long[words];
+                    if (c < 128) {
+                        ascii[c] = mask;
+                    } else {
+                        other.put(c, mask);
+                    }
+                }
+                mask[i >>> 6] |= 1L << i;
+            }
+            v = new long[words];
+        }
+
+        private long[] mask(char c) {
+            return (c < 128) ? ascii[c] : other.get(c);
+        }
+
+        double similarity(String t) {
+            int total = s.length() + t.length();
+            return (total == 0) ? 1.0 : 2.0 * lcs(t) / total;
+        }
+
+        int lcs(String t) {
+            if (words == 0) {
+                return 0;
+            }
+            Arrays.fill(v, -1L);
+            for (int i = 0; i < t.length(); i++) {
+                long[] mask = mask(t.charAt(i));
+                if (mask == null) {
+                    continue;
+                }
+                // v = (v + (v & mask)) | (v & ~mask)
+                long carry = 0;
+                for (int w = 0; w < words; w++) {
+                    long u = v[w] & mask[w];
+                    long sum = v[w] + u;
+                    // unsigned overflow of the addition
+                    long next = ((sum ^ Long.MIN_VALUE) < (v[w] ^ Long.MIN_VALUE)) ? 1 : 0;
+                    sum += carry;
+                    if (carry != 0 && sum == 0) {
+                        next = 1;
+                    }
+                    carry = next;
+                    v[w] = sum | (v[w] & ~mask[w]);
+                }
+            }
+            int ones = 0;
+            for (int w = 0; w < words; w++) {
+                long bits = v[w];
+                if (w == words - 1 && (s.length() & 63) != 0) {
+                    bits |= -1L << (s.length() & 63);
+                }
+                ones += Long.bitCount(bits);
+            }
+            return words * 64 - ones;
+        }
+
+    }
+
+    /**
+     * The candidates that contain a trigram.
+     */
+    private static class Postings implements Comparable<Postings> {
+
+        private int[] ids = new int[4];
+        private int size;
+
+        void add(int id) {
+            if (size == ids.length) {
+                ids = Arrays.copyOf(ids, size * 2);
+            }
+            ids[size++] = id;
+        }
+
+        public int compareTo(Postings o) {
+            return size - o.size;
+        }
+
+    }
+
+}
@@ -16,34 +16,46 @@ package org.xnap.commons.maven.gettext;
  * limitations under the License.
  */
 
+import java.io.BufferedReader;
 import java.io.BufferedWriter;
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
-import java.util.Iterator;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.locks.Lock;
 
 import org.apache.maven.model.FileSet;
 import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.logging.Log;
 import org.apache.maven.plugins.annotations.LifecyclePhase;
 import org.apache.maven.plugins.annotations.Mojo;
 import org.apache.maven.plugins.annotations.Parameter;
 import org.codehaus.plexus.util.DirectoryScanner;
 import org.codehaus.plexus.util.FileUtils;
-import org.codehaus.plexus.util.StringUtils;
 import org.codehaus.plexus.util.cli.CommandLineException;
-import org.codehaus.plexus.util.cli.CommandLineUtils;
 import org.codehaus.plexus.util.cli.Commandline;
-import org.codehaus.plexus.util.cli.StreamConsumer;
 
 /**
  * Invokes xgettext to extract messages from source code and store them in the
  * keys.pot file.
  */
-@Mojo(name = "gettext", defaultPhase = LifecyclePhase.GENERATE_RESOURCES)
+@Mojo(name = "gettext", defaultPhase = LifecyclePhase.GENERATE_RESOURCES, threadSafe = true)
 public class GettextMojo extends AbstractGettextMojo {
 
+    private static final String CREATION_DATE = "\"POT-Creation-Date:";
+
     /**
      * The encoding of the source Java files. utf-8 is a superset of ascii.
      */
@@ -76,41 +88,573 @@ public class GettextMojo extends AbstractGettextMojo {
      *    </excludes>
      * </extraSourceFiles>
      * </pre>
+     * Their references are relative to the source directory, like the ones
+     * of the Java files, e.g. "../../../web/index.jsp:12".
      */
     @Parameter
     protected FileSet extraSourceFiles;
 
+    /**
+     * Only pass new and changed source files to xgettext. The messages of
+     * each file are kept in a cache in the work directory and the keys file
+     * is assembled from the cache.
+     */
+    @Parameter(property = "gettext.incremental", defaultValue = "false")
+    protected boolean incremental;
+
+    /**
+     * The message extractor, "xgettext" or "java". "java" parses the sources
+     * in process and in parallel without the gettext tools, it understands
+     * the same keyword options.
+     */
+    @Parameter(property = "gettext.extractor", defaultValue = "xgettext", required = true)
+    protected String extractor;
+
+    /**
+     * The number of xgettext processes that run at the same time, each on a
+     * share of the source files of about the same size. Their results are
+     * merged into one keys file.
+     */
+    @Parameter(property = "gettext.shards", defaultValue = "1")
+    protected int shards;
+
+    /**
+     * If true, the modification times and matching files of the scanned
+     * directories are kept in the work directory. Directories that have not
+     * changed since the previous build are not listed again.
+     */
+    @Parameter(property = "gettext.scanSnapshot", defaultValue = "false")
+    protected boolean scanSnapshot;
+
+    private BuildMetrics metrics;
+
+    /**
+     * The directory the paths of the source files and the references are
+     * relative to, the source directory or the common parent of the source
+     * directories of the aggregated modules.
+     */
+    private File referenceDirectory;
+
     public void execute() throws MojoExecutionException {
-        getLog().info("Invoking xgettext for Java files in '"
-                + sourceDirectory.getAbsolutePath() + "'.");
+        metrics = createMetrics("gettext");
+        // other modules must not write or read the keys file at the same time
+        Lock lock = CatalogRegistry.getLock(poDirectory).writeLock();
+        long wait = metrics.start();
+        lock.lock();
+        try {
+            metrics.stop("lock", wait);
+            if (aggregate) {
+                Boolean changed = (Boolean) CatalogRegistry.getResult(buildStartTime, "gettext", poDirectory);
+                if (changed != null) {
+                    getLog().info("Messages for '" + poDirectory.getAbsolutePath()
+                            + "' were already extracted in this build.");
+                    setKeysChanged(changed);
+                    return;
+                }
+            }
+            extract();
+            if (aggregate) {
+                CatalogRegistry.putResult(buildStartTime, "gettext", poDirectory, Boolean.TRUE.equals(getKeysChanged()));
+            }
+        } catch (MojoExecutionException e) {
+            metrics.setFailed(true);
+            throw e;
+        } finally {
+            lock.unlock();
+            writeMetrics("gettext", metrics);
+        }
+    }
+
+    private void extract() throws MojoExecutionException {
+        if (!"xgettext".equals(extractor) && !"java".equals(extractor)) {
+            throw new MojoExecutionException("Unknown extractor: " + extractor
+                    + ". Should be 'xgettext' or 'java'.");
+        }
+        List<File> sourceDirectories = Collections.singletonList(sourceDirectory);
+        referenceDirectory = sourceDirectory;
+        if (aggregate) {
+            sourceDirectories = getAggregatedSourceDirectories();
+            // references are relative to the common parent of the modules
+            referenceDirectory = getCommonParent(sourceDirectories);
+            getLog().info("Aggregating " + sourceDirectories.size() + " source directories.");
+        }
+        getLog().info("Invoking " + ("java".equals(extractor) ? "Java extractor" : "xgettext")
+                + " for Java files in '" + referenceDirectory.getAbsolutePath() + "'.");
+
+        long scan = metrics.start();
+        List<String> files = getSourceFiles(sourceDirectories);
+        metrics.stop("scan", scan);
+        metrics.add("files", files.size());
+        File keys = new File(poDirectory, keysFile);
+        if (incremental) {
+            executeIncremental(files, keys);
+            return;
+        }
+        addSourceLengths(files);
+        if ("java".equals(extractor)) {
+            PotCatalog catalog = new PotCatalog(files);
+            catalog.setHeader(PotCatalog.createDefaultHeader());
+            for (List<PoEntry> entries : extractJava(files)) {
+                metrics.add("entries", entries.size());
+                for (PoEntry entry : entries) {
+                    catalog.add(entry);
+                }
+            }
+            writeKeys(catalog, keys);
+            return;
+        }
+
+        File output = createTempFile();
+        try {
+            if (shards > 1 && files.size() > 1) {
+                executeSharded(files, output, false);
+            } else {
+                Commandline cl = createCommandline(output);
+                addFiles(cl, files);
+
+                long start = metrics.start();
+                try {
+                    // a failed run must not be mistaken for a run without messages
+                    TaskRunner.execute(cl, getLog(), metrics);
+                } catch (CommandLineException e) {
+                    throw new MojoExecutionException("Could not execute " + xgettextCmd + ".", e);
+                } finally {
+                    metrics.stop("extract", start);
+                }
+            }
+            updateKeys(output, keys);
+        } finally {
+            output.delete();
+        }
+    }
+
+    /**
+     * Splits <code>files</code> into shards of about the same total size,
+     * runs one xgettext process per shard at the same time and merges the
+     * results into <code>output</code>.
+     *
+     * @param forcePo write the output even if there are no messages
+     */
+    private void executeSharded(List<String> files, File output, boolean forcePo) throws MojoExecutionException {
+        List<List<String>> fileShards = createShards(files, Math.min(shards, files.size()));
+        final List<File> outputs = new ArrayList<File>();
+        TaskRunner runner = new TaskRunner(getLog(), fileShards.size());
+        try {
+            for (int i = 0; i < fileShards.size(); i++) {
+                File shardOutput = createTempFile();
+                outputs.add(shardOutput);
+                final Commandline cl = createCommandline(shardOutput);
+                addFiles(cl, fileShards.get(i));
+                runner.submit("shard " + (i + 1) + " (" + fileShards.get(i).size() + " files)", new TaskRunner.Task() {
+                    public void execute(Log log) throws Exception {
+                        log.debug("Executing: " + cl.toString());
+                        TaskRunner.execute(cl, log, metrics);
+                    }
+                });
+            }
+            long start = metrics.start();
+            try {
+                runner.run("extract messages");
+            } finally {
+                metrics.stop("extract", start);
+            }
+
+            PotCatalog catalog = new PotCatalog(files);
+            catalog.merge(outputs);
+            metrics.add("entries", catalog.size());
+            if (catalog.size() > 0 || forcePo) {
+                if (catalog.getHeader() == null) {
+                    catalog.setHeader(PotCatalog.createDefaultHeader());
+                }
+                catalog.write(output);
+            }
+        } catch (IOException e) {
+            throw new MojoExecutionException("Could not merge the extracted messages", e);
+        } finally {
+            for (File file : outputs) {
+                file.delete();
+            }
+        }
+    }
+
+    /**
+     * Distributes <code>files</code> by size, the largest file first into
+     * the shard with the smallest total. Each shard keeps the original file
+     * order.
+     */
+    private List<List<String>> createShards(List<String> files, int count) {
+        Integer[] order = new Integer[files.size()];
+        final long[] sizes = new long[files.size()];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = i;
+            sizes[i] = resolve(files.get(i)).length();
+        }
+        Arrays.sort(order, new Comparator<Integer>() {
+            public int compare(Integer a, Integer b) {
+                return (sizes[a] != sizes[b]) ? (sizes[a] > sizes[b] ? -1 : 1) : a - b;
+            }
+        });
+
+        long[] totals = new long[count];
+        int[] shardOf = new int[files.size()];
+        for (Integer index : order) {
+            int smallest = 0;
+            for (int i = 1; i < count; i++) {
+                if (totals[i] < totals[smallest]) {
+                    smallest = i;
+                }
+            }
+            totals[smallest] += sizes[index];
+            shardOf[index] = smallest;
+        }
+
+        List<List<String>> result = new ArrayList<List<String>>();
+        for (int i = 0; i < count; i++) {
+            result.add(new ArrayList<String>());
+        }
+        for (int i = 0; i < files.size(); i++) {
+            result.get(shardOf[i]).add(files.get(i));
+        }
+        return result;
+    }
+
+    private void executeIncremental(List<String> files, File keys) throws MojoExecutionException {
+        workDirectory.mkdirs();
+        File cacheFile = new File(workDirectory, "extraction.cache");
+        String settings = extractor + "\n" + xgettextCmd + "\n" + encoding + "\n" + keywords
+                + "\n" + referenceDirectory.getAbsolutePath();
+        ExtractionCache cache = new ExtractionCache(settings);
+        try {
+            if (!cache.load(cacheFile) && cacheFile.exists()) {
+                getLog().info("Extraction settings changed, extracting all files.");
+            }
+        } catch (IOException e) {
+            getLog().warn("Could not read " + cacheFile + ", extracting all files: " + e.getMessage());
+            cache = new ExtractionCache(settings);
+        }
+
+        Map<String, String> hashes = new HashMap<String, String>();
+        List<String> changed = new ArrayList<String>();
+        for (String path : files) {
+            File file = resolve(path);
+            String hash = null;
+            if (file.isFile()) {
+                try {
+                    hash = BuildState.digestContent(file);
+                } catch (IOException e) {
+                    throw new MojoExecutionException("Could not read " + file, e);
+                }
+            }
+            hashes.put(path, hash);
+            if (hash == null || !hash.equals(cache.getHash(path))) {
+                changed.add(path);
+            }
+        }
+        int removed = cache.retainAll(files);
+        metrics.add("cache.hits", files.size() - changed.size());
+        metrics.add("cache.misses", changed.size());
+        addSourceLengths(changed);
+        getLog().info("Extracting messages from " + changed.size() + " of " + files.size()
+                + " files, " + removed + " files removed.");
+
+        if (!changed.isEmpty() && "java".equals(extractor)) {
+            List<List<PoEntry>> entries = extractJava(changed);
+            for (List<PoEntry> list : entries) {
+                metrics.add("entries", list.size());
+            }
+            for (int i = 0; i < changed.size(); i++) {
+                cache.put(changed.get(i), hashes.get(changed.get(i)), entries.get(i));
+            }
+            cache.setHeader(PotCatalog.createDefaultHeader());
+        } else if (!changed.isEmpty()) {
+            extract(changed, hashes, cache);
+        }
+
+        PotCatalog catalog = new PotCatalog(files);
+        catalog.setHeader(cache.getHeader());
+        for (String path : files) {
+            for (PoEntry entry : cache.getEntries(path)) {
+                catalog.add(entry);
+            }
+        }
+        writeKeys(catalog, keys);
+        try {
+            cache.save(cacheFile);
+        } catch (IOException e) {
+            throw new MojoExecutionException("Could not write " + cacheFile, e);
+        }
+    }
+
+    /**
+     * @return the messages of each file in the order of <code>files</code>
+     */
+    private List<List<PoEntry>> extractJava(List<String> files) throws MojoExecutionException {
+        JavaExtractor javaExtractor;
+        try {
+            javaExtractor = new JavaExtractor(JavaExtractor.parseKeywords(keywords));
+        } catch (IllegalArgumentException e) {
+            throw new MojoExecutionException("Invalid keywords: " + e.getMessage(), e);
+        }
+        long start = metrics.start();
+        try {
+            return javaExtractor.extract(referenceDirectory, files, encoding, threads);
+        } catch (IOException e) {
+            throw new MojoExecutionException(e.getMessage(), e);
+        } finally {
+            metrics.stop("extract", start);
+        }
+    }
+
+    private void writeKeys(PotCatalog catalog, File keys) throws MojoExecutionException {
+        File output = createTempFile();
+        try {
+            // xgettext does not write a file without messages either
+            if (catalog.size() > 0) {
+                catalog.write(output);
+            }
+            updateKeys(output, keys);
+        } catch (IOException e) {
+            throw new MojoExecutionException("Could not write " + keys, e);
+        } finally {
+            output.delete();
+        }
+    }
+
+    /**
+     * Replaces <code>keys</code> by <code>output</code> unless they only
+     * differ in the creation date, so the keys file keeps its timestamp if
+     * no message changed. An empty output leaves the keys file untouched,
+     * callers only get here if xgettext exited with 0.
+     */
+    private void updateKeys(File output, File keys) throws MojoExecutionException {
+        try {
+            if (output.length() == 0 || (keys.exists() && isSameTemplate(output, keys))) {
+                getLog().info("Messages have not changed, keeping " + keys + ".");
+                setKeysChanged(false);
+                return;
+            }
+            keys.getParentFile().mkdirs();
+            keys.delete();
+            if (!output.renameTo(keys)) {
+                FileUtils.copyFile(output, keys);
+            }
+            metrics.addLength("bytes.written", keys);
+            setKeysChanged(true);
+        } catch (IOException e) {
+            throw new MojoExecutionException("Could not update " + keys, e);
+        }
+    }
 
+    /**
+     * @return true, if both files are equal except for the POT-Creation-Date
+     *      header field
+     */
+    private static boolean isSameTemplate(File a, File b) throws IOException {
+        BufferedReader readerA = new BufferedReader(new InputStreamReader(new FileInputStream(a), "ISO-8859-1"));
+        try {
+            BufferedReader readerB = new BufferedReader(new InputStreamReader(new FileInputStream(b), "ISO-8859-1"));
+            try {
+                while (true) {
+                    String lineA = readerA.readLine();
+                    String lineB = readerB.readLine();
+                    if (lineA == null || lineB == null) {
+                        return lineA == lineB;
+                    }
+                    if (!lineA.equals(lineB)
+                            && !(lineA.startsWith(CREATION_DATE) && lineB.startsWith(CREATION_DATE))) {
+                        return false;
+                    }
+                }
+            } finally {
+                readerB.close();
+            }
+        } finally {
+            readerA.close();
+        }
+    }
+
+    /**
+     * Counts the size of the source files that are extracted.
+     */
+    private void addSourceLengths(List<String> files) {
+        for (String path : files) {
+            metrics.addLength("bytes.read", resolve(path));
+        }
+    }
+
+    /**
+     * @param path a path returned by {@link #getSourceFiles(List)}
+     */
+    private File resolve(String path) {
+        File file = new File(path);
+        return file.isAbsolute() ? file : new File(referenceDirectory, path);
+    }
+
+    private File createTempFile() throws MojoExecutionException {
+        workDirectory.mkdirs();
+        try {
+            return File.createTempFile("keys", ".pot", workDirectory);
+        } catch (IOException e) {
+            throw new MojoExecutionException("Could not create temporary file", e);
+        }
+    }
+
+    /**
+     * Runs xgettext on <code>changed</code> and stores the messages of each
+     * file in <code>cache</code>. Messages found in several files are split
+     * by their references. The flags and comments of such a message belong
+     * to all of its files, so files that share a message with flags or
+     * comments are extracted again in batches of files that share none.
+     */
+    private void extract(List<String> changed, Map<String, String> hashes, ExtractionCache cache)
+            throws MojoExecutionException {
+        File output = createTempFile();
+        try {
+            executeForcePo(changed, output);
+            Map<String, Set<String>> shared = new LinkedHashMap<String, Set<String>>();
+            Map<String, List<PoEntry>> entriesByFile = split(output, changed, cache, shared);
+            List<List<String>> batches = createBatches(shared);
+            if (!batches.isEmpty()) {
+                getLog().debug("Extracting " + shared.size() + " files with shared messages again in "
+                        + batches.size() + " batches");
+            }
+            for (List<String> batch : batches) {
+                executeForcePo(batch, output);
+                entriesByFile.putAll(split(output, batch, cache, null));
+            }
+
+            for (String path : changed) {
+                cache.put(path, hashes.get(path), entriesByFile.get(path));
+            }
+        } catch (IOException e) {
+            throw new MojoExecutionException("Could not read " + output, e);
+        } finally {
+            output.delete();
+        }
+    }
+
+    /**
+     * Runs xgettext on <code>files</code>, the output always has a header.
+     */
+    private void executeForcePo(List<String> files, File output) throws MojoExecutionException {
+        if (shards > 1 && files.size() > 1) {
+            executeSharded(files, output, true);
+            return;
+        }
+        Commandline cl = createCommandline(output);
+        // always get a header, even if the files have no messages
+        cl.createArg().setValue("--force-po");
+        addFiles(cl, files);
+        getLog().debug("Executing: " + cl.toString());
+        long start = metrics.start();
+        try {
+            TaskRunner.execute(cl, getLog(), metrics);
+        } catch (CommandLineException e) {
+            throw new MojoExecutionException("Could not execute " + xgettextCmd + ".", e);
+        } finally {
+            metrics.stop("extract", start);
+        }
+    }
+
+    /**
+     * Splits the messages of the xgettext output by the file of their
+     * references.
+     *
+     * @param shared receives the keys of the messages with flags or comments
+     *      that each file shares with other files, or null if they are
+     *      not needed; only the messages of this output are counted then
+     * @return the messages of each of <code>files</code>
+     */
+    private Map<String, List<PoEntry>> split(File output, List<String> files, ExtractionCache cache,
+            Map<String, Set<String>> shared) throws IOException {
+        Map<String, List<PoEntry>> entriesByFile = new HashMap<String, List<PoEntry>>();
+        for (String path : files) {
+            entriesByFile.put(path, new ArrayList<PoEntry>());
+        }
+        PoParser parser = new PoParser(output);
+        try {
+            PoEntry entry;
+            while ((entry = parser.next()) != null) {
+                if (entry.isHeader()) {
+                    cache.setHeader(entry);
+                    continue;
+                }
+                if (shared != null) {
+                    metrics.add("entries", 1);
+                }
+                Map<String, PoEntry> split = new LinkedHashMap<String, PoEntry>();
+                for (String reference : entry.getReferences()) {
+                    String path = PotCatalog.getFile(reference);
+                    PoEntry part = split.get(path);
+                    if (part == null) {
+                        part = entry.copy();
+                        part.getReferences().clear();
+                        split.put(path, part);
+                    }
+                    part.getReferences().add(reference);
+                }
+                boolean ambiguous = split.size() > 1
+                        && (!entry.getFlags().isEmpty() || !entry.getExtractedComments().isEmpty());
+                for (Map.Entry<String, PoEntry> part : split.entrySet()) {
+                    List<PoEntry> entries = entriesByFile.get(part.getKey());
+                    if (entries != null) {
+                        entries.add(part.getValue());
+                        if (ambiguous && shared != null) {
+                            Set<String> keys = shared.get(part.getKey());
+                            if (keys == null) {
+                                keys = new HashSet<String>();
+                                shared.put(part.getKey(), keys);
+                            }
+                            keys.add(entry.getKey());
+                        }
+                    }
+                }
+            }
+        } finally {
+            parser.close();
+        }
+        return entriesByFile;
+    }
+
+    /**
+     * Puts the files into as few batches as it can, so no two files of a
+     * batch share a message.
+     *
+     * @param keysByFile the keys of the messages each file shares
+     */
+    static List<List<String>> createBatches(Map<String, Set<String>> keysByFile) {
+        List<List<String>> batches = new ArrayList<List<String>>();
+        List<Set<String>> batchKeys = new ArrayList<Set<String>>();
+        for (Map.Entry<String, Set<String>> file : keysByFile.entrySet()) {
+            int i = 0;
+            while (i < batches.size() && !Collections.disjoint(batchKeys.get(i), file.getValue())) {
+                i++;
+            }
+            if (i == batches.size()) {
+                batches.add(new ArrayList<String>());
+                batchKeys.add(new HashSet<String>());
+            }
+            batches.get(i).add(file.getKey());
+            batchKeys.get(i).addAll(file.getValue());
+        }
+        return batches;
+    }
+
+    private Commandline createCommandline(File output) {
         Commandline cl = new Commandline();
         cl.setExecutable(xgettextCmd);
         cl.createArg().setValue("--from-code=" + encoding);
-        cl.createArg().setValue("--output=" + new File(poDirectory, keysFile).getAbsolutePath());
+        cl.createArg().setValue("--output=" + output.getAbsolutePath());
         cl.createArg().setValue("--language=Java");
         cl.createArg().setValue("--sort-output");
         //cl.createArg().setValue("--join-existing");
         cl.createArg().setLine(keywords);
-        cl.setWorkingDirectory(sourceDirectory.getAbsolutePath());
-
-        DirectoryScanner ds = new DirectoryScanner();
-        ds.setBasedir(sourceDirectory);
-        ds.setIncludes(new String[]{"**/*.java"});
-        ds.scan();
-        String[] files = ds.getIncludedFiles();
-        List<String> fileNameList = Collections.emptyList();
-        if (extraSourceFiles != null && extraSourceFiles.getDirectory() != null) {
-            try {
-                fileNameList = FileUtils.getFileNames(new File(extraSourceFiles.getDirectory()),
-                        StringUtils.join(extraSourceFiles.getIncludes().iterator(), ","),
-                        StringUtils.join(extraSourceFiles.getExcludes().iterator(), ","), false);
-            } catch (IOException e) {
-                throw new MojoExecutionException("error finding extra source files", e);
-            }
-        }
+        cl.setWorkingDirectory(referenceDirectory.getAbsolutePath());
+        return cl;
+    }
 
-        File file = createListFile(files, fileNameList);
+    private void addFiles(Commandline cl, List<String> files) {
+        File file = createListFile(files);
         if (file != null) {
             cl.createArg().setValue("--files-from=" + file.getAbsolutePath());
         } else {
@@ -118,18 +662,107 @@ public class GettextMojo extends AbstractGettextMojo {
                 cl.createArg().setValue(getAbsolutePath(file1));
             }
         }
+    }
 
-        getLog().debug("Executing: " + cl.toString());
-        StreamConsumer out = new LoggerStreamConsumer(getLog(), LoggerStreamConsumer.INFO);
-        StreamConsumer err = new LoggerStreamConsumer(getLog(), LoggerStreamConsumer.WARN);
+    /**
+     * @param sourceDirectories the source directory, or the source
+     *      directories of all aggregated modules
+     * @return the files to extract messages from, relative to the
+     *      reference directory and in the order they are passed to xgettext
+     */
+    private List<String> getSourceFiles(List<File> sourceDirectories) throws MojoExecutionException {
+        List<String> files = new ArrayList<String>();
+        SourceScanner scanner = new SourceScanner(Collections.singletonList("**/*.java"),
+                Collections.<String>emptyList());
+        List<List<String>> found = scan(scanner, sourceDirectories, "sources");
+        for (int i = 0; i < sourceDirectories.size(); i++) {
+            String prefix = sourceDirectories.get(i).getAbsolutePath()
+                    .substring(referenceDirectory.getAbsolutePath().length());
+            prefix = (prefix.length() > 0) ? toUnixPath(prefix.substring(1)) + "/" : "";
+            for (String file : found.get(i)) {
+                files.add(prefix + file);
+            }
+        }
+        if (extraSourceFiles != null && extraSourceFiles.getDirectory() != null) {
+            // the default excludes skip version control directories
+            List<String> excludes = new ArrayList<String>(extraSourceFiles.getExcludes());
+            excludes.addAll(Arrays.asList(DirectoryScanner.DEFAULTEXCLUDES));
+            scanner = new SourceScanner(extraSourceFiles.getIncludes(), excludes);
+            File directory = new File(extraSourceFiles.getDirectory());
+            for (String file : scan(scanner, Collections.singletonList(directory), "extra").get(0)) {
+                // the extra directory is usually outside of the source directory
+                files.add(getRelativePath(referenceDirectory, new File(directory, file)));
+            }
+        }
+        return files;
+    }
+
+    /**
+     * @return the path of <code>file</code> relative to
+     *      <code>directory</code>, with ".." for each level above it, or the
+     *      absolute path if they are on different roots
+     */
+    private String getRelativePath(File directory, File file) {
+        Path base = directory.toPath().toAbsolutePath().normalize();
+        Path path = file.toPath().toAbsolutePath().normalize();
+        if (base.getRoot() == null || !base.getRoot().equals(path.getRoot())) {
+            return path.toString();
+        }
+        return toUnixPath(base.relativize(path).toString());
+    }
+
+    private List<List<String>> scan(SourceScanner scanner, List<File> directories, String name)
+            throws MojoExecutionException {
+        File snapshot = new File(workDirectory, "scan-" + name + ".snapshot");
+        if (scanSnapshot) {
+            try {
+                scanner.loadSnapshot(snapshot);
+            } catch (IOException e) {
+                getLog().warn("Could not read scan snapshot, scanning all directories: " + e.getMessage());
+            }
+        }
+        List<List<String>> files;
         try {
-            CommandLineUtils.executeCommandLine(cl, out, err);
-        } catch (CommandLineException e) {
-            throw new MojoExecutionException("Could not execute " + xgettextCmd + ".", e);
+            files = scanner.scan(directories, (threads > 0) ? threads : Runtime.getRuntime().availableProcessors());
+        } catch (IOException e) {
+            throw new MojoExecutionException("Could not scan " + directories, e);
+        }
+        metrics.add("scan.directories", scanner.getListedDirectories());
+        metrics.add("scan.reused", scanner.getReusedDirectories());
+        if (scanSnapshot) {
+            try {
+                scanner.saveSnapshot(snapshot);
+            } catch (IOException e) {
+                getLog().warn("Could not write scan snapshot: " + e.getMessage());
+            }
         }
+        return files;
     }
 
-    private File createListFile(String[] files, List<String> fileList) {
+    /**
+     * @return the deepest directory that contains all of
+     *      <code>directories</code>
+     */
+    private static File getCommonParent(List<File> directories) {
+        File parent = directories.get(0);
+        for (File directory : directories) {
+            while (!isAncestor(parent, directory)) {
+                parent = parent.getParentFile();
+            }
+        }
+        return parent;
+    }
+
+    private static boolean isAncestor(File parent, File file) {
+        for (; file != null; file = file.getParentFile()) {
+            if (file.equals(parent)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private File createListFile(List<String> files) {
         try {
             File listFile = File.createTempFile("maven", null);
             listFile.deleteOnExit();
@@ -137,11 +770,7 @@ public class GettextMojo extends AbstractGettextMojo {
             BufferedWriter writer = new BufferedWriter(new FileWriter(listFile));
             try {
                 for (String file : files) {
-                    writer.write(toUnixPath(file));
-                    writer.newLine();
-                }
-                for (String file : fileList) {
-                    writer.write(toUnixPath(file));
+                    writer.write(file);
                     writer.newLine();
                 }
             } finally {
@@ -156,7 +785,10 @@ public class GettextMojo extends AbstractGettextMojo {
     }
 
     private String getAbsolutePath(String path) {
-        return sourceDirectory.getAbsolutePath() + File.separator + path;
+        if (new File(path).isAbsolute()) {
+            return path;
+        }
+        return referenceDirectory.getAbsolutePath() + File.separator + path;
     }
 
     private String toUnixPath(String path) {
@@ -0,0 +1,553 @@
+package org.xnap.commons.maven.gettext;
+
+/*
+ * Copyright 2001-2005 The Apache Software Foundation.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import org.codehaus.plexus.util.FileUtils;
+
+/**
+ * Extracts messages from Java sources without invoking xgettext. Keywords
+ * use the xgettext syntax <code>name[:argnum[c],...[,totalt]]</code>, calls
+ * are recognized if the arguments that make up the message are string
+ * literals or concatenations of string literals.
+ * <p>
+ * Like xgettext the extractor knows the default Java keywords, a bare
+ * <code>-k</code> disables them. Messages that are a valid
+ * <code>MessageFormat</code> pattern with at least one argument are flagged
+ * java-format.
+ */
+public class JavaExtractor {
+
+    private static final String[] DEFAULT_KEYWORDS = {
+            "GettextResource.gettext:2", "GettextResource.ngettext:2,3",
+            "GettextResource.pgettext:2c,3", "GettextResource.npgettext:2c,3,4",
+            "gettext", "ngettext:1,2", "pgettext:1c,2", "npgettext:1c,2,3", "getString"
+    };
+
+    /**
+     * Files per fork-join leaf task.
+     */
+    private static final int FILES_PER_TASK = 8;
+
+    private static final int IDENTIFIER = 0;
+    private static final int STRING = 1;
+    private static final int OPERATOR = 2;
+
+    /**
+     * A method name and the positions of the message arguments.
+     */
+    public static class Keyword {
+
+        private final String qualifier;
+        private final String name;
+        private int msgidArg = 1;
+        private int pluralArg;
+        private int contextArg;
+        private int totalArgs;
+
+        /**
+         * @throws IllegalArgumentException if <code>spec</code> is not a valid
+         *      xgettext keyword specification
+         */
+        public Keyword(String spec) {
+            String name = spec;
+            int colon = spec.lastIndexOf(':');
+            if (colon != -1 && isArgumentSpec(spec.substring(colon + 1))) {
+                name = spec.substring(0, colon);
+                msgidArg = 0;
+                for (String arg : spec.substring(colon + 1).split(",")) {
+                    if (arg.startsWith("\"")) {
+                        // automatic comment, not supported
+                    } else if (arg.endsWith("c")) {
+                        contextArg = Integer.parseInt(arg.substring(0, arg.length() - 1));
+                    } else if (arg.endsWith("t")) {
+                        totalArgs = Integer.parseInt(arg.substring(0, arg.length() - 1));
+                    } else if (msgidArg == 0) {
+                        msgidArg = Integer.parseInt(arg);
+                    } else {
+                        pluralArg = Integer.parseInt(arg);
+                    }
+                }
+                if (msgidArg == 0) {
+                    throw new IllegalArgumentException("Keyword without msgid argument: " + spec);
+                }
+            }
+            int dot = name.lastIndexOf('.');
+            this.qualifier = (dot != -1) ? name.substring(0, dot) : null;
+            this.name = name.substring(dot + 1);
+        }
+
+        private static boolean isArgumentSpec(String s) {
+            return s.matches("(\\d+[ct]?|\"[^\"]*\")(,(\\d+[ct]?|\"[^\"]*\"))*");
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        int getArgumentCount() {
+            return Math.max(msgidArg, Math.max(pluralArg, contextArg));
+        }
+
+    }
+
+    private static class Token {
+
+        final int type;
+        final String text;
+        final int line;
+
+        Token(int type, String text, int line) {
+            this.type = type;
+            this.text = text;
+            this.line = line;
+        }
+
+        boolean is(String operator) {
+            return type == OPERATOR && text.equals(operator);
+        }
+
+    }
+
+    private final List<Keyword> keywords;
+
+    public JavaExtractor(List<Keyword> keywords) {
+        this.keywords = keywords;
+    }
+
+    /**
+     * Parses xgettext keyword options such as <code>-k_ -ktrc:1c,2</code>
+     * or <code>--keyword=tr</code>.
+     *
+     * @throws IllegalArgumentException if an option is not a keyword option
+     */
+    public static List<Keyword> parseKeywords(String options) {
+        List<Keyword> keywords = new ArrayList<Keyword>();
+        boolean defaults = true;
+        for (String option : options.trim().split("\\s+")) {
+            String spec;
+            if (option.length() == 0) {
+                continue;
+            } else if (option.startsWith("--keyword")) {
+                spec = option.startsWith("--keyword=") ? option.substring("--keyword=".length()) : "";
+            } else if (option.startsWith("-k")) {
+                spec = option.substring(2);
+            } else {
+                throw new IllegalArgumentException("Not a keyword option: " + option);
+            }
+            if (spec.length() == 0) {
+                defaults = false;
+            } else {
+                keywords.add(new Keyword(spec));
+            }
+        }
+        if (defaults) {
+            for (String spec : DEFAULT_KEYWORDS) {
+                keywords.add(new Keyword(spec));
+            }
+        }
+        return keywords;
+    }
+
+    /**
+     * Extracts the messages of <code>files</code> in parallel.
+     *
+     * @param files paths relative to <code>baseDirectory</code>, or
+     *      absolute paths, used as the file name in references
+     * @param threads the parallelism of the fork-join pool, <code>0</code>
+     *      uses one thread per available processor
+     * @return the messages of each file in the order of <code>files</code>,
+     *      one entry per occurrence
+     */
+    public List<List<PoEntry>> extract(final File baseDirectory, final List<String> files,
+            final String encoding, int threads) throws IOException {
+        final List<List<PoEntry>> results = new ArrayList<List<PoEntry>>(
+                Collections.<List<PoEntry>>nCopies(files.size(), null));
+
+        class ExtractTask extends RecursiveAction {
+
+            private static final long serialVersionUID = 1L;
+
+            private final int start;
+            private final int end;
+
+            ExtractTask(int start, int end) {
+                this.start = start;
+                this.end = end;
+            }
+
+            protected void compute() {
+                if (end - start > FILES_PER_TASK) {
+                    int middle = (start + end) >>> 1;
+                    invokeAll(new ExtractTask(start, middle), new ExtractTask(middle, end));
+                    return;
+                }
+                for (int i = start; i < end; i++) {
+                    String path = files.get(i);
+                    try {
+                        File file = new File(path);
+                        if (!file.isAbsolute()) {
+                            file = new File(baseDirectory, path);
+                        }
+                        String content = FileUtils.fileRead(file, encoding);
+                        results.set(i, extract(path, content));
+                    } catch (IOException e) {
+                        throw new ExtractionException(path, e);
+                    }
+                }
+            }
+
+        }
+
+        ForkJoinPool pool = (threads > 0) ? new ForkJoinPool(threads) : new ForkJoinPool();
+        try {
+            pool.invoke(new ExtractTask(0, files.size()));
+        } catch (ExtractionException e) {
+            IOException cause = (IOException) e.getCause();
+            throw new IOException("Could not read " + e.getMessage() + ": " + cause.getMessage(), cause);
+        } finally {
+            pool.shutdown();
+        }
+        return results;
+    }
+
+    private static class ExtractionException extends RuntimeException {
+
+        private static final long serialVersionUID = 1L;
+
+        ExtractionException(String path, IOException cause) {
+            super(path, cause);
+        }
+
+    }
+
+    /**
+     * @param path the file name for references
+     * @return the messages of <code>content</code>, one entry per occurrence
+     *      in source order
+     */
+    public List<PoEntry> extract(String path, String content) {
+        List<Token> tokens = tokenize(content);
+        List<PoEntry> entries = new ArrayList<PoEntry>();
+        for (int i = 0; i + 1 < tokens.size(); i++) {
+            Token token = tokens.get(i);
+            if (token.type != IDENTIFIER || !tokens.get(i + 1).is("(")) {
+                continue;
+            }
+            String qualifier = (i >= 2 && tokens.get(i - 1).is(".") && tokens.get(i - 2).type == IDENTIFIER)
+                    ? tokens.get(i - 2).text : null;
+            List<List<Token>> arguments = null;
+            for (Keyword keyword : keywords) {
+                if (!keyword.name.equals(token.text)
+                        || (keyword.qualifier != null && !keyword.qualifier.equals(qualifier))) {
+                    continue;
+                }
+                if (arguments == null) {
+                    arguments = parseArguments(tokens, i + 2);
+                }
+                PoEntry entry = createEntry(keyword, arguments, path);
+                if (entry != null) {
+                    entries.add(entry);
+                    break;
+                }
+            }
+        }
+        return entries;
+    }
+
+    private PoEntry createEntry(Keyword keyword, List<List<Token>> arguments, String path) {
+        if (arguments.size() < keyword.getArgumentCount()
+                || (keyword.totalArgs > 0 && arguments.size() != keyword.totalArgs)) {
+            return null;
+        }
+        Token msgid = concatenate(arguments.get(keyword.msgidArg - 1));
+        if (msgid == null || msgid.text.length() == 0) {
+            return null;
+        }
+        PoEntry entry = new PoEntry();
+        entry.setMsgid(msgid.text);
+        if (keyword.contextArg > 0) {
+            Token context = concatenate(arguments.get(keyword.contextArg - 1));
+            if (context == null) {
+                return null;
+            }
+            entry.setMsgctxt(context.text);
+        }
+        if (keyword.pluralArg > 0) {
+            Token plural = concatenate(arguments.get(keyword.pluralArg - 1));
+            if (plural != null) {
+                entry.setMsgidPlural(plural.text);
+            }
+        }
+        entry.getReferences().add(path + ":" + msgid.line);
+        if (isJavaFormat(entry.getMsgid())
+                || (entry.getMsgidPlural() != null && isJavaFormat(entry.getMsgidPlural()))) {
+            entry.getFlags().add("java-format");
+        }
+        return entry;
+    }
+
+    /**
+     * @return the arguments of the call whose first argument starts at
+     *      <code>start</code>, split at top level commas
+     */
+    private static List<List<Token>> parseArguments(List<Token> tokens, int start) {
+        List<List<Token>> arguments = new ArrayList<List<Token>>();
+        List<Token> current = new ArrayList<Token>();
+        int depth = 0;
+        for (int i = start; i < tokens.size(); i++) {
+            Token token = tokens.get(i);
+            if (token.is("(") || token.is("[") || token.is("{")) {
+                depth++;
+            } else if (token.is(")") || token.is("]") || token.is("}")) {
+                if (depth == 0) {
+                    if (!current.isEmpty() || !arguments.isEmpty()) {
+                        arguments.add(current);
+                    }
+                    return arguments;
+                }
+                depth--;
+            } else if (depth == 0 && token.is(",")) {
+                arguments.add(current);
+                current = new ArrayList<Token>();
+                continue;
+            } else if (depth == 0 && token.is(";")) {
+                break;
+            }
+            current.add(token);
+        }
+        // unterminated call
+        return Collections.emptyList();
+    }
+
+    /**
+     * @return the value of an argument that consists of string literals
+     *      joined by "+" and the line of the first literal, or null
+     */
+    private static Token concatenate(List<Token> argument) {
+        if (argument.isEmpty() || argument.size() % 2 == 0) {
+            return null;
+        }
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < argument.size(); i++) {
+            Token token = argument.get(i);
+            if (i % 2 == 0 ? token.type != STRING : !token.is("+")) {
+                return null;
+            }
+            if (i % 2 == 0) {
+                sb.append(token.text);
+            }
+        }
+        return new Token(STRING, sb.toString(), argument.get(0).line);
+    }
+
+    private static List<Token> tokenize(String s) {
+        List<Token> tokens = new ArrayList<Token>();
+        int line = 1;
+        int i = 0;
+        int length = s.length();
+        while (i < length) {
+            char c = s.charAt(i);
+            if (c == '\n') {
+                line++;
+                i++;
+            } else if (Character.isWhitespace(c)) {
+                i++;
+            } else if (c == '/' && i + 1 < length && s.charAt(i + 1) == '/') {
+                while (i < length && s.charAt(i) != '\n') {
+                    i++;
+                }
+            } else if (c == '/' && i + 1 < length && s.charAt(i + 1) == '*') {
+                int end = s.indexOf("*/", i + 2);
+                end = (end == -1) ? length : end + 2;
+                line += countLines(s, i, end);
+                i = end;
+            } else if (c == '"' || c == '\'') {
+                int startLine = line;
+                StringBuilder sb = new StringBuilder();
+                i++;
+                while (i < length && s.charAt(i) != c && s.charAt(i) != '\n') {
+                    if (s.charAt(i) == '\\' && i + 1 < length) {
+                        i = unescape(s, i, sb);
+                    } else {
+                        sb.append(s.charAt(i++));
+                    }
+                }
+                i++;
+                if (c == '"') {
+                    tokens.add(new Token(STRING, sb.toString(), startLine));
+                } else {
+                    tokens.add(new Token(OPERATOR, "'", startLine));
+                }
+            } else if (Character.isJavaIdentifierStart(c)) {
+                int start = i;
+                while (i < length && Character.isJavaIdentifierPart(s.charAt(i))) {
+                    i++;
+                }
+                tokens.add(new Token(IDENTIFIER, s.substring(start, i), line));
+            } else if (Character.isDigit(c)) {
+                while (i < length && (Character.isLetterOrDigit(s.charAt(i)) || s.charAt(i) == '.'
+                        || s.charAt(i) == '_')) {
+                    i++;
+                }
+                tokens.add(new Token(OPERATOR, "0", line));
+            } else {
+                tokens.add(new Token(OPERATOR, String.valueOf(c), line));
+                i++;
+            }
+        }
+        return tokens;
+    }
+
+    private static int countLines(String s, int start, int end) {
+        int count = 0;
+        for (int i = start; i < end; i++) {
+            if (s.charAt(i) == '\n') {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Appends the character of the escape sequence at <code>i</code>.
+     *
+     * @return the index after the escape sequence
+     */
+    private static int unescape(String s, int i, StringBuilder sb) {
+        char c = s.charAt(i + 1);
+        switch (c) {
+        case 'b': sb.append('\b'); return i + 2;
+        case 't': sb.append('\t'); return i + 2;
+        case 'n': sb.append('\n'); return i + 2;
+        case 'f': sb.append('\f'); return i + 2;
+        case 'r': sb.append('\r'); return i + 2;
+        case 's': sb.append(' '); return i + 2;
+        case 'u':
+            int j = i + 1;
+            while (j < s.length() && s.charAt(j) == 'u') {
+                j++;
+            }
+            if (j + 4 <= s.length()) {
+                try {
+                    sb.append((char) Integer.parseInt(s.substring(j, j + 4), 16));
+                    return j + 4;
+                } catch (NumberFormatException e) {
+                    // not an escape, keep the text
+                }
+            }
+            sb.append('\\');
+            return i + 1;
+        default:
+            if (c >= '0' && c <= '7') {
+                // up to three octal digits, at most \377
+                int end = i + 1;
+                int max = (c <= '3') ? 3 : 2;
+                while (end < s.length() && end - i - 1 < max && s.charAt(end) >= '0' && s.charAt(end) <= '7') {
+                    end++;
+                }
+                sb.append((char) Integer.parseInt(s.substring(i + 1, end), 8));
+                return end;
+            }
+            sb.append(c);
+            return i + 2;
+        }
+    }
+
+    /**
+     * @return true, if <code>s</code> is a valid <code>MessageFormat</code>
+     *      pattern with at least one format element
+     */
+    static boolean isJavaFormat(String s) {
+        int elements = 0;
+        int i = 0;
+        while (i < s.length()) {
+            char c = s.charAt(i);
+            if (c == '\'') {
+                if (i + 1 < s.length() && s.charAt(i + 1) == '\'') {
+                    i += 2;
+                    continue;
+                }
+                int end = s.indexOf('\'', i + 1);
+                if (end == -1) {
+                    return false;
+                }
+                i = end + 1;
+            } else if (c == '{') {
+                int end = findElementEnd(s, i + 1);
+                if (end == -1 || !isFormatElement(s.substring(i + 1, end))) {
+                    return false;
+                }
+                elements++;
+                i = end + 1;
+            } else {
+                i++;
+            }
+        }
+        return elements > 0;
+    }
+
+    /**
+     * @return the index of the brace that closes the element starting at
+     *      <code>start</code>, or -1
+     */
+    private static int findElementEnd(String s, int start) {
+        int depth = 0;
+        boolean quoted = false;
+        for (int i = start; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c == '\'') {
+                quoted = !quoted;
+            } else if (!quoted && c == '{') {
+                depth++;
+            } else if (!quoted && c == '}') {
+                if (depth == 0) {
+                    return i;
+                }
+                depth--;
+            }
+        }
+        return -1;
+    }
+
+    private static boolean isFormatElement(String element) {
+        String[] parts = element.split(",", 3);
+        String index = parts[0].trim();
+        if (index.length() == 0) {
+            return false;
+        }
+        for (int i = 0; i < index.length(); i++) {
+            if (!Character.isDigit(index.charAt(i))) {
+                return false;
+            }
+        }
+        if (parts.length > 1) {
+            String type = parts[1].trim();
+            return type.equals("number") || type.equals("date") || type.equals("time")
+                    || type.equals("choice");
+        }
+        return true;
+    }
+
+}
@@ -17,24 +17,28 @@ package org.xnap.commons.maven.gettext;
  */
 
 import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.locks.Lock;
 
 import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.logging.Log;
 import org.apache.maven.plugins.annotations.Execute;
 import org.apache.maven.plugins.annotations.LifecyclePhase;
 import org.apache.maven.plugins.annotations.Mojo;
 import org.apache.maven.plugins.annotations.Parameter;
 import org.codehaus.plexus.util.DirectoryScanner;
-import org.codehaus.plexus.util.cli.CommandLineException;
-import org.codehaus.plexus.util.cli.CommandLineUtils;
 import org.codehaus.plexus.util.cli.Commandline;
-import org.codehaus.plexus.util.cli.StreamConsumer;
 
 /**
- * Invokes the gettext:gettext goal and invokes msgmerge to update po files.
+ * Invokes the gettext:gettext goal and invokes msgmerge, or merges in the
+ * build process, to update po files.
  *
  * @author Tammo van Lessen
  */
-@Mojo(name = "merge", defaultPhase = LifecyclePhase.GENERATE_RESOURCES)
+@Mojo(name = "merge", defaultPhase = LifecyclePhase.GENERATE_RESOURCES, threadSafe = true)
 @Execute(goal = "gettext")
 public class MergeMojo extends AbstractGettextMojo {
 
@@ -44,33 +48,245 @@ public class MergeMojo extends AbstractGettextMojo {
     @Parameter(defaultValue = "msgmerge")
     protected String msgmergeCmd;
 
+    /**
+     * How po files are merged: "msgmerge" invokes <code>msgmergeCmd</code>,
+     * "java" merges them in the build process with the same result. The
+     * Java merger parses the keys file once for all po files and finds fuzzy
+     * matches through an index instead of comparing every message, which is
+     * much faster for large catalogs.
+     */
+    @Parameter(property = "gettext.merger", defaultValue = "msgmerge")
+    protected String merger;
+
+    /**
+     * How translations are matched to messages: "fuzzy" uses the translation
+     * of a similar message if there is no exact match and marks it fuzzy,
+     * "no-fuzzy" uses exact matches only, "exact" uses exact matches only and
+     * drops translations that are no longer used instead of keeping them as
+     * obsolete messages. "exact" requires the Java merger.
+     */
+    @Parameter(property = "gettext.matching", defaultValue = PoMerger.FUZZY)
+    protected String matching;
+
+    /**
+     * If true, the translations of each locale are recorded in a translation
+     * memory that is kept between builds. Messages without an exact match
+     * are looked up there by their msgid with whitespace normalized before
+     * fuzzy matching, so messages that were moved or reformatted get their
+     * translation back, marked fuzzy. With msgmerge, only untranslated
+     * messages are filled.
+     */
+    @Parameter(property = "gettext.translationMemory", defaultValue = "false")
+    protected boolean translationMemory;
+
+    /**
+     * The directory of the translation memory, one file per po file name.
+     * A directory outside of the build directory, e.g.
+     * <code>${user.home}/.m2/gettext-tm</code>, keeps the memory across
+     * clean builds and shares it between projects; the file of a locale is
+     * locked while a po file is merged with it.
+     */
+    @Parameter(property = "gettext.translationMemoryDirectory",
+            defaultValue = "${project.build.directory}/gettext/tm")
+    protected File translationMemoryDirectory;
+
     public void execute() throws MojoExecutionException {
-        getLog().info("Invoking msgmerge for po files in '"
+        BuildMetrics metrics = createMetrics("merge");
+        // msgmerge must not run on the po files of another module at the same time
+        Lock lock = CatalogRegistry.getLock(poDirectory).writeLock();
+        long wait = metrics.start();
+        lock.lock();
+        try {
+            metrics.stop("lock", wait);
+            if (aggregate && CatalogRegistry.getResult(buildStartTime, "merge", poDirectory) != null) {
+                getLog().info("Po files in '" + poDirectory.getAbsolutePath()
+                        + "' were already merged in this build.");
+                return;
+            }
+            merge(metrics);
+            if (aggregate) {
+                CatalogRegistry.putResult(buildStartTime, "merge", poDirectory, Boolean.TRUE);
+            }
+        } catch (MojoExecutionException e) {
+            metrics.setFailed(true);
+            throw e;
+        } finally {
+            lock.unlock();
+            writeMetrics("merge", metrics);
+        }
+    }
+
+    private void merge(final BuildMetrics metrics) throws MojoExecutionException {
+        final boolean inProcess = "java".equals(merger);
+        if (!inProcess && !"msgmerge".equals(merger)) {
+            throw new MojoExecutionException("Unknown merger: " + merger);
+        }
+        if (!PoMerger.FUZZY.equals(matching) && !PoMerger.NO_FUZZY.equals(matching)
+                && !PoMerger.EXACT.equals(matching)) {
+            throw new MojoExecutionException("Unknown matching: " + matching);
+        }
+        if (!inProcess && PoMerger.EXACT.equals(matching)) {
+            throw new MojoExecutionException("The matching \"" + matching + "\" requires the merger \"java\"");
+        }
+        getLog().info((inProcess ? "Merging" : "Invoking msgmerge for") + " po files in '"
                 + poDirectory.getAbsolutePath() + "'.");
 
+        long scan = metrics.start();
         DirectoryScanner ds = new DirectoryScanner();
         ds.setBasedir(poDirectory);
         ds.setIncludes(new String[]{"**/*.po"});
         ds.scan();
         String[] files = ds.getIncludedFiles();
-        for (int i = 0; i < files.length; i++) {
-            getLog().info("Processing " + files[i]);
-            Commandline cl = new Commandline();
-            cl.setExecutable(msgmergeCmd);
-            cl.createArg().setValue("-q");
-            cl.createArg().setValue("-U");
-            cl.createArg().setValue("--backup=none");
-            cl.createArg().setFile(new File(poDirectory, files[i]));
-            cl.createArg().setValue(new File(poDirectory, keysFile).getAbsolutePath());
-
-            getLog().debug("Executing: " + cl.toString());
-            StreamConsumer out = new LoggerStreamConsumer(getLog(), LoggerStreamConsumer.INFO);
-            StreamConsumer err = new LoggerStreamConsumer(getLog(), LoggerStreamConsumer.WARN);
+        metrics.stop("scan", scan);
+        metrics.add("files", files.length);
+
+        final BuildState state = loadBuildState("merge");
+        final File keys = new File(poDirectory, keysFile);
+        final String parameters;
+        try {
+            parameters = BuildState.digest(state.digest(keys), inProcess ? merger : msgmergeCmd, matching,
+                    translationMemory ? translationMemoryDirectory.getAbsolutePath() : "");
+        } catch (IOException e) {
+            throw new MojoExecutionException("Could not read " + keys, e);
+        }
+        final PoMerger poMerger = inProcess ? createMerger(keys, metrics) : null;
+
+        TaskRunner runner = new TaskRunner(getLog(), threads);
+        int upToDate = 0;
+        for (final String file : files) {
+            final File poFile = new File(poDirectory, file);
+            final String key = "merge." + file;
+            try {
+                if (getFingerprint(state, poFile, parameters).equals(state.get(key))) {
+                    upToDate++;
+                    metrics.add("cache.hits", 1);
+                    continue;
+                }
+            } catch (IOException e) {
+                throw new MojoExecutionException("Could not read " + poFile, e);
+            }
+
+            metrics.add("cache.misses", 1);
+            runner.submit(file, new TaskRunner.Task() {
+                public void execute(Log log) throws Exception {
+                    log.info("Processing " + file);
+                    metrics.addLength("bytes.read", poFile);
+                    long start = metrics.start();
+                    try {
+                        if (translationMemory) {
+                            mergeWithMemory(poFile, poMerger, keys, log, metrics);
+                        } else if (poMerger != null) {
+                            poMerger.update(poFile, null, metrics);
+                        } else {
+                            metrics.addLength("bytes.read", keys);
+                            TaskRunner.execute(createCommandline(poFile, keys), log, metrics);
+                        }
+                    } catch (Exception e) {
+                        state.remove(key);
+                        throw e;
+                    } finally {
+                        metrics.stop("merge", start);
+                    }
+                    metrics.addLength("bytes.written", poFile);
+                    state.refreshDigest(poFile);
+                    state.put(key, getFingerprint(state, poFile, parameters));
+                }
+            });
+        }
+        if (upToDate > 0) {
+            getLog().info(upToDate + " po files are up-to-date.");
+        }
+
+        // forget locales that were removed
+        Set<String> existing = new HashSet<String>(Arrays.asList(files));
+        for (String file : state.getKeys("merge.")) {
+            if (!existing.contains(file)) {
+                state.remove("merge." + file);
+            }
+        }
+
+        try {
+            runner.run("merge po files");
+        } finally {
+            saveBuildState(state);
+        }
+    }
+
+    /**
+     * Parses the keys file once, the merger is shared by all tasks.
+     */
+    private PoMerger createMerger(File keys, BuildMetrics metrics) throws MojoExecutionException {
+        long start = metrics.start();
+        try {
+            metrics.addLength("bytes.read", keys);
+            return new PoMerger(PoMerger.read(keys), matching);
+        } catch (IOException e) {
+            throw new MojoExecutionException("Could not read " + keys, e);
+        } finally {
+            metrics.stop("parse", start);
+        }
+    }
+
+    /**
+     * Merges <code>poFile</code> and updates the translation memory of its
+     * locale, which is locked so po files of the same name in other modules
+     * and other builds wait.
+     */
+    private void mergeWithMemory(File poFile, PoMerger poMerger, File keys, Log log, BuildMetrics metrics)
+            throws Exception {
+        File memoryFile = new File(translationMemoryDirectory, getLocale(poFile) + ".tm");
+        Lock lock = CatalogRegistry.getLock(memoryFile).writeLock();
+        long wait = metrics.start();
+        lock.lock();
+        try {
+            metrics.stop("lock", wait);
+            long start = metrics.start();
+            TranslationMemory memory = TranslationMemory.open(memoryFile);
+            metrics.stop("memory.open", start);
             try {
-                CommandLineUtils.executeCommandLine(cl, out, err);
-            } catch (CommandLineException e) {
-                getLog().error("Could not execute " + msgmergeCmd + ".", e);
+                if (poMerger != null) {
+                    poMerger.update(poFile, memory, metrics);
+                } else {
+                    metrics.addLength("bytes.read", keys);
+                    TaskRunner.execute(createCommandline(poFile, keys), log, metrics);
+                    PoMerger.updateFromMemory(poFile, memory, metrics);
+                }
+                start = metrics.start();
+                memory.save();
+                metrics.stop("memory.save", start);
+            } finally {
+                memory.close();
             }
+        } finally {
+            lock.unlock();
         }
     }
+
+    /**
+     * @return the file name of <code>poFile</code> without extension, e.g.
+     *      "de" for "de.po"
+     */
+    private static String getLocale(File poFile) {
+        String name = poFile.getName();
+        return name.endsWith(".po") ? name.substring(0, name.length() - 3) : name;
+    }
+
+    private Commandline createCommandline(File poFile, File keys) {
+        Commandline cl = new Commandline();
+        cl.setExecutable(msgmergeCmd);
+        cl.createArg().setValue("-q");
+        cl.createArg().setValue("-U");
+        cl.createArg().setValue("--backup=none");
+        if (PoMerger.NO_FUZZY.equals(matching)) {
+            cl.createArg().setValue("--no-fuzzy-matching");
+        }
+        cl.createArg().setFile(poFile);
+        cl.createArg().setValue(keys.getAbsolutePath());
+        return cl;
+    }
+
+    private static String getFingerprint(BuildState state, File poFile, String parameters) throws IOException {
+        return state.digest(poFile) + " " + parameters;
+    }
+
 }
@@ -0,0 +1,203 @@
+package org.xnap.commons.maven.gettext;
+
+/*
+ * Copyright 2001-2005 The Apache Software Foundation.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.io.UnsupportedEncodingException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.xnap.commons.maven.gettext.runtime.MoCatalog;
+
+/**
+ * Generates GNU <code>.mo</code> files with the same content and layout as
+ * <code>msgfmt</code>: the messages sorted by their original string, the
+ * hash table and the strings in the charset of the catalog. The file is
+ * written in little endian byte order.
+ */
+public class MoGenerator {
+
+    private static final Pattern CHARSET_PATTERN = Pattern.compile("charset=([^\\s;]+)");
+
+    private static final int HEADER_SIZE = 28;
+
+    private final List<String> originals = new ArrayList<String>();
+    private final List<String> translations = new ArrayList<String>();
+    private String charset = "UTF-8";
+
+    /**
+     * Adds a message if msgfmt compiles it, see {@link PoEntry#isCompiled()}.
+     *
+     * @return true, if the message was added
+     */
+    public boolean add(PoEntry entry) {
+        if (entry.isHeader()) {
+            String contentType = entry.getHeaderField("Content-Type");
+            Matcher m = CHARSET_PATTERN.matcher(contentType != null ? contentType : "");
+            if (m.find() && !"CHARSET".equals(m.group(1))) {
+                charset = m.group(1);
+            }
+        }
+        if (!entry.isCompiled()) {
+            return false;
+        }
+        StringBuilder original = new StringBuilder(entry.getKey());
+        if (entry.isPlural()) {
+            original.append('\u0000').append(entry.getMsgidPlural());
+        }
+        StringBuilder translation = new StringBuilder(entry.getMsgstr().get(0));
+        for (int i = 1; i < entry.getMsgstr().size(); i++) {
+            translation.append('\u0000').append(entry.getMsgstr().get(i));
+        }
+        originals.add(original.toString());
+        translations.add(translation.toString());
+        return true;
+    }
+
+    public int size() {
+        return originals.size();
+    }
+
+    /**
+     * @return the mo file
+     * @throws UnsupportedEncodingException if the charset of the catalog is
+     *      not supported
+     */
+    public byte[] generate() throws UnsupportedEncodingException {
+        int count = originals.size();
+        final byte[][] originalBytes = new byte[count][];
+        final byte[][] translationBytes = new byte[count][];
+        List<Integer> order = new ArrayList<Integer>(count);
+        for (int i = 0; i < count; i++) {
+            originalBytes[i] = originals.get(i).getBytes(charset);
+            translationBytes[i] = translations.get(i).getBytes(charset);
+            order.add(i);
+        }
+        Collections.sort(order, new Comparator<Integer>() {
+            public int compare(Integer o1, Integer o2) {
+                return compareBytes(originalBytes[o1], originalBytes[o2]);
+            }
+        });
+
+        int hashSize = nextPrime(count * 4 / 3);
+        int[] hashTable = new int[hashSize];
+        for (int i = 0; i < count; i++) {
+            byte[] original = originalBytes[order.get(i)];
+            long hash = MoCatalog.hash(keyOf(original));
+            int index = (int) (hash % hashSize);
+            if (hashTable[index] != 0) {
+                int increment = 1 + (int) (hash % (hashSize - 2));
+                do {
+                    index = (index >= hashSize - increment) ? index - (hashSize - increment) : index + increment;
+                } while (hashTable[index] != 0);
+            }
+            hashTable[index] = i + 1;
+        }
+
+        int originalsOffset = HEADER_SIZE;
+        int translationsOffset = originalsOffset + 8 * count;
+        int hashOffset = translationsOffset + 8 * count;
+        int stringsOffset = hashOffset + 4 * hashSize;
+        int size = stringsOffset;
+        for (int i = 0; i < count; i++) {
+            size += originalBytes[i].length + translationBytes[i].length + 2;
+        }
+
+        ByteBuffer out = ByteBuffer.allocate(size);
+        out.order(ByteOrder.LITTLE_ENDIAN);
+        out.putInt(MoCatalog.MAGIC);
+        out.putInt(0);
+        out.putInt(count);
+        out.putInt(originalsOffset);
+        out.putInt(translationsOffset);
+        out.putInt(hashSize);
+        out.putInt(hashOffset);
+        int offset = stringsOffset;
+        for (int i = 0; i < count; i++) {
+            out.putInt(originalBytes[order.get(i)].length);
+            out.putInt(offset);
+            offset += originalBytes[order.get(i)].length + 1;
+        }
+        for (int i = 0; i < count; i++) {
+            out.putInt(translationBytes[order.get(i)].length);
+            out.putInt(offset);
+            offset += translationBytes[order.get(i)].length + 1;
+        }
+        for (int entry : hashTable) {
+            out.putInt(entry);
+        }
+        for (int i = 0; i < count; i++) {
+            out.put(originalBytes[order.get(i)]).put((byte) 0);
+        }
+        for (int i = 0; i < count; i++) {
+            out.put(translationBytes[order.get(i)]).put((byte) 0);
+        }
+        return out.array();
+    }
+
+    /**
+     * @return the original string up to the first NUL, which separates the
+     *      plural
+     */
+    private static byte[] keyOf(byte[] original) {
+        for (int i = 0; i < original.length; i++) {
+            if (original[i] == 0) {
+                return Arrays.copyOf(original, i);
+            }
+        }
+        return original;
+    }
+
+    private static int compareBytes(byte[] b1, byte[] b2) {
+        int length = Math.min(b1.length, b2.length);
+        for (int i = 0; i < length; i++) {
+            int c = (b1[i] & 0xff) - (b2[i] & 0xff);
+            if (c != 0) {
+                return c;
+            }
+        }
+        return b1.length - b2.length;
+    }
+
+    /**
+     * @return the smallest odd prime not less than <code>n</code>, at least
+     *      3, like msgfmt sizes the hash table
+     */
+    private static int nextPrime(int n) {
+        int candidate = Math.max(n | 1, 3);
+        while (!isPrime(candidate)) {
+            candidate += 2;
+        }
+        return candidate;
+    }
+
+    private static boolean isPrime(int n) {
+        for (int divisor = 3; (long) divisor * divisor <= n; divisor += 2) {
+            if (n % divisor == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+}
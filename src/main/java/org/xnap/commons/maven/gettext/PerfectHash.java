@@ -0,0 +1,156 @@
+package org.xnap.commons.maven.gettext;
+
+/*
+ * Copyright 2001-2005 The Apache Software Foundation.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+import org.xnap.commons.maven.gettext.runtime.TableBundle;
+
+/**
+ * A hash and displace perfect hash over a list of keys, as used by the
+ * message tables: keys are grouped into buckets by their hash, and each
+ * bucket gets the first displacement that moves all of its keys to free
+ * slots. Larger buckets are placed first, while most slots are still free.
+ * There are as many slots as keys.
+ */
+class PerfectHash {
+
+    /**
+     * The average number of keys per bucket.
+     */
+    private static final int BUCKET_SIZE = 4;
+
+    /**
+     * Displacements that are tried for a bucket before the next salt is
+     * tried, many more than a bucket needs on average even in an almost
+     * full table.
+     */
+    private static final int MAX_DISPLACEMENTS = 1 << 22;
+
+    /**
+     * Hash salts that are tried before giving up, a new salt is only needed
+     * if two keys have the same hash.
+     */
+    private static final int MAX_SALTS = 32;
+
+    private final int salt;
+    private final int[] displacements;
+    private final int[] slots;
+
+    private PerfectHash(int salt, int[] displacements, int[] slots) {
+        this.salt = salt;
+        this.displacements = displacements;
+        this.slots = slots;
+    }
+
+    /**
+     * @throws IllegalStateException if no perfect hash was found
+     */
+    public static PerfectHash build(List<String> keys) {
+        int slotCount = Math.max(keys.size(), 1);
+        int bucketCount = keys.size() / BUCKET_SIZE + 1;
+        for (int salt = 0; salt < MAX_SALTS; salt++) {
+            int[] displacements = new int[bucketCount];
+            int[] slots = place(keys, salt, bucketCount, slotCount, displacements);
+            if (slots != null) {
+                return new PerfectHash(salt, displacements, slots);
+            }
+        }
+        throw new IllegalStateException("Could not build the message table");
+    }
+
+    public int getSalt() {
+        return salt;
+    }
+
+    public int[] getDisplacements() {
+        return displacements;
+    }
+
+    /**
+     * @return the index of the key in each slot or -1
+     */
+    public int[] getSlots() {
+        return slots;
+    }
+
+    /**
+     * @return the index of the key in each slot or -1, null if a bucket
+     *      could not be placed
+     */
+    private static int[] place(List<String> keys, int salt, int bucketCount, int slotCount, int[] displacements) {
+        final long[] hashes = new long[keys.size()];
+        final List<List<Integer>> buckets = new ArrayList<List<Integer>>(bucketCount);
+        for (int i = 0; i < bucketCount; i++) {
+            buckets.add(new ArrayList<Integer>(BUCKET_SIZE));
+        }
+        for (int i = 0; i < hashes.length; i++) {
+            hashes[i] = TableBundle.hash(keys.get(i), salt);
+            buckets.get(TableBundle.bucket(hashes[i], bucketCount)).add(i);
+        }
+        Integer[] order = new Integer[bucketCount];
+        for (int i = 0; i < bucketCount; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, new Comparator<Integer>() {
+            public int compare(Integer o1, Integer o2) {
+                return buckets.get(o2).size() - buckets.get(o1).size();
+            }
+        });
+
+        int[] slots = new int[slotCount];
+        Arrays.fill(slots, -1);
+        int[] candidate = new int[0];
+        for (Integer bucket : order) {
+            List<Integer> members = buckets.get(bucket);
+            if (members.isEmpty()) {
+                break;
+            }
+            if (candidate.length < members.size()) {
+                candidate = new int[members.size()];
+            }
+            boolean placed = false;
+            for (int displacement = 0; displacement < MAX_DISPLACEMENTS && !placed; displacement++) {
+                placed = true;
+                for (int i = 0; i < members.size() && placed; i++) {
+                    int slot = TableBundle.slot(hashes[members.get(i)], displacement, slotCount);
+                    if (slots[slot] != -1) {
+                        placed = false;
+                    }
+                    for (int j = 0; j < i && placed; j++) {
+                        placed = candidate[j] != slot;
+                    }
+                    candidate[i] = slot;
+                }
+                if (placed) {
+                    displacements[bucket] = displacement;
+                    for (int i = 0; i < members.size(); i++) {
+                        slots[candidate[i]] = members.get(i);
+                    }
+                }
+            }
+            if (!placed) {
+                return null;
+            }
+        }
+        return slots;
+    }
+
+}
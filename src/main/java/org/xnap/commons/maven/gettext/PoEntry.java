@@ -0,0 +1,242 @@
+package org.xnap.commons.maven.gettext;
+
+/*
+ * Copyright 2001-2005 The Apache Software Foundation.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A single message of a po or pot file.
+ */
+public class PoEntry {
+
+    /**
+     * Separates the context from the msgid in the lookup key, same as
+     * msgfmt does.
+     */
+    public static final char CONTEXT_GLUE = '\u0004';
+
+    private String msgctxt;
+    private String msgid;
+    private String msgidPlural;
+    private List<String> msgstr = new ArrayList<String>();
+    private List<String> translatorComments = new ArrayList<String>();
+    private List<String> extractedComments = new ArrayList<String>();
+    private List<String> references = new ArrayList<String>();
+    private List<String> flags = new ArrayList<String>();
+    private String previousMsgctxt;
+    private String previousMsgid;
+    private String previousMsgidPlural;
+    private boolean obsolete;
+
+    /**
+     * Resets all fields so the instance can be reused.
+     */
+    public void clear() {
+        msgctxt = null;
+        msgid = null;
+        msgidPlural = null;
+        msgstr.clear();
+        translatorComments.clear();
+        extractedComments.clear();
+        references.clear();
+        flags.clear();
+        previousMsgctxt = null;
+        previousMsgid = null;
+        previousMsgidPlural = null;
+        obsolete = false;
+    }
+
+    /**
+     * @return a deep copy, for keeping an entry that was read into a reused
+     *      instance
+     */
+    public PoEntry copy() {
+        PoEntry copy = new PoEntry();
+        copy.msgctxt = msgctxt;
+        copy.msgid = msgid;
+        copy.msgidPlural = msgidPlural;
+        copy.msgstr.addAll(msgstr);
+        copy.translatorComments.addAll(translatorComments);
+        copy.extractedComments.addAll(extractedComments);
+        copy.references.addAll(references);
+        copy.flags.addAll(flags);
+        copy.previousMsgctxt = previousMsgctxt;
+        copy.previousMsgid = previousMsgid;
+        copy.previousMsgidPlural = previousMsgidPlural;
+        copy.obsolete = obsolete;
+        return copy;
+    }
+
+    /**
+     * @return the key that identifies this message in a resource bundle,
+     *      the msgid prefixed by the context if there is one
+     */
+    public String getKey() {
+        return (msgctxt != null) ? msgctxt + CONTEXT_GLUE + msgid : msgid;
+    }
+
+    public boolean isHeader() {
+        return msgctxt == null && "".equals(msgid) && !obsolete;
+    }
+
+    public boolean isPlural() {
+        return msgidPlural != null;
+    }
+
+    public boolean isFuzzy() {
+        return flags.contains("fuzzy");
+    }
+
+    /**
+     * @return true, if the first msgstr is not empty. msgfmt treats messages
+     *      with an empty first msgstr as untranslated, whatever the other
+     *      plural forms are.
+     */
+    public boolean hasMsgstr() {
+        return !msgstr.isEmpty() && msgstr.get(0).length() > 0;
+    }
+
+    /**
+     * @return true, if msgfmt compiles this message into a catalog: it is
+     *      not obsolete, has a msgstr and is not fuzzy, except for the header
+     *      whose fuzzy flag is ignored
+     */
+    public boolean isCompiled() {
+        return !obsolete && hasMsgstr() && (!isFuzzy() || isHeader());
+    }
+
+    /**
+     * @return true, if at least one msgstr is not empty
+     */
+    public boolean isTranslated() {
+        for (String s : msgstr) {
+            if (s.length() > 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return the value of the header field <code>name</code>, or null if
+     *      this is not the header or the field does not exist
+     */
+    public String getHeaderField(String name) {
+        if (!isHeader() || msgstr.isEmpty()) {
+            return null;
+        }
+        String prefix = name + ":";
+        for (String line : msgstr.get(0).split("\n")) {
+            if (line.regionMatches(true, 0, prefix, 0, prefix.length())) {
+                return line.substring(prefix.length()).trim();
+            }
+        }
+        return null;
+    }
+
+    public String getMsgctxt() {
+        return msgctxt;
+    }
+
+    public void setMsgctxt(String msgctxt) {
+        this.msgctxt = msgctxt;
+    }
+
+    public String getMsgid() {
+        return msgid;
+    }
+
+    public void setMsgid(String msgid) {
+        this.msgid = msgid;
+    }
+
+    public String getMsgidPlural() {
+        return msgidPlural;
+    }
+
+    public void setMsgidPlural(String msgidPlural) {
+        this.msgidPlural = msgidPlural;
+    }
+
+    /**
+     * @return the translations, a single element for singular messages and
+     *      one element per plural form for plural messages
+     */
+    public List<String> getMsgstr() {
+        return msgstr;
+    }
+
+    public void setMsgstr(int index, String value) {
+        while (msgstr.size() <= index) {
+            msgstr.add("");
+        }
+        msgstr.set(index, value);
+    }
+
+    public List<String> getTranslatorComments() {
+        return translatorComments;
+    }
+
+    public List<String> getExtractedComments() {
+        return extractedComments;
+    }
+
+    /**
+     * @return the source references, e.g. "org/example/Main.java:42"
+     */
+    public List<String> getReferences() {
+        return references;
+    }
+
+    public List<String> getFlags() {
+        return flags;
+    }
+
+    public String getPreviousMsgctxt() {
+        return previousMsgctxt;
+    }
+
+    public void setPreviousMsgctxt(String previousMsgctxt) {
+        this.previousMsgctxt = previousMsgctxt;
+    }
+
+    public String getPreviousMsgid() {
+        return previousMsgid;
+    }
+
+    public void setPreviousMsgid(String previousMsgid) {
+        this.previousMsgid = previousMsgid;
+    }
+
+    public String getPreviousMsgidPlural() {
+        return previousMsgidPlural;
+    }
+
+    public void setPreviousMsgidPlural(String previousMsgidPlural) {
+        this.previousMsgidPlural = previousMsgidPlural;
+    }
+
+    public boolean isObsolete() {
+        return obsolete;
+    }
+
+    public void setObsolete(boolean obsolete) {
+        this.obsolete = obsolete;
+    }
+
+}
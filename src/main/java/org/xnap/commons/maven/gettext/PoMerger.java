@@ -0,0 +1,512 @@
+package org.xnap.commons.maven.gettext;
+
+/*
+ * Copyright 2001-2005 The Apache Software Foundation.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.io.BufferedWriter;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.codehaus.plexus.util.IOUtil;
+import org.xnap.commons.maven.gettext.runtime.PluralExpression;
+
+/**
+ * Merges a po file with a template the way <code>msgmerge -U</code> does,
+ * without starting a process. The messages are written in the order of the
+ * template followed by the obsolete messages; translations are taken from
+ * the po file by msgctxt and msgid. Messages without an exact match get the
+ * translation of the most similar translated message, found through a
+ * {@link FuzzyMatcher}, and are marked fuzzy. Translations that are no
+ * longer used are kept as obsolete messages. A {@link TranslationMemory}
+ * can supply translations of messages that were moved or reformatted.
+ * <p>
+ * The template is parsed once and may be shared by several threads, each
+ * merge only reads it.
+ */
+public class PoMerger {
+
+    /**
+     * Exact and fuzzy matches, like msgmerge.
+     */
+    public static final String FUZZY = "fuzzy";
+
+    /**
+     * Exact matches only, like <code>msgmerge --no-fuzzy-matching</code>.
+     */
+    public static final String NO_FUZZY = "no-fuzzy";
+
+    /**
+     * Exact matches only and no obsolete messages: translations that are no
+     * longer used are dropped.
+     */
+    public static final String EXACT = "exact";
+
+    private static final Pattern POT_CREATION_DATE = Pattern.compile("(?m)^POT-Creation-Date:.*$");
+
+    private final PoEntry templateHeader;
+    private final List<PoEntry> template = new ArrayList<PoEntry>();
+    private final String matching;
+
+    /**
+     * @param template the messages of the template, e.g. read by
+     *      {@link #read(File)}
+     * @param matching one of {@link #FUZZY}, {@link #NO_FUZZY} and
+     *      {@link #EXACT}
+     */
+    public PoMerger(List<PoEntry> template, String matching) {
+        if (!FUZZY.equals(matching) && !NO_FUZZY.equals(matching) && !EXACT.equals(matching)) {
+            throw new IllegalArgumentException("Invalid matching: " + matching);
+        }
+        this.matching = matching;
+        PoEntry header = null;
+        for (PoEntry entry : template) {
+            if (entry.isHeader()) {
+                header = entry;
+            } else if (!entry.isObsolete()) {
+                this.template.add(entry);
+            }
+        }
+        this.templateHeader = header;
+    }
+
+    /**
+     * @return all messages of <code>file</code>
+     */
+    public static List<PoEntry> read(File file) throws IOException {
+        List<PoEntry> entries = new ArrayList<PoEntry>();
+        PoParser parser = new PoParser(file);
+        try {
+            PoEntry entry;
+            while ((entry = parser.next()) != null) {
+                entries.add(entry);
+            }
+        } finally {
+            parser.close();
+        }
+        return entries;
+    }
+
+    /**
+     * Merges <code>poFile</code> with the template and writes the result
+     * back if it differs from the current content.
+     *
+     * @param memory the translation memory of the locale, may be null
+     * @param metrics receives the number of messages and fuzzy matches, may
+     *      be null
+     * @return true, if the file was written
+     */
+    public boolean update(File poFile, TranslationMemory memory, BuildMetrics metrics) throws IOException {
+        byte[] current = readBytes(poFile);
+        Result result = merge(read(poFile), memory);
+        if (metrics != null) {
+            metrics.add("entries", result.entries.size());
+            metrics.add("fuzzy.matches", result.fuzzyMatches);
+            metrics.add("memory.matches", result.memoryMatches);
+        }
+        return writeIfChanged(poFile, current, toBytes(result.entries));
+    }
+
+    /**
+     * Fills the untranslated messages of <code>poFile</code> from
+     * <code>memory</code> and records its translations, for po files merged
+     * by msgmerge. Fuzzy messages are left alone, they may be drafts of a
+     * translator.
+     *
+     * @return true, if the file was written
+     */
+    public static boolean updateFromMemory(File poFile, TranslationMemory memory, BuildMetrics metrics)
+            throws IOException {
+        byte[] current = readBytes(poFile);
+        List<PoEntry> entries = read(poFile);
+        learn(entries, memory);
+
+        int pluralCount = getPluralCount(entries.isEmpty() ? null : entries.get(0));
+        int matches = 0;
+        for (int i = 0; i < entries.size(); i++) {
+            PoEntry entry = entries.get(i);
+            if (entry.isHeader() || entry.isObsolete() || entry.isTranslated()) {
+                continue;
+            }
+            PoEntry filled = fromMemory(entry, memory, pluralCount);
+            if (filled != null) {
+                entries.set(i, filled);
+                matches++;
+            }
+        }
+        if (metrics != null) {
+            metrics.add("memory.matches", matches);
+        }
+        return matches > 0 && writeIfChanged(poFile, current, toBytes(entries));
+    }
+
+    /**
+     * @param definitions the messages of the po file
+     * @return the merged messages
+     */
+    public Result merge(List<PoEntry> definitions) {
+        return merge(definitions, null);
+    }
+
+    /**
+     * Merges like {@link #merge(List)}, messages without an exact match are
+     * first looked up in <code>memory</code>, which also records the
+     * translations of the result.
+     *
+     * @param memory the translation memory of the locale, may be null
+     */
+    public Result merge(List<PoEntry> definitions, TranslationMemory memory) {
+        PoEntry header = null;
+        Map<String, PoEntry> byKey = new HashMap<String, PoEntry>();
+        List<PoEntry> candidates = new ArrayList<PoEntry>();
+        for (PoEntry entry : definitions) {
+            if (entry.isHeader()) {
+                header = entry;
+                continue;
+            }
+            PoEntry existing = byKey.get(entry.getKey());
+            // a current message wins over an obsolete one with the same key
+            if (existing == null || (existing.isObsolete() && !entry.isObsolete())) {
+                byKey.put(entry.getKey(), entry);
+            }
+            if (!entry.isObsolete() && entry.isTranslated()) {
+                candidates.add(entry);
+            }
+        }
+
+        int pluralCount = getPluralCount(header);
+        if (EXACT.equals(matching)) {
+            memory = null;
+        }
+        if (memory != null) {
+            // messages that were moved within this catalog are found as well
+            learn(definitions, memory);
+        }
+
+        Result result = new Result();
+        if (header != null) {
+            result.entries.add(mergeHeader(header));
+        } else if (templateHeader != null) {
+            result.entries.add(templateHeader.copy());
+        }
+
+        Set<PoEntry> used = Collections.newSetFromMap(new IdentityHashMap<PoEntry, Boolean>());
+        Map<String, FuzzyMatcher> matchers = new HashMap<String, FuzzyMatcher>();
+        for (PoEntry ref : template) {
+            PoEntry def = byKey.get(ref.getKey());
+            if (def != null) {
+                used.add(def);
+                result.entries.add(mergeMessage(ref, def, false, pluralCount));
+                continue;
+            }
+            if (memory != null) {
+                PoEntry filled = fromMemory(ref, memory, pluralCount);
+                if (filled != null) {
+                    result.memoryMatches++;
+                    result.entries.add(filled);
+                    continue;
+                }
+            }
+            if (FUZZY.equals(matching)) {
+                def = getMatcher(matchers, candidates, ref.getMsgctxt())
+                        .findBest(ref.getMsgid(), FuzzyMatcher.DEFAULT_THRESHOLD);
+                if (def != null) {
+                    used.add(def);
+                    result.fuzzyMatches++;
+                    result.entries.add(mergeMessage(ref, def, true, pluralCount));
+                    continue;
+                }
+            }
+            result.entries.add(createUntranslated(ref, pluralCount));
+        }
+
+        if (!EXACT.equals(matching)) {
+            Set<String> keys = new HashSet<String>();
+            for (PoEntry ref : template) {
+                keys.add(ref.getKey());
+            }
+            for (PoEntry def : definitions) {
+                if (def.isHeader() || used.contains(def) || !def.isTranslated()
+                        || !keys.add(def.getKey())) {
+                    continue;
+                }
+                PoEntry obsolete = def.copy();
+                obsolete.setObsolete(true);
+                obsolete.getReferences().clear();
+                obsolete.getExtractedComments().clear();
+                result.entries.add(obsolete);
+            }
+        }
+        if (memory != null) {
+            learn(result.entries, memory);
+        }
+        return result;
+    }
+
+    /**
+     * Records the translated messages that are not fuzzy in
+     * <code>memory</code>.
+     */
+    private static void learn(List<PoEntry> entries, TranslationMemory memory) {
+        for (PoEntry entry : entries) {
+            if (!entry.isHeader() && !entry.isObsolete() && !entry.isFuzzy() && entry.isTranslated()) {
+                memory.put(getMemoryKey(entry), entry.getMsgstr());
+            }
+        }
+    }
+
+    /**
+     * @return the key of <code>entry</code> in a {@link TranslationMemory},
+     *      built like {@link PoEntry#getKey()} so messages with different
+     *      contexts do not replace each other. The context and the msgid are
+     *      normalized separately, the memory would keep whitespace next to
+     *      the glue character.
+     */
+    static String getMemoryKey(PoEntry entry) {
+        String msgid = TranslationMemory.normalize(entry.getMsgid());
+        return (entry.getMsgctxt() != null)
+                ? TranslationMemory.normalize(entry.getMsgctxt()) + PoEntry.CONTEXT_GLUE + msgid
+                : msgid;
+    }
+
+    /**
+     * @return <code>ref</code> with the translation from <code>memory</code>
+     *      marked fuzzy, or null if the memory has none
+     */
+    private static PoEntry fromMemory(PoEntry ref, TranslationMemory memory, int pluralCount) {
+        String[] forms = memory.get(getMemoryKey(ref));
+        if (forms == null || forms.length == 0) {
+            return null;
+        }
+        PoEntry def = new PoEntry();
+        def.setMsgid(ref.getMsgid());
+        if (forms.length > 1) {
+            def.setMsgidPlural(ref.isPlural() ? ref.getMsgidPlural() : ref.getMsgid());
+        }
+        def.getMsgstr().addAll(Arrays.asList(forms));
+        return mergeMessage(ref, def, true, pluralCount);
+    }
+
+    /**
+     * @return the number of plural forms declared by the header, 2 if it
+     *      declares none
+     */
+    private static int getPluralCount(PoEntry header) {
+        int count = PluralExpression.getPluralCount(header != null && header.isHeader()
+                ? header.getHeaderField("Plural-Forms") : null);
+        return (count > 0) ? count : 2;
+    }
+
+    private static byte[] readBytes(File file) throws IOException {
+        FileInputStream in = new FileInputStream(file);
+        try {
+            return IOUtil.toByteArray(in);
+        } finally {
+            in.close();
+        }
+    }
+
+    private static boolean writeIfChanged(File file, byte[] current, byte[] content) throws IOException {
+        if (Arrays.equals(current, content)) {
+            return false;
+        }
+        OutputStream out = new FileOutputStream(file);
+        try {
+            out.write(content);
+        } finally {
+            out.close();
+        }
+        return true;
+    }
+
+    /**
+     * @return the matcher for the translated messages with context
+     *      <code>msgctxt</code>, fuzzy matches never change the context
+     */
+    private static FuzzyMatcher getMatcher(Map<String, FuzzyMatcher> matchers, List<PoEntry> candidates,
+                                           String msgctxt) {
+        String key = (msgctxt != null) ? PoEntry.CONTEXT_GLUE + msgctxt : "";
+        FuzzyMatcher matcher = matchers.get(key);
+        if (matcher == null) {
+            List<PoEntry> sameContext = new ArrayList<PoEntry>();
+            for (PoEntry candidate : candidates) {
+                if (msgctxt == null ? candidate.getMsgctxt() == null : msgctxt.equals(candidate.getMsgctxt())) {
+                    sameContext.add(candidate);
+                }
+            }
+            matcher = new FuzzyMatcher(sameContext);
+            matchers.put(key, matcher);
+        }
+        return matcher;
+    }
+
+    /**
+     * @return the header of the po file with the POT-Creation-Date of the
+     *      template
+     */
+    private PoEntry mergeHeader(PoEntry header) {
+        PoEntry result = header.copy();
+        String date = (templateHeader != null) ? templateHeader.getHeaderField("POT-Creation-Date") : null;
+        if (date != null && !result.getMsgstr().isEmpty()) {
+            Matcher m = POT_CREATION_DATE.matcher(result.getMsgstr().get(0));
+            if (m.find()) {
+                result.setMsgstr(0, m.replaceFirst(Matcher.quoteReplacement("POT-Creation-Date: " + date)));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @return the message of the template with the translation and
+     *      translator comments of <code>def</code>
+     */
+    private static PoEntry mergeMessage(PoEntry ref, PoEntry def, boolean fuzzyMatch, int pluralCount) {
+        PoEntry result = ref.copy();
+        result.getTranslatorComments().clear();
+        result.getTranslatorComments().addAll(def.getTranslatorComments());
+        result.getMsgstr().clear();
+
+        boolean fuzzy = fuzzyMatch || def.isFuzzy();
+        if (ref.isPlural() && !def.isPlural()) {
+            String translation = def.getMsgstr().isEmpty() ? "" : def.getMsgstr().get(0);
+            for (int i = 0; i < pluralCount; i++) {
+                result.setMsgstr(i, translation);
+            }
+            fuzzy = fuzzy || def.isTranslated();
+        } else if (!ref.isPlural() && def.isPlural()) {
+            result.setMsgstr(0, def.getMsgstr().isEmpty() ? "" : def.getMsgstr().get(0));
+            fuzzy = fuzzy || def.isTranslated();
+        } else {
+            result.getMsgstr().addAll(def.getMsgstr());
+            if (ref.isPlural() && !ref.getMsgidPlural().equals(def.getMsgidPlural())) {
+                fuzzy = fuzzy || def.isTranslated();
+            }
+        }
+
+        result.getFlags().remove("fuzzy");
+        if (fuzzy && result.isTranslated()) {
+            result.getFlags().add(0, "fuzzy");
+            if (def.isFuzzy()) {
+                result.setPreviousMsgctxt(def.getPreviousMsgctxt());
+                result.setPreviousMsgid(def.getPreviousMsgid());
+                result.setPreviousMsgidPlural(def.getPreviousMsgidPlural());
+            }
+        } else {
+            result.setPreviousMsgctxt(null);
+            result.setPreviousMsgid(null);
+            result.setPreviousMsgidPlural(null);
+        }
+        return result;
+    }
+
+    private static PoEntry createUntranslated(PoEntry ref, int pluralCount) {
+        PoEntry result = ref.copy();
+        result.getMsgstr().clear();
+        result.getFlags().remove("fuzzy");
+        result.setMsgstr((ref.isPlural() ? pluralCount : 1) - 1, "");
+        return result;
+    }
+
+    /**
+     * @return the messages in the po format, in the charset declared by the
+     *      header, or UTF-8 if that charset cannot encode them
+     */
+    private static byte[] toBytes(List<PoEntry> entries) throws IOException {
+        Charset charset = Charset.forName("UTF-8");
+        if (!entries.isEmpty() && entries.get(0).isHeader()) {
+            PoEntry header = entries.get(0);
+            charset = PoParser.toCharset(header.getMsgstr().isEmpty() ? "" : header.getMsgstr().get(0));
+        }
+
+        StringWriter text = new StringWriter();
+        write(entries, text);
+        String content = text.toString();
+        if (!charset.newEncoder().canEncode(content)) {
+            // msgmerge converts to UTF-8 as well
+            PoEntry header = entries.get(0).copy();
+            header.setMsgstr(0, header.getMsgstr().get(0).replaceFirst("charset=[^\\s;]*", "charset=UTF-8"));
+            entries.set(0, header);
+            charset = Charset.forName("UTF-8");
+            text = new StringWriter();
+            write(entries, text);
+            content = text.toString();
+        }
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(content.length() + content.length() / 8);
+        Writer out = new BufferedWriter(new OutputStreamWriter(bytes, charset));
+        out.write(content);
+        out.close();
+        return bytes.toByteArray();
+    }
+
+    private static void write(List<PoEntry> entries, Writer out) throws IOException {
+        PoWriter writer = new PoWriter(out);
+        for (PoEntry entry : entries) {
+            writer.write(entry);
+        }
+        writer.flush();
+    }
+
+    /**
+     * The merged messages.
+     */
+    public static class Result {
+
+        private final List<PoEntry> entries = new ArrayList<PoEntry>();
+        private int fuzzyMatches;
+        private int memoryMatches;
+
+        public List<PoEntry> getEntries() {
+            return entries;
+        }
+
+        /**
+         * @return the number of messages that were translated by a fuzzy
+         *      match
+         */
+        public int getFuzzyMatches() {
+            return fuzzyMatches;
+        }
+
+        /**
+         * @return the number of messages that were translated from the
+         *      translation memory
+         */
+        public int getMemoryMatches() {
+            return memoryMatches;
+        }
+
+    }
+
+}
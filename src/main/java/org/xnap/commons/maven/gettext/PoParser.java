@@ -0,0 +1,541 @@
+package org.xnap.commons.maven.gettext;
+
+/*
+ * Copyright 2001-2005 The Apache Software Foundation.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Reads the messages of a po or pot file one at a time. The charset is taken
+ * from the Content-Type field of the header entry.
+ * <p>
+ * The file is read through a channel into a large buffer and lines are
+ * parsed in place, strings are only created for the values that end up in
+ * the entry. Together with {@link #next(PoEntry)} this keeps the allocation
+ * rate low enough for catalogs with hundreds of thousands of messages.
+ */
+public class PoParser {
+
+    private static final int BUFFER_SIZE = 256 * 1024;
+
+    private static final int HEADER_SCAN_LIMIT = 64 * 1024;
+
+    private static final Pattern CHARSET_PATTERN = Pattern.compile("charset=([\\w.:-]+)");
+
+    /**
+     * Flags that are shared instead of creating a string for each message.
+     */
+    private static final String[] COMMON_FLAGS = {
+            "fuzzy", "java-format", "no-java-format", "c-format", "no-c-format", "no-wrap", "wrap"
+    };
+
+    private static final int NONE = -1;
+    private static final int MSGCTXT = 0;
+    private static final int MSGID = 1;
+    private static final int MSGID_PLURAL = 2;
+    private static final int PREVIOUS_MSGCTXT = 3;
+    private static final int PREVIOUS_MSGID = 4;
+    private static final int PREVIOUS_MSGID_PLURAL = 5;
+    private static final int MSGSTR = 6;
+
+    private final String name;
+    private final ReadableByteChannel channel;
+    private final ByteBuffer bytes = ByteBuffer.allocate(BUFFER_SIZE);
+    private final CharsetDecoder decoder;
+    private boolean endOfInput;
+    private boolean endOfChars;
+
+    private char[] chars = new char[BUFFER_SIZE];
+    private int charStart;
+    private int charEnd;
+
+    private int lineStart;
+    private int lineEnd;
+    private boolean pushedBack;
+    private int lineNumber;
+    private int entryLineNumber;
+
+    private int state;
+    private int msgstrIndex;
+    private final StringBuilder[] values = new StringBuilder[MSGSTR];
+    private final boolean[] present = new boolean[MSGSTR];
+    private final List<StringBuilder> msgstrValues = new ArrayList<StringBuilder>();
+    private int msgstrCount;
+
+    public PoParser(File file) throws IOException {
+        this(file.getName(), new FileInputStream(file).getChannel());
+    }
+
+    public PoParser(String name, InputStream in) throws IOException {
+        this(name, Channels.newChannel(in));
+    }
+
+    private PoParser(String name, ReadableByteChannel channel) throws IOException {
+        this.name = name;
+        this.channel = channel;
+        for (int i = 0; i < values.length; i++) {
+            values[i] = new StringBuilder();
+        }
+
+        try {
+            // the header is within the first bytes
+            while (bytes.position() < HEADER_SCAN_LIMIT && !endOfInput) {
+                endOfInput = channel.read(bytes) == -1;
+            }
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+        bytes.flip();
+        String start = new String(bytes.array(), 0, Math.min(bytes.limit(), HEADER_SCAN_LIMIT), "ISO-8859-1");
+        this.decoder = toCharset(start).newDecoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+    }
+
+    /**
+     * @param header the header or the beginning of a po file
+     * @return the charset declared in <code>header</code>, UTF-8 if none is
+     *      declared or the charset is not supported
+     */
+    static Charset toCharset(String header) {
+        Matcher m = CHARSET_PATTERN.matcher(header);
+        if (m.find()) {
+            try {
+                return Charset.forName(m.group(1));
+            } catch (IllegalArgumentException e) {
+                // unsupported or the "CHARSET" placeholder of a pot file
+            }
+        }
+        return Charset.forName("UTF-8");
+    }
+
+    /**
+     * @return the next message, or null if the end of the file has been
+     *      reached
+     */
+    public PoEntry next() throws IOException {
+        PoEntry entry = new PoEntry();
+        return next(entry) ? entry : null;
+    }
+
+    /**
+     * Reads the next message into <code>entry</code>.
+     *
+     * @return false, if the end of the file has been reached
+     */
+    public boolean next(PoEntry entry) throws IOException {
+        entry.clear();
+        Arrays.fill(present, false);
+        msgstrCount = 0;
+        state = NONE;
+        entryLineNumber = 0;
+        while (readLine()) {
+            int start = lineStart;
+            int end = lineEnd;
+            while (start < end && isWhitespace(chars[start])) {
+                start++;
+            }
+            while (end > start && isWhitespace(chars[end - 1])) {
+                end--;
+            }
+            if (start == end) {
+                if (present[MSGID]) {
+                    return finish(entry);
+                }
+                continue;
+            }
+            if (entryLineNumber == 0) {
+                entryLineNumber = lineNumber;
+            }
+
+            boolean obsolete = false;
+            boolean previous = false;
+            if (startsWith(start, end, "#~")) {
+                obsolete = true;
+                start = skipWhitespace(start + 2, end);
+                if (start == end) {
+                    continue;
+                } else if (chars[start] == '|') {
+                    previous = true;
+                }
+            }
+
+            if (previous || chars[start] == '#') {
+                if (state == MSGSTR) {
+                    // a comment starts the next message
+                    pushedBack = true;
+                    return finish(entry);
+                }
+                if (previous) {
+                    parsePrevious(skipWhitespace(start + 1, end), end);
+                } else {
+                    parseComment(entry, start, end);
+                }
+            } else if (chars[start] == '"') {
+                if (state == NONE) {
+                    throw error("String without keyword");
+                }
+                appendQuoted(state == MSGSTR ? msgstrValues.get(msgstrIndex) : values[state], start, end);
+            } else {
+                int keywordEnd = start;
+                while (keywordEnd < end && !isWhitespace(chars[keywordEnd]) && chars[keywordEnd] != '"') {
+                    keywordEnd++;
+                }
+                if (state == MSGSTR && !startsWith(start, keywordEnd, "msgstr")) {
+                    pushedBack = true;
+                    return finish(entry);
+                }
+                entry.setObsolete(obsolete);
+                parseKeyword(start, keywordEnd, skipWhitespace(keywordEnd, end), end);
+            }
+        }
+        return present[MSGID] && finish(entry);
+    }
+
+    private boolean finish(PoEntry entry) {
+        if (present[MSGCTXT]) {
+            entry.setMsgctxt(values[MSGCTXT].toString());
+        }
+        if (present[MSGID]) {
+            entry.setMsgid(values[MSGID].toString());
+        }
+        if (present[MSGID_PLURAL]) {
+            entry.setMsgidPlural(values[MSGID_PLURAL].toString());
+        }
+        if (present[PREVIOUS_MSGCTXT]) {
+            entry.setPreviousMsgctxt(values[PREVIOUS_MSGCTXT].toString());
+        }
+        if (present[PREVIOUS_MSGID]) {
+            entry.setPreviousMsgid(values[PREVIOUS_MSGID].toString());
+        }
+        if (present[PREVIOUS_MSGID_PLURAL]) {
+            entry.setPreviousMsgidPlural(values[PREVIOUS_MSGID_PLURAL].toString());
+        }
+        for (int i = 0; i < msgstrCount; i++) {
+            entry.setMsgstr(i, msgstrValues.get(i).toString());
+        }
+        return true;
+    }
+
+    private void parsePrevious(int start, int end) throws IOException {
+        start = skipWhitespace(start, end);
+        if (start < end && chars[start] == '"') {
+            if (state < PREVIOUS_MSGCTXT || state > PREVIOUS_MSGID_PLURAL) {
+                throw error("String without keyword");
+            }
+            appendQuoted(values[state], start, end);
+            return;
+        }
+        int keywordEnd = start;
+        while (keywordEnd < end && !isWhitespace(chars[keywordEnd]) && chars[keywordEnd] != '"') {
+            keywordEnd++;
+        }
+        if (matches(start, keywordEnd, "msgctxt")) {
+            state = PREVIOUS_MSGCTXT;
+        } else if (matches(start, keywordEnd, "msgid")) {
+            state = PREVIOUS_MSGID;
+        } else if (matches(start, keywordEnd, "msgid_plural")) {
+            state = PREVIOUS_MSGID_PLURAL;
+        } else {
+            throw error("Invalid previous message");
+        }
+        startValue(state, skipWhitespace(keywordEnd, end), end);
+    }
+
+    private void parseComment(PoEntry entry, int start, int end) throws IOException {
+        if (startsWith(start, end, "#|")) {
+            parsePrevious(start + 2, end);
+        } else if (startsWith(start, end, "#,")) {
+            int i = start + 2;
+            while (i < end) {
+                int flagEnd = i;
+                while (flagEnd < end && chars[flagEnd] != ',') {
+                    flagEnd++;
+                }
+                int flagStart = skipWhitespace(i, flagEnd);
+                int trimmedEnd = flagEnd;
+                while (trimmedEnd > flagStart && isWhitespace(chars[trimmedEnd - 1])) {
+                    trimmedEnd--;
+                }
+                if (flagStart < trimmedEnd) {
+                    String flag = toFlag(flagStart, trimmedEnd);
+                    if (!entry.getFlags().contains(flag)) {
+                        entry.getFlags().add(flag);
+                    }
+                }
+                i = flagEnd + 1;
+            }
+        } else if (startsWith(start, end, "#:")) {
+            int i = start + 2;
+            while (i < end) {
+                i = skipWhitespace(i, end);
+                int referenceEnd = i;
+                while (referenceEnd < end && !isWhitespace(chars[referenceEnd])) {
+                    referenceEnd++;
+                }
+                if (i < referenceEnd) {
+                    entry.getReferences().add(new String(chars, i, referenceEnd - i));
+                }
+                i = referenceEnd;
+            }
+        } else if (startsWith(start, end, "#.")) {
+            entry.getExtractedComments().add(stripCommentPrefix(start + 2, end));
+        } else {
+            entry.getTranslatorComments().add(stripCommentPrefix(start + 1, end));
+        }
+    }
+
+    private String toFlag(int start, int end) {
+        for (String flag : COMMON_FLAGS) {
+            if (matches(start, end, flag)) {
+                return flag;
+            }
+        }
+        return new String(chars, start, end - start);
+    }
+
+    private String stripCommentPrefix(int start, int end) {
+        if (start < end && chars[start] == ' ') {
+            start++;
+        }
+        return new String(chars, start, end - start);
+    }
+
+    private void parseKeyword(int start, int keywordEnd, int valueStart, int end) throws IOException {
+        if (matches(start, keywordEnd, "msgctxt")) {
+            startValue(MSGCTXT, valueStart, end);
+        } else if (matches(start, keywordEnd, "msgid")) {
+            startValue(MSGID, valueStart, end);
+        } else if (matches(start, keywordEnd, "msgid_plural")) {
+            startValue(MSGID_PLURAL, valueStart, end);
+        } else if (matches(start, keywordEnd, "msgstr")) {
+            startMsgstr(0, valueStart, end);
+        } else if (startsWith(start, keywordEnd, "msgstr[") && chars[keywordEnd - 1] == ']') {
+            int index = 0;
+            if (keywordEnd - start < 9) {
+                throw error("Invalid plural form index: " + new String(chars, start, keywordEnd - start));
+            }
+            for (int i = start + 7; i < keywordEnd - 1; i++) {
+                if (chars[i] < '0' || chars[i] > '9' || index > 1000) {
+                    throw error("Invalid plural form index: " + new String(chars, start, keywordEnd - start));
+                }
+                index = index * 10 + (chars[i] - '0');
+            }
+            startMsgstr(index, valueStart, end);
+        } else {
+            throw error("Unknown keyword: " + new String(chars, start, keywordEnd - start));
+        }
+    }
+
+    private void startValue(int field, int start, int end) throws IOException {
+        state = field;
+        present[field] = true;
+        values[field].setLength(0);
+        appendQuoted(values[field], start, end);
+    }
+
+    private void startMsgstr(int index, int start, int end) throws IOException {
+        state = MSGSTR;
+        msgstrIndex = index;
+        while (msgstrValues.size() <= index) {
+            msgstrValues.add(new StringBuilder());
+        }
+        for (int i = msgstrCount; i <= index; i++) {
+            msgstrValues.get(i).setLength(0);
+        }
+        msgstrCount = Math.max(msgstrCount, index + 1);
+        msgstrValues.get(index).setLength(0);
+        appendQuoted(msgstrValues.get(index), start, end);
+    }
+
+    /**
+     * Appends the quoted string in <code>chars[start, end)</code> to
+     * <code>sb</code> and resolves its C escape sequences.
+     */
+    private void appendQuoted(StringBuilder sb, int start, int end) throws IOException {
+        if (end - start < 2 || chars[start] != '"' || chars[end - 1] != '"') {
+            throw error("Invalid string: " + new String(chars, start, end - start));
+        }
+        end--;
+        for (int i = start + 1; i < end; i++) {
+            char c = chars[i];
+            if (c != '\\' || i + 1 == end) {
+                sb.append(c);
+                continue;
+            }
+            c = chars[++i];
+            switch (c) {
+            case 'n': sb.append('\n'); break;
+            case 't': sb.append('\t'); break;
+            case 'r': sb.append('\r'); break;
+            case 'a': sb.append('\u0007'); break;
+            case 'b': sb.append('\b'); break;
+            case 'f': sb.append('\f'); break;
+            case 'v': sb.append('\u000b'); break;
+            case 'x': {
+                int value = 0;
+                while (i + 1 < end && Character.digit(chars[i + 1], 16) != -1) {
+                    value = value * 16 + Character.digit(chars[++i], 16);
+                }
+                sb.append((char) value);
+                break;
+            }
+            default:
+                if (c >= '0' && c <= '7') {
+                    int value = c - '0';
+                    for (int n = 0; n < 2 && i + 1 < end && chars[i + 1] >= '0' && chars[i + 1] <= '7'; n++) {
+                        value = value * 8 + (chars[++i] - '0');
+                    }
+                    sb.append((char) value);
+                } else {
+                    // \\, \", \' and \?
+                    sb.append(c);
+                }
+            }
+        }
+    }
+
+    private boolean startsWith(int start, int end, String prefix) {
+        if (end - start < prefix.length()) {
+            return false;
+        }
+        for (int i = 0; i < prefix.length(); i++) {
+            if (chars[start + i] != prefix.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private boolean matches(int start, int end, String s) {
+        return end - start == s.length() && startsWith(start, end, s);
+    }
+
+    private int skipWhitespace(int start, int end) {
+        while (start < end && isWhitespace(chars[start])) {
+            start++;
+        }
+        return start;
+    }
+
+    private static boolean isWhitespace(char c) {
+        // includes the byte order mark
+        return c <= ' ' || c == '\uFEFF';
+    }
+
+    /**
+     * Sets <code>lineStart</code> and <code>lineEnd</code> to the bounds of
+     * the next line in <code>chars</code>, or keeps them if the current line
+     * was pushed back.
+     *
+     * @return false, if the end of the file has been reached
+     */
+    private boolean readLine() throws IOException {
+        if (pushedBack) {
+            pushedBack = false;
+            return true;
+        }
+        int scan = charStart;
+        while (true) {
+            for (int i = scan; i < charEnd; i++) {
+                if (chars[i] == '\n') {
+                    lineStart = charStart;
+                    lineEnd = i;
+                    charStart = i + 1;
+                    lineNumber++;
+                    return true;
+                }
+            }
+            if (endOfChars) {
+                if (charStart < charEnd) {
+                    lineStart = charStart;
+                    lineEnd = charEnd;
+                    charStart = charEnd;
+                    lineNumber++;
+                    return true;
+                }
+                return false;
+            }
+            int scanned = charEnd - charStart;
+            fill();
+            scan = charStart + scanned;
+        }
+    }
+
+    /**
+     * Moves the unread characters to the start of the buffer and decodes
+     * more bytes after them.
+     */
+    private void fill() throws IOException {
+        if (charStart > 0) {
+            System.arraycopy(chars, charStart, chars, 0, charEnd - charStart);
+            charEnd -= charStart;
+            charStart = 0;
+        }
+        if (charEnd == chars.length) {
+            // a single line longer than the buffer
+            chars = Arrays.copyOf(chars, chars.length * 2);
+        }
+        CharBuffer out = CharBuffer.wrap(chars, charEnd, chars.length - charEnd);
+        while (true) {
+            decoder.decode(bytes, out, endOfInput);
+            if (!out.hasRemaining() || out.position() > charEnd) {
+                break;
+            }
+            if (endOfInput) {
+                decoder.flush(out);
+                endOfChars = true;
+                break;
+            }
+            bytes.compact();
+            endOfInput = channel.read(bytes) == -1;
+            bytes.flip();
+        }
+        charEnd = out.position();
+    }
+
+    /**
+     * @return the number of the first line of the message read last
+     */
+    public int getLineNumber() {
+        return (entryLineNumber > 0) ? entryLineNumber : lineNumber;
+    }
+
+    private IOException error(String message) {
+        return new IOException(name + ":" + lineNumber + ": " + message);
+    }
+
+    public void close() throws IOException {
+        channel.close();
+    }
+
+}
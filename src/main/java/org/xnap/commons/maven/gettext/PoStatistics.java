@@ -0,0 +1,150 @@
+package org.xnap.commons.maven.gettext;
+
+/*
+ * Copyright 2001-2005 The Apache Software Foundation.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Message, word and character counts of a po file. Messages are classified
+ * the way <code>msgfmt --statistics</code> does it, the header is not
+ * counted.
+ */
+public class PoStatistics {
+
+    private int translated;
+    private int fuzzy;
+    private int untranslated;
+    private int obsolete;
+    private int words;
+    private int untranslatedWords;
+    private int characters;
+
+    /**
+     * Reads <code>file</code> once and counts its messages.
+     */
+    public static PoStatistics read(File file) throws IOException {
+        PoStatistics statistics = new PoStatistics();
+        PoParser parser = new PoParser(file);
+        try {
+            PoEntry entry = new PoEntry();
+            while (parser.next(entry)) {
+                statistics.add(entry);
+            }
+        } finally {
+            parser.close();
+        }
+        return statistics;
+    }
+
+    public void add(PoEntry entry) {
+        if (entry.isHeader()) {
+            return;
+        }
+        if (entry.isObsolete()) {
+            obsolete++;
+            return;
+        }
+
+        int count = countWords(entry.getMsgid());
+        words += count;
+        characters += entry.getMsgid().codePointCount(0, entry.getMsgid().length());
+        if (entry.isCompiled()) {
+            translated++;
+        } else if (entry.hasMsgstr()) {
+            fuzzy++;
+            untranslatedWords += count;
+        } else {
+            untranslated++;
+            untranslatedWords += count;
+        }
+    }
+
+    /**
+     * @return the number of whitespace separated tokens in <code>s</code>
+     *      that contain at least one letter or digit
+     */
+    static int countWords(String s) {
+        int count = 0;
+        boolean inWord = false;
+        boolean counted = false;
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (Character.isWhitespace(c)) {
+                inWord = false;
+            } else {
+                if (!inWord) {
+                    inWord = true;
+                    counted = false;
+                }
+                if (!counted && Character.isLetterOrDigit(c)) {
+                    count++;
+                    counted = true;
+                }
+            }
+        }
+        return count;
+    }
+
+    public int getTranslated() {
+        return translated;
+    }
+
+    public int getFuzzy() {
+        return fuzzy;
+    }
+
+    public int getUntranslated() {
+        return untranslated;
+    }
+
+    public int getObsolete() {
+        return obsolete;
+    }
+
+    /**
+     * @return the number of messages that are not obsolete
+     */
+    public int getTotal() {
+        return translated + fuzzy + untranslated;
+    }
+
+    /**
+     * @return the number of words in the msgids of all messages that are not
+     *      obsolete
+     */
+    public int getWords() {
+        return words;
+    }
+
+    /**
+     * @return the number of words in the msgids of fuzzy and untranslated
+     *      messages
+     */
+    public int getUntranslatedWords() {
+        return untranslatedWords;
+    }
+
+    /**
+     * @return the number of characters in the msgids of all messages that
+     *      are not obsolete
+     */
+    public int getCharacters() {
+        return characters;
+    }
+
+}
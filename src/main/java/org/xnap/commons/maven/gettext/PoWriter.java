@@ -0,0 +1,312 @@
+package org.xnap.commons.maven.gettext;
+
+/*
+ * Copyright 2001-2005 The Apache Software Foundation.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.List;
+
+/**
+ * Writes messages in the po format with the layout of the GNU gettext tools:
+ * comments in the order translator, extracted, references and flags, long
+ * strings wrapped to 79 columns and strings that contain newlines split after
+ * each newline. Messages are written as they are passed in, so a catalog can
+ * be copied from a {@link PoParser} without holding it in memory.
+ */
+public class PoWriter {
+
+    /**
+     * The default page width of the GNU gettext tools.
+     */
+    public static final int PAGE_WIDTH = 79;
+
+    private final Writer out;
+    private int pageWidth = PAGE_WIDTH;
+    private boolean first = true;
+
+    public PoWriter(Writer out) {
+        this.out = out;
+    }
+
+    /**
+     * @param pageWidth the maximum line length, 0 disables wrapping of long
+     *      lines
+     */
+    public void setPageWidth(int pageWidth) {
+        this.pageWidth = pageWidth;
+    }
+
+    public void write(PoEntry entry) throws IOException {
+        if (!first) {
+            out.write('\n');
+        }
+        first = false;
+
+        for (String comment : entry.getTranslatorComments()) {
+            writeComment("#", comment);
+        }
+        for (String comment : entry.getExtractedComments()) {
+            writeComment("#.", comment);
+        }
+        writeReferences(entry.getReferences());
+        if (!entry.getFlags().isEmpty()) {
+            out.write("#, ");
+            List<String> flags = entry.getFlags();
+            for (int i = 0; i < flags.size(); i++) {
+                if (i > 0) {
+                    out.write(", ");
+                }
+                out.write(flags.get(i));
+            }
+            out.write('\n');
+        }
+
+        boolean wrap = !entry.getFlags().contains("no-wrap");
+        String prefix = entry.isObsolete() ? "#~ " : "";
+        String previousPrefix = entry.isObsolete() ? "#~| " : "#| ";
+        if (entry.getPreviousMsgctxt() != null) {
+            writeString(previousPrefix, "msgctxt", entry.getPreviousMsgctxt(), wrap);
+        }
+        if (entry.getPreviousMsgid() != null) {
+            writeString(previousPrefix, "msgid", entry.getPreviousMsgid(), wrap);
+        }
+        if (entry.getPreviousMsgidPlural() != null) {
+            writeString(previousPrefix, "msgid_plural", entry.getPreviousMsgidPlural(), wrap);
+        }
+
+        if (entry.getMsgctxt() != null) {
+            writeString(prefix, "msgctxt", entry.getMsgctxt(), wrap);
+        }
+        writeString(prefix, "msgid", entry.getMsgid(), wrap);
+        if (entry.isPlural()) {
+            writeString(prefix, "msgid_plural", entry.getMsgidPlural(), wrap);
+            List<String> msgstr = entry.getMsgstr();
+            if (msgstr.isEmpty()) {
+                writeString(prefix, "msgstr[0]", "", wrap);
+                writeString(prefix, "msgstr[1]", "", wrap);
+            }
+            for (int i = 0; i < msgstr.size(); i++) {
+                writeString(prefix, "msgstr[" + i + "]", msgstr.get(i), wrap);
+            }
+        } else {
+            writeString(prefix, "msgstr", entry.getMsgstr().isEmpty() ? "" : entry.getMsgstr().get(0), wrap);
+        }
+    }
+
+    public void flush() throws IOException {
+        out.flush();
+    }
+
+    private void writeComment(String prefix, String comment) throws IOException {
+        out.write(prefix);
+        if (comment.length() > 0) {
+            out.write(' ');
+            out.write(comment);
+        }
+        out.write('\n');
+    }
+
+    private void writeReferences(List<String> references) throws IOException {
+        if (references.isEmpty()) {
+            return;
+        }
+        out.write("#:");
+        int column = 2;
+        for (String reference : references) {
+            // counted in bytes like GNU gettext does
+            int length = reference.getBytes("UTF-8").length + 1;
+            if (column > 2 && pageWidth > 0 && column + length > pageWidth) {
+                out.write("\n#:");
+                column = 2;
+            }
+            out.write(' ');
+            out.write(reference);
+            column += length;
+        }
+        out.write('\n');
+    }
+
+    /**
+     * Writes <code>keyword "value"</code>, split into several lines if the
+     * value contains a newline before its end or does not fit on one line.
+     */
+    private void writeString(String prefix, String keyword, String value, boolean wrap) throws IOException {
+        int width = (wrap && pageWidth > 0) ? pageWidth - prefix.length() : Integer.MAX_VALUE;
+        String escaped = escape(value);
+
+        int newline = value.indexOf('\n');
+        boolean multiline = newline != -1 && newline < value.length() - 1;
+        if (!multiline && keyword.length() + 3 + width(escaped) <= width) {
+            out.write(prefix);
+            out.write(keyword);
+            out.write(" \"");
+            out.write(escaped);
+            out.write("\"\n");
+            return;
+        }
+
+        out.write(prefix);
+        out.write(keyword);
+        out.write(" \"\"\n");
+
+        // split after each escaped newline, then wrap each part at spaces
+        int start = 0;
+        while (start < escaped.length()) {
+            int end = escaped.indexOf("\\n", start);
+            while (end != -1 && isEscaped(escaped, end)) {
+                end = escaped.indexOf("\\n", end + 1);
+            }
+            end = (end == -1) ? escaped.length() : end + 2;
+            writeWrapped(prefix, escaped.substring(start, end), width - 2);
+            start = end;
+        }
+    }
+
+    /**
+     * @return true, if the backslash at <code>index</code> is itself
+     *      escaped by an odd number of preceding backslashes
+     */
+    private static boolean isEscaped(String s, int index) {
+        int backslashes = 0;
+        for (int i = index - 1; i >= 0 && s.charAt(i) == '\\'; i--) {
+            backslashes++;
+        }
+        return backslashes % 2 == 1;
+    }
+
+    /**
+     * Breaks <code>part</code> into lines of at most <code>width</code>
+     * columns. As with the line breaking GNU gettext uses, a line may end
+     * after a run of spaces, after a hyphen or slash that is followed by a
+     * letter and between two ideographs. A line without such an opportunity
+     * overflows.
+     */
+    private void writeWrapped(String prefix, String part, int width) throws IOException {
+        int lineStart = 0;
+        int lastBreak = -1;
+        int column = 0;
+        for (int i = 0; i < part.length(); i++) {
+            column += charWidth(part, i);
+            if (column > width && lastBreak > lineStart) {
+                writeLine(prefix, part.substring(lineStart, lastBreak));
+                lineStart = lastBreak;
+                column = 0;
+                for (int j = lineStart; j <= i; j++) {
+                    column += charWidth(part, j);
+                }
+            }
+            if (isBreakAfter(part, i)) {
+                lastBreak = i + 1;
+            }
+        }
+        writeLine(prefix, part.substring(lineStart));
+    }
+
+    private static boolean isBreakAfter(String s, int i) {
+        if (i + 1 >= s.length()) {
+            return false;
+        }
+        char c = s.charAt(i);
+        char next = s.charAt(i + 1);
+        if (c == ' ') {
+            return next != ' ';
+        } else if (c == '-' || c == '/') {
+            return i > 0 && s.charAt(i - 1) != ' ' && Character.isLetter(next);
+        }
+        // between ideographs, but not before punctuation
+        return charWidth(s, i) == 2 && charWidth(s, i + 1) == 2
+                && Character.isLetterOrDigit(next);
+    }
+
+    /**
+     * @return the number of columns the char at <code>i</code> takes on a
+     *      terminal: 2 for east asian wide characters, 0 for combining marks
+     *      and the second half of a surrogate pair, 1 otherwise
+     */
+    static int charWidth(String s, int i) {
+        char c = s.charAt(i);
+        if (Character.isLowSurrogate(c)) {
+            return 0;
+        }
+        int codePoint = s.codePointAt(i);
+        int type = Character.getType(codePoint);
+        if (type == Character.NON_SPACING_MARK || type == Character.ENCLOSING_MARK
+                || type == Character.FORMAT) {
+            return 0;
+        }
+        if ((codePoint >= 0x1100 && codePoint <= 0x115f)
+                || (codePoint >= 0x2e80 && codePoint <= 0xa4cf && codePoint != 0x303f)
+                || (codePoint >= 0xac00 && codePoint <= 0xd7a3)
+                || (codePoint >= 0xf900 && codePoint <= 0xfaff)
+                || (codePoint >= 0xfe30 && codePoint <= 0xfe6f)
+                || (codePoint >= 0xff00 && codePoint <= 0xff60)
+                || (codePoint >= 0xffe0 && codePoint <= 0xffe6)
+                || (codePoint >= 0x20000 && codePoint <= 0x3fffd)) {
+            return 2;
+        }
+        return 1;
+    }
+
+    private static int width(String s) {
+        int width = 0;
+        for (int i = 0; i < s.length(); i++) {
+            width += charWidth(s, i);
+        }
+        return width;
+    }
+
+    private void writeLine(String prefix, String content) throws IOException {
+        out.write(prefix);
+        out.write('"');
+        out.write(content);
+        out.write("\"\n");
+    }
+
+    /**
+     * Escapes <code>s</code> for use in a po file string.
+     */
+    public static String escape(String s) {
+        StringBuilder sb = null;
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            String replacement;
+            switch (c) {
+            case '\u0007': replacement = "\\a"; break;
+            case '\b': replacement = "\\b"; break;
+            case '\f': replacement = "\\f"; break;
+            case '\n': replacement = "\\n"; break;
+            case '\r': replacement = "\\r"; break;
+            case '\t': replacement = "\\t"; break;
+            case '\u000b': replacement = "\\v"; break;
+            case '"': replacement = "\\\""; break;
+            case '\\': replacement = "\\\\"; break;
+            default: replacement = null;
+            }
+            if (replacement != null) {
+                if (sb == null) {
+                    sb = new StringBuilder(s.length() + 16);
+                    sb.append(s, 0, i);
+                }
+                sb.append(replacement);
+            } else if (sb != null) {
+                sb.append(c);
+            }
+        }
+        return (sb != null) ? sb.toString() : s;
+    }
+
+}
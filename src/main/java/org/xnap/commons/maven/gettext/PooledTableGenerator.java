@@ -0,0 +1,391 @@
+package org.xnap.commons.maven.gettext;
+
+/*
+ * Copyright 2001-2005 The Apache Software Foundation.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.CRC32;
+
+import org.xnap.commons.maven.gettext.ClassFileWriter.Code;
+import org.xnap.commons.maven.gettext.runtime.MessageTemplate;
+import org.xnap.commons.maven.gettext.runtime.PluralExpression;
+import org.xnap.commons.maven.gettext.runtime.PooledBundle;
+
+/**
+ * Generates the message pool shared by the locales of a {@link PooledBundle},
+ * and the index and the class of each locale.
+ * <p>
+ * The pool holds the union of the msgids of all locales in a
+ * {@link PerfectHash perfect hash}, and each distinct translation once.
+ * Strings are stored once as well, so a translation that is the same as its
+ * msgid points to the key. Add the messages of all locales before generating
+ * the pool; the indexes refer to it by its id.
+ */
+public class PooledTableGenerator {
+
+    private static final String POOLED_BUNDLE = PooledBundle.class.getName().replace('.', '/');
+
+    private static final Charset LATIN_1 = Charset.forName("ISO-8859-1");
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private final String poolName;
+    private final List<Catalog> catalogs = new ArrayList<Catalog>();
+    private final Set<String> keys = new LinkedHashSet<String>();
+    private final Map<Value, Integer> values = new LinkedHashMap<Value, Integer>();
+    private PerfectHash hash;
+    private int id;
+    private boolean parseFormats;
+
+    /**
+     * @param bundleName the fully qualified name of the bundle, the pool is
+     *      named like it
+     */
+    public PooledTableGenerator(String bundleName) {
+        this.poolName = bundleName.replace('.', '/') + PooledBundle.POOL_EXTENSION;
+    }
+
+    /**
+     * @return the name of the pool resource
+     */
+    public String getPoolName() {
+        return poolName;
+    }
+
+    /**
+     * @param parseFormats if true, the patterns of messages that are
+     *      formatted with <code>MessageFormat</code> are parsed and stored
+     *      with the translations, see
+     *      {@link BundleTableGenerator#parseFormat(PoEntry)}
+     */
+    public void setParseFormats(boolean parseFormats) {
+        this.parseFormats = parseFormats;
+    }
+
+    /**
+     * @param className the fully qualified name of the class of the locale
+     */
+    public synchronized Catalog addCatalog(String className) {
+        Catalog catalog = new Catalog(className);
+        catalogs.add(catalog);
+        return catalog;
+    }
+
+    /**
+     * @return the number of distinct msgids of all locales
+     */
+    public int size() {
+        return keys.size();
+    }
+
+    /**
+     * @return the number of distinct translations of all locales
+     */
+    public int getValueCount() {
+        return values.size();
+    }
+
+    /**
+     * Generates the pool, after all messages were added.
+     *
+     * @throws IllegalStateException if no perfect hash was found
+     */
+    public byte[] generatePool() {
+        for (Catalog catalog : catalogs) {
+            for (int i = 0; i < catalog.keys.size(); i++) {
+                String key = catalog.keys.get(i);
+                keys.add(key);
+                Value value = catalog.values.get(i);
+                Integer number = values.get(value);
+                if (number == null) {
+                    number = values.size();
+                    values.put(value, number);
+                }
+                catalog.numbers.put(key, number);
+            }
+        }
+        hash = PerfectHash.build(new ArrayList<String>(keys));
+        try {
+            byte[] pool = writePool();
+            // the id changes with the content, so indexes of another pool are detected
+            CRC32 crc = new CRC32();
+            crc.update(pool);
+            id = (int) crc.getValue();
+            for (int i = 0; i < 4; i++) {
+                pool[8 + i] = (byte) (id >>> (24 - 8 * i));
+            }
+            return pool;
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private byte[] writePool() throws IOException {
+        int[] slots = hash.getSlots();
+        String[] keyList = keys.toArray(new String[keys.size()]);
+        int valuesOffset = PooledBundle.HEADER_SIZE + 4 * (hash.getDisplacements().length + slots.length
+                + values.size());
+        int stringsOffset = valuesOffset;
+        for (Value value : values.keySet()) {
+            // the form count, the offset of each form and of the template
+            stringsOffset += 4 * value.forms.length + 8;
+        }
+
+        // keys first, they must be UTF-8 to be matched
+        ByteArrayOutputStream strings = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(strings);
+        Map<String, Integer> offsets = new HashMap<String, Integer>();
+        for (String key : keyList) {
+            offsets.put(key, stringsOffset + out.size());
+            writeString(out, key, true);
+        }
+        ByteArrayOutputStream records = new ByteArrayOutputStream();
+        DataOutputStream valueOut = new DataOutputStream(records);
+        int[] valueOffsets = new int[values.size()];
+        int i = 0;
+        for (Value value : values.keySet()) {
+            valueOffsets[i++] = valuesOffset + valueOut.size();
+            valueOut.writeInt(value.plural ? value.forms.length : 0);
+            for (String form : value.forms) {
+                Integer offset = offsets.get(form);
+                if (offset == null) {
+                    offset = stringsOffset + out.size();
+                    offsets.put(form, offset);
+                    writeString(out, form, false);
+                }
+                valueOut.writeInt(offset);
+            }
+            if (value.template) {
+                valueOut.writeInt(stringsOffset + out.size());
+                BundleTableGenerator.writeTemplate(out, MessageTemplate.parse(value.forms[0]));
+            } else {
+                valueOut.writeInt(-1);
+            }
+        }
+        out.flush();
+        valueOut.flush();
+        if (valuesOffset + records.size() != stringsOffset) {
+            throw new IllegalStateException("Invalid pool layout");
+        }
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(stringsOffset + strings.size());
+        DataOutputStream pool = new DataOutputStream(bytes);
+        pool.writeInt(PooledBundle.MAGIC);
+        pool.writeInt(PooledBundle.VERSION);
+        pool.writeInt(0);
+        pool.writeInt(hash.getSalt());
+        pool.writeInt(keys.size());
+        pool.writeInt(hash.getDisplacements().length);
+        pool.writeInt(slots.length);
+        pool.writeInt(values.size());
+        for (int displacement : hash.getDisplacements()) {
+            pool.writeInt(displacement);
+        }
+        for (int slot : slots) {
+            pool.writeInt((slot == -1) ? -1 : offsets.get(keyList[slot]));
+        }
+        for (int offset : valueOffsets) {
+            pool.writeInt(offset);
+        }
+        records.writeTo(pool);
+        strings.writeTo(pool);
+        pool.flush();
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Writes a string as Latin-1 if it can be, unless it is a key that is
+     * not ASCII.
+     */
+    private static void writeString(DataOutputStream out, String s, boolean key) throws IOException {
+        boolean latin1 = true;
+        for (int i = 0; i < s.length() && latin1; i++) {
+            latin1 = s.charAt(i) < (key ? 0x80 : 0x100);
+        }
+        byte[] bytes = s.getBytes(latin1 ? LATIN_1 : UTF_8);
+        out.writeInt(bytes.length << 1 | (latin1 ? 1 : 0));
+        out.write(bytes);
+    }
+
+    /**
+     * @param parseFormats whether the pattern of the translation may be parsed
+     * @return how the translation of <code>entry</code> is stored in the pool
+     */
+    static Value createValue(PoEntry entry, boolean parseFormats) {
+        List<String> msgstr = entry.getMsgstr();
+        String[] forms = new String[entry.isPlural() ? msgstr.size() : 1];
+        for (int i = 0; i < forms.length; i++) {
+            forms[i] = msgstr.get(i);
+        }
+        return new Value(forms, entry.isPlural(), parseFormats && BundleTableGenerator.parseFormat(entry) != null);
+    }
+
+    /**
+     * The forms of a translation and whether it has plural forms and a
+     * parsed pattern. Values only equal if they are stored the same way, so
+     * the locales share them.
+     */
+    static final class Value {
+
+        private final String[] forms;
+        private final boolean plural;
+        private final boolean template;
+
+        Value(String[] forms, boolean plural, boolean template) {
+            this.forms = forms;
+            this.plural = plural;
+            this.template = template;
+        }
+
+        boolean isPlural() {
+            return plural;
+        }
+
+        /**
+         * @return true, if the pattern of the first form is stored parsed
+         */
+        boolean hasTemplate() {
+            return template;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Value)) {
+                return false;
+            }
+            Value other = (Value) o;
+            return plural == other.plural && template == other.template && Arrays.equals(forms, other.forms);
+        }
+
+        @Override
+        public int hashCode() {
+            return 4 * Arrays.hashCode(forms) + (plural ? 2 : 0) + (template ? 1 : 0);
+        }
+
+    }
+
+    /**
+     * The messages of one locale.
+     */
+    public class Catalog {
+
+        private final String className;
+        private final List<String> keys = new ArrayList<String>();
+        private final List<Value> values = new ArrayList<Value>();
+        private final Map<String, Integer> numbers = new HashMap<String, Integer>();
+        private PluralExpression pluralExpression = PluralExpression.parse(PluralExpression.DEFAULT);
+        private int formatCount;
+
+        private Catalog(String className) {
+            this.className = className.replace('.', '/');
+        }
+
+        /**
+         * Adds a message like {@link BundleClassGenerator#add(PoEntry)}.
+         *
+         * @return true, if the message was added
+         */
+        public boolean add(PoEntry entry) {
+            if (entry.isHeader()) {
+                String pluralForms = entry.getHeaderField("Plural-Forms");
+                if (pluralForms != null) {
+                    pluralExpression = PluralExpression.fromHeader(pluralForms);
+                }
+            }
+            if (!entry.isCompiled()) {
+                return false;
+            }
+            if (numbers.put(entry.getKey(), -1) != null) {
+                throw new IllegalStateException("Duplicate message: " + entry.getKey());
+            }
+            keys.add(entry.getKey());
+            Value value = createValue(entry, parseFormats);
+            values.add(value);
+            if (value.template) {
+                formatCount++;
+            }
+            return true;
+        }
+
+        public int size() {
+            return keys.size();
+        }
+
+        /**
+         * @return the number of messages whose pattern was parsed
+         */
+        public int getFormatCount() {
+            return formatCount;
+        }
+
+        /**
+         * @return the class file of the bundle
+         */
+        public byte[] generateClass() {
+            ClassFileWriter cw = new ClassFileWriter(className, POOLED_BUNDLE);
+            Code code = cw.addMethod(ClassFileWriter.ACC_PUBLIC, "<init>", "()V");
+            code.setMaxLocals(1);
+            code.load(ClassFileWriter.ALOAD, 0);
+            code.pushString(poolName);
+            code.op2(ClassFileWriter.INVOKESPECIAL, cw.methodRef(POOLED_BUNDLE, "<init>", "(Ljava/lang/String;)V"), -2);
+            code.op(ClassFileWriter.RETURN, 0);
+            BundleClassGenerator.generatePluralEval(cw, pluralExpression);
+            BundleClassGenerator.generateNgettext(cw);
+            return cw.toByteArray();
+        }
+
+        /**
+         * @return the index of the locale into the pool, which must have been
+         *      generated before
+         */
+        public byte[] generateIndex() {
+            if (hash == null) {
+                throw new IllegalStateException("The pool has not been generated");
+            }
+            Set<String> all = PooledTableGenerator.this.keys;
+            String[] keyList = all.toArray(new String[all.size()]);
+            int[] slots = hash.getSlots();
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(PooledBundle.INDEX_HEADER_SIZE + 4 * slots.length);
+            DataOutputStream out = new DataOutputStream(bytes);
+            try {
+                out.writeInt(PooledBundle.INDEX_MAGIC);
+                out.writeInt(PooledBundle.VERSION);
+                out.writeInt(id);
+                out.writeInt(slots.length);
+                for (int slot : slots) {
+                    Integer number = (slot == -1) ? null : numbers.get(keyList[slot]);
+                    out.writeInt((number != null) ? number : -1);
+                }
+                out.flush();
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+            return bytes.toByteArray();
+        }
+
+    }
+
+}
@@ -0,0 +1,340 @@
+package org.xnap.commons.maven.gettext;
+
+/*
+ * Copyright 2001-2005 The Apache Software Foundation.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+/**
+ * Combines extracted messages into a template the same way xgettext does for
+ * a single run: messages with the same context and msgid are merged, their
+ * references are ordered by source file and line and the messages are sorted
+ * as with <code>--sort-output</code>.
+ */
+public class PotCatalog {
+
+    private static final String PLURAL_FORMS_LINE = "Plural-Forms: nplurals=INTEGER; plural=EXPRESSION;\n";
+
+    /**
+     * Orders messages by msgid, then by context, comparing code points like
+     * strcmp does on UTF-8.
+     */
+    static final Comparator<PoEntry> MSGID_ORDER = new Comparator<PoEntry>() {
+        public int compare(PoEntry a, PoEntry b) {
+            int result = compareCodePoints(a.getMsgid(), b.getMsgid());
+            if (result != 0) {
+                return result;
+            }
+            if (a.getMsgctxt() == null) {
+                return (b.getMsgctxt() == null) ? 0 : -1;
+            }
+            return (b.getMsgctxt() == null) ? 1 : compareCodePoints(a.getMsgctxt(), b.getMsgctxt());
+        }
+    };
+
+    private final Map<String, Integer> fileOrder = new HashMap<String, Integer>();
+    private final Map<String, PoEntry> entries = new LinkedHashMap<String, PoEntry>();
+    private PoEntry header;
+
+    /**
+     * @param files the source files in the order they were passed to
+     *      xgettext, determines the order of references
+     */
+    public PotCatalog(List<String> files) {
+        for (int i = 0; i < files.size(); i++) {
+            fileOrder.put(files.get(i), i);
+        }
+    }
+
+    /**
+     * @return the header xgettext writes into a new template
+     */
+    public static PoEntry createDefaultHeader() {
+        PoEntry header = new PoEntry();
+        header.getTranslatorComments().add("SOME DESCRIPTIVE TITLE.");
+        header.getTranslatorComments().add("Copyright (C) YEAR THE PACKAGE'S COPYRIGHT HOLDER");
+        header.getTranslatorComments().add("This file is distributed under the same license as the PACKAGE package.");
+        header.getTranslatorComments().add("FIRST AUTHOR <EMAIL@ADDRESS>, YEAR.");
+        header.getTranslatorComments().add("");
+        header.getFlags().add("fuzzy");
+        header.setMsgid("");
+        SimpleDateFormat format = new SimpleDateFormat("yyyy-MM-dd HH:mmZ", Locale.US);
+        header.setMsgstr(0, "Project-Id-Version: PACKAGE VERSION\n"
+                + "Report-Msgid-Bugs-To: \n"
+                + "POT-Creation-Date: " + format.format(new Date()) + "\n"
+                + "PO-Revision-Date: YEAR-MO-DA HO:MI+ZONE\n"
+                + "Last-Translator: FULL NAME <EMAIL@ADDRESS>\n"
+                + "Language-Team: LANGUAGE <LL@li.org>\n"
+                + "Language: \n"
+                + "MIME-Version: 1.0\n"
+                + "Content-Type: text/plain; charset=CHARSET\n"
+                + "Content-Transfer-Encoding: 8bit\n");
+        return header;
+    }
+
+    public void setHeader(PoEntry header) {
+        this.header = header;
+    }
+
+    public PoEntry getHeader() {
+        return header;
+    }
+
+    /**
+     * Adds a copy of <code>entry</code>, or merges it into the message with
+     * the same key.
+     */
+    public void add(PoEntry entry) {
+        if (entry.isHeader()) {
+            header = entry.copy();
+            return;
+        }
+        PoEntry existing = entries.get(entry.getKey());
+        if (existing == null) {
+            entries.put(entry.getKey(), entry.copy());
+            return;
+        }
+        if (existing.getMsgidPlural() == null) {
+            existing.setMsgidPlural(entry.getMsgidPlural());
+        }
+        addAllAbsent(existing.getExtractedComments(), entry.getExtractedComments());
+        addAllAbsent(existing.getReferences(), entry.getReferences());
+        addAllAbsent(existing.getFlags(), entry.getFlags());
+    }
+
+    /**
+     * Adds the messages of templates that are each sorted like
+     * <code>--sort-output</code> sorts them, by reading them side by side
+     * in a k-way merge. The header is taken from the first template that
+     * has one. Files that do not exist or are empty are skipped.
+     */
+    public void merge(List<File> templates) throws IOException {
+        PriorityQueue<Head> queue = new PriorityQueue<Head>();
+        try {
+            for (int i = 0; i < templates.size(); i++) {
+                File file = templates.get(i);
+                if (file.length() > 0) {
+                    Head head = new Head(new PoParser(file), i);
+                    if (head.advance()) {
+                        queue.add(head);
+                    }
+                }
+            }
+            while (!queue.isEmpty()) {
+                Head head = queue.poll();
+                if (!head.entry.isHeader() || header == null) {
+                    add(head.entry);
+                }
+                if (head.advance()) {
+                    queue.add(head);
+                }
+            }
+        } finally {
+            for (Head head : queue) {
+                head.parser.close();
+            }
+        }
+    }
+
+    /**
+     * The current message of a template in a k-way merge.
+     */
+    private static class Head implements Comparable<Head> {
+
+        final PoParser parser;
+        final int index;
+        PoEntry entry;
+
+        Head(PoParser parser, int index) {
+            this.parser = parser;
+            this.index = index;
+        }
+
+        /**
+         * @return false, if the template is exhausted, it is closed then
+         */
+        boolean advance() throws IOException {
+            entry = parser.next();
+            if (entry == null) {
+                parser.close();
+                return false;
+            }
+            return true;
+        }
+
+        public int compareTo(Head o) {
+            int result = MSGID_ORDER.compare(entry, o.entry);
+            return (result != 0) ? result : index - o.index;
+        }
+
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    /**
+     * @return the messages without the header in output order
+     */
+    public List<PoEntry> getEntries() {
+        Comparator<String> referenceOrder = new Comparator<String>() {
+            public int compare(String a, String b) {
+                int result = compareFiles(getFile(a), getFile(b));
+                return (result != 0) ? result : getLine(a) - getLine(b);
+            }
+        };
+        List<PoEntry> list = new ArrayList<PoEntry>(entries.values());
+        for (PoEntry entry : list) {
+            Collections.sort(entry.getReferences(), referenceOrder);
+        }
+        Collections.sort(list, MSGID_ORDER);
+        return list;
+    }
+
+    /**
+     * Writes the template to <code>file</code>. The charset and the
+     * Plural-Forms field of the header are set from the content the way
+     * xgettext sets them.
+     */
+    public void write(File file) throws IOException {
+        List<PoEntry> list = getEntries();
+        Writer out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), "UTF-8"));
+        try {
+            PoWriter writer = new PoWriter(out);
+            if (header != null) {
+                writer.write(createHeader(list));
+            }
+            for (PoEntry entry : list) {
+                writer.write(entry);
+            }
+        } finally {
+            out.close();
+        }
+    }
+
+    private PoEntry createHeader(List<PoEntry> list) {
+        boolean ascii = true;
+        boolean plural = false;
+        for (PoEntry entry : list) {
+            ascii = ascii && isAscii(entry.getMsgctxt()) && isAscii(entry.getMsgid())
+                    && isAscii(entry.getMsgidPlural());
+            plural = plural || entry.isPlural();
+        }
+
+        PoEntry result = header.copy();
+        String value = result.getMsgstr().isEmpty() ? "" : result.getMsgstr().get(0);
+        value = value.replaceFirst("charset=[^\\s;]*", "charset=" + (ascii ? "CHARSET" : "UTF-8"));
+        if (plural && !value.contains(PLURAL_FORMS_LINE)) {
+            value = value + PLURAL_FORMS_LINE;
+        } else if (!plural) {
+            value = value.replace(PLURAL_FORMS_LINE, "");
+        }
+        result.setMsgstr(0, value);
+        return result;
+    }
+
+    private int compareFiles(String a, String b) {
+        Integer indexA = fileOrder.get(a);
+        Integer indexB = fileOrder.get(b);
+        if (indexA != null && indexB != null) {
+            return indexA - indexB;
+        } else if (indexA != null) {
+            return -1;
+        } else if (indexB != null) {
+            return 1;
+        }
+        return a.compareTo(b);
+    }
+
+    /**
+     * @return the file name part of a <code>file:line</code> reference
+     */
+    static String getFile(String reference) {
+        int i = reference.lastIndexOf(':');
+        return (i > 0 && isNumber(reference, i + 1)) ? reference.substring(0, i) : reference;
+    }
+
+    private static int getLine(String reference) {
+        int i = reference.lastIndexOf(':');
+        return (i > 0 && isNumber(reference, i + 1)) ? Integer.parseInt(reference.substring(i + 1)) : 0;
+    }
+
+    private static boolean isNumber(String s, int start) {
+        if (start >= s.length() || s.length() - start > 9) {
+            return false;
+        }
+        for (int i = start; i < s.length(); i++) {
+            if (!Character.isDigit(s.charAt(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isAscii(String s) {
+        if (s != null) {
+            for (int i = 0; i < s.length(); i++) {
+                if (s.charAt(i) > 0x7f) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    private static void addAllAbsent(List<String> target, List<String> source) {
+        for (String s : source) {
+            if (!target.contains(s)) {
+                target.add(s);
+            }
+        }
+    }
+
+    static int compareCodePoints(String a, String b) {
+        int length = Math.min(a.length(), b.length());
+        for (int i = 0; i < length; i++) {
+            char ca = a.charAt(i);
+            char cb = b.charAt(i);
+            if (ca != cb) {
+                // surrogates encode code points above all other chars
+                boolean sa = ca >= Character.MIN_SURROGATE && ca <= Character.MAX_SURROGATE;
+                boolean sb = cb >= Character.MIN_SURROGATE && cb <= Character.MAX_SURROGATE;
+                if (sa != sb) {
+                    return sa ? 1 : -1;
+                }
+                return ca - cb;
+            }
+        }
+        return a.length() - b.length();
+    }
+
+}
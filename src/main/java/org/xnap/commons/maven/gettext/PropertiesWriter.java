@@ -0,0 +1,173 @@
+package org.xnap.commons.maven.gettext;
+
+/*
+ * Copyright 2001-2005 The Apache Software Foundation.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+
+/**
+ * Converts a po file into a Java properties file the same way
+ * <code>msgcat --no-location -p</code> does. Messages are written as they are
+ * read, the catalog is never held in memory.
+ * <p>
+ * As with msgcat, plural and obsolete messages are left out, the context of
+ * a message is not part of the key and the header as well as fuzzy and
+ * untranslated messages are commented out with "!".
+ */
+public class PropertiesWriter {
+
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+    private final Writer out;
+    private boolean first = true;
+
+    public PropertiesWriter(Writer out) {
+        this.out = out;
+    }
+
+    /**
+     * Converts <code>input</code> into the properties file <code>output</code>.
+     *
+     * @return the number of messages written
+     */
+    public static int convert(File input, File output) throws IOException {
+        int count = 0;
+        PoParser parser = new PoParser(input);
+        try {
+            // everything beyond ASCII is escaped
+            Writer writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(output), "ISO-8859-1"));
+            try {
+                PropertiesWriter properties = new PropertiesWriter(writer);
+                PoEntry entry = new PoEntry();
+                while (parser.next(entry)) {
+                    if (properties.write(entry)) {
+                        count++;
+                    }
+                }
+            } finally {
+                writer.close();
+            }
+        } finally {
+            parser.close();
+        }
+        return count;
+    }
+
+    /**
+     * @return false, if the message was skipped because it is a plural or
+     *      obsolete message
+     */
+    public boolean write(PoEntry entry) throws IOException {
+        if (entry.isPlural() || entry.isObsolete()) {
+            return false;
+        }
+
+        if (!first) {
+            out.write('\n');
+        }
+        first = false;
+
+        for (String comment : entry.getTranslatorComments()) {
+            writeComment("#", comment);
+        }
+        for (String comment : entry.getExtractedComments()) {
+            writeComment("#.", comment);
+        }
+        if (!entry.getFlags().isEmpty()) {
+            out.write("#, ");
+            for (int i = 0; i < entry.getFlags().size(); i++) {
+                if (i > 0) {
+                    out.write(", ");
+                }
+                writeUnicodeEscaped(entry.getFlags().get(i));
+            }
+            out.write('\n');
+        }
+
+        String msgstr = entry.getMsgstr().isEmpty() ? "" : entry.getMsgstr().get(0);
+        if (entry.isHeader() || msgstr.length() == 0 || entry.isFuzzy()) {
+            out.write('!');
+        }
+        writeEscaped(entry.getMsgid(), true);
+        out.write('=');
+        writeEscaped(msgstr, false);
+        out.write('\n');
+        return true;
+    }
+
+    private void writeComment(String prefix, String comment) throws IOException {
+        out.write(prefix);
+        if (comment.length() > 0) {
+            out.write(' ');
+            writeUnicodeEscaped(comment);
+        }
+        out.write('\n');
+    }
+
+    private void writeEscaped(String s, boolean key) throws IOException {
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c == ' ' && (i == 0 || key)) {
+                out.write("\\ ");
+            } else if (c == '\t') {
+                out.write("\\t");
+            } else if (c == '\n') {
+                out.write("\\n");
+            } else if (c == '\r') {
+                out.write("\\r");
+            } else if (c == '\f') {
+                out.write("\\f");
+            } else if (c == '\\' || c == '#' || c == '!' || c == '=' || c == ':') {
+                out.write('\\');
+                out.write(c);
+            } else if (c >= 0x20 && c < 0x7f) {
+                out.write(c);
+            } else {
+                writeUnicodeEscape(c);
+            }
+        }
+    }
+
+    /**
+     * Escapes everything beyond ASCII, so comments survive the ISO-8859-1
+     * encoding of the file.
+     */
+    private void writeUnicodeEscaped(String s) throws IOException {
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c < 0x7f) {
+                out.write(c);
+            } else {
+                writeUnicodeEscape(c);
+            }
+        }
+    }
+
+    private void writeUnicodeEscape(char c) throws IOException {
+        // surrogate pairs end up as two escapes, as required
+        out.write("\\u");
+        out.write(HEX_DIGITS[(c >> 12) & 0xf]);
+        out.write(HEX_DIGITS[(c >> 8) & 0xf]);
+        out.write(HEX_DIGITS[(c >> 4) & 0xf]);
+        out.write(HEX_DIGITS[c & 0xf]);
+    }
+
+}
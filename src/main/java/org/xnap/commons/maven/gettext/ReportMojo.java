@@ -17,25 +17,22 @@ package org.xnap.commons.maven.gettext;
  */
 
 import java.io.File;
-import java.io.StringWriter;
-import java.io.Writer;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 import java.util.Locale;
 import java.util.StringTokenizer;
+import java.util.concurrent.locks.Lock;
 
 import org.apache.maven.doxia.sink.Sink;
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.logging.Log;
 import org.apache.maven.plugins.annotations.LifecyclePhase;
 import org.apache.maven.plugins.annotations.Mojo;
 import org.apache.maven.plugins.annotations.Parameter;
 import org.apache.maven.reporting.AbstractMavenReport;
 import org.apache.maven.reporting.MavenReportException;
 import org.codehaus.plexus.util.DirectoryScanner;
-import org.codehaus.plexus.util.cli.CommandLineException;
-import org.codehaus.plexus.util.cli.CommandLineUtils;
-import org.codehaus.plexus.util.cli.Commandline;
-import org.codehaus.plexus.util.cli.WriterStreamConsumer;
 
 /**
  * Goal that generates a report.
@@ -43,7 +40,7 @@ import org.codehaus.plexus.util.cli.WriterStreamConsumer;
  * @author Steffen Pingel
  *
  */
-@Mojo(name = "report", defaultPhase = LifecyclePhase.PROCESS_SOURCES)
+@Mojo(name = "report", defaultPhase = LifecyclePhase.PROCESS_SOURCES, threadSafe = true)
 public class ReportMojo extends AbstractMavenReport {
 
     /**
@@ -53,10 +50,26 @@ public class ReportMojo extends AbstractMavenReport {
     protected File poDirectory;
 
     /**
-     * msgfmt command.
+     * The number of po files that are read in parallel. <code>0</code> uses
+     * one thread per available processor.
      */
-    @Parameter(defaultValue = "msgfmt", required = true)
-    protected String msgfmtCmd;
+    @Parameter(property = "gettext.threads", defaultValue = "0")
+    protected int threads;
+
+    /**
+     * Directory the metrics are written to, as <code>report-metrics.json</code>.
+     */
+    @Parameter(property = "gettext.metricsDirectory", defaultValue = "${project.build.directory}/gettext")
+    protected File metricsDirectory;
+
+    /**
+     * If true, a one-line summary of the metrics is logged.
+     */
+    @Parameter(property = "gettext.metricsSummary", defaultValue = "false")
+    protected boolean metricsSummary;
+
+    @Parameter(defaultValue = "${project.groupId}:${project.artifactId}", readonly = true)
+    protected String projectId;
 
     protected void executeReport(Locale locale) throws MavenReportException {
         Sink sink = getSink();
@@ -69,8 +82,19 @@ public class ReportMojo extends AbstractMavenReport {
 
         sink.body();
 
-        Stats stats = gatherStats();
-        createReport(sink, stats);
+        BuildMetrics metrics = new BuildMetrics("report", projectId);
+        Lock lock = CatalogRegistry.getLock(poDirectory).readLock();
+        lock.lock();
+        try {
+            List<StatsEntry> stats = gatherStats(metrics);
+            createReport(sink, stats);
+        } catch (MavenReportException e) {
+            metrics.setFailed(true);
+            throw e;
+        } finally {
+            lock.unlock();
+            metrics.finish(new File(metricsDirectory, "report-metrics.json"), metricsSummary, getLog());
+        }
 
         sink.body_();
 
@@ -78,7 +102,7 @@ public class ReportMojo extends AbstractMavenReport {
         sink.close();
     }
 
-    private void createReport(Sink sink, Stats stats) {
+    private void createReport(Sink sink, List<StatsEntry> items) {
         sink.section1();
         sink.sectionTitle1();
         sink.text("Gettext Statistics");
@@ -88,45 +112,45 @@ public class ReportMojo extends AbstractMavenReport {
         sink.table();
         sink.tableCaption();
         sink.tableRow();
-        sink.tableHeaderCell();
-        sink.text("Locale");
-        sink.tableHeaderCell_();
-        sink.tableHeaderCell();
-        sink.text("Translated");
-        sink.tableHeaderCell_();
-        sink.tableHeaderCell();
-        sink.text("Untranslated");
-        sink.tableHeaderCell_();
-        sink.tableHeaderCell();
-        sink.text("Fuzzy");
-        sink.tableHeaderCell_();
+        headerCell(sink, "Locale");
+        headerCell(sink, "Translated");
+        headerCell(sink, "Untranslated");
+        headerCell(sink, "Fuzzy");
+        headerCell(sink, "Obsolete");
+        headerCell(sink, "Words");
+        headerCell(sink, "Untranslated Words");
+        headerCell(sink, "Characters");
         sink.tableRow_();
 
-        List<StatsEntry> items = stats.getItems();
         Collections.sort(items);
         for (StatsEntry item : items) {
+            PoStatistics statistics = item.getStatistics();
             sink.tableRow();
-            // name
-            sink.tableCell();
-            sink.text(item.getLocale().getDisplayName());
-            sink.tableCell_();
-            // translated
-            sink.tableCell();
-            sink.text(item.getTranslated() + "");
-            sink.tableCell_();
-            // untranslated
-            sink.tableCell();
-            sink.text(item.getUntranslated() + "");
-            sink.tableCell_();
-            // fuzzy
-            sink.tableCell();
-            sink.text(item.getFuzzy() + "");
-            sink.tableCell_();
+            cell(sink, item.getLocale().getDisplayName());
+            cell(sink, statistics.getTranslated() + "");
+            cell(sink, statistics.getUntranslated() + "");
+            cell(sink, statistics.getFuzzy() + "");
+            cell(sink, statistics.getObsolete() + "");
+            cell(sink, statistics.getWords() + "");
+            cell(sink, statistics.getUntranslatedWords() + "");
+            cell(sink, statistics.getCharacters() + "");
             sink.tableRow_();
         }
         sink.table_();
     }
 
+    private void headerCell(Sink sink, String text) {
+        sink.tableHeaderCell();
+        sink.text(text);
+        sink.tableHeaderCell_();
+    }
+
+    private void cell(Sink sink, String text) {
+        sink.tableCell();
+        sink.text(text);
+        sink.tableCell_();
+    }
+
     public String getDescription(Locale locale) {
         return "Statistics about po files.";
     }
@@ -139,47 +163,56 @@ public class ReportMojo extends AbstractMavenReport {
         return "gettext-report";
     }
 
-    public Stats gatherStats() {
+    /**
+     * Reads all po files in parallel. Files that cannot be read are left out
+     * of the report.
+     */
+    public List<StatsEntry> gatherStats() throws MavenReportException {
+        return gatherStats(new BuildMetrics("report", projectId));
+    }
+
+    private List<StatsEntry> gatherStats(final BuildMetrics metrics) throws MavenReportException {
         getLog().info("Gathering statistics for po files in '"
                 + poDirectory.getAbsolutePath() + "'.");
 
+        long scan = metrics.start();
         DirectoryScanner ds = new DirectoryScanner();
         ds.setBasedir(poDirectory);
         ds.setIncludes(new String[]{"**/*.po"});
         ds.scan();
+        metrics.stop("scan", scan);
 
-        Stats stats = new Stats();
+        final List<StatsEntry> stats = Collections.synchronizedList(new ArrayList<StatsEntry>());
 
         String[] files = ds.getIncludedFiles();
+        metrics.add("files", files.length);
+        TaskRunner runner = new TaskRunner(getLog(), threads);
         for (String file1 : files) {
-            File file = new File(poDirectory, file1);
-            getLog().info("Processing " + file.getAbsolutePath());
-
-            Commandline cl = new Commandline();
-            // make sure the output is in english
-            cl.addEnvironment("LC_ALL", "C");
-            cl.setExecutable(msgfmtCmd);
-            cl.createArg().setValue("--statistics");
-            cl.createArg().setValue(file.getAbsolutePath());
-
-            Writer out = new StringWriter();
-            Writer err = new StringWriter();
-            try {
-                int ret = CommandLineUtils.executeCommandLine(cl,
-                        new WriterStreamConsumer(out),
-                        new WriterStreamConsumer(err));
-                if (ret == 0) {
-                    // for whatever reason the output is written to stderr
-                    stats.parseOutput(file, err.toString());
-                } else {
-                    getLog().info(err.toString());
+            final File file = new File(poDirectory, file1);
+            runner.submit(file1, new TaskRunner.Task() {
+                public void execute(Log log) throws Exception {
+                    log.info("Processing " + file.getAbsolutePath());
+                    long start = metrics.start();
+                    try {
+                        PoStatistics statistics = PoStatistics.read(file);
+                        metrics.addLength("bytes.read", file);
+                        metrics.add("entries", statistics.getTotal() + statistics.getObsolete());
+                        stats.add(new StatsEntry(file, statistics));
+                    } catch (Exception e) {
+                        log.warn("Could not read " + file + ": " + e.getMessage());
+                    } finally {
+                        metrics.stop("read", start);
+                    }
                 }
-            } catch (CommandLineException e) {
-                getLog().error("Could not execute msgfmt: " + err.toString(), e);
-            }
+            });
+        }
+        try {
+            runner.run("gather statistics");
+        } catch (MojoExecutionException e) {
+            throw new MavenReportException(e.getMessage(), e);
         }
 
-        return stats;
+        return new ArrayList<StatsEntry>(stats);
     }
 
     public static Locale getLocale(File file) {
@@ -193,71 +226,16 @@ public class ReportMojo extends AbstractMavenReport {
 
     }
 
-    private class Stats {
-
-        private List<StatsEntry> items = new ArrayList<StatsEntry>();
-
-        /**
-         * <code>
-         *  117 translated messages.
-         *  0 translated messages, 117 untranslated messages.
-         * 	92 translated messages, 5 fuzzy translations, 20 untranslated messages.
-         * </code>
-         *
-         * @param line output of msgfmt command
-         */
-        public void parseOutput(File file, String line) {
-            StatsEntry entry = new StatsEntry(file);
-            items.add(entry);
-
-            StringTokenizer t = new StringTokenizer(line, ",");
-            while (t.hasMoreTokens()) {
-                String token = t.nextToken().trim();
-
-                // remove trailing "."
-                if (token.endsWith(".")) {
-                    token = token.substring(0, token.length() - 1);
-                }
-
-                if (token.endsWith("untranslated messages")) {
-                    entry.setUntranslated(extractNumber(token));
-                } else if (token.endsWith("translated messages")) {
-                    entry.setTranslated(extractNumber(token));
-                } else if (token.endsWith("fuzzy translations")) {
-                    entry.setFuzzy(extractNumber(token));
-                }
-            }
-        }
-
-        private int extractNumber(String token) {
-            StringTokenizer t = new StringTokenizer(token, " ");
-            if (t.hasMoreTokens()) {
-                try {
-                    return Integer.parseInt(t.nextToken());
-                } catch (NumberFormatException e) {
-                }
-            }
-            getLog().warn("Could not parse token: " + token);
-            return 0;
-        }
-
-        public List<StatsEntry> getItems() {
-            return items;
-        }
-
-    }
-
     private class StatsEntry implements Comparable<StatsEntry> {
 
         private File file;
         private Locale locale;
-        private int untranslated;
-        private int fuzzy;
-        private int translated;
+        private PoStatistics statistics;
 
-        public StatsEntry(File file) {
+        public StatsEntry(File file, PoStatistics statistics) {
             this.file = file;
             this.locale = ReportMojo.getLocale(file);
+            this.statistics = statistics;
         }
 
         public int compareTo(StatsEntry o) {
@@ -273,32 +251,8 @@ public class ReportMojo extends AbstractMavenReport {
             return file;
         }
 
-        public int getTotal() {
-            return getUntranslated() + getTotal() + getTranslated();
-        }
-
-        public int getUntranslated() {
-            return untranslated;
-        }
-
-        public int getFuzzy() {
-            return fuzzy;
-        }
-
-        public int getTranslated() {
-            return translated;
-        }
-
-        public void setTranslated(int translated) {
-            this.translated = translated;
-        }
-
-        public void setFuzzy(int fuzzy) {
-            this.fuzzy = fuzzy;
-        }
-
-        public void setUntranslated(int untranslated) {
-            this.untranslated = untranslated;
+        public PoStatistics getStatistics() {
+            return statistics;
         }
 
     }
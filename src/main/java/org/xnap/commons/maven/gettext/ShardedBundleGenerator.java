@@ -0,0 +1,181 @@
+package org.xnap.commons.maven.gettext;
+
+/*
+ * Copyright 2001-2005 The Apache Software Foundation.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import org.xnap.commons.maven.gettext.ClassFileWriter.Code;
+import org.xnap.commons.maven.gettext.ClassFileWriter.Label;
+import org.xnap.commons.maven.gettext.runtime.PluralExpression;
+
+/**
+ * Generates a resource bundle whose messages are split by the hash of their
+ * key into several shard classes. The bundle class has the same public
+ * interface as the classes {@link BundleClassGenerator} generates, but holds
+ * no messages itself: a lookup calls the static <code>lookup</code> method of
+ * the shard of the key, so the JVM loads and initializes a shard on its first
+ * lookup only. Messages of shards that are never used are never loaded.
+ * <p>
+ * The shards are named like the bundle with the suffix <code>$Shard</code>
+ * and their number. They do not extend <code>ResourceBundle</code>, so
+ * <code>ResourceBundle.getBundle</code> never mistakes them for bundles.
+ */
+public class ShardedBundleGenerator {
+
+    public static final String SHARD_SUFFIX = "$Shard";
+
+    private static final String OBJECT = "java/lang/Object";
+    private static final String STRING = "java/lang/String";
+    private static final String ARRAY_LIST = "java/util/ArrayList";
+
+    private final String className;
+    private final BundleClassGenerator[] shards;
+    private PluralExpression pluralExpression = PluralExpression.parse(PluralExpression.DEFAULT);
+    private int size;
+
+    /**
+     * @param className the fully qualified name of the bundle class
+     * @param shardCount the number of shard classes
+     */
+    public ShardedBundleGenerator(String className, int shardCount) {
+        if (shardCount < 1) {
+            throw new IllegalArgumentException("Invalid shard count: " + shardCount);
+        }
+        this.className = className.replace('.', '/');
+        shards = new BundleClassGenerator[shardCount];
+        for (int i = 0; i < shardCount; i++) {
+            shards[i] = new BundleClassGenerator(getShardClassName(i));
+        }
+    }
+
+    /**
+     * Adds a message to its shard like {@link BundleClassGenerator#add(PoEntry)}.
+     *
+     * @return true, if the message was added
+     */
+    public boolean add(PoEntry entry) {
+        if (entry.isHeader()) {
+            String pluralForms = entry.getHeaderField("Plural-Forms");
+            if (pluralForms != null) {
+                pluralExpression = PluralExpression.fromHeader(pluralForms);
+            }
+        }
+        if (shards[getShard(entry.getKey(), shards.length)].add(entry)) {
+            size++;
+            return true;
+        }
+        return false;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int getShardCount() {
+        return shards.length;
+    }
+
+    /**
+     * @return the internal name of shard <code>index</code>
+     */
+    public String getShardClassName(int index) {
+        return className + SHARD_SUFFIX + index;
+    }
+
+    /**
+     * @return the shard of <code>key</code>, computed from
+     *      <code>String.hashCode()</code> which is the same on every JVM
+     */
+    public static int getShard(String key, int shardCount) {
+        return (key.hashCode() & 0x7fffffff) % shardCount;
+    }
+
+    /**
+     * @return the class file of shard <code>index</code>
+     * @throws IllegalStateException if the messages do not fit into a single
+     *      class
+     */
+    public byte[] generateShard(int index) {
+        return shards[index].generateShard();
+    }
+
+    /**
+     * @return the class file of the bundle
+     */
+    public byte[] generate() {
+        ClassFileWriter cw = new ClassFileWriter(className, "java/util/ResourceBundle");
+        BundleClassGenerator.generateConstructor(cw);
+        generateLookup(cw);
+        BundleClassGenerator.generateHandleGetObject(cw);
+        generateGetKeys(cw);
+        BundleClassGenerator.generatePluralEval(cw, pluralExpression);
+        BundleClassGenerator.generateNgettext(cw);
+        BundleClassGenerator.generateGetParent(cw);
+        return cw.toByteArray();
+    }
+
+    /**
+     * <code>public Object lookup(String msgid)</code>, calls the lookup method
+     * of the shard of <code>msgid</code>.
+     */
+    private void generateLookup(ClassFileWriter cw) {
+        String descriptor = "(L" + STRING + ";)L" + OBJECT + ";";
+        Code code = cw.addMethod(ClassFileWriter.ACC_PUBLIC, "lookup", descriptor);
+        code.setMaxLocals(3);
+        code.load(ClassFileWriter.ALOAD, 1);
+        code.op2(ClassFileWriter.INVOKEVIRTUAL, cw.methodRef(STRING, "hashCode", "()I"), 0);
+        code.pushInt(0x7fffffff);
+        code.op(ClassFileWriter.IAND, -1);
+        code.pushInt(shards.length);
+        code.op(ClassFileWriter.IREM, -1);
+        code.store(ClassFileWriter.ISTORE, 2);
+        for (int i = 0; i < shards.length; i++) {
+            Label next = code.newLabel();
+            if (i < shards.length - 1) {
+                code.load(ClassFileWriter.ILOAD, 2);
+                code.pushInt(i);
+                code.jump(ClassFileWriter.IF_ICMPNE, next, -2);
+            }
+            code.load(ClassFileWriter.ALOAD, 1);
+            code.op2(ClassFileWriter.INVOKESTATIC, cw.methodRef(getShardClassName(i), "lookup", descriptor), 0);
+            code.op(ClassFileWriter.ARETURN, -1);
+            code.mark(next, 0);
+        }
+    }
+
+    /**
+     * <code>public Enumeration getKeys()</code>, the keys of all shards.
+     */
+    private void generateGetKeys(ClassFileWriter cw) {
+        Code code = cw.addMethod(ClassFileWriter.ACC_PUBLIC, "getKeys", "()Ljava/util/Enumeration;");
+        code.setMaxLocals(2);
+        code.op2(ClassFileWriter.NEW, cw.classRef(ARRAY_LIST), 1);
+        code.op(ClassFileWriter.DUP, 1);
+        code.op2(ClassFileWriter.INVOKESPECIAL, cw.methodRef(ARRAY_LIST, "<init>", "()V"), -1);
+        code.store(ClassFileWriter.ASTORE, 1);
+        int addAll = cw.methodRef(ARRAY_LIST, "addAll", "(Ljava/util/Collection;)Z");
+        for (int i = 0; i < shards.length; i++) {
+            code.load(ClassFileWriter.ALOAD, 1);
+            code.op2(ClassFileWriter.INVOKESTATIC, cw.methodRef(getShardClassName(i), "keys", "()Ljava/util/Set;"), 1);
+            code.op2(ClassFileWriter.INVOKEVIRTUAL, addAll, -1);
+            code.op(ClassFileWriter.POP, -1);
+        }
+        code.load(ClassFileWriter.ALOAD, 1);
+        code.op2(ClassFileWriter.INVOKESTATIC, cw.methodRef("java/util/Collections", "enumeration",
+                "(Ljava/util/Collection;)Ljava/util/Enumeration;"), 0);
+        code.op(ClassFileWriter.ARETURN, -1);
+    }
+
+}
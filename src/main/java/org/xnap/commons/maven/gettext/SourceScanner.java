@@ -0,0 +1,483 @@
+package org.xnap.commons.maven.gettext;
+
+/*
+ * Copyright 2001-2005 The Apache Software Foundation.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.FileVisitOption;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Pattern;
+
+/**
+ * Finds the files below one or more directories that match include and
+ * exclude patterns, with the pattern syntax of plexus
+ * <code>DirectoryScanner</code>: <code>*</code> and <code>?</code> match
+ * within a path segment, <code>**</code> matches any number of segments.
+ * The patterns are compiled once. Directories that are excluded as a whole
+ * or cannot contain an included file are not entered.
+ * <p>
+ * An optional snapshot remembers the modification time and the matching
+ * files of each directory. A directory whose modification time has not
+ * changed since the previous scan is not listed again, only its
+ * subdirectories are visited. Adding, removing or renaming an entry changes
+ * the modification time of its directory, so the result is the same as
+ * with a full scan.
+ * <p>
+ * The returned paths are relative to their directory, use <code>/</code> as
+ * separator and are sorted.
+ */
+public class SourceScanner {
+
+    private static final int SNAPSHOT_MAGIC = 0x47534e31;
+
+    /**
+     * Directories modified this shortly before the scan may be modified
+     * again within the resolution of their timestamp, they are not kept in
+     * the snapshot.
+     */
+    private static final long TIMESTAMP_RESOLUTION = 2000;
+
+    private final Glob[] includes;
+    private final Glob[] excludes;
+    private final String patternDigest;
+    private final Map<String, Directory> previous = new HashMap<String, Directory>();
+    private final Map<String, Directory> current = new ConcurrentHashMap<String, Directory>();
+    private final AtomicInteger listed = new AtomicInteger();
+    private final AtomicInteger reused = new AtomicInteger();
+    private long scanStart;
+
+    public SourceScanner(List<String> includes, List<String> excludes) {
+        this.includes = compile(includes);
+        this.excludes = compile(excludes);
+        List<String> parts = new ArrayList<String>(includes);
+        parts.add("\n");
+        parts.addAll(excludes);
+        patternDigest = BuildState.digest(parts.toArray(new String[parts.size()]));
+    }
+
+    private static Glob[] compile(List<String> patterns) {
+        Glob[] globs = new Glob[patterns.size()];
+        for (int i = 0; i < globs.length; i++) {
+            globs[i] = new Glob(patterns.get(i));
+        }
+        return globs;
+    }
+
+    /**
+     * @return the files below <code>directory</code>
+     */
+    public List<String> scan(File directory) throws IOException {
+        return scan(Collections.singletonList(directory), 1).get(0);
+    }
+
+    /**
+     * Scans several directories at the same time.
+     *
+     * @param threads the maximum number of directories that are scanned at
+     *      the same time
+     * @return the files below each directory
+     */
+    public List<List<String>> scan(List<File> directories, int threads) throws IOException {
+        scanStart = System.currentTimeMillis();
+        if (threads <= 1 || directories.size() <= 1) {
+            List<List<String>> result = new ArrayList<List<String>>();
+            for (File directory : directories) {
+                result.add(walk(directory.toPath()));
+            }
+            return result;
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(threads, directories.size()));
+        try {
+            List<Future<List<String>>> futures = new ArrayList<Future<List<String>>>();
+            for (final File directory : directories) {
+                futures.add(executor.submit(new Callable<List<String>>() {
+                    public List<String> call() throws IOException {
+                        return walk(directory.toPath());
+                    }
+                }));
+            }
+            List<List<String>> result = new ArrayList<List<String>>();
+            for (Future<List<String>> future : futures) {
+                result.add(future.get());
+            }
+            return result;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while scanning", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IOException("Could not scan", e.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * @return the number of directories that were listed by the last scans
+     */
+    public int getListedDirectories() {
+        return listed.get();
+    }
+
+    /**
+     * @return the number of directories whose listing was taken from the
+     *      snapshot
+     */
+    public int getReusedDirectories() {
+        return reused.get();
+    }
+
+    private List<String> walk(final Path root) throws IOException {
+        final List<String> files = new ArrayList<String>();
+        if (!Files.isDirectory(root)) {
+            return files;
+        }
+
+        // directories that were not listed again are visited separately
+        final Deque<Path> starts = new ArrayDeque<Path>();
+        starts.add(root);
+        while (!starts.isEmpty()) {
+            final Path start = starts.poll();
+            final Deque<Directory> stack = new ArrayDeque<Directory>();
+            Files.walkFileTree(start, EnumSet.of(FileVisitOption.FOLLOW_LINKS), Integer.MAX_VALUE,
+                    new SimpleFileVisitor<Path>() {
+                        public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) {
+                            String path = relativize(root, dir);
+                            if (!dir.equals(root) && !isTraversed(path)) {
+                                return FileVisitResult.SKIP_SUBTREE;
+                            }
+                            if (!stack.isEmpty()) {
+                                stack.peek().subdirectories.add(dir.getFileName().toString());
+                            }
+
+                            long modified = attrs.lastModifiedTime().toMillis();
+                            String key = dir.toAbsolutePath().toString();
+                            Directory snapshot = previous.get(key);
+                            if (snapshot != null && snapshot.modified == modified) {
+                                reused.incrementAndGet();
+                                current.put(key, snapshot);
+                                for (String name : snapshot.files) {
+                                    files.add(resolve(path, name));
+                                }
+                                for (String name : snapshot.subdirectories) {
+                                    starts.add(dir.resolve(name));
+                                }
+                                return FileVisitResult.SKIP_SUBTREE;
+                            }
+                            listed.incrementAndGet();
+                            Directory directory = new Directory(modified);
+                            directory.path = path;
+                            stack.push(directory);
+                            return FileVisitResult.CONTINUE;
+                        }
+
+                        public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                            if (!attrs.isRegularFile() || stack.isEmpty()) {
+                                // devices, broken links and links back to a parent directory
+                                return FileVisitResult.CONTINUE;
+                            }
+                            Directory directory = stack.peek();
+                            String name = file.getFileName().toString();
+                            String path = resolve(directory.path, name);
+                            if (isIncluded(path)) {
+                                directory.files.add(name);
+                                files.add(path);
+                            }
+                            return FileVisitResult.CONTINUE;
+                        }
+
+                        public FileVisitResult visitFileFailed(Path file, IOException e) {
+                            // unreadable entries are skipped like DirectoryScanner does
+                            return FileVisitResult.CONTINUE;
+                        }
+
+                        public FileVisitResult postVisitDirectory(Path dir, IOException e) {
+                            Directory directory = stack.pop();
+                            if (e == null) {
+                                current.put(dir.toAbsolutePath().toString(), directory);
+                            }
+                            return FileVisitResult.CONTINUE;
+                        }
+                    });
+        }
+        Collections.sort(files);
+        return files;
+    }
+
+    private static String relativize(Path root, Path path) {
+        StringBuilder sb = new StringBuilder();
+        for (Path name : root.relativize(path)) {
+            if (sb.length() > 0) {
+                sb.append('/');
+            }
+            sb.append(name.toString());
+        }
+        return sb.toString();
+    }
+
+    private static String resolve(String directory, String name) {
+        return (directory.length() > 0) ? directory + "/" + name : name;
+    }
+
+    boolean isIncluded(String path) {
+        for (Glob exclude : excludes) {
+            if (exclude.matches(path)) {
+                return false;
+            }
+        }
+        for (Glob include : includes) {
+            if (include.matches(path)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return false, if no file below the directory <code>path</code> can be
+     *      included
+     */
+    boolean isTraversed(String path) {
+        for (Glob exclude : excludes) {
+            if (exclude.matchesAllBelow(path)) {
+                return false;
+            }
+        }
+        String[] segments = path.split("/");
+        for (Glob include : includes) {
+            if (include.matchesStart(segments)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Reads the snapshot of a previous scan. A snapshot of a scan with other
+     * patterns is ignored.
+     */
+    public void loadSnapshot(File file) throws IOException {
+        previous.clear();
+        if (!file.isFile()) {
+            return;
+        }
+        DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+        try {
+            if (in.readInt() != SNAPSHOT_MAGIC || !patternDigest.equals(in.readUTF())) {
+                return;
+            }
+            for (int count = in.readInt(); count > 0; count--) {
+                String key = in.readUTF();
+                Directory directory = new Directory(in.readLong());
+                for (int i = in.readInt(); i > 0; i--) {
+                    directory.files.add(in.readUTF());
+                }
+                for (int i = in.readInt(); i > 0; i--) {
+                    directory.subdirectories.add(in.readUTF());
+                }
+                previous.put(key, directory);
+            }
+        } catch (IOException e) {
+            previous.clear();
+            throw e;
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Writes the directories of the last scans to <code>file</code>.
+     */
+    public void saveSnapshot(File file) throws IOException {
+        List<Map.Entry<String, Directory>> entries = new ArrayList<Map.Entry<String, Directory>>();
+        for (Map.Entry<String, Directory> entry : current.entrySet()) {
+            if (entry.getValue().modified < scanStart - TIMESTAMP_RESOLUTION) {
+                entries.add(entry);
+            }
+        }
+
+        file.getParentFile().mkdirs();
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+        try {
+            out.writeInt(SNAPSHOT_MAGIC);
+            out.writeUTF(patternDigest);
+            out.writeInt(entries.size());
+            for (Map.Entry<String, Directory> entry : entries) {
+                Directory directory = entry.getValue();
+                out.writeUTF(entry.getKey());
+                out.writeLong(directory.modified);
+                out.writeInt(directory.files.size());
+                for (String name : directory.files) {
+                    out.writeUTF(name);
+                }
+                out.writeInt(directory.subdirectories.size());
+                for (String name : directory.subdirectories) {
+                    out.writeUTF(name);
+                }
+            }
+        } finally {
+            out.close();
+        }
+    }
+
+    /**
+     * The listing of a directory: its matching files and the subdirectories
+     * that were entered.
+     */
+    private static class Directory {
+
+        private final long modified;
+        private final List<String> files = new ArrayList<String>();
+        private final List<String> subdirectories = new ArrayList<String>();
+        private String path;
+
+        Directory(long modified) {
+            this.modified = modified;
+        }
+
+    }
+
+    /**
+     * A compiled include or exclude pattern.
+     */
+    static class Glob {
+
+        private static final String ANY = "**";
+
+        private final String[] segments;
+        private final Pattern[] segmentPatterns;
+        private final Pattern pattern;
+        private final Pattern allBelow;
+
+        Glob(String glob) {
+            String normalized = glob.replace('\\', '/');
+            if (normalized.endsWith("/")) {
+                normalized += ANY;
+            }
+            segments = normalized.split("/", -1);
+            segmentPatterns = new Pattern[segments.length];
+            for (int i = 0; i < segments.length; i++) {
+                if (!ANY.equals(segments[i])) {
+                    segmentPatterns[i] = Pattern.compile(toRegex(segments[i]));
+                }
+            }
+            pattern = Pattern.compile(toRegex(segments, segments.length));
+            // "dir/**" excludes everything below the directories that match "dir"
+            allBelow = (segments.length > 1 && ANY.equals(segments[segments.length - 1]))
+                    ? Pattern.compile(toRegex(segments, segments.length - 1)) : null;
+        }
+
+        boolean matches(String path) {
+            return pattern.matcher(path).matches();
+        }
+
+        boolean matchesAllBelow(String directory) {
+            return allBelow != null && allBelow.matcher(directory).matches();
+        }
+
+        /**
+         * @return true, if a path below the directory with
+         *      <code>directory</code> segments can match
+         */
+        boolean matchesStart(String[] directory) {
+            int i = 0;
+            for (String segment : directory) {
+                if (i >= segments.length) {
+                    return false;
+                }
+                if (ANY.equals(segments[i])) {
+                    return true;
+                }
+                if (!segmentPatterns[i].matcher(segment).matches()) {
+                    return false;
+                }
+                i++;
+            }
+            return i < segments.length;
+        }
+
+        private static String toRegex(String[] segments, int count) {
+            StringBuilder sb = new StringBuilder();
+            boolean separator = false;
+            for (int i = 0; i < count; i++) {
+                if (ANY.equals(segments[i])) {
+                    if (i == count - 1) {
+                        sb.append(separator ? "(?:/.*)?" : ".*");
+                    } else {
+                        // any number of segments, the same as (?:[^/]*/)* without backtracking
+                        sb.append(separator ? "/(?:.*/)?" : "(?:.*/)?");
+                    }
+                    separator = false;
+                } else {
+                    if (separator) {
+                        sb.append('/');
+                    }
+                    sb.append(toRegex(segments[i]));
+                    separator = true;
+                }
+            }
+            return sb.toString();
+        }
+
+        private static String toRegex(String segment) {
+            StringBuilder sb = new StringBuilder();
+            for (int i = 0; i < segment.length(); i++) {
+                char c = segment.charAt(i);
+                if (c == '*') {
+                    sb.append("[^/]*");
+                } else if (c == '?') {
+                    sb.append("[^/]");
+                } else if (Character.isLetterOrDigit(c)) {
+                    sb.append(c);
+                } else {
+                    sb.append('\\').append(c);
+                }
+            }
+            return sb.toString();
+        }
+
+    }
+
+}
@@ -0,0 +1,264 @@
+package org.xnap.commons.maven.gettext;
+
+/*
+ * Copyright 2001-2005 The Apache Software Foundation.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.logging.Log;
+import org.codehaus.plexus.util.cli.CommandLineCallable;
+import org.codehaus.plexus.util.cli.CommandLineException;
+import org.codehaus.plexus.util.cli.CommandLineUtils;
+import org.codehaus.plexus.util.cli.Commandline;
+import org.codehaus.plexus.util.cli.StreamConsumer;
+
+/**
+ * Runs independent tasks, usually one per po file, on a bounded thread pool.
+ * The output of each task is buffered and written to the log in the order the
+ * tasks were submitted. Failures are collected and reported by a single
+ * exception once all tasks have finished, unless fail fast is enabled, in
+ * which case tasks that have not started yet are skipped after the first
+ * failure.
+ */
+public class TaskRunner {
+
+    /**
+     * A unit of work.
+     */
+    public interface Task {
+
+        /**
+         * @param log the log to write all output to
+         * @throws Exception if the task failed
+         */
+        void execute(Log log) throws Exception;
+
+    }
+
+    /**
+     * The number of stderr lines that are included in the message of a
+     * failed command.
+     */
+    private static final int MAX_ERROR_LINES = 5;
+
+    private final Log log;
+    private final int threads;
+    private boolean failFast;
+    private final List<String> names = new ArrayList<String>();
+    private final List<Task> tasks = new ArrayList<Task>();
+
+    /**
+     * @param log the log to write the output of all tasks to
+     * @param threads the maximum number of tasks that run at the same time,
+     *      <code>0</code> uses one thread per available processor
+     */
+    public TaskRunner(Log log, int threads) {
+        this.log = log;
+        this.threads = (threads > 0) ? threads : Runtime.getRuntime().availableProcessors();
+    }
+
+    /**
+     * @param failFast if true, tasks that have not been started are skipped
+     *      once a task has failed
+     */
+    public void setFailFast(boolean failFast) {
+        this.failFast = failFast;
+    }
+
+    public void submit(String name, Task task) {
+        names.add(name);
+        tasks.add(task);
+    }
+
+    /**
+     * Runs all submitted tasks and waits for them to finish.
+     *
+     * @param description describes the work for the failure summary, e.g.
+     *      "merge po files"
+     * @throws MojoExecutionException if at least one task failed
+     */
+    public void run(String description) throws MojoExecutionException {
+        if (tasks.isEmpty()) {
+            return;
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(threads, tasks.size()));
+        final AtomicBoolean failed = new AtomicBoolean();
+        List<String> failures = new ArrayList<String>();
+        int skipped = 0;
+        try {
+            List<BufferedLog> logs = new ArrayList<BufferedLog>();
+            List<Future<?>> futures = new ArrayList<Future<?>>();
+            for (final Task task : tasks) {
+                final BufferedLog buffer = new BufferedLog(log);
+                logs.add(buffer);
+                futures.add(executor.submit(new Callable<Void>() {
+                    public Void call() throws Exception {
+                        if (failFast && failed.get()) {
+                            throw new SkippedException();
+                        }
+                        try {
+                            task.execute(buffer);
+                        } catch (Exception e) {
+                            failed.set(true);
+                            throw e;
+                        }
+                        return null;
+                    }
+                }));
+            }
+
+            for (int i = 0; i < futures.size(); i++) {
+                try {
+                    futures.get(i).get();
+                } catch (ExecutionException e) {
+                    Throwable cause = e.getCause();
+                    if (cause instanceof SkippedException) {
+                        skipped++;
+                        continue;
+                    }
+                    logs.get(i).error("Could not process " + names.get(i) + ".", cause);
+                    failures.add(names.get(i) + ": " + cause.getMessage());
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new MojoExecutionException("Interrupted while waiting for " + names.get(i) + ".", e);
+                } finally {
+                    logs.get(i).flush();
+                }
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        if (!failures.isEmpty()) {
+            StringBuilder sb = new StringBuilder();
+            sb.append("Could not ").append(description).append(", ").append(failures.size())
+                    .append(" of ").append(tasks.size()).append(" failed");
+            if (skipped > 0) {
+                sb.append(", ").append(skipped).append(" skipped");
+            }
+            sb.append(":");
+            for (String failure : failures) {
+                sb.append("\n  ").append(failure);
+            }
+            throw new MojoExecutionException(sb.toString());
+        }
+    }
+
+    /**
+     * Executes a command line, writing stdout to the info and stderr to the
+     * warn level of <code>log</code>.
+     *
+     * @throws CommandLineException if the command could not be executed or
+     *      returned a non-zero exit code, the message contains the exit code
+     *      and the last lines written to stderr
+     */
+    public static void execute(Commandline cl, Log log) throws CommandLineException {
+        execute(cl, log, null);
+    }
+
+    /**
+     * Executes a command line like {@link #execute(Commandline, Log)} and
+     * records the time it took to start the process and the time until it
+     * exited in <code>metrics</code>.
+     *
+     * @param metrics the metrics to record the process in, or null
+     */
+    public static void execute(Commandline cl, Log log, BuildMetrics metrics) throws CommandLineException {
+        log.debug("Executing: " + cl.toString());
+        StreamConsumer out = new LoggerStreamConsumer(log, LoggerStreamConsumer.INFO);
+        ErrorStreamConsumer err = new ErrorStreamConsumer(log);
+        int ret = executeCommandLine(cl, out, err, metrics);
+        if (ret != 0) {
+            StringBuilder sb = new StringBuilder();
+            sb.append(cl.getExecutable()).append(" exited with code ").append(ret);
+            for (String line : err.getLastLines()) {
+                sb.append("\n    ").append(line);
+            }
+            throw new CommandLineException(sb.toString());
+        }
+    }
+
+    /**
+     * Executes a command line like
+     * {@link CommandLineUtils#executeCommandLine(Commandline, StreamConsumer, StreamConsumer)}.
+     *
+     * @param metrics the metrics to record the process in, or null
+     * @return the exit code
+     */
+    public static int executeCommandLine(Commandline cl, StreamConsumer out, StreamConsumer err,
+            BuildMetrics metrics) throws CommandLineException {
+        long start = System.nanoTime();
+        long launched = -1;
+        int ret = -1;
+        try {
+            CommandLineCallable process = CommandLineUtils.executeCommandLineAsCallable(cl, null, out, err, 0);
+            launched = System.nanoTime() - start;
+            ret = process.call();
+            return ret;
+        } finally {
+            if (metrics != null) {
+                long total = System.nanoTime() - start;
+                metrics.addProcess(new File(cl.getLiteralExecutable()).getName(), (launched >= 0) ? launched : total, total, ret);
+            }
+        }
+    }
+
+    /**
+     * Logs stderr and remembers the last lines for the failure summary.
+     */
+    private static class ErrorStreamConsumer extends LoggerStreamConsumer {
+
+        private final LinkedList<String> lastLines = new LinkedList<String>();
+
+        public ErrorStreamConsumer(Log logger) {
+            super(logger, LoggerStreamConsumer.WARN);
+        }
+
+        public synchronized void consumeLine(String line) {
+            super.consumeLine(line);
+            lastLines.add(line);
+            if (lastLines.size() > MAX_ERROR_LINES) {
+                lastLines.removeFirst();
+            }
+        }
+
+        public synchronized List<String> getLastLines() {
+            return new ArrayList<String>(lastLines);
+        }
+
+    }
+
+    /**
+     * Thrown in place of running a task after another task has failed.
+     */
+    private static class SkippedException extends Exception {
+
+        private static final long serialVersionUID = 1L;
+
+    }
+
+}
@@ -0,0 +1,419 @@
+package org.xnap.commons.maven.gettext;
+
+/*
+ * Copyright 2001-2005 The Apache Software Foundation.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Maps normalized msgids, prefixed by their context like
+ * {@link PoEntry#getKey()}, to their translations in one locale, kept on disk
+ * between builds. The messages are stored in a hash table that is mapped
+ * into memory, so opening the memory reads only a few bytes and a lookup
+ * touches only the pages of its slot and record, even for millions of
+ * messages.
+ * <p>
+ * Changes are appended to a log file next to the table and read into memory
+ * when the memory is opened. When the log grows beyond a quarter of the
+ * table, both are compacted into a new table.
+ * <p>
+ * The memory may be shared by the builds of several projects, e.g. in
+ * <code>~/.m2</code>. An instance holds a lock on a file next to the table
+ * from {@link #open(File)} until {@link #close()}, so other processes wait
+ * while it is read, saved or compacted. Instances are not thread-safe and
+ * the lock is held for the whole JVM: threads must not open the same file
+ * at the same time.
+ */
+public class TranslationMemory {
+
+    private static final int MAGIC = 0x47544d31;
+    private static final int HEADER_SIZE = 12;
+    private static final int SLOT_SIZE = 8;
+    private static final String LOG_SUFFIX = ".log";
+    private static final String LOCK_SUFFIX = ".lock";
+    private static final int MIN_COMPACT_SIZE = 1024;
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private final File file;
+    private final FileChannel lockChannel;
+    private final ByteBuffer table;
+    private final int tableCount;
+    private final int slotMask;
+    private final Map<String, String[]> log = new LinkedHashMap<String, String[]>();
+    private final Map<String, String[]> pending = new LinkedHashMap<String, String[]>();
+    private boolean logTruncated;
+
+    private TranslationMemory(File file, FileChannel lockChannel, ByteBuffer table) throws IOException {
+        this.file = file;
+        this.lockChannel = lockChannel;
+        this.table = table;
+        if (table != null) {
+            if (table.getInt(0) != MAGIC) {
+                throw new IOException(file + " is not a translation memory");
+            }
+            tableCount = table.getInt(4);
+            slotMask = table.getInt(8) - 1;
+        } else {
+            tableCount = 0;
+            slotMask = 0;
+        }
+        readLog();
+    }
+
+    /**
+     * Opens the memory stored in <code>file</code>, an empty one if the file
+     * does not exist. Waits until no other process has the memory open.
+     */
+    public static TranslationMemory open(File file) throws IOException {
+        file.getAbsoluteFile().getParentFile().mkdirs();
+        FileChannel lockChannel = new RandomAccessFile(file.getPath() + LOCK_SUFFIX, "rw").getChannel();
+        boolean opened = false;
+        try {
+            lockChannel.lock();
+            TranslationMemory memory = new TranslationMemory(file, lockChannel, map(file));
+            opened = true;
+            return memory;
+        } finally {
+            if (!opened) {
+                lockChannel.close();
+            }
+        }
+    }
+
+    /**
+     * @return the content of <code>file</code>, or null if it does not exist
+     */
+    private static ByteBuffer map(File file) throws IOException {
+        if (!file.isFile()) {
+            return null;
+        }
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            // the mapping stays valid after the channel is closed
+            return raf.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, raf.length());
+        } finally {
+            raf.close();
+        }
+    }
+
+    /**
+     * Releases the lock, changes that were not saved are discarded.
+     */
+    public void close() throws IOException {
+        lockChannel.close();
+    }
+
+    /**
+     * @return <code>msgid</code> with leading and trailing whitespace removed
+     *      and other whitespace collapsed to single spaces, so a message that
+     *      was only reformatted in the source code is still found
+     */
+    public static String normalize(String msgid) {
+        StringBuilder sb = new StringBuilder(msgid.length());
+        boolean space = false;
+        for (int i = 0; i < msgid.length(); i++) {
+            char c = msgid.charAt(i);
+            if (Character.isWhitespace(c)) {
+                space = sb.length() > 0;
+            } else {
+                if (space) {
+                    sb.append(' ');
+                    space = false;
+                }
+                sb.append(c);
+            }
+        }
+        return sb.toString();
+    }
+
+    /**
+     * @return the translation of <code>msgid</code>, one element per plural
+     *      form, or null if it is not known
+     */
+    public String[] get(String msgid) {
+        String key = normalize(msgid);
+        String[] forms = pending.get(key);
+        if (forms == null) {
+            forms = log.get(key);
+        }
+        return (forms != null) ? forms : lookup(key);
+    }
+
+    /**
+     * Records the translation of <code>msgid</code>, it is written by
+     * {@link #save()} if it differs from the stored one.
+     */
+    public void put(String msgid, List<String> msgstr) {
+        String key = normalize(msgid);
+        String[] forms = msgstr.toArray(new String[msgstr.size()]);
+        if (!Arrays.equals(forms, get(key))) {
+            pending.put(key, forms);
+        }
+    }
+
+    /**
+     * @return the number of translations that were recorded but not saved
+     */
+    public int getPendingCount() {
+        return pending.size();
+    }
+
+    /**
+     * Appends the recorded translations to the log and compacts the memory
+     * if the log has become large.
+     */
+    public void save() throws IOException {
+        if (pending.isEmpty()) {
+            return;
+        }
+        // records must not be appended to a partial one
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                new FileOutputStream(getLogFile(), !logTruncated)));
+        try {
+            if (logTruncated) {
+                for (Map.Entry<String, String[]> entry : log.entrySet()) {
+                    writeRecord(out, entry.getKey(), entry.getValue());
+                }
+                logTruncated = false;
+            }
+            for (Map.Entry<String, String[]> entry : pending.entrySet()) {
+                writeRecord(out, entry.getKey(), entry.getValue());
+            }
+        } finally {
+            out.close();
+        }
+        log.putAll(pending);
+        pending.clear();
+
+        if (log.size() >= MIN_COMPACT_SIZE && log.size() > tableCount / 4) {
+            compact();
+        }
+    }
+
+    private File getLogFile() {
+        return new File(file.getPath() + LOG_SUFFIX);
+    }
+
+    private void readLog() throws IOException {
+        File logFile = getLogFile();
+        if (!logFile.isFile()) {
+            return;
+        }
+        long remaining = logFile.length();
+        DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(logFile)));
+        try {
+            while (remaining > 0) {
+                String key;
+                String[] forms;
+                try {
+                    key = readString(in, remaining);
+                    remaining -= 4 + key.getBytes(UTF_8).length;
+                    int count = in.readInt();
+                    remaining -= 4;
+                    if (count < 0 || count > remaining / 4) {
+                        throw new EOFException();
+                    }
+                    forms = new String[count];
+                    for (int i = 0; i < forms.length; i++) {
+                        forms[i] = readString(in, remaining);
+                        remaining -= 4 + forms[i].getBytes(UTF_8).length;
+                    }
+                } catch (EOFException e) {
+                    // a record cut off by an interrupted build
+                    logTruncated = true;
+                    break;
+                }
+                log.put(key, forms);
+            }
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Writes the table and the log into a new table and removes the log.
+     * The mapping of the old table stays valid until this instance is
+     * discarded.
+     */
+    private void compact() throws IOException {
+        Map<String, String[]> all = new LinkedHashMap<String, String[]>();
+        if (table != null) {
+            int slots = slotMask + 1;
+            for (int slot = 0; slot < slots; slot++) {
+                int offset = table.getInt(HEADER_SIZE + slot * SLOT_SIZE + 4);
+                if (offset != 0) {
+                    ByteBuffer record = table.duplicate();
+                    record.position(offset);
+                    String key = getString(record);
+                    all.put(key, getForms(record));
+                }
+            }
+        }
+        all.putAll(log);
+
+        int slots = Integer.highestOneBit(Math.max(all.size() * 2, 16) - 1) << 1;
+        byte[][] records = new byte[all.size()][];
+        int[] hashes = new int[all.size()];
+        long size = HEADER_SIZE + (long) slots * SLOT_SIZE;
+        int i = 0;
+        for (Map.Entry<String, String[]> entry : all.entrySet()) {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(bytes);
+            writeRecord(out, entry.getKey(), entry.getValue());
+            out.close();
+            records[i] = bytes.toByteArray();
+            hashes[i] = entry.getKey().hashCode();
+            size += records[i].length;
+            i++;
+        }
+        if (size > Integer.MAX_VALUE) {
+            throw new IOException("Translation memory " + file + " exceeds 2 GB");
+        }
+
+        int[] offsets = new int[slots];
+        int[] slotHashes = new int[slots];
+        int offset = HEADER_SIZE + slots * SLOT_SIZE;
+        for (i = 0; i < records.length; i++) {
+            int slot = hashes[i] & (slots - 1);
+            while (offsets[slot] != 0) {
+                slot = (slot + 1) & (slots - 1);
+            }
+            offsets[slot] = offset;
+            slotHashes[slot] = hashes[i];
+            offset += records[i].length;
+        }
+
+        File temp = new File(file.getPath() + ".tmp");
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp)));
+        try {
+            out.writeInt(MAGIC);
+            out.writeInt(records.length);
+            out.writeInt(slots);
+            for (int slot = 0; slot < slots; slot++) {
+                out.writeInt(slotHashes[slot]);
+                out.writeInt(offsets[slot]);
+            }
+            for (byte[] record : records) {
+                out.write(record);
+            }
+        } finally {
+            out.close();
+        }
+        if (!temp.renameTo(file) && !(file.delete() && temp.renameTo(file))) {
+            // e.g. the table is still mapped on Windows, the log keeps the changes
+            temp.delete();
+            return;
+        }
+        if (!getLogFile().delete()) {
+            throw new IOException("Could not delete " + getLogFile());
+        }
+    }
+
+    /**
+     * @return the forms stored in the table for the normalized
+     *      <code>key</code>
+     */
+    private String[] lookup(String key) {
+        if (table == null || tableCount == 0) {
+            return null;
+        }
+        int hash = key.hashCode();
+        byte[] keyBytes = key.getBytes(UTF_8);
+        int slot = hash & slotMask;
+        while (true) {
+            int position = HEADER_SIZE + slot * SLOT_SIZE;
+            int offset = table.getInt(position + 4);
+            if (offset == 0) {
+                return null;
+            }
+            if (table.getInt(position) == hash && matches(offset, keyBytes)) {
+                ByteBuffer record = table.duplicate();
+                record.position(offset + 4 + keyBytes.length);
+                return getForms(record);
+            }
+            slot = (slot + 1) & slotMask;
+        }
+    }
+
+    private boolean matches(int offset, byte[] key) {
+        if (table.getInt(offset) != key.length) {
+            return false;
+        }
+        for (int i = 0; i < key.length; i++) {
+            if (table.get(offset + 4 + i) != key[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static String[] getForms(ByteBuffer record) {
+        String[] forms = new String[record.getInt()];
+        for (int i = 0; i < forms.length; i++) {
+            forms[i] = getString(record);
+        }
+        return forms;
+    }
+
+    private static String getString(ByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.getInt()];
+        buffer.get(bytes);
+        return new String(bytes, UTF_8);
+    }
+
+    private static String readString(DataInputStream in, long remaining) throws IOException {
+        int length = in.readInt();
+        if (length < 0 || length > remaining - 4) {
+            throw new EOFException();
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, UTF_8);
+    }
+
+    private static void writeRecord(DataOutputStream out, String key, String[] forms) throws IOException {
+        writeString(out, key);
+        out.writeInt(forms.length);
+        for (String form : forms) {
+            writeString(out, form);
+        }
+    }
+
+    private static void writeString(DataOutputStream out, String s) throws IOException {
+        byte[] bytes = s.getBytes(UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+}
@@ -0,0 +1,403 @@
+package org.xnap.commons.maven.gettext;
+
+/*
+ * Copyright 2001-2005 The Apache Software Foundation.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Lock;
+
+import org.apache.maven.model.FileSet;
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugins.annotations.Mojo;
+import org.apache.maven.plugins.annotations.Parameter;
+import org.codehaus.plexus.util.DirectoryScanner;
+
+/**
+ * Compiles the po files like the gettext:dist goal and keeps running: each
+ * time a po file changes, only the bundle of that po file is compiled
+ * again. When a source file changes, the keys file is extracted again like
+ * the gettext:gettext goal does. Changes that follow each other within
+ * <code>watchDebounce</code> milliseconds are handled together.
+ * <p>
+ * Stop the goal with Ctrl-C.
+ */
+@Mojo(name = "watch", requiresDirectInvocation = true, threadSafe = true)
+public class WatchMojo extends DistMojo {
+
+    /**
+     * The time in milliseconds without further changes after which changed
+     * files are processed.
+     */
+    @Parameter(property = "gettext.watchDebounce", defaultValue = "200")
+    protected long watchDebounce;
+
+    /**
+     * If true, the keys file is extracted again when a source file changes.
+     */
+    @Parameter(property = "gettext.watchExtract", defaultValue = "true")
+    protected boolean watchExtract;
+
+    /**
+     * If true, compiled bundles that are resources, all output formats but
+     * "class", are also copied to the classes directory, so an application
+     * that runs from it sees them without another build.
+     */
+    @Parameter(property = "gettext.watchCopy", defaultValue = "true")
+    protected boolean watchCopy;
+
+    @Parameter(defaultValue = "${project.build.outputDirectory}", readonly = true)
+    protected File classesDirectory;
+
+    /**
+     * See the gettext:gettext goal.
+     */
+    @Parameter(defaultValue = "utf-8", required = true)
+    protected String encoding;
+
+    /**
+     * See the gettext:gettext goal.
+     */
+    @Parameter(defaultValue = "-k_ -k_n1,2", required = true)
+    protected String keywords;
+
+    /**
+     * See the gettext:gettext goal.
+     */
+    @Parameter(defaultValue = "xgettext", required = true)
+    protected String xgettextCmd;
+
+    /**
+     * See the gettext:gettext goal.
+     */
+    @Parameter
+    protected FileSet extraSourceFiles;
+
+    /**
+     * See the gettext:gettext goal.
+     */
+    @Parameter(property = "gettext.incremental", defaultValue = "false")
+    protected boolean incremental;
+
+    /**
+     * See the gettext:gettext goal.
+     */
+    @Parameter(property = "gettext.extractor", defaultValue = "xgettext", required = true)
+    protected String extractor;
+
+    /**
+     * See the gettext:gettext goal.
+     */
+    @Parameter(property = "gettext.shards", defaultValue = "1")
+    protected int shards;
+
+    /**
+     * See the gettext:gettext goal.
+     */
+    @Parameter(property = "gettext.scanSnapshot", defaultValue = "false")
+    protected boolean scanSnapshot;
+
+    private final Map<WatchKey, Path> directories = new HashMap<WatchKey, Path>();
+
+    public void execute() throws MojoExecutionException {
+        // compile everything that changed before the goal was started
+        super.execute();
+        BundleCompiler cf = createCompiler();
+
+        SourceScanner sources = new SourceScanner(Collections.singletonList("**/*.java"),
+                Collections.<String>emptyList());
+        SourceScanner extras = null;
+        File extraDirectory = null;
+        if (extraSourceFiles != null && extraSourceFiles.getDirectory() != null) {
+            List<String> excludes = new ArrayList<String>(extraSourceFiles.getExcludes());
+            excludes.addAll(Arrays.asList(DirectoryScanner.DEFAULTEXCLUDES));
+            extras = new SourceScanner(extraSourceFiles.getIncludes(), excludes);
+            extraDirectory = new File(extraSourceFiles.getDirectory());
+        }
+
+        WatchService watcher;
+        try {
+            watcher = FileSystems.getDefault().newWatchService();
+        } catch (IOException e) {
+            throw new MojoExecutionException("Could not watch files", e);
+        }
+        try {
+            register(watcher, poDirectory.toPath(), null);
+            if (watchExtract) {
+                register(watcher, sourceDirectory.toPath(), sources);
+                if (extras != null) {
+                    register(watcher, extraDirectory.toPath(), extras);
+                }
+            }
+            getLog().info("Watching '" + poDirectory.getAbsolutePath() + "' for changes, press Ctrl-C to stop.");
+
+            while (true) {
+                Set<Path> changed = new LinkedHashSet<Path>();
+                boolean overflow = waitForChanges(watcher, changed);
+                long start = System.currentTimeMillis();
+
+                Set<String> poFiles = new LinkedHashSet<String>();
+                boolean sourcesChanged = overflow;
+                for (Path path : changed) {
+                    String poFile = getRelativePath(poDirectory, path);
+                    String source = getRelativePath(sourceDirectory, path);
+                    String extra = (extras != null) ? getRelativePath(extraDirectory, path) : null;
+                    if (poFile != null && poFile.endsWith(".po")) {
+                        poFiles.add(poFile);
+                    } else if (poFile == null && (source != null && sources.isIncluded(source)
+                            || extra != null && extras.isIncluded(extra))) {
+                        sourcesChanged = true;
+                    }
+                }
+
+                if (sourcesChanged && watchExtract) {
+                    extract();
+                }
+                if (overflow) {
+                    // events were lost, compile all po files that changed
+                    poFiles.addAll(Arrays.asList(scanPoFiles()));
+                }
+                if (!poFiles.isEmpty()) {
+                    rebuild(cf, poFiles, overflow, start);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ClosedWatchServiceException e) {
+            // stopped
+        } catch (IOException e) {
+            throw new MojoExecutionException("Could not watch files", e);
+        } finally {
+            try {
+                watcher.close();
+            } catch (IOException e) {
+                getLog().debug("Could not close watch service", e);
+            }
+        }
+    }
+
+    /**
+     * Waits for a change and collects the changes that follow within the
+     * debounce time.
+     *
+     * @return true, if events were lost
+     */
+    private boolean waitForChanges(WatchService watcher, Set<Path> changed)
+            throws InterruptedException, IOException {
+        boolean overflow = false;
+        WatchKey key = watcher.take();
+        while (key != null) {
+            Path directory = directories.get(key);
+            for (WatchEvent<?> event : key.pollEvents()) {
+                if (event.kind() == StandardWatchEventKinds.OVERFLOW || directory == null) {
+                    overflow = true;
+                    continue;
+                }
+                Path path = directory.resolve((Path) event.context());
+                if (event.kind() == StandardWatchEventKinds.ENTRY_CREATE && Files.isDirectory(path)) {
+                    // files created before the directory was watched have no events
+                    register(watcher, path, null);
+                    addFiles(path, changed);
+                }
+                changed.add(path);
+            }
+            if (!key.reset()) {
+                directories.remove(key);
+            }
+            key = watcher.poll(watchDebounce, TimeUnit.MILLISECONDS);
+        }
+        return overflow;
+    }
+
+    /**
+     * Watches <code>root</code> and its subdirectories, except those that
+     * cannot contain files included by <code>scanner</code> and the
+     * directories the plugin writes to.
+     */
+    private void register(final WatchService watcher, final Path root, final SourceScanner scanner)
+            throws IOException {
+        if (!Files.isDirectory(root)) {
+            return;
+        }
+        final Set<Path> ignored = new HashSet<Path>();
+        for (File directory : Arrays.asList(outputDirectory, workDirectory, metricsDirectory, classesDirectory)) {
+            if (directory != null) {
+                ignored.add(directory.toPath().toAbsolutePath());
+            }
+        }
+        Files.walkFileTree(root, new SimpleFileVisitor<Path>() {
+            public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) throws IOException {
+                String path = getRelativePath(root.toFile(), dir);
+                if (!dir.equals(root) && (ignored.contains(dir.toAbsolutePath())
+                        || scanner != null && !scanner.isTraversed(path))) {
+                    return FileVisitResult.SKIP_SUBTREE;
+                }
+                WatchKey key = dir.register(watcher, StandardWatchEventKinds.ENTRY_CREATE,
+                        StandardWatchEventKinds.ENTRY_DELETE, StandardWatchEventKinds.ENTRY_MODIFY);
+                directories.put(key, dir);
+                return FileVisitResult.CONTINUE;
+            }
+
+            public FileVisitResult visitFileFailed(Path file, IOException e) {
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
+    private static void addFiles(Path directory, final Set<Path> changed) throws IOException {
+        Files.walkFileTree(directory, new SimpleFileVisitor<Path>() {
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                changed.add(file);
+                return FileVisitResult.CONTINUE;
+            }
+
+            public FileVisitResult visitFileFailed(Path file, IOException e) {
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
+    /**
+     * @return the path of <code>path</code> relative to
+     *      <code>directory</code> with <code>/</code> as separator, or null
+     *      if it is not below <code>directory</code>
+     */
+    private static String getRelativePath(File directory, Path path) {
+        Path base = directory.toPath().toAbsolutePath();
+        Path absolute = path.toAbsolutePath();
+        if (!absolute.startsWith(base)) {
+            return null;
+        }
+        StringBuilder sb = new StringBuilder();
+        for (Path name : base.relativize(absolute)) {
+            if (sb.length() > 0) {
+                sb.append('/');
+            }
+            sb.append(name.toString());
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Extracts the keys file with the configuration of this goal.
+     */
+    private void extract() {
+        GettextMojo mojo = new GettextMojo();
+        configure(mojo);
+        // a new build for the registry, so an aggregated extraction runs again
+        mojo.buildStartTime = new Date();
+        mojo.encoding = encoding;
+        mojo.keywords = keywords;
+        mojo.xgettextCmd = xgettextCmd;
+        mojo.extraSourceFiles = extraSourceFiles;
+        mojo.incremental = incremental;
+        mojo.extractor = extractor;
+        mojo.shards = shards;
+        mojo.scanSnapshot = scanSnapshot;
+        long start = System.currentTimeMillis();
+        try {
+            mojo.execute();
+            getLog().info("Extracted messages in " + (System.currentTimeMillis() - start) + " ms.");
+        } catch (MojoExecutionException e) {
+            // keep watching, the next change may fix it
+            getLog().error(e.getMessage());
+            getLog().debug(e);
+        }
+    }
+
+    /**
+     * Compiles the changed po files, deletes the bundles of removed ones and
+     * copies the results to the classes directory.
+     */
+    private void rebuild(BundleCompiler cf, Set<String> poFiles, boolean complete, long start) {
+        BuildMetrics metrics = createMetrics("watch");
+        Lock lock = CatalogRegistry.getLock(poDirectory).readLock();
+        lock.lock();
+        try {
+            cf.compile(poFiles.toArray(new String[poFiles.size()]), complete, metrics);
+            if (watchCopy && !"class".equals(outputFormat)) {
+                copyToClasses(start);
+                for (String poFile : poFiles) {
+                    File input = new File(poDirectory, poFile);
+                    if (!input.exists() && classesDirectory != null) {
+                        Path output = outputDirectory.toPath().relativize(cf.getOutputFile(input).toPath());
+                        new File(classesDirectory, output.toString()).delete();
+                    }
+                }
+            }
+            getLog().info("Compiled " + poFiles + " in " + (System.currentTimeMillis() - start) + " ms.");
+        } catch (MojoExecutionException e) {
+            metrics.setFailed(true);
+            getLog().error(e.getMessage());
+            getLog().debug(e);
+        } finally {
+            lock.unlock();
+            writeMetrics("watch", metrics);
+        }
+    }
+
+    /**
+     * Copies the files of the output directory that were written since
+     * <code>start</code> to the classes directory.
+     */
+    private void copyToClasses(final long start) throws MojoExecutionException {
+        if (classesDirectory == null) {
+            return;
+        }
+        final Path source = outputDirectory.toPath();
+        final Path target = classesDirectory.toPath();
+        try {
+            Files.walkFileTree(source, new SimpleFileVisitor<Path>() {
+                public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+                    // with a margin for file systems with coarse timestamps
+                    if (attrs.lastModifiedTime().toMillis() >= start - 1000
+                            && !file.getFileName().toString().endsWith(".java")) {
+                        Path copy = target.resolve(source.relativize(file).toString());
+                        Files.createDirectories(copy.getParent());
+                        Files.copy(file, copy, StandardCopyOption.REPLACE_EXISTING);
+                    }
+                    return FileVisitResult.CONTINUE;
+                }
+            });
+        } catch (IOException e) {
+            throw new MojoExecutionException("Could not copy bundles to " + classesDirectory, e);
+        }
+    }
+
+}
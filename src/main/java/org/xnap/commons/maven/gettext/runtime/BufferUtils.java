@@ -0,0 +1,150 @@
+package org.xnap.commons.maven.gettext.runtime;
+
+/*
+ * Copyright 2001-2005 The Apache Software Foundation.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Loads catalogs into byte buffers and compares strings with their UTF-8
+ * encoding in a buffer without encoding them first.
+ */
+final class BufferUtils {
+
+    private BufferUtils() {
+    }
+
+    /**
+     * @return the resource <code>name</code> of <code>loader</code>, mapped
+     *      into memory if it is a plain file and read in one piece otherwise
+     */
+    static ByteBuffer load(ClassLoader loader, String name) throws IOException {
+        URL url = (loader != null) ? loader.getResource(name) : ClassLoader.getSystemResource(name);
+        if (url == null) {
+            throw new IOException(name + " not found");
+        }
+        if ("file".equals(url.getProtocol())) {
+            try {
+                return map(new File(url.toURI()));
+            } catch (URISyntaxException e) {
+                // fall back to reading the stream
+            }
+        }
+        InputStream in = url.openStream();
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[8192];
+            int n;
+            while ((n = in.read(buffer)) != -1) {
+                out.write(buffer, 0, n);
+            }
+            return ByteBuffer.wrap(out.toByteArray());
+        } finally {
+            in.close();
+        }
+    }
+
+    static ByteBuffer map(File file) throws IOException {
+        RandomAccessFile in = new RandomAccessFile(file, "r");
+        try {
+            return in.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, in.length());
+        } finally {
+            // the mapping stays valid
+            in.close();
+        }
+    }
+
+    /**
+     * @return the position after the UTF-8 encoding of <code>s</code>, if
+     *      the bytes at <code>position</code> up to <code>end</code> start
+     *      with it, -1 otherwise
+     */
+    static int match(ByteBuffer buffer, int position, int end, String s) {
+        for (int i = 0; i < s.length();) {
+            int codePoint = codePointAt(s, i);
+            i += Character.charCount(codePoint);
+            int byteCount = utf8Length(codePoint);
+            if (position + byteCount > end) {
+                return -1;
+            }
+            for (int k = 0; k < byteCount; k++) {
+                if ((buffer.get(position++) & 0xff) != utf8Byte(codePoint, byteCount, k)) {
+                    return -1;
+                }
+            }
+        }
+        return position;
+    }
+
+    static String decode(ByteBuffer buffer, int position, int length, String charset) {
+        try {
+            if (buffer.hasArray()) {
+                return new String(buffer.array(), buffer.arrayOffset() + position, length, charset);
+            }
+            byte[] bytes = new byte[length];
+            ByteBuffer source = buffer.duplicate();
+            source.position(position);
+            source.get(bytes);
+            return new String(bytes, charset);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * @return the code point at <code>i</code>, or '?' for an unpaired
+     *      surrogate like {@link String#getBytes(String)} encodes it
+     */
+    static int codePointAt(String s, int i) {
+        int codePoint = s.codePointAt(i);
+        return (codePoint >= Character.MIN_SURROGATE && codePoint <= Character.MAX_SURROGATE) ? '?' : codePoint;
+    }
+
+    static int utf8Length(int codePoint) {
+        if (codePoint < 0x80) {
+            return 1;
+        } else if (codePoint < 0x800) {
+            return 2;
+        } else if (codePoint < 0x10000) {
+            return 3;
+        }
+        return 4;
+    }
+
+    /**
+     * @return byte <code>k</code> of the <code>byteCount</code> bytes long
+     *      UTF-8 encoding of <code>codePoint</code>
+     */
+    static int utf8Byte(int codePoint, int byteCount, int k) {
+        if (byteCount == 1) {
+            return codePoint;
+        }
+        int shift = 6 * (byteCount - 1 - k);
+        if (k == 0) {
+            return ((0xf00 >> byteCount) & 0xff) | (codePoint >> shift);
+        }
+        return 0x80 | ((codePoint >> shift) & 0x3f);
+    }
+
+}
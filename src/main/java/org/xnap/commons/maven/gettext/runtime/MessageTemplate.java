@@ -0,0 +1,222 @@
+package org.xnap.commons.maven.gettext.runtime;
+
+/*
+ * Copyright 2001-2005 The Apache Software Foundation.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.nio.ByteBuffer;
+import java.text.DateFormat;
+import java.text.NumberFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * A <code>java.text.MessageFormat</code> pattern that only has arguments
+ * without a format type, like "Found {0} files in {1}", split into literal
+ * segments and argument indexes. The dist goal parses the patterns of the
+ * translations when the bundle is built, so formatting a message neither
+ * parses its pattern nor synchronizes like <code>MessageFormat</code>.
+ * <p>
+ * Arguments are formatted like <code>MessageFormat</code> formats arguments
+ * without a format type: numbers and dates with the default format of the
+ * locale, null as "null", other objects with <code>toString()</code>, and
+ * missing arguments as the placeholder itself.
+ * <p>
+ * Serialized layout, all integers big endian:
+ * <pre>
+ * int segment count
+ * for each segment: int argument index, or -1 followed by int length,
+ *                   UTF-8 bytes for a literal
+ * </pre>
+ * Instances are immutable and thread-safe.
+ */
+public final class MessageTemplate {
+
+    /**
+     * The locale and number format last used by each thread, number formats
+     * are expensive to create and not thread-safe. Only holds classes of the
+     * JRE, so it does not keep the class loader of the bundle alive.
+     */
+    private static final ThreadLocal<Object[]> NUMBER_FORMAT = new ThreadLocal<Object[]>();
+
+    private final String[] literals;
+    private final int[] arguments;
+
+    /**
+     * @param literals the literal of each segment, null for an argument
+     * @param arguments the argument index of each segment, -1 for a literal
+     */
+    public MessageTemplate(String[] literals, int[] arguments) {
+        if (literals.length != arguments.length) {
+            throw new IllegalArgumentException("Segment counts differ");
+        }
+        this.literals = literals.clone();
+        this.arguments = arguments.clone();
+    }
+
+    /**
+     * @return the template of <code>pattern</code>, or null if it is not a
+     *      valid pattern or an argument has a format type
+     */
+    public static MessageTemplate parse(String pattern) {
+        List<String> literals = new ArrayList<String>();
+        List<Integer> arguments = new ArrayList<Integer>();
+        StringBuilder literal = new StringBuilder();
+        boolean quoted = false;
+        for (int i = 0; i < pattern.length(); i++) {
+            char c = pattern.charAt(i);
+            if (c == '\'') {
+                if (i + 1 < pattern.length() && pattern.charAt(i + 1) == '\'') {
+                    literal.append(c);
+                    i++;
+                } else {
+                    quoted = !quoted;
+                }
+            } else if (c == '{' && !quoted) {
+                int end = pattern.indexOf('}', i + 1);
+                if (end == -1 || end == i + 1 || end - i > 10) {
+                    return null;
+                }
+                int index = 0;
+                for (int j = i + 1; j < end; j++) {
+                    char digit = pattern.charAt(j);
+                    if (digit < '0' || digit > '9') {
+                        // a format type, or not a pattern
+                        return null;
+                    }
+                    index = index * 10 + digit - '0';
+                }
+                if (literal.length() > 0) {
+                    literals.add(literal.toString());
+                    arguments.add(-1);
+                    literal.setLength(0);
+                }
+                literals.add(null);
+                arguments.add(index);
+                i = end;
+            } else {
+                literal.append(c);
+            }
+        }
+        if (literal.length() > 0) {
+            literals.add(literal.toString());
+            arguments.add(-1);
+        }
+        int[] indexes = new int[arguments.size()];
+        for (int i = 0; i < indexes.length; i++) {
+            indexes[i] = arguments.get(i);
+        }
+        return new MessageTemplate(literals.toArray(new String[literals.size()]), indexes);
+    }
+
+    /**
+     * @return the number of literals and arguments
+     */
+    public int getSegmentCount() {
+        return literals.length;
+    }
+
+    /**
+     * @return the literal of segment <code>i</code>, or null if it is an
+     *      argument
+     */
+    public String getLiteral(int i) {
+        return literals[i];
+    }
+
+    /**
+     * @return the argument index of segment <code>i</code>, or -1 if it is a
+     *      literal
+     */
+    public int getArgument(int i) {
+        return arguments[i];
+    }
+
+    /**
+     * @return the number of arguments
+     */
+    public int getArgumentCount() {
+        int count = 0;
+        for (int argument : arguments) {
+            if (argument >= 0) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Formats the arguments like
+     * <code>MessageFormat.format(pattern, args)</code>, with the default
+     * locale for formatting.
+     */
+    public String format(Object... args) {
+        return format(Locale.getDefault(Locale.Category.FORMAT), args);
+    }
+
+    public String format(Locale locale, Object... args) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < literals.length; i++) {
+            int argument = arguments[i];
+            if (argument < 0) {
+                sb.append(literals[i]);
+            } else if (args == null || argument >= args.length) {
+                sb.append('{').append(argument).append('}');
+            } else {
+                Object arg = args[argument];
+                if (arg instanceof Number) {
+                    sb.append(getNumberFormat(locale).format(arg));
+                } else if (arg instanceof Date) {
+                    sb.append(DateFormat.getDateTimeInstance(DateFormat.SHORT, DateFormat.SHORT, locale).format(arg));
+                } else {
+                    sb.append(arg);
+                }
+            }
+        }
+        return sb.toString();
+    }
+
+    private static NumberFormat getNumberFormat(Locale locale) {
+        Object[] cached = NUMBER_FORMAT.get();
+        if (cached == null || !cached[0].equals(locale)) {
+            cached = new Object[] {locale, NumberFormat.getInstance(locale)};
+            NUMBER_FORMAT.set(cached);
+        }
+        return (NumberFormat) cached[1];
+    }
+
+    /**
+     * @return the template stored at <code>position</code>
+     */
+    static MessageTemplate read(ByteBuffer buffer, int position) {
+        int count = buffer.getInt(position);
+        position += 4;
+        String[] literals = new String[count];
+        int[] arguments = new int[count];
+        for (int i = 0; i < count; i++) {
+            arguments[i] = buffer.getInt(position);
+            position += 4;
+            if (arguments[i] < 0) {
+                int length = buffer.getInt(position);
+                literals[i] = BufferUtils.decode(buffer, position + 4, length, "UTF-8");
+                position += 4 + length;
+            }
+        }
+        return new MessageTemplate(literals, arguments);
+    }
+
+}
@@ -0,0 +1,323 @@
+package org.xnap.commons.maven.gettext.runtime;
+
+/*
+ * Copyright 2001-2005 The Apache Software Foundation.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Reads a GNU <code>.mo</code> catalog. The catalog is not parsed, messages
+ * are looked up with the hash table of the file directly in the mapped or
+ * loaded buffer, the same way GNU gettext does it. A mapped catalog is
+ * shared by all processes that map the same file. Translations are decoded
+ * on first use and kept, so later lookups of the same message do not
+ * allocate.
+ * <p>
+ * Catalogs without hash table are searched by binary search.
+ */
+public class MoCatalog {
+
+    public static final int MAGIC = 0x950412de;
+
+    private static final Pattern CHARSET_PATTERN = Pattern.compile("charset=([^\\s;]+)");
+
+    private static final char CONTEXT_SEPARATOR = '\u0004';
+
+    private final ByteBuffer buffer;
+    private final int count;
+    private final int originalsOffset;
+    private final int translationsOffset;
+    private final int hashSize;
+    private final int hashOffset;
+    private final String charset;
+    private final boolean utf8;
+    private final PluralExpression pluralExpression;
+    private final AtomicReferenceArray<String[]> translations;
+
+    /**
+     * @param buffer the content of a mo file in either byte order
+     */
+    public MoCatalog(ByteBuffer buffer) throws IOException {
+        if (buffer.limit() < 28) {
+            throw new IOException("Not a mo file");
+        }
+        buffer = buffer.duplicate();
+        buffer.order(ByteOrder.LITTLE_ENDIAN);
+        if (buffer.getInt(0) != MAGIC) {
+            buffer.order(ByteOrder.BIG_ENDIAN);
+            if (buffer.getInt(0) != MAGIC) {
+                throw new IOException("Not a mo file");
+            }
+        }
+        if ((buffer.getInt(4) >>> 16) != 0) {
+            throw new IOException("Unsupported mo file revision: " + (buffer.getInt(4) >>> 16));
+        }
+        this.buffer = buffer;
+        count = buffer.getInt(8);
+        originalsOffset = buffer.getInt(12);
+        translationsOffset = buffer.getInt(16);
+        hashSize = buffer.getInt(20);
+        hashOffset = buffer.getInt(24);
+        translations = new AtomicReferenceArray<String[]>(count);
+
+        // the header is plain ASCII up to the charset
+        int header = findBytes(new byte[0]);
+        String headerText = (header >= 0) ? decode(translationsOffset, header, "ISO-8859-1") : "";
+        Matcher m = CHARSET_PATTERN.matcher(headerText);
+        charset = (m.find() && !"CHARSET".equals(m.group(1))) ? m.group(1) : "UTF-8";
+        utf8 = "UTF-8".equalsIgnoreCase(charset) || "US-ASCII".equalsIgnoreCase(charset)
+                || "ASCII".equalsIgnoreCase(charset);
+        pluralExpression = PluralExpression.fromHeader(headerText);
+    }
+
+    /**
+     * Maps <code>file</code> into memory.
+     */
+    public static MoCatalog open(File file) throws IOException {
+        return new MoCatalog(BufferUtils.map(file));
+    }
+
+    /**
+     * Loads the resource <code>name</code>, it is mapped into memory if it is
+     * a plain file.
+     */
+    public static MoCatalog load(ClassLoader loader, String name) throws IOException {
+        return new MoCatalog(BufferUtils.load(loader, name));
+    }
+
+    /**
+     * @return the number of messages including the header
+     */
+    public int size() {
+        return count;
+    }
+
+    public String getCharset() {
+        return charset;
+    }
+
+    public PluralExpression getPluralExpression() {
+        return pluralExpression;
+    }
+
+    /**
+     * @return the header, or null if the catalog has none
+     */
+    public String getHeader() {
+        String[] forms = lookup(null, "");
+        return (forms != null) ? forms[0] : null;
+    }
+
+    /**
+     * @param context the message context, or null
+     * @return the translation and its plural forms, or null if the catalog
+     *      does not contain the message
+     */
+    public String[] lookup(String context, String msgid) {
+        int index = find(context, msgid);
+        if (index < 0) {
+            return null;
+        }
+        String[] forms = translations.get(index);
+        if (forms == null) {
+            forms = decode(translationsOffset, index, charset).split("\u0000", -1);
+            translations.set(index, forms);
+        }
+        return forms;
+    }
+
+    public String gettext(String msgid) {
+        return pgettext(null, msgid);
+    }
+
+    public String pgettext(String context, String msgid) {
+        String[] forms = lookup(context, msgid);
+        return (forms != null) ? forms[0] : msgid;
+    }
+
+    public String ngettext(String msgid, String msgidPlural, long n) {
+        return npgettext(null, msgid, msgidPlural, n);
+    }
+
+    public String npgettext(String context, String msgid, String msgidPlural, long n) {
+        String[] forms = lookup(context, msgid);
+        if (forms == null) {
+            return (n == 1) ? msgid : msgidPlural;
+        }
+        long index = pluralExpression.evaluate(n);
+        return (index >= 0 && index < forms.length) ? forms[(int) index] : forms[0];
+    }
+
+    /**
+     * @return the index of the message, or -1
+     */
+    private int find(String context, String msgid) {
+        if (!utf8 || hashSize <= 2) {
+            // encode the key like the catalog does and search the bytes
+            String key = (context != null) ? context + CONTEXT_SEPARATOR + msgid : msgid;
+            try {
+                return findBytes(key.getBytes(charset));
+            } catch (IOException e) {
+                return -1;
+            }
+        }
+
+        long hash = 0;
+        if (context != null) {
+            hash = hash(hash, context);
+            hash = hash(hash, CONTEXT_SEPARATOR);
+        }
+        hash = hash(hash, msgid) & 0xffffffffL;
+        int index = (int) (hash % hashSize);
+        int increment = 1 + (int) (hash % (hashSize - 2));
+        for (int i = 0; i < hashSize; i++) {
+            int n = buffer.getInt(hashOffset + 4 * index);
+            if (n == 0) {
+                return -1;
+            }
+            n--;
+            if (n < count && matches(n, context, msgid)) {
+                return n;
+            }
+            index = (index >= hashSize - increment) ? index - (hashSize - increment) : index + increment;
+        }
+        return -1;
+    }
+
+    private boolean matches(int index, String context, String msgid) {
+        int length = buffer.getInt(originalsOffset + 8 * index);
+        int position = buffer.getInt(originalsOffset + 8 * index + 4);
+        int end = position + length;
+        if (context != null) {
+            position = BufferUtils.match(buffer, position, end, context);
+            if (position < 0 || position == end || buffer.get(position++) != CONTEXT_SEPARATOR) {
+                return false;
+            }
+        }
+        position = BufferUtils.match(buffer, position, end, msgid);
+        // the original of a plural message continues with NUL and the plural
+        return position == end || (position >= 0 && position < end && buffer.get(position) == 0);
+    }
+
+    /**
+     * Looks up <code>key</code> with the hash table, or by binary search if
+     * the catalog has no hash table.
+     */
+    private int findBytes(byte[] key) {
+        if (hashSize > 2) {
+            long hash = hash(key);
+            int index = (int) (hash % hashSize);
+            int increment = 1 + (int) (hash % (hashSize - 2));
+            for (int i = 0; i < hashSize; i++) {
+                int n = buffer.getInt(hashOffset + 4 * index);
+                if (n == 0) {
+                    return -1;
+                }
+                n--;
+                if (n < count && compare(n, key) == 0) {
+                    return n;
+                }
+                index = (index >= hashSize - increment) ? index - (hashSize - increment) : index + increment;
+            }
+            return -1;
+        }
+
+        int low = 0;
+        int high = count - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            int c = compare(middle, key);
+            if (c < 0) {
+                low = middle + 1;
+            } else if (c > 0) {
+                high = middle - 1;
+            } else {
+                return middle;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Compares the original string of a message up to the first NUL with
+     * <code>key</code> like <code>strcmp</code>.
+     */
+    private int compare(int index, byte[] key) {
+        int length = buffer.getInt(originalsOffset + 8 * index);
+        int position = buffer.getInt(originalsOffset + 8 * index + 4);
+        for (int i = 0; i < key.length; i++) {
+            int b = (i < length) ? buffer.get(position + i) & 0xff : 0;
+            if (b != (key[i] & 0xff)) {
+                return b - (key[i] & 0xff);
+            }
+        }
+        return (key.length < length && buffer.get(position + key.length) != 0) ? 1 : 0;
+    }
+
+    private String decode(int table, int index, String charset) {
+        int length = buffer.getInt(table + 8 * index);
+        int position = buffer.getInt(table + 8 * index + 4);
+        return BufferUtils.decode(buffer, position, length, charset);
+    }
+
+    /**
+     * @return <code>hash</code> continued with the UTF-8 encoding of
+     *      <code>s</code>
+     */
+    private static long hash(long hash, String s) {
+        for (int i = 0; i < s.length();) {
+            int codePoint = BufferUtils.codePointAt(s, i);
+            i += Character.charCount(codePoint);
+            int byteCount = BufferUtils.utf8Length(codePoint);
+            for (int k = 0; k < byteCount; k++) {
+                hash = hash(hash, BufferUtils.utf8Byte(codePoint, byteCount, k));
+            }
+        }
+        return hash;
+    }
+
+    /**
+     * One step of the hashpjw function GNU gettext uses for the hash table
+     * of mo files. The low 32 bits of the result are the hash.
+     */
+    private static long hash(long hash, int b) {
+        hash = (hash << 4) + b;
+        long g = hash & (0xfL << 28);
+        if (g != 0) {
+            hash ^= g >>> 24;
+            hash ^= g;
+        }
+        return hash;
+    }
+
+    /**
+     * @return the hash of <code>bytes</code> as stored in the hash table
+     */
+    public static long hash(byte[] bytes) {
+        long hash = 0;
+        for (byte b : bytes) {
+            hash = hash(hash, b & 0xff);
+        }
+        return hash & 0xffffffffL;
+    }
+
+}
@@ -0,0 +1,268 @@
+package org.xnap.commons.maven.gettext.runtime;
+
+/*
+ * Copyright 2001-2005 The Apache Software Foundation.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * The parsed <code>plural</code> expression of a Plural-Forms header, a C
+ * expression over the single variable <code>n</code>.
+ */
+public class PluralExpression {
+
+    /**
+     * The rule that applies if a catalog does not declare one, the same that
+     * is used for English and German.
+     */
+    public static final String DEFAULT = "n != 1";
+
+    private static final Pattern PLURAL_PATTERN = Pattern.compile("plural\\s*=\\s*([^;]+)");
+
+    private static final Pattern NPLURALS_PATTERN = Pattern.compile("nplurals\\s*=\\s*(\\d+)");
+
+    public static final int NUMBER = 0;
+    public static final int VARIABLE = 1;
+    public static final int NOT = 2;
+    public static final int MUL = 3;
+    public static final int DIV = 4;
+    public static final int MOD = 5;
+    public static final int ADD = 6;
+    public static final int SUB = 7;
+    public static final int LT = 8;
+    public static final int LE = 9;
+    public static final int GT = 10;
+    public static final int GE = 11;
+    public static final int EQ = 12;
+    public static final int NE = 13;
+    public static final int AND = 14;
+    public static final int OR = 15;
+    public static final int CONDITIONAL = 16;
+
+    /**
+     * A node of the expression tree.
+     */
+    public static class Node {
+
+        private final int type;
+        private final long value;
+        private final Node[] operands;
+
+        Node(int type, long value, Node... operands) {
+            this.type = type;
+            this.value = value;
+            this.operands = operands;
+        }
+
+        /**
+         * @return one of the type constants of {@link PluralExpression}
+         */
+        public int getType() {
+            return type;
+        }
+
+        /**
+         * @return the value of a {@link PluralExpression#NUMBER} node
+         */
+        public long getValue() {
+            return value;
+        }
+
+        public Node getOperand(int index) {
+            return operands[index];
+        }
+
+        public long evaluate(long n) {
+            switch (type) {
+            case NUMBER: return value;
+            case VARIABLE: return n;
+            case NOT: return (operands[0].evaluate(n) == 0) ? 1 : 0;
+            case MUL: return operands[0].evaluate(n) * operands[1].evaluate(n);
+            case DIV: return operands[0].evaluate(n) / operands[1].evaluate(n);
+            case MOD: return operands[0].evaluate(n) % operands[1].evaluate(n);
+            case ADD: return operands[0].evaluate(n) + operands[1].evaluate(n);
+            case SUB: return operands[0].evaluate(n) - operands[1].evaluate(n);
+            case LT: return (operands[0].evaluate(n) < operands[1].evaluate(n)) ? 1 : 0;
+            case LE: return (operands[0].evaluate(n) <= operands[1].evaluate(n)) ? 1 : 0;
+            case GT: return (operands[0].evaluate(n) > operands[1].evaluate(n)) ? 1 : 0;
+            case GE: return (operands[0].evaluate(n) >= operands[1].evaluate(n)) ? 1 : 0;
+            case EQ: return (operands[0].evaluate(n) == operands[1].evaluate(n)) ? 1 : 0;
+            case NE: return (operands[0].evaluate(n) != operands[1].evaluate(n)) ? 1 : 0;
+            case AND: return (operands[0].evaluate(n) != 0 && operands[1].evaluate(n) != 0) ? 1 : 0;
+            case OR: return (operands[0].evaluate(n) != 0 || operands[1].evaluate(n) != 0) ? 1 : 0;
+            default:
+                return (operands[0].evaluate(n) != 0) ? operands[1].evaluate(n) : operands[2].evaluate(n);
+            }
+        }
+
+    }
+
+    private final String source;
+    private final Node root;
+
+    private int pos;
+
+    private PluralExpression(String source) {
+        this.source = source;
+        this.root = parseConditional();
+        skipWhitespace();
+        if (pos < source.length()) {
+            throw error("Unexpected character");
+        }
+    }
+
+    /**
+     * @throws IllegalArgumentException if <code>expression</code> is not a
+     *      valid plural expression
+     */
+    public static PluralExpression parse(String expression) {
+        return new PluralExpression(expression.trim());
+    }
+
+    /**
+     * @param header the Plural-Forms header field, may be null
+     * @return the expression of the header, or the default rule if
+     *      <code>header</code> is null or has no plural expression
+     */
+    public static PluralExpression fromHeader(String header) {
+        if (header != null) {
+            Matcher m = PLURAL_PATTERN.matcher(header);
+            if (m.find()) {
+                return parse(m.group(1));
+            }
+        }
+        return parse(DEFAULT);
+    }
+
+    /**
+     * @return the number of plural forms declared by <code>header</code>, or
+     *      -1 if it does not declare the number
+     */
+    public static int getPluralCount(String header) {
+        if (header != null) {
+            Matcher m = NPLURALS_PATTERN.matcher(header);
+            if (m.find()) {
+                return Integer.parseInt(m.group(1));
+            }
+        }
+        return -1;
+    }
+
+    public Node getRoot() {
+        return root;
+    }
+
+    public long evaluate(long n) {
+        return root.evaluate(n);
+    }
+
+    public String toString() {
+        return source;
+    }
+
+    private Node parseConditional() {
+        Node condition = parseBinary(0);
+        if (accept("?")) {
+            Node then = parseConditional();
+            expect(":");
+            Node otherwise = parseConditional();
+            return new Node(CONDITIONAL, 0, condition, then, otherwise);
+        }
+        return condition;
+    }
+
+    /**
+     * Binary operators by precedence, lowest first.
+     */
+    private static final String[][] OPERATORS = {
+            {"||"}, {"&&"}, {"==", "!="}, {"<=", ">=", "<", ">"}, {"+", "-"}, {"*", "/", "%"}
+    };
+
+    private static final int[][] OPERATOR_TYPES = {
+            {OR}, {AND}, {EQ, NE}, {LE, GE, LT, GT}, {ADD, SUB}, {MUL, DIV, MOD}
+    };
+
+    private Node parseBinary(int level) {
+        if (level == OPERATORS.length) {
+            return parseUnary();
+        }
+        Node left = parseBinary(level + 1);
+        outer:
+        while (true) {
+            for (int i = 0; i < OPERATORS[level].length; i++) {
+                if (accept(OPERATORS[level][i])) {
+                    left = new Node(OPERATOR_TYPES[level][i], 0, left, parseBinary(level + 1));
+                    continue outer;
+                }
+            }
+            return left;
+        }
+    }
+
+    private Node parseUnary() {
+        if (accept("!")) {
+            return new Node(NOT, 0, parseUnary());
+        } else if (accept("(")) {
+            Node node = parseConditional();
+            expect(")");
+            return node;
+        } else if (accept("n")) {
+            return new Node(VARIABLE, 0);
+        }
+        skipWhitespace();
+        int start = pos;
+        while (pos < source.length() && Character.isDigit(source.charAt(pos))) {
+            pos++;
+        }
+        if (start == pos) {
+            throw error("Number, n or ( expected");
+        }
+        return new Node(NUMBER, Long.parseLong(source.substring(start, pos)));
+    }
+
+    private boolean accept(String token) {
+        skipWhitespace();
+        if (source.startsWith(token, pos)) {
+            // do not mistake "!=" for "!" or "<=" for "<"
+            if ((token.equals("!") || token.equals("<") || token.equals(">"))
+                    && source.startsWith("=", pos + 1)) {
+                return false;
+            }
+            pos += token.length();
+            return true;
+        }
+        return false;
+    }
+
+    private void expect(String token) {
+        if (!accept(token)) {
+            throw error("'" + token + "' expected");
+        }
+    }
+
+    private void skipWhitespace() {
+        while (pos < source.length() && Character.isWhitespace(source.charAt(pos))) {
+            pos++;
+        }
+    }
+
+    private IllegalArgumentException error(String message) {
+        return new IllegalArgumentException(message + " at position " + pos
+                + " of plural expression: " + source);
+    }
+
+}
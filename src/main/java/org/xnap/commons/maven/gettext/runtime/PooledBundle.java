@@ -0,0 +1,310 @@
+package org.xnap.commons.maven.gettext.runtime;
+
+/*
+ * Copyright 2001-2005 The Apache Software Foundation.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.text.MessageFormat;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.MissingResourceException;
+import java.util.ResourceBundle;
+import java.util.WeakHashMap;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * A resource bundle that looks up its messages in a pool shared by all
+ * locales of the bundle, written by the dist goal with the output format
+ * "table" and <code>sharedPool</code> enabled. Like {@link TableBundle}, the
+ * dist goal generates a subclass for each locale that adds the static
+ * <code>pluralEval</code> method.
+ * <p>
+ * The pool holds every msgid of the bundle once, in a perfect hash like the
+ * one of {@link TableBundle}, and every distinct translation once, so
+ * translations that are the same in several locales or the same as their
+ * msgid are not repeated. Each locale only has an index that maps the slot
+ * of a msgid to the number of its translation in the pool. The pool is
+ * loaded once per class loader, and translations are decoded on first use
+ * and shared by all locales, like the patterns that
+ * {@link #format(String, Object...)} formats.
+ * <p>
+ * Pool layout, all integers big endian:
+ * <pre>
+ * int magic, version, id, salt, key count, bucket count, slot count,
+ *     value count
+ * int[bucket count] displacements
+ * int[slot count]   offset of the key in the slot, or -1
+ * int[value count]  offset of the value
+ * values:  int form count (0 for a message without plural forms), for each
+ *          form (or the single translation): int offset of the string, then
+ *          int offset of the {@link MessageTemplate} of the (first)
+ *          translation, or -1 if it was not parsed
+ * strings: int length &lt;&lt; 1 | 1 if Latin-1, 0 if UTF-8, bytes, and
+ *          templates
+ * </pre>
+ * Index layout:
+ * <pre>
+ * int magic, version, pool id, slot count
+ * int[slot count] value of the message in the slot, or -1
+ * </pre>
+ */
+public class PooledBundle extends ResourceBundle {
+
+    public static final int MAGIC = 0x47545050;
+
+    public static final int INDEX_MAGIC = 0x47545049;
+
+    public static final int VERSION = 1;
+
+    public static final String EXTENSION = ".index";
+
+    public static final String POOL_EXTENSION = ".pool";
+
+    public static final int HEADER_SIZE = 32;
+
+    public static final int INDEX_HEADER_SIZE = 16;
+
+    /**
+     * Cached for translations without a template.
+     */
+    private static final Object NO_TEMPLATE = new Object();
+
+    private static final Map<ClassLoader, Map<String, Pool>> POOLS = new WeakHashMap<ClassLoader, Map<String, Pool>>();
+
+    private Pool pool;
+    private ByteBuffer index;
+
+    /**
+     * Loads the index named like the class of this bundle and the pool
+     * <code>poolName</code> from the class path.
+     *
+     * @throws MissingResourceException if a file does not exist or is not
+     *      valid
+     */
+    protected PooledBundle(String poolName) {
+        String name = getClass().getName().replace('.', '/') + EXTENSION;
+        try {
+            init(getPool(getClass().getClassLoader(), poolName),
+                    BufferUtils.load(getClass().getClassLoader(), name));
+        } catch (IOException e) {
+            throw new MissingResourceException("Could not read " + name + ": " + e.getMessage(),
+                    getClass().getName(), "");
+        }
+    }
+
+    public PooledBundle(ByteBuffer pool, ByteBuffer index) throws IOException {
+        init(new Pool(pool), index);
+    }
+
+    private void init(Pool pool, ByteBuffer index) throws IOException {
+        if (index.limit() < INDEX_HEADER_SIZE || index.getInt(0) != INDEX_MAGIC) {
+            throw new IOException("Not a message index");
+        }
+        if (index.getInt(4) != VERSION) {
+            throw new IOException("Unsupported message index version: " + index.getInt(4));
+        }
+        if (index.getInt(8) != pool.id || index.getInt(12) != pool.slotCount) {
+            throw new IOException("The message index does not belong to the message pool");
+        }
+        this.pool = pool;
+        this.index = index;
+    }
+
+    /**
+     * @return the pool <code>name</code> of <code>loader</code>, loaded only
+     *      once
+     */
+    private static Pool getPool(ClassLoader loader, String name) throws IOException {
+        synchronized (POOLS) {
+            Map<String, Pool> pools = POOLS.get(loader);
+            if (pools == null) {
+                pools = new HashMap<String, Pool>();
+                POOLS.put(loader, pools);
+            }
+            Pool pool = pools.get(name);
+            if (pool == null) {
+                pool = new Pool(BufferUtils.load(loader, name));
+                pools.put(name, pool);
+            }
+            return pool;
+        }
+    }
+
+    /**
+     * @return the translation of <code>msgid</code>, a String[] for messages
+     *      with plural forms, or null
+     */
+    public Object lookup(String msgid) {
+        int slot = pool.find(msgid);
+        if (slot < 0) {
+            return null;
+        }
+        int value = index.getInt(INDEX_HEADER_SIZE + 4 * slot);
+        return (value >= 0) ? pool.getValue(value) : null;
+    }
+
+    /**
+     * @return the pattern of the translation of <code>msgid</code>, or of its
+     *      first form, as parsed by the dist goal, or null if it was not
+     *      parsed or the message does not exist
+     */
+    public MessageTemplate getTemplate(String msgid) {
+        int slot = pool.find(msgid);
+        if (slot < 0) {
+            return null;
+        }
+        int value = index.getInt(INDEX_HEADER_SIZE + 4 * slot);
+        return (value >= 0) ? pool.getTemplate(value) : null;
+    }
+
+    /**
+     * Formats the translation of <code>msgid</code> like
+     * <code>MessageFormat.format(getString(msgid), args)</code>, without
+     * parsing it if its pattern was parsed by the dist goal.
+     *
+     * @throws MissingResourceException if the message does not exist
+     */
+    public String format(String msgid, Object... args) {
+        MessageTemplate template = getTemplate(msgid);
+        if (template != null) {
+            return template.format(args);
+        }
+        if (parent instanceof PooledBundle && lookup(msgid) == null) {
+            return ((PooledBundle) parent).format(msgid, args);
+        }
+        return MessageFormat.format(getString(msgid), args);
+    }
+
+    @Override
+    public Object handleGetObject(String msgid) throws MissingResourceException {
+        Object value = lookup(msgid);
+        return (value instanceof String[]) ? ((String[]) value)[0] : value;
+    }
+
+    @Override
+    public Enumeration<String> getKeys() {
+        List<String> keys = new ArrayList<String>();
+        for (int slot = 0; slot < pool.slotCount; slot++) {
+            if (index.getInt(INDEX_HEADER_SIZE + 4 * slot) >= 0) {
+                keys.add(pool.getKey(slot));
+            }
+        }
+        return Collections.enumeration(keys);
+    }
+
+    /**
+     * Public like in the classes generated by msgfmt.
+     */
+    public ResourceBundle getParent() {
+        return parent;
+    }
+
+    private static class Pool {
+
+        private final ByteBuffer buffer;
+        private final int id;
+        private final int salt;
+        private final int keyCount;
+        private final int bucketCount;
+        private final int slotCount;
+        private final int keysOffset;
+        private final int valuesOffset;
+        private final AtomicReferenceArray<Object> values;
+        private final AtomicReferenceArray<Object> templates;
+
+        Pool(ByteBuffer buffer) throws IOException {
+            if (buffer.limit() < HEADER_SIZE || buffer.getInt(0) != MAGIC) {
+                throw new IOException("Not a message pool");
+            }
+            if (buffer.getInt(4) != VERSION) {
+                throw new IOException("Unsupported message pool version: " + buffer.getInt(4));
+            }
+            this.buffer = buffer;
+            id = buffer.getInt(8);
+            salt = buffer.getInt(12);
+            keyCount = buffer.getInt(16);
+            bucketCount = buffer.getInt(20);
+            slotCount = buffer.getInt(24);
+            keysOffset = HEADER_SIZE + 4 * bucketCount;
+            valuesOffset = keysOffset + 4 * slotCount;
+            values = new AtomicReferenceArray<Object>(buffer.getInt(28));
+            templates = new AtomicReferenceArray<Object>(buffer.getInt(28));
+        }
+
+        int find(String msgid) {
+            if (keyCount == 0) {
+                return -1;
+            }
+            long hash = TableBundle.hash(msgid, salt);
+            int displacement = buffer.getInt(HEADER_SIZE + 4 * TableBundle.bucket(hash, bucketCount));
+            int slot = TableBundle.slot(hash, displacement, slotCount);
+            int offset = buffer.getInt(keysOffset + 4 * slot);
+            if (offset < 0) {
+                return -1;
+            }
+            // keys are stored as UTF-8, which is the same as Latin-1 for ASCII
+            int end = offset + 4 + (buffer.getInt(offset) >>> 1);
+            return (BufferUtils.match(buffer, offset + 4, end, msgid) == end) ? slot : -1;
+        }
+
+        String getKey(int slot) {
+            return getString(buffer.getInt(keysOffset + 4 * slot));
+        }
+
+        Object getValue(int value) {
+            Object decoded = values.get(value);
+            if (decoded == null) {
+                int position = buffer.getInt(valuesOffset + 4 * value);
+                int forms = buffer.getInt(position);
+                if (forms == 0) {
+                    decoded = getString(buffer.getInt(position + 4));
+                } else {
+                    String[] strings = new String[forms];
+                    for (int i = 0; i < forms; i++) {
+                        strings[i] = getString(buffer.getInt(position + 4 + 4 * i));
+                    }
+                    decoded = strings;
+                }
+                values.set(value, decoded);
+            }
+            return decoded;
+        }
+
+        MessageTemplate getTemplate(int value) {
+            Object template = templates.get(value);
+            if (template == null) {
+                int position = buffer.getInt(valuesOffset + 4 * value);
+                int offset = buffer.getInt(position + 4 + 4 * Math.max(buffer.getInt(position), 1));
+                template = (offset < 0) ? NO_TEMPLATE : MessageTemplate.read(buffer, offset);
+                templates.set(value, template);
+            }
+            return (template != NO_TEMPLATE) ? (MessageTemplate) template : null;
+        }
+
+        private String getString(int offset) {
+            int header = buffer.getInt(offset);
+            return BufferUtils.decode(buffer, offset + 4, header >>> 1,
+                    ((header & 1) != 0) ? "ISO-8859-1" : "UTF-8");
+        }
+
+    }
+
+}
@@ -0,0 +1,285 @@
+package org.xnap.commons.maven.gettext.runtime;
+
+/*
+ * Copyright 2001-2005 The Apache Software Foundation.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.text.MessageFormat;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.MissingResourceException;
+import java.util.ResourceBundle;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * A resource bundle that looks up its messages in a table written by the dist
+ * goal with the output format "table". The dist goal generates a subclass for
+ * each locale that adds the static <code>pluralEval</code> method, so the
+ * bundles work with GNU gettext's <code>GettextResource</code> like the
+ * classes <code>msgfmt --java2</code> generates.
+ * <p>
+ * The table is found on the class path next to the class of the bundle. It
+ * is mapped into memory if it is a plain file and read in one piece
+ * otherwise; nothing is parsed when a bundle is loaded. Messages are found
+ * with a perfect hash over their UTF-8 encoding: a lookup reads one bucket,
+ * one slot and compares one key. Translations are decoded on first use and
+ * kept, so later lookups of the same message do not allocate. Translations
+ * whose pattern was parsed by the dist goal are formatted by
+ * {@link #format(String, Object...)} without parsing them again.
+ * <p>
+ * Table layout, all integers big endian:
+ * <pre>
+ * int magic, version, salt, message count, bucket count, slot count
+ * int[bucket count] displacements
+ * int[slot count]   offset of the record in the slot, or -1
+ * records: int key length, key, int form count (0 for a message without
+ *          plural forms), for each form (or the single translation):
+ *          int length, UTF-8 bytes, and the {@link MessageTemplate} of the
+ *          (first) translation or int -1 if it was not parsed
+ * </pre>
+ */
+public class TableBundle extends ResourceBundle {
+
+    public static final int MAGIC = 0x47544254;
+
+    public static final int VERSION = 2;
+
+    public static final String EXTENSION = ".table";
+
+    public static final int HEADER_SIZE = 24;
+
+    private static final long FNV_OFFSET = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    /**
+     * Cached for messages without a template.
+     */
+    private static final Object NO_TEMPLATE = new Object();
+
+    private ByteBuffer table;
+    private int salt;
+    private int bucketCount;
+    private int slotCount;
+    private int slotsOffset;
+    private AtomicReferenceArray<Object> values;
+    private AtomicReferenceArray<Object> templates;
+
+    /**
+     * Loads the table named like the class of this bundle from the class
+     * path.
+     *
+     * @throws MissingResourceException if the table does not exist or is
+     *      not valid
+     */
+    protected TableBundle() {
+        String name = getClass().getName().replace('.', '/') + EXTENSION;
+        try {
+            init(BufferUtils.load(getClass().getClassLoader(), name));
+        } catch (IOException e) {
+            throw new MissingResourceException("Could not read " + name + ": " + e.getMessage(),
+                    getClass().getName(), "");
+        }
+    }
+
+    public TableBundle(ByteBuffer table) throws IOException {
+        init(table);
+    }
+
+    private void init(ByteBuffer table) throws IOException {
+        if (table.limit() < HEADER_SIZE || table.getInt(0) != MAGIC) {
+            throw new IOException("Not a message table");
+        }
+        if (table.getInt(4) != VERSION) {
+            throw new IOException("Unsupported message table version: " + table.getInt(4));
+        }
+        this.table = table;
+        salt = table.getInt(8);
+        bucketCount = table.getInt(16);
+        slotCount = table.getInt(20);
+        slotsOffset = HEADER_SIZE + 4 * bucketCount;
+        values = new AtomicReferenceArray<Object>(slotCount);
+        templates = new AtomicReferenceArray<Object>(slotCount);
+    }
+
+    /**
+     * @return the translation of <code>msgid</code>, a String[] for messages
+     *      with plural forms, or null
+     */
+    public Object lookup(String msgid) {
+        int slot = find(msgid);
+        if (slot < 0) {
+            return null;
+        }
+        Object value = values.get(slot);
+        if (value == null) {
+            value = readValue(table.getInt(slotsOffset + 4 * slot));
+            values.set(slot, value);
+        }
+        return value;
+    }
+
+    /**
+     * @return the pattern of the translation of <code>msgid</code>, or of its
+     *      first form, as parsed by the dist goal, or null if it was not
+     *      parsed or the message does not exist
+     */
+    public MessageTemplate getTemplate(String msgid) {
+        int slot = find(msgid);
+        if (slot < 0) {
+            return null;
+        }
+        Object template = templates.get(slot);
+        if (template == null) {
+            int position = skipValue(table.getInt(slotsOffset + 4 * slot));
+            template = (table.getInt(position) < 0) ? NO_TEMPLATE : MessageTemplate.read(table, position);
+            templates.set(slot, template);
+        }
+        return (template != NO_TEMPLATE) ? (MessageTemplate) template : null;
+    }
+
+    /**
+     * Formats the translation of <code>msgid</code> like
+     * <code>MessageFormat.format(getString(msgid), args)</code>, without
+     * parsing it if its pattern was parsed by the dist goal.
+     *
+     * @throws MissingResourceException if the message does not exist
+     */
+    public String format(String msgid, Object... args) {
+        MessageTemplate template = getTemplate(msgid);
+        if (template != null) {
+            return template.format(args);
+        }
+        if (parent instanceof TableBundle && lookup(msgid) == null) {
+            return ((TableBundle) parent).format(msgid, args);
+        }
+        return MessageFormat.format(getString(msgid), args);
+    }
+
+    @Override
+    public Object handleGetObject(String msgid) throws MissingResourceException {
+        Object value = lookup(msgid);
+        return (value instanceof String[]) ? ((String[]) value)[0] : value;
+    }
+
+    @Override
+    public Enumeration<String> getKeys() {
+        List<String> keys = new ArrayList<String>();
+        for (int slot = 0; slot < slotCount; slot++) {
+            int offset = table.getInt(slotsOffset + 4 * slot);
+            if (offset >= 0) {
+                keys.add(readString(offset));
+            }
+        }
+        return Collections.enumeration(keys);
+    }
+
+    /**
+     * Public like in the classes generated by msgfmt.
+     */
+    public ResourceBundle getParent() {
+        return parent;
+    }
+
+    private int find(String msgid) {
+        if (table.getInt(12) == 0) {
+            return -1;
+        }
+        long hash = hash(msgid, salt);
+        int displacement = table.getInt(HEADER_SIZE + 4 * bucket(hash, bucketCount));
+        int slot = slot(hash, displacement, slotCount);
+        int offset = table.getInt(slotsOffset + 4 * slot);
+        return (offset >= 0 && keyEquals(offset, msgid)) ? slot : -1;
+    }
+
+    private boolean keyEquals(int offset, String key) {
+        int end = offset + 4 + table.getInt(offset);
+        return BufferUtils.match(table, offset + 4, end, key) == end;
+    }
+
+    private Object readValue(int offset) {
+        int position = offset + 4 + table.getInt(offset);
+        int forms = table.getInt(position);
+        position += 4;
+        if (forms == 0) {
+            return readString(position);
+        }
+        String[] values = new String[forms];
+        for (int i = 0; i < forms; i++) {
+            values[i] = readString(position);
+            position += 4 + table.getInt(position);
+        }
+        return values;
+    }
+
+    /**
+     * @return the position after the translations of a record
+     */
+    private int skipValue(int offset) {
+        int position = offset + 4 + table.getInt(offset);
+        int forms = Math.max(table.getInt(position), 1);
+        position += 4;
+        for (int i = 0; i < forms; i++) {
+            position += 4 + table.getInt(position);
+        }
+        return position;
+    }
+
+    private String readString(int offset) {
+        return BufferUtils.decode(table, offset + 4, table.getInt(offset), "UTF-8");
+    }
+
+    /**
+     * @return the hash of the UTF-8 encoding of <code>s</code>
+     */
+    public static long hash(String s, int salt) {
+        long hash = FNV_OFFSET ^ salt;
+        for (int i = 0; i < s.length();) {
+            int codePoint = BufferUtils.codePointAt(s, i);
+            i += Character.charCount(codePoint);
+            int byteCount = BufferUtils.utf8Length(codePoint);
+            for (int k = 0; k < byteCount; k++) {
+                hash = (hash ^ BufferUtils.utf8Byte(codePoint, byteCount, k)) * FNV_PRIME;
+            }
+        }
+        // spread the bits
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+
+    public static int bucket(long hash, int bucketCount) {
+        return (int) ((hash >>> 32) % bucketCount);
+    }
+
+    /**
+     * @return the slot of a message for a displacement of its bucket, every
+     *      displacement maps the messages to independent slots
+     */
+    public static int slot(long hash, int displacement, int slotCount) {
+        long x = hash ^ (displacement * 0x9e3779b97f4a7c15L);
+        x ^= x >>> 33;
+        x *= 0xff51afd7ed558ccdL;
+        x ^= x >>> 33;
+        return (int) ((x >>> 1) % slotCount);
+    }
+
+}
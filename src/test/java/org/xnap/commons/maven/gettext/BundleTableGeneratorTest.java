@@ -0,0 +1,170 @@
+package org.xnap.commons.maven.gettext;
+
+/*
+ * Copyright 2001-2005 The Apache Software Foundation.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Collections;
+
+import org.junit.Test;
+import org.xnap.commons.maven.gettext.runtime.TableBundle;
+
+public class BundleTableGeneratorTest {
+
+    /**
+     * Mixes ASCII, Latin-1, CJK and supplementary characters, which take one
+     * to four bytes in UTF-8.
+     */
+    private static String key(int i) {
+        switch (i % 4) {
+        case 0: return "message " + i;
+        case 1: return "caf\u00e9 " + i;
+        case 2: return "\u8a2d\u5b9a " + i;
+        default: return "\ud83d\ude00 " + i;
+        }
+    }
+
+    private static PoEntry createEntry(String msgid, String... msgstr) {
+        PoEntry entry = new PoEntry();
+        entry.setMsgid(msgid);
+        for (int i = 0; i < msgstr.length; i++) {
+            entry.setMsgstr(i, msgstr[i]);
+        }
+        return entry;
+    }
+
+    private static TableBundle build(int count) throws IOException {
+        BundleTableGenerator generator = new BundleTableGenerator("test.Messages_de");
+        for (int i = 0; i < count; i++) {
+            assertTrue(generator.add(createEntry(key(i), "value " + i)));
+        }
+        assertEquals(count, generator.size());
+        return new TableBundle(ByteBuffer.wrap(generator.generateTable()));
+    }
+
+    private static void assertLookups(int count) throws IOException {
+        TableBundle bundle = build(count);
+        for (int i = 0; i < count; i++) {
+            assertEquals("value " + i, bundle.lookup(key(i)));
+        }
+        for (int i = count; i < count + 1000; i++) {
+            assertNull(bundle.lookup(key(i)));
+        }
+        assertNull(bundle.lookup(""));
+        assertNull(bundle.lookup("message"));
+        assertEquals(count, Collections.list(bundle.getKeys()).size());
+    }
+
+    @Test
+    public void testEmpty() throws IOException {
+        assertLookups(0);
+    }
+
+    @Test
+    public void testOne() throws IOException {
+        assertLookups(1);
+    }
+
+    @Test
+    public void testTwo() throws IOException {
+        assertLookups(2);
+    }
+
+    @Test
+    public void testThousand() throws IOException {
+        assertLookups(1000);
+        assertLookups(1001);
+    }
+
+    @Test
+    public void testNearlyFullTables() throws IOException {
+        // one slot per message leaves the last buckets few free slots
+        for (int count = 0; count < 300; count++) {
+            assertLookups(count);
+        }
+        for (int count = 990; count < 1010; count++) {
+            assertLookups(count);
+        }
+    }
+
+    @Test
+    public void testLarge() throws IOException {
+        assertLookups(200000);
+    }
+
+    @Test
+    public void testPluralAndContext() throws IOException {
+        BundleTableGenerator generator = new BundleTableGenerator("test.Messages_de");
+        PoEntry plural = createEntry("file", "Datei", "Dateien");
+        plural.setMsgidPlural("files");
+        generator.add(plural);
+        PoEntry context = createEntry("Open", "\u00d6ffnen");
+        context.setMsgctxt("menu");
+        generator.add(context);
+        TableBundle bundle = new TableBundle(ByteBuffer.wrap(generator.generateTable()));
+
+        assertArrayEquals(new String[]{"Datei", "Dateien"}, (String[]) bundle.lookup("file"));
+        assertEquals("Datei", bundle.getString("file"));
+        assertEquals("\u00d6ffnen", bundle.lookup(context.getKey()));
+        assertNull(bundle.lookup("Open"));
+    }
+
+    @Test
+    public void testNotCompiledMessagesSkipped() throws IOException {
+        BundleTableGenerator generator = new BundleTableGenerator("test.Messages_de");
+        PoEntry fuzzy = createEntry("a", "b");
+        fuzzy.getFlags().add("fuzzy");
+        assertFalse(generator.add(fuzzy));
+        assertFalse(generator.add(createEntry("c", "")));
+        assertEquals(0, generator.size());
+        assertNull(new TableBundle(ByteBuffer.wrap(generator.generateTable())).lookup("a"));
+    }
+
+    @Test
+    public void testTemplates() throws IOException {
+        BundleTableGenerator generator = new BundleTableGenerator("test.Messages_de");
+        generator.setParseFormats(true);
+        generator.add(createEntry("{0} files", "{0} Dateien"));
+        generator.add(createEntry("plain", "einfach"));
+        assertEquals(1, generator.getFormatCount());
+        TableBundle bundle = new TableBundle(ByteBuffer.wrap(generator.generateTable()));
+
+        assertNotNull(bundle.getTemplate("{0} files"));
+        assertNull(bundle.getTemplate("plain"));
+        assertEquals("3 Dateien", bundle.format("{0} files", 3));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testDuplicate() {
+        BundleTableGenerator generator = new BundleTableGenerator("test.Messages_de");
+        generator.add(createEntry("a", "b"));
+        generator.add(createEntry("a", "c"));
+    }
+
+    @Test(expected = IOException.class)
+    public void testInvalidTable() throws IOException {
+        new TableBundle(ByteBuffer.wrap(new byte[TableBundle.HEADER_SIZE]));
+    }
+
+}
@@ -0,0 +1,266 @@
+package org.xnap.commons.maven.gettext;
+
+/*
+ * Copyright 2001-2005 The Apache Software Foundation.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.TreeSet;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class CatalogCheckerTest {
+
+    private static final String HEADER = "msgid \"\"\n"
+            + "msgstr \"\"\n"
+            + "\"Content-Type: text/plain; charset=UTF-8\\n\"\n"
+            + "\"Plural-Forms: nplurals=2; plural=(n != 1);\\n\"\n"
+            + "\n";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private CatalogChecker check(String content) throws IOException {
+        return check(content.getBytes("UTF-8"));
+    }
+
+    private CatalogChecker check(byte[] content) throws IOException {
+        File file = new File(folder.getRoot(), "de.po");
+        OutputStream out = new FileOutputStream(file);
+        try {
+            out.write(content);
+        } finally {
+            out.close();
+        }
+        return CatalogChecker.check(file, "po/de.po");
+    }
+
+    private static void assertProblem(CatalogChecker checker, int line, boolean error, String message) {
+        assertEquals(checker.getProblems().toString(), 1, checker.getProblems().size());
+        CatalogChecker.Problem problem = checker.getProblems().get(0);
+        assertEquals("po/de.po", problem.getFile());
+        assertEquals(line, problem.getLine());
+        assertEquals(error, problem.isError());
+        assertTrue(problem.getMessage(), problem.getMessage().startsWith(message));
+    }
+
+    @Test
+    public void testValid() throws IOException {
+        CatalogChecker checker = check(HEADER
+                + "msgid \"{0} of {1}\"\n"
+                + "msgstr \"{1}: {0}\"\n"
+                + "\n"
+                + "msgid \"One file\"\n"
+                + "msgid_plural \"{0} files\"\n"
+                + "msgstr[0] \"Eine Datei\"\n"
+                + "msgstr[1] \"{0} Dateien\"\n"
+                + "\n"
+                + "msgid \"Gr\u00fc\u00dfe\"\n"
+                + "msgstr \"Gr\u00fc\u00dfe\"\n");
+        assertTrue(checker.getProblems().toString(), checker.getProblems().isEmpty());
+        assertEquals(3, checker.getMessageCount());
+        assertEquals(0, checker.getErrorCount());
+        assertEquals(0, checker.getWarningCount());
+    }
+
+    @Test
+    public void testArgumentMismatch() throws IOException {
+        CatalogChecker checker = check(HEADER
+                + "msgid \"{0} of {1}\"\n"
+                + "msgstr \"{0} von {2}\"\n");
+        assertEquals(2, checker.getErrorCount());
+        assertEquals("Arguments {1} of the msgid are missing in msgstr", checker.getProblems().get(0).getMessage());
+        assertEquals("msgstr has arguments {2} that the msgid does not have",
+                checker.getProblems().get(1).getMessage());
+        assertEquals("{0} of {1}", checker.getProblems().get(0).getMsgid());
+        // the first line of the message
+        assertEquals(6, checker.getProblems().get(0).getLine());
+    }
+
+    @Test
+    public void testInvalidPattern() throws IOException {
+        assertProblem(check(HEADER
+                + "msgid \"{0} files\"\n"
+                + "msgstr \"{0 Dateien\"\n"), 6, true, "msgstr is not a valid MessageFormat pattern");
+    }
+
+    @Test
+    public void testNotAPattern() throws IOException {
+        // without arguments and the java-format flag a message is not a pattern
+        CatalogChecker checker = check(HEADER
+                + "msgid \"It's\"\n"
+                + "msgstr \"{0}\"\n"
+                + "\n"
+                + "#, no-java-format\n"
+                + "msgid \"{0}\"\n"
+                + "msgstr \"{1}\"\n");
+        assertTrue(checker.getProblems().toString(), checker.getProblems().isEmpty());
+    }
+
+    @Test
+    public void testJavaFormatFlag() throws IOException {
+        assertProblem(check(HEADER
+                + "#, java-format\n"
+                + "msgid \"100%\"\n"
+                + "msgstr \"{0} %\"\n"), 6, true, "msgstr has arguments {0}");
+    }
+
+    @Test
+    public void testPluralArguments() throws IOException {
+        CatalogChecker checker = check(HEADER
+                + "msgid \"One file\"\n"
+                + "msgid_plural \"{0} files\"\n"
+                + "msgstr[0] \"Eine Datei\"\n"
+                + "msgstr[1] \"{1} Dateien\"\n");
+        assertEquals(2, checker.getErrorCount());
+        assertEquals("msgstr[1] has arguments {1} that the msgid does not have",
+                checker.getProblems().get(0).getMessage());
+        assertEquals("Arguments {0} of msgid_plural are missing in all forms",
+                checker.getProblems().get(1).getMessage());
+    }
+
+    @Test
+    public void testPluralCount() throws IOException {
+        assertProblem(check(HEADER
+                + "msgid \"file\"\n"
+                + "msgid_plural \"files\"\n"
+                + "msgstr[0] \"Datei\"\n"
+                + "msgstr[1] \"Dateien\"\n"
+                + "msgstr[2] \"Dateien\"\n"), 6, true,
+                "Plural message with 3 forms, but Plural-Forms declares 2");
+    }
+
+    @Test
+    public void testMissingPluralForms() throws IOException {
+        String plural = "msgid \"file\"\n"
+                + "msgid_plural \"files\"\n"
+                + "msgstr[0] \"Datei\"\n"
+                + "msgstr[1] \"Dateien\"\n"
+                + "\n";
+        // reported once per file
+        assertProblem(check("msgid \"\"\n"
+                + "msgstr \"Content-Type: text/plain; charset=UTF-8\\n\"\n"
+                + "\n" + plural + plural.replace("file", "dir")), 4, true,
+                "Plural message, but the header declares no Plural-Forms");
+    }
+
+    @Test
+    public void testInvalidPluralForms() throws IOException {
+        assertProblem(check("msgid \"\"\n"
+                + "msgstr \"Plural-Forms: nplurals=0; plural=0;\\n\"\n"), 1, true,
+                "Plural-Forms declares no valid nplurals");
+    }
+
+    @Test
+    public void testNotCompiledMessagesSkipped() throws IOException {
+        CatalogChecker checker = check(HEADER
+                + "#, fuzzy\n"
+                + "msgid \"{0}\"\n"
+                + "msgstr \"{1}\"\n"
+                + "\n"
+                + "msgid \"{0} files\"\n"
+                + "msgstr \"\"\n"
+                + "\n"
+                + "#~ msgid \"{0}\"\n"
+                + "#~ msgstr \"{1}\"\n");
+        assertTrue(checker.getProblems().toString(), checker.getProblems().isEmpty());
+        assertEquals(0, checker.getMessageCount());
+    }
+
+    @Test
+    public void testInvalidUtf8() throws IOException {
+        byte[] prefix = (HEADER + "msgid \"a\"\nmsgstr \"").getBytes("UTF-8");
+        byte[] content = Arrays.copyOf(prefix, prefix.length + 3);
+        content[prefix.length] = (byte) 0xe4;
+        content[prefix.length + 1] = '"';
+        content[prefix.length + 2] = '\n';
+        assertProblem(check(content), 6, true, "Text is not valid UTF-8 as declared by the header");
+    }
+
+    @Test
+    public void testUtf8DeclaredAsLatin1() throws IOException {
+        CatalogChecker checker = check(HEADER.replace("UTF-8", "ISO-8859-1")
+                + "msgid \"a\"\n"
+                + "msgstr \"\u00e4\"\n");
+        assertProblem(checker, 6, false, "Text looks like UTF-8, but the header declares ISO-8859-1");
+        assertEquals(1, checker.getWarningCount());
+    }
+
+    @Test
+    public void testNoCharset() throws IOException {
+        assertProblem(check("msgid \"a\"\n"
+                + "msgstr \"\u00e4\"\n"), 1, true, "Non-ASCII text, but the header declares no charset");
+    }
+
+    @Test
+    public void testUnsupportedCharset() throws IOException {
+        assertProblem(check(HEADER.replace("UTF-8", "NO-SUCH-CHARSET")), 1, true,
+                "Unsupported charset NO-SUCH-CHARSET");
+    }
+
+    @Test
+    public void testParseError() throws IOException {
+        CatalogChecker checker = check(HEADER
+                + "msgid \"a\"\n"
+                + "msgstr \"b\"\n"
+                + "\n"
+                + "msgid \"c\n"
+                + "msgstr \"d\"\n");
+        assertEquals(1, checker.getErrorCount());
+        CatalogChecker.Problem problem = checker.getProblems().get(0);
+        assertEquals(9, problem.getLine());
+        assertNull(problem.getMsgid());
+        assertFalse(problem.getMessage().startsWith("po/de.po"));
+        assertEquals(1, checker.getMessageCount());
+    }
+
+    @Test
+    public void testGetArguments() {
+        assertEquals(Collections.emptySet(), CatalogChecker.getArguments("no arguments"));
+        assertEquals(new TreeSet<Integer>(Arrays.asList(0, 2)), CatalogChecker.getArguments("{2} and {0} or {0}"));
+        assertEquals(Collections.singleton(0), CatalogChecker.getArguments("{0,number,#.##} files"));
+        assertEquals(Collections.singleton(10), CatalogChecker.getArguments("{10}"));
+        // quoted and nested braces are not arguments
+        assertEquals(Collections.emptySet(), CatalogChecker.getArguments("'{0}'"));
+        assertEquals(Collections.singleton(0), CatalogChecker.getArguments("It''s {0}"));
+        assertEquals(Collections.singleton(0),
+                CatalogChecker.getArguments("{0,choice,0#no files|1#one file|1<{0} files}"));
+        // a closing brace alone is a literal
+        assertEquals(Collections.singleton(0), CatalogChecker.getArguments("} {0}"));
+    }
+
+    @Test
+    public void testGetArgumentsInvalid() {
+        assertNull(CatalogChecker.getArguments("{}"));
+        assertNull(CatalogChecker.getArguments("{0"));
+        assertNull(CatalogChecker.getArguments("{a}"));
+        assertNull(CatalogChecker.getArguments("{ 0}"));
+        assertNull(CatalogChecker.getArguments("{0,nosuchtype}"));
+        assertNull(CatalogChecker.getArguments("{1234567890}"));
+    }
+
+}
@@ -0,0 +1,147 @@
+package org.xnap.commons.maven.gettext;
+
+/*
+ * Copyright 2001-2005 The Apache Software Foundation.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+
+import org.codehaus.plexus.util.FileUtils;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class JavaExtractorTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static List<PoEntry> extract(String keywords, String content) {
+        return new JavaExtractor(JavaExtractor.parseKeywords(keywords)).extract("A.java", content);
+    }
+
+    @Test
+    public void testSimpleKeyword() {
+        List<PoEntry> entries = extract("-k_", "class A {\n  String s = _(\"Hello\");\n}");
+        assertEquals(1, entries.size());
+        assertEquals("Hello", entries.get(0).getMsgid());
+        assertNull(entries.get(0).getMsgidPlural());
+        assertEquals(Arrays.asList("A.java:2"), entries.get(0).getReferences());
+    }
+
+    @Test
+    public void testDefaultKeywords() {
+        String content = "gettext(\"a\"); ngettext(\"b\", \"bs\", n); pgettext(\"ctx\", \"c\");"
+                + " GettextResource.gettext(bundle, \"d\"); other.gettext(bundle, \"e\"); getString(\"f\");";
+        List<PoEntry> entries = extract("-k_", content);
+        assertEquals(5, entries.size());
+        assertEquals("a", entries.get(0).getMsgid());
+        assertEquals("b", entries.get(1).getMsgid());
+        assertEquals("bs", entries.get(1).getMsgidPlural());
+        assertEquals("ctx", entries.get(2).getMsgctxt());
+        assertEquals("c", entries.get(2).getMsgid());
+        assertEquals("d", entries.get(3).getMsgid());
+        // GettextResource.gettext:2 needs the qualifier, and the first argument is not a literal
+        assertEquals("f", entries.get(4).getMsgid());
+    }
+
+    @Test
+    public void testBareKeywordOptionDisablesDefaults() {
+        List<PoEntry> entries = extract("-k -ktr", "gettext(\"a\"); tr(\"b\");");
+        assertEquals(1, entries.size());
+        assertEquals("b", entries.get(0).getMsgid());
+        assertEquals(1, extract("--keyword --keyword=tr", "gettext(\"a\"); tr(\"b\");").size());
+    }
+
+    @Test
+    public void testArgumentPositions() {
+        List<PoEntry> entries = extract("-k -ktrc:1c,2 -ktrn:2,3", "trc(\"menu\", \"Open\"); trn(x, \"file\", \"files\", n);");
+        assertEquals(2, entries.size());
+        assertEquals("menu", entries.get(0).getMsgctxt());
+        assertEquals("Open", entries.get(0).getMsgid());
+        assertEquals("file", entries.get(1).getMsgid());
+        assertEquals("files", entries.get(1).getMsgidPlural());
+    }
+
+    @Test
+    public void testTotalArguments() {
+        List<PoEntry> entries = extract("-k -ktr:1,2t", "tr(\"one\"); tr(\"two\", x); tr(\"three\", x, y);");
+        assertEquals(1, entries.size());
+        assertEquals("two", entries.get(0).getMsgid());
+    }
+
+    @Test
+    public void testLiteralsOnly() {
+        List<PoEntry> entries = extract("-k -ktr", "tr(\"a\" + \"b\"); tr(name); tr(\"c\" + name); tr(\"\"); tr(\"d\"");
+        assertEquals(1, entries.size());
+        assertEquals("ab", entries.get(0).getMsgid());
+    }
+
+    @Test
+    public void testEscapesAndComments() {
+        String content = "// tr(\"comment\")\n/* tr(\"block\")\n */ tr(\"caf\\u00e9\\n\\t\\\"\\101\");";
+        List<PoEntry> entries = extract("-k -ktr", content);
+        assertEquals(1, entries.size());
+        assertEquals("caf\u00e9\n\t\"A", entries.get(0).getMsgid());
+        assertEquals("A.java:3", entries.get(0).getReferences().get(0));
+    }
+
+    @Test
+    public void testJavaFormat() {
+        List<PoEntry> entries = extract("-k -ktr", "tr(\"{0} files\"); tr(\"{0,number} files\"); tr(\"no {args}\");"
+                + " tr(\"'{0}'\"); tr(\"plain\");");
+        assertEquals(Arrays.asList("java-format"), entries.get(0).getFlags());
+        assertEquals(Arrays.asList("java-format"), entries.get(1).getFlags());
+        assertTrue(entries.get(2).getFlags().isEmpty());
+        assertTrue(entries.get(3).getFlags().isEmpty());
+        assertTrue(entries.get(4).getFlags().isEmpty());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidOption() {
+        JavaExtractor.parseKeywords("-k_ --from-code=utf-8");
+    }
+
+    @Test
+    public void testExtractFiles() throws IOException {
+        File base = folder.newFolder("src");
+        new File(base, "a").mkdir();
+        FileUtils.fileWrite(new File(base, "a/A.java").getAbsolutePath(), "UTF-8", "tr(\"a\");");
+        File extra = folder.newFile("index.jsp");
+        FileUtils.fileWrite(extra.getAbsolutePath(), "UTF-8", "\ntr(\"b\");");
+        JavaExtractor extractor = new JavaExtractor(JavaExtractor.parseKeywords("-k -ktr"));
+
+        List<List<PoEntry>> entries = extractor.extract(base,
+                Arrays.asList("a/A.java", "../index.jsp", extra.getAbsolutePath()), "UTF-8", 2);
+        assertEquals(3, entries.size());
+        assertEquals("a/A.java:1", entries.get(0).get(0).getReferences().get(0));
+        assertEquals("../index.jsp:2", entries.get(1).get(0).getReferences().get(0));
+        assertEquals(extra.getAbsolutePath() + ":2", entries.get(2).get(0).getReferences().get(0));
+    }
+
+    @Test(expected = IOException.class)
+    public void testExtractMissingFile() throws IOException {
+        new JavaExtractor(JavaExtractor.parseKeywords("-ktr")).extract(folder.getRoot(),
+                Arrays.asList("Missing.java"), "UTF-8", 1);
+    }
+
+}
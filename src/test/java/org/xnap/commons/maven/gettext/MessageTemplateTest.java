@@ -0,0 +1,169 @@
+package org.xnap.commons.maven.gettext;
+
+/*
+ * Copyright 2001-2005 The Apache Software Foundation.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.text.MessageFormat;
+import java.util.Date;
+import java.util.Locale;
+
+import org.junit.Test;
+import org.xnap.commons.maven.gettext.runtime.MessageTemplate;
+import org.xnap.commons.maven.gettext.runtime.TableBundle;
+
+public class MessageTemplateTest {
+
+    private static final Locale[] LOCALES = {Locale.US, Locale.GERMANY, new Locale("ar", "EG")};
+
+    private static PoEntry createEntry(String msgid, String... msgstr) {
+        PoEntry entry = new PoEntry();
+        entry.setMsgid(msgid);
+        for (int i = 0; i < msgstr.length; i++) {
+            entry.setMsgstr(i, msgstr[i]);
+        }
+        return entry;
+    }
+
+    private static void assertSameAsMessageFormat(String pattern, Object... args) {
+        MessageTemplate template = MessageTemplate.parse(pattern);
+        assertNotNull(pattern, template);
+        for (Locale locale : LOCALES) {
+            assertEquals(pattern, new MessageFormat(pattern, locale).format(args), template.format(locale, args));
+        }
+    }
+
+    @Test
+    public void testQuotes() {
+        assertSameAsMessageFormat("It''s {0}", "late");
+        assertSameAsMessageFormat("'{0}' is {0}", "x");
+        assertSameAsMessageFormat("'quoted' text, 'it''s' {0}", "x");
+        assertSameAsMessageFormat("''{0}''", "x");
+        // an unterminated quote runs to the end
+        assertSameAsMessageFormat("{0} '{1}", "x", "y");
+    }
+
+    @Test
+    public void testBraces() {
+        assertSameAsMessageFormat("a } b {0} }", "x");
+        assertSameAsMessageFormat("{0}{0}{1}", "x", "y");
+        assertSameAsMessageFormat("{10}", 0, 1, 2, 3, 4, 5, 6, 7, 8, 9, "ten");
+        assertSameAsMessageFormat("no arguments");
+        assertSameAsMessageFormat("");
+    }
+
+    @Test
+    public void testMissingArguments() {
+        assertSameAsMessageFormat("{0} and {2}", "x");
+        assertSameAsMessageFormat("{0} and {1}");
+        assertSameAsMessageFormat("{0}", (Object[]) null);
+    }
+
+    @Test
+    public void testNull() {
+        assertSameAsMessageFormat("{0} and {1}", null, "y");
+    }
+
+    @Test
+    public void testNumbersAndDates() {
+        assertSameAsMessageFormat("{0} files", 1234567);
+        assertSameAsMessageFormat("{0}", 1234567.891);
+        assertSameAsMessageFormat("{0}", -0.5f);
+        assertSameAsMessageFormat("{0}", Long.MAX_VALUE);
+        assertSameAsMessageFormat("{0}", new BigDecimal("12345.678901"));
+        assertSameAsMessageFormat("on {0} at {1}", new Date(1234567890123L), new Date(0));
+        assertSameAsMessageFormat("{0}", new StringBuilder("text"));
+    }
+
+    @Test
+    public void testNotSupported() {
+        assertNull(MessageTemplate.parse("{0,number}"));
+        assertNull(MessageTemplate.parse("{0,choice,0#none|1#one}"));
+        assertNull(MessageTemplate.parse("{"));
+        assertNull(MessageTemplate.parse("{}"));
+        assertNull(MessageTemplate.parse("{a}"));
+        assertNull(MessageTemplate.parse("{ 0}"));
+    }
+
+    @Test
+    public void testParseFormat() {
+        assertNotNull(BundleTableGenerator.parseFormat(createEntry("{0} files", "{0} Dateien")));
+        // without arguments only with the java-format flag
+        assertNull(BundleTableGenerator.parseFormat(createEntry("100%", "100 %")));
+        PoEntry javaFormat = createEntry("It's late", "Es ist sp\u00e4t");
+        javaFormat.getFlags().add("java-format");
+        MessageTemplate template = BundleTableGenerator.parseFormat(javaFormat);
+        assertEquals(0, template.getArgumentCount());
+        assertEquals("Es ist sp\u00e4t", template.format());
+        PoEntry noJavaFormat = createEntry("{0} files", "{0} Dateien");
+        noJavaFormat.getFlags().add("no-java-format");
+        assertNull(BundleTableGenerator.parseFormat(noJavaFormat));
+        // typed arguments are left to MessageFormat
+        PoEntry typed = createEntry("{0} files", "{0,number,integer} Dateien");
+        typed.getFlags().add("java-format");
+        assertNull(BundleTableGenerator.parseFormat(typed));
+        // plural messages use their first form
+        PoEntry plural = createEntry("{0} file", "eine Datei", "{0} Dateien");
+        plural.setMsgidPlural("{0} files");
+        assertNull(BundleTableGenerator.parseFormat(plural));
+        plural.getMsgstr().set(0, "{0} Datei");
+        assertNotNull(BundleTableGenerator.parseFormat(plural));
+    }
+
+    @Test
+    public void testPooledHasTemplate() {
+        assertTrue(PooledTableGenerator.createValue(createEntry("{0} files", "{0} Dateien"), true).hasTemplate());
+        assertFalse(PooledTableGenerator.createValue(createEntry("{0} files", "{0} Dateien"), false).hasTemplate());
+        PoEntry typed = createEntry("{0} files", "{0,number} Dateien");
+        assertFalse(PooledTableGenerator.createValue(typed, true).hasTemplate());
+    }
+
+    @Test
+    public void testTableBundleRoundTrip() throws IOException {
+        String[] patterns = {"{0} von {1}", "It''s '{0}' {0}", "}{1}{0}", "\u8a2d\u5b9a {0} \ud83d\ude00"};
+        BundleTableGenerator generator = new BundleTableGenerator("test.Messages_de");
+        generator.setParseFormats(true);
+        for (int i = 0; i < patterns.length; i++) {
+            generator.add(createEntry("message " + i, patterns[i]));
+        }
+        generator.add(createEntry("plain", "einfach"));
+        assertEquals(patterns.length, generator.getFormatCount());
+        TableBundle bundle = new TableBundle(ByteBuffer.wrap(generator.generateTable()));
+
+        for (int i = 0; i < patterns.length; i++) {
+            MessageTemplate expected = MessageTemplate.parse(patterns[i]);
+            MessageTemplate template = bundle.getTemplate("message " + i);
+            assertEquals(expected.getSegmentCount(), template.getSegmentCount());
+            for (int j = 0; j < expected.getSegmentCount(); j++) {
+                assertEquals(expected.getLiteral(j), template.getLiteral(j));
+                assertEquals(expected.getArgument(j), template.getArgument(j));
+            }
+            assertEquals(MessageFormat.format(patterns[i], "x", 2), bundle.format("message " + i, "x", 2));
+        }
+        assertNull(bundle.getTemplate("plain"));
+        assertNull(bundle.getTemplate("missing"));
+        assertEquals("einfach", bundle.format("plain"));
+    }
+
+}
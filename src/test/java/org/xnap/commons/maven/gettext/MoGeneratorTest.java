@@ -0,0 +1,155 @@
+package org.xnap.commons.maven.gettext;
+
+/*
+ * Copyright 2001-2005 The Apache Software Foundation.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import org.junit.Test;
+import org.xnap.commons.maven.gettext.runtime.MoCatalog;
+
+public class MoGeneratorTest {
+
+    private static final String HEADER = "Content-Type: text/plain; charset=UTF-8\n"
+            + "Plural-Forms: nplurals=3; plural=(n==1 ? 0 : n%10>=2 && n%10<=4 && (n%100<10 || n%100>=20) ? 1 : 2);\n";
+
+    private static PoEntry createEntry(String msgid, String... msgstr) {
+        PoEntry entry = new PoEntry();
+        entry.setMsgid(msgid);
+        for (int i = 0; i < msgstr.length; i++) {
+            entry.setMsgstr(i, msgstr[i]);
+        }
+        return entry;
+    }
+
+    private static MoCatalog createCatalog(MoGenerator generator) throws IOException {
+        return new MoCatalog(ByteBuffer.wrap(generator.generate()));
+    }
+
+    @Test
+    public void testLookup() throws IOException {
+        MoGenerator generator = new MoGenerator();
+        assertTrue(generator.add(createEntry("", HEADER)));
+        assertTrue(generator.add(createEntry("Open", "Otw\u00f3rz")));
+        PoEntry context = createEntry("Open", "Otwarte");
+        context.setMsgctxt("state");
+        assertTrue(generator.add(context));
+        PoEntry plural = createEntry("{0} file", "{0} plik", "{0} pliki", "{0} plik\u00f3w");
+        plural.setMsgidPlural("{0} files");
+        assertTrue(generator.add(plural));
+        assertEquals(4, generator.size());
+
+        MoCatalog catalog = createCatalog(generator);
+        assertEquals(4, catalog.size());
+        assertEquals("UTF-8", catalog.getCharset());
+        assertEquals(HEADER, catalog.getHeader());
+        assertEquals("Otw\u00f3rz", catalog.gettext("Open"));
+        assertEquals("Otwarte", catalog.pgettext("state", "Open"));
+        assertEquals("Close", catalog.gettext("Close"));
+        assertNull(catalog.lookup("menu", "Open"));
+        assertEquals("{0} plik", catalog.ngettext("{0} file", "{0} files", 1));
+        assertEquals("{0} pliki", catalog.ngettext("{0} file", "{0} files", 3));
+        assertEquals("{0} plik\u00f3w", catalog.ngettext("{0} file", "{0} files", 5));
+        assertEquals("{0} files", catalog.ngettext("{0} dir", "{0} files", 5));
+    }
+
+    @Test
+    public void testNotCompiledMessagesSkipped() throws IOException {
+        MoGenerator generator = new MoGenerator();
+        PoEntry fuzzy = createEntry("a", "b");
+        fuzzy.getFlags().add("fuzzy");
+        assertFalse(generator.add(fuzzy));
+        assertFalse(generator.add(createEntry("c", "")));
+        PoEntry obsolete = createEntry("d", "e");
+        obsolete.setObsolete(true);
+        assertFalse(generator.add(obsolete));
+        assertEquals(0, generator.size());
+
+        MoCatalog catalog = createCatalog(generator);
+        assertEquals(0, catalog.size());
+        assertNull(catalog.getHeader());
+        assertEquals("a", catalog.gettext("a"));
+    }
+
+    @Test
+    public void testLayout() throws IOException {
+        MoGenerator generator = new MoGenerator();
+        generator.add(createEntry("b", "2"));
+        generator.add(createEntry("\u00e4", "3"));
+        generator.add(createEntry("a", "1"));
+        ByteBuffer buffer = ByteBuffer.wrap(generator.generate()).order(ByteOrder.LITTLE_ENDIAN);
+
+        assertEquals(MoCatalog.MAGIC, buffer.getInt(0));
+        assertEquals(0, buffer.getInt(4));
+        assertEquals(3, buffer.getInt(8));
+        assertEquals(28, buffer.getInt(12));
+        assertEquals(28 + 8 * 3, buffer.getInt(16));
+        // the smallest odd prime not less than 3 * 4 / 3
+        assertEquals(5, buffer.getInt(20));
+        assertEquals(28 + 16 * 3, buffer.getInt(24));
+
+        // sorted by their bytes, so the UTF-8 encoded umlaut comes last
+        byte[] originals = new byte[7];
+        buffer.position(buffer.getInt(28 + 4));
+        buffer.get(originals);
+        assertArrayEquals(new byte[]{'a', 0, 'b', 0, (byte) 0xc3, (byte) 0xa4, 0}, originals);
+    }
+
+    @Test
+    public void testCharset() throws IOException {
+        MoGenerator generator = new MoGenerator();
+        generator.add(createEntry("", "Content-Type: text/plain; charset=ISO-8859-1\n"));
+        generator.add(createEntry("Open", "\u00d6ffnen"));
+        byte[] mo = generator.generate();
+
+        MoCatalog catalog = new MoCatalog(ByteBuffer.wrap(mo));
+        assertEquals("ISO-8859-1", catalog.getCharset());
+        assertEquals("\u00d6ffnen", catalog.gettext("Open"));
+        // the translation of "Open" follows the header and is stored in one byte per char
+        ByteBuffer buffer = ByteBuffer.wrap(mo).order(ByteOrder.LITTLE_ENDIAN);
+        int translation = buffer.getInt(16) + 8;
+        assertEquals(6, buffer.getInt(translation));
+        assertEquals((byte) 0xd6, mo[buffer.getInt(translation + 4)]);
+    }
+
+    @Test
+    public void testManyMessages() throws IOException {
+        MoGenerator generator = new MoGenerator();
+        generator.add(createEntry("", HEADER));
+        for (int i = 0; i < 5000; i++) {
+            generator.add(createEntry("message \u00e9 " + i, "value " + i));
+        }
+        MoCatalog catalog = createCatalog(generator);
+        for (int i = 0; i < 5000; i++) {
+            assertEquals("value " + i, catalog.gettext("message \u00e9 " + i));
+        }
+        assertNull(catalog.lookup(null, "message \u00e9 5000"));
+    }
+
+    @Test(expected = IOException.class)
+    public void testNotAMoFile() throws IOException {
+        new MoCatalog(ByteBuffer.wrap(new byte[28]));
+    }
+
+}
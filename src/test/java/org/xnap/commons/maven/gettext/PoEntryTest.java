@@ -0,0 +1,74 @@
+package org.xnap.commons.maven.gettext;
+
+/*
+ * Copyright 2001-2005 The Apache Software Foundation.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class PoEntryTest {
+
+    private static PoEntry createEntry(String msgid, String... msgstr) {
+        PoEntry entry = new PoEntry();
+        entry.setMsgid(msgid);
+        for (int i = 0; i < msgstr.length; i++) {
+            entry.setMsgstr(i, msgstr[i]);
+        }
+        return entry;
+    }
+
+    @Test
+    public void testCompiled() {
+        assertTrue(createEntry("a", "b").isCompiled());
+        assertFalse(createEntry("a", "").isCompiled());
+        assertFalse(createEntry("a").isCompiled());
+    }
+
+    @Test
+    public void testFuzzyAndObsoleteNotCompiled() {
+        PoEntry fuzzy = createEntry("a", "b");
+        fuzzy.getFlags().add("fuzzy");
+        assertFalse(fuzzy.isCompiled());
+
+        PoEntry obsolete = createEntry("a", "b");
+        obsolete.setObsolete(true);
+        assertFalse(obsolete.isCompiled());
+    }
+
+    @Test
+    public void testFuzzyHeaderCompiled() {
+        PoEntry header = createEntry("", "Content-Type: text/plain; charset=UTF-8\n");
+        header.getFlags().add("fuzzy");
+        assertTrue(header.isCompiled());
+    }
+
+    @Test
+    public void testPluralWithEmptyFirstFormNotCompiled() {
+        PoEntry entry = createEntry("file", "", "Dateien");
+        entry.setMsgidPlural("files");
+        // like msgfmt, only the first form decides
+        assertTrue(entry.isTranslated());
+        assertFalse(entry.hasMsgstr());
+        assertFalse(entry.isCompiled());
+
+        entry = createEntry("file", "Datei", "");
+        entry.setMsgidPlural("files");
+        assertTrue(entry.isCompiled());
+    }
+
+}
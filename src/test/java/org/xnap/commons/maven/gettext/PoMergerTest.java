@@ -0,0 +1,283 @@
+package org.xnap.commons.maven.gettext;
+
+/*
+ * Copyright 2001-2005 The Apache Software Foundation.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+
+import org.codehaus.plexus.util.FileUtils;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class PoMergerTest {
+
+    private static final String TEMPLATE = "# SOME DESCRIPTIVE TITLE.\n"
+            + "#, fuzzy\n"
+            + "msgid \"\"\n"
+            + "msgstr \"\"\n"
+            + "\"Project-Id-Version: PACKAGE VERSION\\n\"\n"
+            + "\"POT-Creation-Date: 2026-02-01 12:00+0100\\n\"\n"
+            + "\"Content-Type: text/plain; charset=CHARSET\\n\"\n"
+            + "\n"
+            + "#: New.java:10\n"
+            + "msgid \"Open\"\n"
+            + "msgstr \"\"\n"
+            + "\n"
+            + "#: New.java:11\n"
+            + "msgid \"Delete the selected files\"\n"
+            + "msgstr \"\"\n"
+            + "\n"
+            + "#: New.java:12\n"
+            + "#, java-format\n"
+            + "msgid \"{0} file\"\n"
+            + "msgid_plural \"{0} files\"\n"
+            + "msgstr[0] \"\"\n"
+            + "msgstr[1] \"\"\n"
+            + "\n"
+            + "#: New.java:13\n"
+            + "msgctxt \"menu\"\n"
+            + "msgid \"Close\"\n"
+            + "msgstr \"\"\n";
+
+    private static final String HEADER = "msgid \"\"\n"
+            + "msgstr \"\"\n"
+            + "\"Project-Id-Version: example\\n\"\n"
+            + "\"POT-Creation-Date: %s\\n\"\n"
+            + "\"Content-Type: text/plain; charset=UTF-8\\n\"\n"
+            + "\"Plural-Forms: nplurals=3; plural=(n==1 ? 0 : n>=2 && n<=4 ? 1 : 2);\\n\"\n";
+
+    private static final String PO = String.format(HEADER, "2026-01-01 12:00+0100")
+            + "\n"
+            + "# translator comment\n"
+            + "#: Old.java:1\n"
+            + "msgid \"Open\"\n"
+            + "msgstr \"Otev\u0159\u00edt\"\n"
+            + "\n"
+            + "#: Old.java:2\n"
+            + "msgid \"Delete the selected file\"\n"
+            + "msgstr \"Smazat vybran\u00fd soubor\"\n"
+            + "\n"
+            + "#: Old.java:3\n"
+            + "msgid \"Close\"\n"
+            + "msgstr \"Zav\u0159\u00edt\"\n"
+            + "\n"
+            + "#: Old.java:4\n"
+            + "msgid \"Removed\"\n"
+            + "msgstr \"Odstran\u011bno\"\n"
+            + "\n"
+            + "msgid \"Untranslated\"\n"
+            + "msgstr \"\"\n";
+
+    /**
+     * What <code>msgmerge -U</code> writes for {@link #PO} and
+     * {@link #TEMPLATE}.
+     */
+    private static final String MERGED = String.format(HEADER, "2026-02-01 12:00+0100")
+            + "\n"
+            + "# translator comment\n"
+            + "#: New.java:10\n"
+            + "msgid \"Open\"\n"
+            + "msgstr \"Otev\u0159\u00edt\"\n"
+            + "\n"
+            + "#: New.java:11\n"
+            + "#, fuzzy\n"
+            + "msgid \"Delete the selected files\"\n"
+            + "msgstr \"Smazat vybran\u00fd soubor\"\n"
+            + "\n"
+            + "#: New.java:12\n"
+            + "#, java-format\n"
+            + "msgid \"{0} file\"\n"
+            + "msgid_plural \"{0} files\"\n"
+            + "msgstr[0] \"\"\n"
+            + "msgstr[1] \"\"\n"
+            + "msgstr[2] \"\"\n"
+            + "\n"
+            + "#: New.java:13\n"
+            + "msgctxt \"menu\"\n"
+            + "msgid \"Close\"\n"
+            + "msgstr \"\"\n"
+            + "\n"
+            + "#~ msgid \"Close\"\n"
+            + "#~ msgstr \"Zav\u0159\u00edt\"\n"
+            + "\n"
+            + "#~ msgid \"Removed\"\n"
+            + "#~ msgstr \"Odstran\u011bno\"\n";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private File write(String name, String content) throws IOException {
+        File file = new File(folder.getRoot(), name);
+        FileUtils.fileWrite(file.getAbsolutePath(), "UTF-8", content);
+        return file;
+    }
+
+    private PoMerger createMerger(String matching) throws IOException {
+        return new PoMerger(PoMerger.read(write("keys.pot", TEMPLATE)), matching);
+    }
+
+    @Test
+    public void testUpdateLikeMsgmerge() throws IOException {
+        File po = write("cs.po", PO);
+        PoMerger merger = createMerger(PoMerger.FUZZY);
+        assertTrue(merger.update(po, null, null));
+        assertEquals(MERGED, FileUtils.fileRead(po, "UTF-8"));
+
+        // merging again changes nothing, so the file is not written
+        long modified = po.lastModified();
+        assertFalse(merger.update(po, null, null));
+        assertEquals(modified, po.lastModified());
+    }
+
+    @Test
+    public void testMerge() throws IOException {
+        PoMerger.Result result = createMerger(PoMerger.FUZZY).merge(PoMerger.read(write("cs.po", PO)));
+        List<PoEntry> entries = result.getEntries();
+        assertEquals(7, entries.size());
+        assertEquals(1, result.getFuzzyMatches());
+        assertEquals(0, result.getMemoryMatches());
+        assertEquals(Arrays.asList("New.java:10"), entries.get(1).getReferences());
+        assertEquals(Arrays.asList("translator comment"), entries.get(1).getTranslatorComments());
+        assertTrue(entries.get(2).isFuzzy());
+        // fuzzy matches never change the context
+        assertFalse(entries.get(4).isTranslated());
+    }
+
+    @Test
+    public void testNoFuzzyMatching() throws IOException {
+        PoMerger.Result result = createMerger(PoMerger.NO_FUZZY).merge(PoMerger.read(write("cs.po", PO)));
+        List<PoEntry> entries = result.getEntries();
+        assertEquals(0, result.getFuzzyMatches());
+        assertFalse(entries.get(2).isTranslated());
+        // the unused translation is kept as obsolete
+        assertEquals(8, entries.size());
+        assertTrue(entries.get(5).isObsolete());
+        assertEquals("Delete the selected file", entries.get(5).getMsgid());
+    }
+
+    @Test
+    public void testExact() throws IOException {
+        PoMerger.Result result = createMerger(PoMerger.EXACT).merge(PoMerger.read(write("cs.po", PO)));
+        List<PoEntry> entries = result.getEntries();
+        assertEquals(5, entries.size());
+        for (PoEntry entry : entries) {
+            assertFalse(entry.isObsolete());
+            assertFalse(entry.isFuzzy());
+        }
+    }
+
+    @Test
+    public void testPluralTranslationOfSingularMessage() throws IOException {
+        String po = String.format(HEADER, "2026-01-01 12:00+0100")
+                + "\n"
+                + "msgid \"{0} file\"\n"
+                + "msgstr \"{0} soubor\"\n";
+        List<PoEntry> entries = createMerger(PoMerger.FUZZY).merge(PoMerger.read(write("cs.po", po))).getEntries();
+        PoEntry plural = entries.get(3);
+        assertEquals("{0} files", plural.getMsgidPlural());
+        assertEquals(Arrays.asList("{0} soubor", "{0} soubor", "{0} soubor"), plural.getMsgstr());
+        assertTrue(plural.isFuzzy());
+    }
+
+    @Test
+    public void testTemplateHeaderForEmptyPoFile() throws IOException {
+        List<PoEntry> entries = createMerger(PoMerger.FUZZY).merge(PoMerger.read(write("cs.po", ""))).getEntries();
+        assertTrue(entries.get(0).isHeader());
+        assertEquals("PACKAGE VERSION", entries.get(0).getHeaderField("Project-Id-Version"));
+        assertEquals(5, entries.size());
+    }
+
+    @Test
+    public void testMemoryKeepsContexts() throws IOException {
+        String template = "#: New.java:1\n"
+                + "msgid \"Close\"\n"
+                + "msgstr \"\"\n"
+                + "\n"
+                + "#: New.java:2\n"
+                + "msgctxt \"menu\"\n"
+                + "msgid \"Close\"\n"
+                + "msgstr \"\"\n"
+                + "\n"
+                + "#: New.java:3\n"
+                + "msgctxt \"window\"\n"
+                + "msgid \"Close\"\n"
+                + "msgstr \"\"\n";
+        String po = String.format(HEADER, "2026-01-01 12:00+0100")
+                + "\n"
+                + "msgid \"Close\"\n"
+                + "msgstr \"Zav\u0159\u00edt\"\n"
+                + "\n"
+                + "msgctxt \"menu\"\n"
+                + "msgid \"Close\"\n"
+                + "msgstr \"Zav\u0159\u00edt nab\u00eddku\"\n"
+                + "\n"
+                + "msgctxt \"window\"\n"
+                + "msgid \"Close\"\n"
+                + "msgstr \"Zav\u0159\u00edt okno\"\n";
+        File file = new File(folder.getRoot(), "cs.tm");
+        TranslationMemory memory = TranslationMemory.open(file);
+        try {
+            PoMerger merger = new PoMerger(PoMerger.read(write("keys.pot", template)), PoMerger.FUZZY);
+            merger.merge(PoMerger.read(write("cs.po", po)), memory);
+            memory.save();
+        } finally {
+            memory.close();
+        }
+
+        // the messages were reformatted, so only the memory has them
+        String reformatted = template.replace("msgid \"Close\"", "msgid \"Close \"");
+        memory = TranslationMemory.open(file);
+        try {
+            PoMerger merger = new PoMerger(PoMerger.read(write("keys.pot", reformatted)), PoMerger.FUZZY);
+            PoMerger.Result result = merger.merge(PoMerger.read(write("cs.po", "")), memory);
+            assertEquals(3, result.getMemoryMatches());
+            List<PoEntry> entries = result.getEntries();
+            assertEquals("Close ", entries.get(0).getMsgid());
+            assertEquals("Zav\u0159\u00edt", entries.get(0).getMsgstr().get(0));
+            assertEquals("menu", entries.get(1).getMsgctxt());
+            assertEquals("Zav\u0159\u00edt nab\u00eddku", entries.get(1).getMsgstr().get(0));
+            assertEquals("window", entries.get(2).getMsgctxt());
+            assertEquals("Zav\u0159\u00edt okno", entries.get(2).getMsgstr().get(0));
+            assertTrue(entries.get(2).isFuzzy());
+        } finally {
+            memory.close();
+        }
+    }
+
+    @Test
+    public void testMemoryKey() {
+        PoEntry entry = new PoEntry();
+        entry.setMsgid("  Close\n file ");
+        assertEquals("Close file", PoMerger.getMemoryKey(entry));
+        // whitespace next to the glue is removed as well
+        entry.setMsgctxt(" menu ");
+        assertEquals("menu" + PoEntry.CONTEXT_GLUE + "Close file", PoMerger.getMemoryKey(entry));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidMatching() throws IOException {
+        createMerger("other");
+    }
+
+}
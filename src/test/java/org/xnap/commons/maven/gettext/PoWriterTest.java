@@ -0,0 +1,95 @@
+package org.xnap.commons.maven.gettext;
+
+/*
+ * Copyright 2001-2005 The Apache Software Foundation.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.StringWriter;
+
+import org.codehaus.plexus.util.IOUtil;
+import org.junit.Test;
+
+public class PoWriterTest {
+
+    private static String roundTrip(String po, int pageWidth) throws IOException {
+        PoParser parser = new PoParser("test.po", new ByteArrayInputStream(po.getBytes("UTF-8")));
+        StringWriter out = new StringWriter();
+        PoWriter writer = new PoWriter(out);
+        writer.setPageWidth(pageWidth);
+        try {
+            PoEntry entry;
+            while ((entry = parser.next()) != null) {
+                writer.write(entry);
+            }
+        } finally {
+            parser.close();
+        }
+        writer.flush();
+        return out.toString();
+    }
+
+    @Test
+    public void testRoundTripGnuFormatting() throws IOException {
+        // laid out like msgcat writes it: wrapped references and strings, previous
+        // msgids, plurals, contexts, escapes, non-ASCII text and obsolete entries
+        InputStream in = getClass().getResourceAsStream("gnu.po");
+        String po;
+        try {
+            po = IOUtil.toString(in, "UTF-8");
+        } finally {
+            in.close();
+        }
+        assertEquals(po, roundTrip(po, PoWriter.PAGE_WIDTH));
+    }
+
+    @Test
+    public void testNoWrap() throws IOException {
+        String po = "#, no-wrap\n"
+                + "msgid \"A very long message that does not fit on one line but is not wrapped because of its flag\"\n"
+                + "msgstr \"\"\n";
+        assertEquals(po, roundTrip(po, PoWriter.PAGE_WIDTH));
+    }
+
+    @Test
+    public void testPageWidth() throws IOException {
+        String po = "msgid \"\"\n"
+                + "\"one two \"\n"
+                + "\"three\"\n"
+                + "msgstr \"eins\"\n";
+        assertEquals(po, roundTrip(po, 14));
+        assertEquals("msgid \"one two three\"\nmsgstr \"eins\"\n", roundTrip(po, 0));
+    }
+
+    @Test
+    public void testLongWordOverflows() throws IOException {
+        String po = "msgid \"\"\n"
+                + "\"a \"\n"
+                + "\"supercalifragilisticexpialidocious\"\n"
+                + "msgstr \"\"\n";
+        assertEquals(po, roundTrip(po, 20));
+    }
+
+    @Test
+    public void testEscape() {
+        assertEquals("plain", PoWriter.escape("plain"));
+        assertEquals("\\a\\b\\f\\n\\r\\t\\v\\\"\\\\", PoWriter.escape("\u0007\b\f\n\r\t\u000b\"\\"));
+    }
+
+}
@@ -0,0 +1,228 @@
+package org.xnap.commons.maven.gettext;
+
+/*
+ * Copyright 2001-2005 The Apache Software Foundation.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Locale;
+import java.util.ResourceBundle;
+import java.util.TreeSet;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.xnap.commons.maven.gettext.runtime.PooledBundle;
+
+public class PooledTableGeneratorTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static PoEntry createEntry(String msgid, String... msgstr) {
+        PoEntry entry = new PoEntry();
+        entry.setMsgid(msgid);
+        for (int i = 0; i < msgstr.length; i++) {
+            entry.setMsgstr(i, msgstr[i]);
+        }
+        return entry;
+    }
+
+    private static PoEntry createPlural(String msgid, String msgidPlural, String... msgstr) {
+        PoEntry entry = createEntry(msgid, msgstr);
+        entry.setMsgidPlural(msgidPlural);
+        return entry;
+    }
+
+    private static PoEntry createContext(String msgctxt, String msgid, String msgstr) {
+        PoEntry entry = createEntry(msgid, msgstr);
+        entry.setMsgctxt(msgctxt);
+        return entry;
+    }
+
+    private PooledTableGenerator generator;
+    private PooledTableGenerator.Catalog de;
+    private PooledTableGenerator.Catalog ja;
+
+    /**
+     * Adds German and Japanese messages that share some translations.
+     */
+    private void addCatalogs() {
+        generator = new PooledTableGenerator("test.Messages");
+        generator.setParseFormats(true);
+        de = generator.addCatalog("test.Messages_de");
+        de.add(createEntry("", "Plural-Forms: nplurals=2; plural=(n != 1);\n"));
+        de.add(createEntry("OK", "OK"));
+        de.add(createEntry("Cancel", "Abbrechen"));
+        de.add(createEntry("{0} of {1}", "{0} von {1}"));
+        de.add(createPlural("{0} file", "{0} files", "{0} Datei", "{0} Dateien"));
+        de.add(createContext("menu", "Open", "\u00d6ffnen"));
+        de.add(createEntry("Open", "Offen"));
+        de.add(createEntry("German only", "Nur Deutsch"));
+
+        ja = generator.addCatalog("test.Messages_ja");
+        ja.add(createEntry("", "Plural-Forms: nplurals=1; plural=0;\n"));
+        ja.add(createEntry("OK", "OK"));
+        ja.add(createEntry("Cancel", "\u30ad\u30e3\u30f3\u30bb\u30eb"));
+        ja.add(createEntry("{0} of {1}", "{1} \u306e {0}"));
+        ja.add(createPlural("{0} file", "{0} files", "{0} \u30d5\u30a1\u30a4\u30eb"));
+        ja.add(createContext("menu", "Open", "\u958b\u304f"));
+        // the same translation as a German message
+        ja.add(createEntry("{0} von {1}", "{0} von {1}"));
+        ja.add(createEntry("\u8a2d\u5b9a", "\u8a2d\u5b9a"));
+    }
+
+    private static PooledBundle read(byte[] pool, PooledTableGenerator.Catalog catalog) throws IOException {
+        return new PooledBundle(ByteBuffer.wrap(pool), ByteBuffer.wrap(catalog.generateIndex()));
+    }
+
+    @Test
+    public void testTwoLocales() throws IOException {
+        addCatalogs();
+        // the headers are messages as well
+        assertEquals(8, de.size());
+        assertEquals(8, ja.size());
+        assertEquals(2, de.getFormatCount());
+        assertEquals(3, ja.getFormatCount());
+        byte[] pool = generator.generatePool();
+        assertEquals(10, generator.size());
+        // "OK" and "{0} von {1}" are shared
+        assertEquals(14, generator.getValueCount());
+
+        PooledBundle bundle = read(pool, de);
+        assertEquals("OK", bundle.lookup("OK"));
+        assertEquals("Abbrechen", bundle.lookup("Cancel"));
+        assertEquals("{0} von {1}", bundle.lookup("{0} of {1}"));
+        assertArrayEquals(new String[]{"{0} Datei", "{0} Dateien"}, (String[]) bundle.lookup("{0} file"));
+        assertEquals("{0} Datei", bundle.getString("{0} file"));
+        assertEquals("\u00d6ffnen", bundle.lookup("menu" + PoEntry.CONTEXT_GLUE + "Open"));
+        assertEquals("Offen", bundle.lookup("Open"));
+        assertEquals("Nur Deutsch", bundle.lookup("German only"));
+        assertNull(bundle.lookup("\u8a2d\u5b9a"));
+        assertNull(bundle.lookup("{0} von {1}"));
+        assertNull(bundle.lookup("Missing"));
+        assertEquals(new TreeSet<String>(Arrays.asList("", "OK", "Cancel", "{0} of {1}", "{0} file",
+                "menu" + PoEntry.CONTEXT_GLUE + "Open", "Open", "German only")),
+                new TreeSet<String>(Collections.list(bundle.getKeys())));
+        assertNotNull(bundle.getTemplate("{0} of {1}"));
+        assertNull(bundle.getTemplate("Cancel"));
+        assertEquals("2 von 3", bundle.format("{0} of {1}", 2, 3));
+
+        bundle = read(pool, ja);
+        assertEquals("OK", bundle.lookup("OK"));
+        assertEquals("\u30ad\u30e3\u30f3\u30bb\u30eb", bundle.lookup("Cancel"));
+        assertArrayEquals(new String[]{"{0} \u30d5\u30a1\u30a4\u30eb"}, (String[]) bundle.lookup("{0} file"));
+        assertEquals("\u958b\u304f", bundle.lookup("menu" + PoEntry.CONTEXT_GLUE + "Open"));
+        assertNull(bundle.lookup("Open"));
+        assertNull(bundle.lookup("German only"));
+        assertEquals("{0} von {1}", bundle.lookup("{0} von {1}"));
+        assertEquals("\u8a2d\u5b9a", bundle.lookup("\u8a2d\u5b9a"));
+        assertEquals(new TreeSet<String>(Arrays.asList("", "OK", "Cancel", "{0} of {1}", "{0} file",
+                "menu" + PoEntry.CONTEXT_GLUE + "Open", "{0} von {1}", "\u8a2d\u5b9a")),
+                new TreeSet<String>(Collections.list(bundle.getKeys())));
+        assertEquals("3 \u306e 2", bundle.format("{0} of {1}", 2, 3));
+        assertEquals("2 von 3", bundle.getTemplate("{0} von {1}").format(2, 3));
+    }
+
+    @Test
+    public void testCreateValue() {
+        PooledTableGenerator.Value value = PooledTableGenerator.createValue(createEntry("{0}", "{0}"), true);
+        assertTrue(value.hasTemplate());
+        assertFalse(value.isPlural());
+        assertFalse(PooledTableGenerator.createValue(createEntry("{0}", "{0}"), false).hasTemplate());
+        assertFalse(PooledTableGenerator.createValue(createEntry("a", "b"), true).hasTemplate());
+        PoEntry noFormat = createEntry("{0}", "{0}");
+        noFormat.getFlags().add("no-java-format");
+        assertFalse(PooledTableGenerator.createValue(noFormat, true).equals(value));
+
+        value = PooledTableGenerator.createValue(createPlural("a", "b", "c", "d"), false);
+        assertTrue(value.isPlural());
+        assertEquals(value, PooledTableGenerator.createValue(createPlural("x", "y", "c", "d"), false));
+        // a single form is stored differently than a translation without plural forms
+        assertFalse(PooledTableGenerator.createValue(createPlural("a", "b", "c"), false)
+                .equals(PooledTableGenerator.createValue(createEntry("a", "c"), false)));
+    }
+
+    @Test
+    public void testIndexOfAnotherPool() throws IOException {
+        addCatalogs();
+        byte[] pool = generator.generatePool();
+        PooledTableGenerator.Catalog other = de;
+        addCatalogs();
+        de.add(createEntry("Added", "Neu"));
+        generator.generatePool();
+        try {
+            read(pool, de);
+            fail("the index of another pool was accepted");
+        } catch (IOException e) {
+            assertEquals("The message index does not belong to the message pool", e.getMessage());
+        }
+        assertEquals("Abbrechen", read(pool, other).lookup("Cancel"));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testIndexBeforePool() {
+        addCatalogs();
+        de.generateIndex();
+    }
+
+    @Test
+    public void testLoadFromClassPath() throws Exception {
+        addCatalogs();
+        File root = folder.getRoot();
+        write(new File(root, generator.getPoolName()), generator.generatePool());
+        write(new File(root, "test/Messages_de.class"), de.generateClass());
+        write(new File(root, "test/Messages_de" + PooledBundle.EXTENSION), de.generateIndex());
+        write(new File(root, "test/Messages_ja.class"), ja.generateClass());
+        write(new File(root, "test/Messages_ja" + PooledBundle.EXTENSION), ja.generateIndex());
+
+        URLClassLoader loader = new URLClassLoader(new URL[]{root.toURI().toURL()}, getClass().getClassLoader());
+        ResourceBundle bundle = ResourceBundle.getBundle("test.Messages", Locale.GERMAN, loader);
+        assertEquals("Abbrechen", bundle.getString("Cancel"));
+        assertEquals("{0} Dateien", bundle.getClass().getMethod("ngettext", String.class, String.class, long.class)
+                .invoke(bundle, "{0} file", "{0} files", 2L));
+        bundle = ResourceBundle.getBundle("test.Messages", Locale.JAPANESE, loader);
+        assertEquals("{0} \u30d5\u30a1\u30a4\u30eb", bundle.getClass()
+                .getMethod("ngettext", String.class, String.class, long.class)
+                .invoke(bundle, "{0} file", "{0} files", 2L));
+    }
+
+    private static void write(File file, byte[] bytes) throws IOException {
+        file.getParentFile().mkdirs();
+        OutputStream out = new FileOutputStream(file);
+        try {
+            out.write(bytes);
+        } finally {
+            out.close();
+        }
+    }
+
+}
@@ -0,0 +1,198 @@
+package org.xnap.commons.maven.gettext;
+
+/*
+ * Copyright 2001-2005 The Apache Software Foundation.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.codehaus.plexus.util.FileUtils;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class PotCatalogTest {
+
+    private static final List<String> FILES = Arrays.asList("src/B.java", "src/A.java");
+
+    /**
+     * The template of a single xgettext run on {@link #FILES}.
+     */
+    private static final String SINGLE_RUN = "# SOME DESCRIPTIVE TITLE.\n"
+            + "#, fuzzy\n"
+            + "msgid \"\"\n"
+            + "msgstr \"\"\n"
+            + "\"Project-Id-Version: PACKAGE VERSION\\n\"\n"
+            + "\"Content-Type: text/plain; charset=UTF-8\\n\"\n"
+            + "\"Plural-Forms: nplurals=INTEGER; plural=EXPRESSION;\\n\"\n"
+            + "\n"
+            + "#: src/A.java:3\n"
+            + "msgid \"Cancel\"\n"
+            + "msgstr \"\"\n"
+            + "\n"
+            + "#. TRANSLATORS: a button\n"
+            + "#: src/B.java:2 src/B.java:9 src/A.java:5\n"
+            + "#, java-format\n"
+            + "msgid \"Open {0}\"\n"
+            + "msgstr \"\"\n"
+            + "\n"
+            + "#: src/B.java:4 src/A.java:12\n"
+            + "msgctxt \"menu\"\n"
+            + "msgid \"Open {0}\"\n"
+            + "msgstr \"\"\n"
+            + "\n"
+            + "#: src/A.java:7\n"
+            + "msgid \"file\"\n"
+            + "msgid_plural \"files\"\n"
+            + "msgstr[0] \"\"\n"
+            + "msgstr[1] \"\"\n"
+            + "\n"
+            + "#: src/B.java:6 src/A.java:10\n"
+            + "msgid \"\u00dcber\"\n"
+            + "msgstr \"\"\n";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static PoEntry createEntry(String msgctxt, String msgid, String... references) {
+        PoEntry entry = new PoEntry();
+        entry.setMsgctxt(msgctxt);
+        entry.setMsgid(msgid);
+        entry.setMsgstr(0, "");
+        entry.getReferences().addAll(Arrays.asList(references));
+        return entry;
+    }
+
+    private static PoEntry createHeader() {
+        PoEntry header = new PoEntry();
+        header.getTranslatorComments().add("SOME DESCRIPTIVE TITLE.");
+        header.getFlags().add("fuzzy");
+        header.setMsgid("");
+        header.setMsgstr(0, "Project-Id-Version: PACKAGE VERSION\n"
+                + "Content-Type: text/plain; charset=CHARSET\n");
+        return header;
+    }
+
+    /**
+     * @return the messages xgettext extracts from each file on its own
+     */
+    private static Map<String, List<PoEntry>> createParts() {
+        Map<String, List<PoEntry>> parts = new LinkedHashMap<String, List<PoEntry>>();
+        List<PoEntry> a = new ArrayList<PoEntry>();
+        a.add(createEntry(null, "Cancel", "src/A.java:3"));
+        PoEntry open = createEntry(null, "Open {0}", "src/A.java:5");
+        open.getExtractedComments().add("TRANSLATORS: a button");
+        a.add(open);
+        PoEntry plural = createEntry(null, "file", "src/A.java:7");
+        plural.setMsgidPlural("files");
+        plural.setMsgstr(1, "");
+        a.add(plural);
+        a.add(createEntry(null, "\u00dcber", "src/A.java:10"));
+        a.add(createEntry("menu", "Open {0}", "src/A.java:12"));
+        parts.put("src/A.java", a);
+
+        List<PoEntry> b = new ArrayList<PoEntry>();
+        // only this file sets the flag, by an xgettext: comment
+        open = createEntry(null, "Open {0}", "src/B.java:2", "src/B.java:9");
+        open.getFlags().add("java-format");
+        b.add(open);
+        b.add(createEntry("menu", "Open {0}", "src/B.java:4"));
+        b.add(createEntry(null, "\u00dcber", "src/B.java:6"));
+        parts.put("src/B.java", b);
+        return parts;
+    }
+
+    private String write(PotCatalog catalog) throws IOException {
+        File file = folder.newFile();
+        catalog.write(file);
+        return FileUtils.fileRead(file, "UTF-8");
+    }
+
+    @Test
+    public void testSameAsSingleRun() throws IOException {
+        Map<String, List<PoEntry>> parts = createParts();
+        PotCatalog catalog = new PotCatalog(FILES);
+        catalog.setHeader(createHeader());
+        for (String path : FILES) {
+            for (PoEntry entry : parts.get(path)) {
+                catalog.add(entry);
+            }
+        }
+        assertEquals(5, catalog.size());
+        assertEquals(SINGLE_RUN, write(catalog));
+    }
+
+    @Test
+    public void testSameFromCache() throws IOException {
+        ExtractionCache cache = new ExtractionCache("settings");
+        cache.setHeader(createHeader());
+        for (Map.Entry<String, List<PoEntry>> part : createParts().entrySet()) {
+            cache.put(part.getKey(), "hash", part.getValue());
+        }
+        File file = folder.newFile();
+        cache.save(file);
+        cache = new ExtractionCache("settings");
+        assertTrue(cache.load(file));
+
+        PotCatalog catalog = new PotCatalog(FILES);
+        catalog.setHeader(cache.getHeader());
+        for (String path : FILES) {
+            for (PoEntry entry : cache.getEntries(path)) {
+                catalog.add(entry);
+            }
+        }
+        assertEquals(SINGLE_RUN, write(catalog));
+    }
+
+    @Test
+    public void testAddDoesNotChangeParts() throws IOException {
+        Map<String, List<PoEntry>> parts = createParts();
+        PotCatalog catalog = new PotCatalog(FILES);
+        for (String path : FILES) {
+            for (PoEntry entry : parts.get(path)) {
+                catalog.add(entry);
+            }
+        }
+        // the message of the other file keeps only its own flags and comments
+        PoEntry open = parts.get("src/A.java").get(1);
+        assertEquals(Collections.<String>emptyList(), open.getFlags());
+        assertEquals(Arrays.asList("src/A.java:5"), open.getReferences());
+    }
+
+    @Test
+    public void testCreateBatches() {
+        Map<String, Set<String>> keysByFile = new LinkedHashMap<String, Set<String>>();
+        keysByFile.put("A.java", new HashSet<String>(Arrays.asList("x", "y")));
+        keysByFile.put("B.java", new HashSet<String>(Arrays.asList("x")));
+        keysByFile.put("C.java", new HashSet<String>(Arrays.asList("y", "z")));
+        keysByFile.put("D.java", new HashSet<String>(Arrays.asList("z")));
+        List<List<String>> batches = GettextMojo.createBatches(keysByFile);
+        assertEquals(Arrays.asList(Arrays.asList("A.java", "D.java"), Arrays.asList("B.java", "C.java")), batches);
+        assertEquals(Collections.emptyList(), GettextMojo.createBatches(new LinkedHashMap<String, Set<String>>()));
+    }
+
+}
@@ -0,0 +1,145 @@
+package org.xnap.commons.maven.gettext;
+
+/*
+ * Copyright 2001-2005 The Apache Software Foundation.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.StringWriter;
+import java.util.Properties;
+
+import org.codehaus.plexus.util.FileUtils;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class PropertiesWriterTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static PoEntry createEntry(String msgid, String... msgstr) {
+        PoEntry entry = new PoEntry();
+        entry.setMsgid(msgid);
+        for (int i = 0; i < msgstr.length; i++) {
+            entry.setMsgstr(i, msgstr[i]);
+        }
+        return entry;
+    }
+
+    private static String write(PoEntry entry) throws IOException {
+        StringWriter out = new StringWriter();
+        assertTrue(new PropertiesWriter(out).write(entry));
+        return out.toString();
+    }
+
+    @Test
+    public void testKeyEscaping() throws IOException {
+        assertEquals("a\\ b\\=c\\:d\\#e\\!f=x\n", write(createEntry("a b=c:d#e!f", "x")));
+        assertEquals("tab\\tnew\\nline\\\\=x\n", write(createEntry("tab\tnew\nline\\", "x")));
+    }
+
+    @Test
+    public void testLeadingSpaceInValue() throws IOException {
+        // only the leading space must be escaped in values
+        assertEquals("a=\\  b c\n", write(createEntry("a", "  b c")));
+    }
+
+    @Test
+    public void testNonLatin1() throws IOException {
+        PoEntry entry = createEntry("Settings", "\u8a2d\u5b9a \u00e9 \ud83d\ude00");
+        entry.getTranslatorComments().add("\u6ce8\u610f: \u00fc");
+        entry.getTranslatorComments().add("");
+        entry.getExtractedComments().add("\u8aac\u660e");
+        assertEquals("# \\u6ce8\\u610f: \\u00fc\n"
+                + "#\n"
+                + "#. \\u8aac\\u660e\n"
+                + "Settings=\\u8a2d\\u5b9a \\u00e9 \\ud83d\\ude00\n", write(entry));
+    }
+
+    @Test
+    public void testSkipped() throws IOException {
+        StringWriter out = new StringWriter();
+        PropertiesWriter writer = new PropertiesWriter(out);
+        PoEntry plural = createEntry("file", "Datei", "Dateien");
+        plural.setMsgidPlural("files");
+        assertFalse(writer.write(plural));
+        PoEntry obsolete = createEntry("a", "b");
+        obsolete.setObsolete(true);
+        assertFalse(writer.write(obsolete));
+        assertEquals("", out.toString());
+    }
+
+    @Test
+    public void testCommentedOut() throws IOException {
+        StringWriter out = new StringWriter();
+        PropertiesWriter writer = new PropertiesWriter(out);
+        writer.write(createEntry("", "Content-Type: text/plain; charset=UTF-8\n"));
+        PoEntry fuzzy = createEntry("a", "b");
+        fuzzy.getFlags().add("fuzzy");
+        fuzzy.getFlags().add("java-format");
+        writer.write(fuzzy);
+        writer.write(createEntry("c", ""));
+        writer.write(createEntry("d", "e"));
+        assertEquals("!=Content-Type\\: text/plain; charset\\=UTF-8\\n\n"
+                + "\n"
+                + "#, fuzzy, java-format\n"
+                + "!a=b\n"
+                + "\n"
+                + "!c=\n"
+                + "\n"
+                + "d=e\n", out.toString());
+    }
+
+    @Test
+    public void testConvert() throws IOException {
+        File po = new File(folder.getRoot(), "ja.po");
+        FileUtils.fileWrite(po.getAbsolutePath(), "UTF-8", "msgid \"\"\n"
+                + "msgstr \"Content-Type: text/plain; charset=UTF-8\\n\"\n"
+                + "\n"
+                + "# \u6ce8\u610f\n"
+                + "msgid \"key = value: #1!\"\n"
+                + "msgstr \" \u8a2d\u5b9a\"\n"
+                + "\n"
+                + "#, fuzzy\n"
+                + "msgid \"fuzzy\"\n"
+                + "msgstr \"x\"\n"
+                + "\n"
+                + "msgid \"file\"\n"
+                + "msgid_plural \"files\"\n"
+                + "msgstr[0] \"\u30d5\u30a1\u30a4\u30eb\"\n");
+        File output = new File(folder.getRoot(), "ja.properties");
+        assertEquals(3, PropertiesWriter.convert(po, output));
+
+        Properties properties = new Properties();
+        InputStream in = new FileInputStream(output);
+        try {
+            properties.load(in);
+        } finally {
+            in.close();
+        }
+        assertEquals(1, properties.size());
+        assertEquals(" \u8a2d\u5b9a", properties.getProperty("key = value: #1!"));
+        assertTrue(FileUtils.fileRead(output, "ISO-8859-1").contains("# \\u6ce8\\u610f\n"));
+    }
+
+}
@@ -0,0 +1,211 @@
+package org.xnap.commons.maven.gettext;
+
+/*
+ * Copyright 2001-2005 The Apache Software Foundation.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.MissingResourceException;
+import java.util.ResourceBundle;
+import java.util.Set;
+
+import org.apache.maven.project.MavenProject;
+import org.codehaus.plexus.util.FileUtils;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class ShardedBundleGeneratorTest {
+
+    private static final int COUNT = 500;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static PoEntry createEntry(String msgid, String... msgstr) {
+        PoEntry entry = new PoEntry();
+        entry.setMsgid(msgid);
+        for (int i = 0; i < msgstr.length; i++) {
+            entry.setMsgstr(i, msgstr[i]);
+        }
+        return entry;
+    }
+
+    private static ResourceBundle load(File root) throws IOException {
+        URLClassLoader loader = new URLClassLoader(new URL[]{root.toURI().toURL()},
+                ShardedBundleGeneratorTest.class.getClassLoader());
+        return ResourceBundle.getBundle("test.Messages", Locale.GERMAN, loader);
+    }
+
+    private static Object ngettext(ResourceBundle bundle, String msgid, String msgidPlural, long n)
+            throws Exception {
+        return bundle.getClass().getMethod("ngettext", String.class, String.class, long.class)
+                .invoke(bundle, msgid, msgidPlural, n);
+    }
+
+    /**
+     * Asserts the messages that {@link #createPoFile(File)} and
+     * {@link #testLookups()} add.
+     */
+    private static void assertMessages(ResourceBundle bundle) throws Exception {
+        Set<String> expected = new HashSet<String>();
+        expected.add("");
+        for (int i = 0; i < COUNT; i++) {
+            assertEquals("Meldung " + i, bundle.getString("message " + i));
+            expected.add("message " + i);
+        }
+        assertEquals("\u00d6ffnen", bundle.getString("menu" + PoEntry.CONTEXT_GLUE + "Open"));
+        assertEquals("Datei", ngettext(bundle, "file", "files", 1));
+        assertEquals("Dateien", ngettext(bundle, "file", "files", 2));
+        // untranslated messages fall back to the msgid
+        assertEquals("dirs", ngettext(bundle, "dir", "dirs", 2));
+        expected.add("menu" + PoEntry.CONTEXT_GLUE + "Open");
+        expected.add("file");
+        assertEquals(expected, new HashSet<String>(Collections.list(bundle.getKeys())));
+        try {
+            bundle.getString("Open");
+            fail("the message without context exists");
+        } catch (MissingResourceException e) {
+            assertEquals("Open", e.getKey());
+        }
+    }
+
+    @Test
+    public void testLookups() throws Exception {
+        ShardedBundleGenerator generator = new ShardedBundleGenerator("test.Messages_de", 4);
+        assertTrue(generator.add(createEntry("", "Plural-Forms: nplurals=2; plural=(n != 1);\n")));
+        int[] sizes = new int[4];
+        for (int i = 0; i < COUNT; i++) {
+            assertTrue(generator.add(createEntry("message " + i, "Meldung " + i)));
+            sizes[ShardedBundleGenerator.getShard("message " + i, 4)]++;
+        }
+        PoEntry context = createEntry("Open", "\u00d6ffnen");
+        context.setMsgctxt("menu");
+        assertTrue(generator.add(context));
+        PoEntry plural = createEntry("file", "Datei", "Dateien");
+        plural.setMsgidPlural("files");
+        assertTrue(generator.add(plural));
+        assertFalse(generator.add(createEntry("untranslated", "")));
+        assertEquals(COUNT + 3, generator.size());
+        for (int size : sizes) {
+            assertTrue(size > 0);
+        }
+
+        File root = folder.getRoot();
+        for (int i = 0; i < generator.getShardCount(); i++) {
+            write(new File(root, generator.getShardClassName(i) + ".class"), generator.generateShard(i));
+        }
+        write(new File(root, "test/Messages_de.class"), generator.generate());
+        assertMessages(load(root));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidShardCount() {
+        new ShardedBundleGenerator("test.Messages_de", 0);
+    }
+
+    @Test
+    public void testStaleShardsDeleted() throws Exception {
+        DistMojo mojo = new DistMojo();
+        mojo.poDirectory = folder.newFolder("po");
+        mojo.outputDirectory = folder.newFolder("classes");
+        mojo.workDirectory = folder.newFolder("work");
+        mojo.threads = 1;
+        mojo.failFast = true;
+        mojo.outputFormat = "bytecode";
+        mojo.targetBundle = "test.Messages";
+        mojo.javaVersion = "2";
+        mojo.msgfmtCmd = "msgfmt";
+        mojo.project = new MavenProject();
+        createPoFile(new File(mojo.poDirectory, "de.po"));
+        File dir = new File(mojo.outputDirectory, "test");
+
+        compile(mojo, 4);
+        assertShards(dir, 4);
+        assertMessages(load(mojo.outputDirectory));
+
+        compile(mojo, 2);
+        assertShards(dir, 2);
+        assertMessages(load(mojo.outputDirectory));
+
+        compile(mojo, 1);
+        assertShards(dir, 0);
+        assertMessages(load(mojo.outputDirectory));
+    }
+
+    private static void compile(DistMojo mojo, int bundleShards) throws Exception {
+        mojo.bundleShards = bundleShards;
+        mojo.createCompiler().compile(mojo.scanPoFiles(), true, new BuildMetrics("dist", null));
+        assertTrue(new File(mojo.outputDirectory, "test/Messages_de.class").isFile());
+    }
+
+    private static void assertShards(File dir, int count) {
+        Set<String> expected = new HashSet<String>();
+        for (int i = 0; i < count; i++) {
+            expected.add("Messages_de" + ShardedBundleGenerator.SHARD_SUFFIX + i + ".class");
+        }
+        Set<String> shards = new HashSet<String>();
+        for (String name : dir.list()) {
+            if (name.contains(ShardedBundleGenerator.SHARD_SUFFIX)) {
+                shards.add(name);
+            }
+        }
+        assertEquals(expected, shards);
+    }
+
+    private static void createPoFile(File file) throws IOException {
+        StringBuilder sb = new StringBuilder();
+        sb.append("msgid \"\"\n"
+                + "msgstr \"\"\n"
+                + "\"Content-Type: text/plain; charset=UTF-8\\n\"\n"
+                + "\"Plural-Forms: nplurals=2; plural=(n != 1);\\n\"\n");
+        for (int i = 0; i < COUNT; i++) {
+            sb.append("\nmsgid \"message ").append(i).append("\"\nmsgstr \"Meldung ").append(i).append("\"\n");
+        }
+        sb.append("\nmsgctxt \"menu\"\n"
+                + "msgid \"Open\"\n"
+                + "msgstr \"\u00d6ffnen\"\n"
+                + "\n"
+                + "msgid \"file\"\n"
+                + "msgid_plural \"files\"\n"
+                + "msgstr[0] \"Datei\"\n"
+                + "msgstr[1] \"Dateien\"\n");
+        FileUtils.fileWrite(file.getAbsolutePath(), "UTF-8", sb.toString());
+    }
+
+    private static void write(File file, byte[] bytes) throws IOException {
+        file.getParentFile().mkdirs();
+        OutputStream out = new FileOutputStream(file);
+        try {
+            out.write(bytes);
+        } finally {
+            out.close();
+        }
+    }
+
+}
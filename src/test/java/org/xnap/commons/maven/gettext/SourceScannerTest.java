@@ -0,0 +1,203 @@
+package org.xnap.commons.maven.gettext;
+
+/*
+ * Copyright 2001-2005 The Apache Software Foundation.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.codehaus.plexus.util.DirectoryScanner;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class SourceScannerTest {
+
+    private static final String[] FILES = {
+        "Main.java",
+        "README.txt",
+        "a/A.java",
+        "a/B.java",
+        "a/Ab.properties",
+        "a/b/C.java",
+        "a/b/c/D.java",
+        "a/b/c/d/E.java",
+        "a/test/ATest.java",
+        "a/b/test/BTest.java",
+        "test/Test.java",
+        "x/y/z/Deep.java",
+        "x/y/Notes.txt",
+        "x/Backup.java~",
+        "CVS/Entries",
+        ".git/config",
+        ".git/hooks/Hook.java",
+        "a/.svn/entries",
+    };
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private File root;
+
+    @Before
+    public void setUp() throws IOException {
+        root = folder.newFolder("src");
+        for (String name : FILES) {
+            create(name);
+        }
+    }
+
+    private File create(String name) throws IOException {
+        File file = new File(root, name);
+        file.getParentFile().mkdirs();
+        assertTrue(file.createNewFile());
+        return file;
+    }
+
+    private static List<String> scanWithDirectoryScanner(File directory, List<String> includes,
+            List<String> excludes) {
+        DirectoryScanner ds = new DirectoryScanner();
+        ds.setBasedir(directory);
+        ds.setIncludes(includes.toArray(new String[includes.size()]));
+        ds.setExcludes(excludes.toArray(new String[excludes.size()]));
+        ds.scan();
+        List<String> files = new ArrayList<String>();
+        for (String file : ds.getIncludedFiles()) {
+            files.add(file.replace(File.separatorChar, '/'));
+        }
+        Collections.sort(files);
+        return files;
+    }
+
+    private void assertSameAsDirectoryScanner(List<String> includes, List<String> excludes) throws IOException {
+        List<String> expected = scanWithDirectoryScanner(root, includes, excludes);
+        assertEquals(includes + " " + excludes, expected, new SourceScanner(includes, excludes).scan(root));
+    }
+
+    private static List<String> withDefaultExcludes(String... excludes) {
+        List<String> list = new ArrayList<String>(Arrays.asList(excludes));
+        list.addAll(Arrays.asList(DirectoryScanner.DEFAULTEXCLUDES));
+        return list;
+    }
+
+    @Test
+    public void testAnyDirectory() throws IOException {
+        assertSameAsDirectoryScanner(Arrays.asList("**/*.java"), Collections.<String>emptyList());
+        assertSameAsDirectoryScanner(Arrays.asList("**"), Collections.<String>emptyList());
+        assertSameAsDirectoryScanner(Arrays.asList("a/**/*.java"), Collections.<String>emptyList());
+        assertSameAsDirectoryScanner(Arrays.asList("**/b/**"), Collections.<String>emptyList());
+        assertSameAsDirectoryScanner(Arrays.asList("**/c/**/*.java"), Collections.<String>emptyList());
+    }
+
+    @Test
+    public void testWildcards() throws IOException {
+        assertSameAsDirectoryScanner(Arrays.asList("*"), Collections.<String>emptyList());
+        assertSameAsDirectoryScanner(Arrays.asList("*/*.java"), Collections.<String>emptyList());
+        assertSameAsDirectoryScanner(Arrays.asList("a/?.java"), Collections.<String>emptyList());
+        assertSameAsDirectoryScanner(Arrays.asList("a/*/?.java", "**/*.properties"), Collections.<String>emptyList());
+        assertSameAsDirectoryScanner(Arrays.asList("**/*.java"), Arrays.asList("**/?Test.java", "*.txt"));
+    }
+
+    @Test
+    public void testDirectoryExcludes() throws IOException {
+        assertSameAsDirectoryScanner(Arrays.asList("**/*.java"), Arrays.asList("**/test/**"));
+        assertSameAsDirectoryScanner(Arrays.asList("**/*.java"), Arrays.asList("a/b/"));
+        assertSameAsDirectoryScanner(Arrays.asList("**"), Arrays.asList("**/c/**", "x/**"));
+        assertSameAsDirectoryScanner(Arrays.asList("**"), Arrays.asList("a\\b\\"));
+    }
+
+    @Test
+    public void testDefaultExcludes() throws IOException {
+        assertSameAsDirectoryScanner(Arrays.asList("**"), withDefaultExcludes());
+        assertSameAsDirectoryScanner(Arrays.asList("**/*.java"), withDefaultExcludes("**/test/**"));
+    }
+
+    @Test
+    public void testIsTraversed() {
+        SourceScanner scanner = new SourceScanner(Arrays.asList("a/*/?.java"), Arrays.asList("**/test/**"));
+        assertTrue(scanner.isTraversed("a"));
+        assertTrue(scanner.isTraversed("a/b"));
+        assertFalse(scanner.isTraversed("a/b/c"));
+        assertFalse(scanner.isTraversed("x"));
+        assertFalse(scanner.isTraversed("a/test"));
+    }
+
+    @Test
+    public void testSnapshot() throws IOException {
+        List<String> includes = Arrays.asList("**/*.java");
+        List<String> excludes = withDefaultExcludes();
+        File snapshot = new File(folder.getRoot(), "work/snapshot");
+        // old enough to be kept in the snapshot
+        setModified(root, System.currentTimeMillis() - 60000);
+
+        SourceScanner scanner = new SourceScanner(includes, excludes);
+        scanner.loadSnapshot(snapshot);
+        assertEquals(scanWithDirectoryScanner(root, includes, excludes), scanner.scan(root));
+        assertEquals(0, scanner.getReusedDirectories());
+        scanner.saveSnapshot(snapshot);
+
+        scanner = new SourceScanner(includes, excludes);
+        scanner.loadSnapshot(snapshot);
+        assertEquals(scanWithDirectoryScanner(root, includes, excludes), scanner.scan(root));
+        assertEquals(0, scanner.getListedDirectories());
+        scanner.saveSnapshot(snapshot);
+
+        // below directories that did not change
+        create("a/b/c/d/e/New.java");
+        create("x/y/z/Added.java");
+        assertTrue(new File(root, "a/b/C.java").delete());
+        scanner = new SourceScanner(includes, excludes);
+        scanner.loadSnapshot(snapshot);
+        List<String> files = scanner.scan(root);
+        assertTrue(files.contains("a/b/c/d/e/New.java"));
+        assertTrue(files.contains("x/y/z/Added.java"));
+        assertEquals(scanWithDirectoryScanner(root, includes, excludes), files);
+        assertTrue(scanner.getReusedDirectories() > 0);
+    }
+
+    @Test
+    public void testSnapshotOfOtherPatterns() throws IOException {
+        File snapshot = new File(folder.getRoot(), "work/snapshot");
+        setModified(root, System.currentTimeMillis() - 60000);
+        SourceScanner scanner = new SourceScanner(Arrays.asList("**/*.java"), Collections.<String>emptyList());
+        scanner.scan(root);
+        scanner.saveSnapshot(snapshot);
+
+        scanner = new SourceScanner(Arrays.asList("**/*.txt"), Collections.<String>emptyList());
+        scanner.loadSnapshot(snapshot);
+        assertEquals(Arrays.asList("README.txt", "x/y/Notes.txt"), scanner.scan(root));
+        assertEquals(0, scanner.getReusedDirectories());
+    }
+
+    private static void setModified(File directory, long time) {
+        for (File file : directory.listFiles()) {
+            if (file.isDirectory()) {
+                setModified(file, time);
+            }
+        }
+        assertTrue(directory.setLastModified(time));
+    }
+
+}
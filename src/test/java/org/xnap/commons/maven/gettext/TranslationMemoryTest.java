@@ -0,0 +1,175 @@
+package org.xnap.commons.maven.gettext;
+
+/*
+ * Copyright 2001-2005 The Apache Software Foundation.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class TranslationMemoryTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testNormalize() {
+        assertEquals("a b c", TranslationMemory.normalize("  a\n  b\tc \n"));
+        assertEquals("", TranslationMemory.normalize(" "));
+    }
+
+    @Test
+    public void testSaveAndReopen() throws IOException {
+        File file = new File(folder.getRoot(), "tm/de.tm");
+        TranslationMemory memory = TranslationMemory.open(file);
+        try {
+            memory.put("Open  file", Collections.singletonList("Datei \u00f6ffnen"));
+            memory.put("file", Arrays.asList("Datei", "Dateien"));
+            assertEquals(2, memory.getPendingCount());
+            memory.save();
+            assertEquals(0, memory.getPendingCount());
+        } finally {
+            memory.close();
+        }
+
+        memory = TranslationMemory.open(file);
+        try {
+            assertArrayEquals(new String[]{"Datei \u00f6ffnen"}, memory.get("Open\nfile"));
+            assertArrayEquals(new String[]{"Datei", "Dateien"}, memory.get("file"));
+            assertNull(memory.get("Close"));
+            // an unchanged translation is not recorded again
+            memory.put("file", Arrays.asList("Datei", "Dateien"));
+            assertEquals(0, memory.getPendingCount());
+        } finally {
+            memory.close();
+        }
+    }
+
+    @Test
+    public void testCompact() throws IOException {
+        File file = new File(folder.getRoot(), "de.tm");
+        TranslationMemory memory = TranslationMemory.open(file);
+        try {
+            for (int i = 0; i < 2000; i++) {
+                memory.put("message " + i, Collections.singletonList("Meldung " + i));
+            }
+            memory.save();
+        } finally {
+            memory.close();
+        }
+        assertTrue(file.isFile());
+        assertFalse(new File(file.getPath() + ".log").exists());
+
+        memory = TranslationMemory.open(file);
+        try {
+            for (int i = 0; i < 2000; i++) {
+                assertArrayEquals(new String[]{"Meldung " + i}, memory.get("message " + i));
+            }
+            assertNull(memory.get("message 2000"));
+        } finally {
+            memory.close();
+        }
+    }
+
+    @Test
+    public void testTruncatedLog() throws IOException {
+        File file = new File(folder.getRoot(), "de.tm");
+        TranslationMemory memory = TranslationMemory.open(file);
+        try {
+            memory.put("a", Collections.singletonList("b"));
+            memory.put("c", Collections.singletonList("d"));
+            memory.save();
+        } finally {
+            memory.close();
+        }
+        RandomAccessFile log = new RandomAccessFile(file.getPath() + ".log", "rw");
+        try {
+            log.setLength(log.length() - 1);
+        } finally {
+            log.close();
+        }
+
+        memory = TranslationMemory.open(file);
+        try {
+            assertArrayEquals(new String[]{"b"}, memory.get("a"));
+            assertNull(memory.get("c"));
+            memory.put("e", Collections.singletonList("f"));
+            memory.save();
+        } finally {
+            memory.close();
+        }
+
+        memory = TranslationMemory.open(file);
+        try {
+            assertArrayEquals(new String[]{"b"}, memory.get("a"));
+            assertArrayEquals(new String[]{"f"}, memory.get("e"));
+        } finally {
+            memory.close();
+        }
+    }
+
+    @Test
+    public void testLockedUntilClosed() throws IOException {
+        File file = new File(folder.getRoot(), "de.tm");
+        FileChannel channel = new RandomAccessFile(file.getPath() + ".lock", "rw").getChannel();
+        try {
+            TranslationMemory memory = TranslationMemory.open(file);
+            try {
+                channel.tryLock();
+                fail("the memory is not locked");
+            } catch (OverlappingFileLockException e) {
+                // held by the memory
+            } finally {
+                memory.close();
+            }
+            FileLock lock = channel.tryLock();
+            assertNotNull(lock);
+            lock.release();
+        } finally {
+            channel.close();
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void testNotAMemory() throws IOException {
+        File file = folder.newFile("de.tm");
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        try {
+            raf.writeInt(0);
+        } finally {
+            raf.close();
+        }
+        TranslationMemory.open(file);
+    }
+
+}